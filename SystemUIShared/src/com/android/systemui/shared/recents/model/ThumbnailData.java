@@ -56,7 +56,11 @@ public class ThumbnailData {
     public long snapshotId;
 
     public ThumbnailData() {
-        thumbnail = null;
+        this(null);
+    }
+
+    public ThumbnailData(Bitmap thumbnail) {
+        this.thumbnail = thumbnail;
         orientation = ORIENTATION_UNDEFINED;
         rotation = ROTATION_UNDEFINED;
         insets = new Rect();
@@ -20,7 +20,9 @@ import android.app.WallpaperColors;
 import android.content.Context;
 import android.graphics.RectF;
 import android.os.Build;
+import android.util.ArraySet;
 import android.util.SparseIntArray;
+import android.view.Choreographer;
 import android.widget.RemoteViews;
 
 import androidx.annotation.Keep;
@@ -29,6 +31,7 @@ import androidx.annotation.RequiresApi;
 
 import com.android.launcher3.widget.LocalColorExtractor;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -37,12 +40,32 @@ import dev.kdrag0n.colorkt.Color;
 import dev.kdrag0n.colorkt.rgb.Srgb;
 import dev.kdrag0n.monet.theme.ColorScheme;
 
+/**
+ * Overrides the system palette of widgets with the colors of the launcher's {@link ColorScheme}.
+ *
+ * The override array is generated once per scheme and shared by all the extractors. When the
+ * scheme changes, the listeners of all the extractors are notified together on the next frame,
+ * and only if the generated colors actually changed.
+ */
 @RequiresApi(api = Build.VERSION_CODES.S)
 public class AccentColorExtractor extends LocalColorExtractor implements ThemeProvider.ColorSchemeChangeListener {
 
+    private static final Object sLock = new Object();
+    // Guarded by sLock
+    private static ColorScheme sColorScheme;
+    private static SparseIntArray sColorsOverride;
+    private static RemoteViews.ColorResources sColorResources;
+
+    // Extractors waiting for the next frame to notify their listener, only used on the main thread
+    private static final ArraySet<AccentColorExtractor> sPendingUpdates = new ArraySet<>();
+    private static final Choreographer.FrameCallback sUpdateCallback =
+            frameTimeNanos -> dispatchPendingUpdates();
+
     private final ThemeProvider mThemeProvider;
     private final RectF mTmpRect = new RectF();
     private Listener mListener;
+    // The colors last sent to mListener
+    private SparseIntArray mNotifiedColors;
 
     @Keep
     public AccentColorExtractor(Context context) {
@@ -52,21 +75,88 @@ public class AccentColorExtractor extends LocalColorExtractor implements ThemePr
     @Override
     public void setListener(@Nullable Listener listener) {
         mListener = listener;
-        notifyListener(mTmpRect, null);
+        mNotifiedColors = null;
+        notifyListener(getColorsOverride(mThemeProvider.getColorScheme()));
     }
 
     @Override
     public void addLocation(List<RectF> locations) {
         mThemeProvider.addListener(this);
+        // The scheme may have changed while no location was tracked
+        scheduleUpdate();
     }
 
     @Override
     public void removeLocations() {
         mThemeProvider.removeListener(this);
+        sPendingUpdates.remove(this);
+    }
+
+    @Override
+    public void applyColorsOverride(Context base, WallpaperColors colors) {
+        RemoteViews.ColorResources res;
+        synchronized (sLock) {
+            getColorsOverride(mThemeProvider.getColorScheme());
+            if (sColorResources == null) {
+                sColorResources = RemoteViews.ColorResources.create(base, sColorsOverride);
+            }
+            res = sColorResources;
+        }
+        if (res != null) {
+            res.apply(base);
+        }
+    }
+
+    @Override
+    public void onColorSchemeChanged() {
+        scheduleUpdate();
+    }
+
+    private void scheduleUpdate() {
+        if (sPendingUpdates.add(this) && sPendingUpdates.size() == 1) {
+            Choreographer.getInstance().postFrameCallback(sUpdateCallback);
+        }
+    }
+
+    private static void dispatchPendingUpdates() {
+        if (sPendingUpdates.isEmpty()) {
+            return;
+        }
+        ArrayList<AccentColorExtractor> extractors = new ArrayList<>(sPendingUpdates);
+        sPendingUpdates.clear();
+        SparseIntArray colors = getColorsOverride(extractors.get(0).mThemeProvider.getColorScheme());
+        for (AccentColorExtractor extractor : extractors) {
+            extractor.notifyListener(colors);
+        }
+    }
+
+    private void notifyListener(SparseIntArray colors) {
+        // The shared array is only replaced when the colors change, skip listeners which already
+        // have these colors.
+        if (mListener != null && colors != mNotifiedColors) {
+            mNotifiedColors = colors;
+            mListener.onColorsChanged(mTmpRect, colors);
+        }
     }
 
-    @Nullable
-    protected SparseIntArray generateColorsOverride(ColorScheme colorScheme) {
+    /**
+     * Returns the shared override array of {@param colorScheme}, generating it if needed.
+     */
+    private static SparseIntArray getColorsOverride(ColorScheme colorScheme) {
+        synchronized (sLock) {
+            if (colorScheme != sColorScheme) {
+                SparseIntArray colors = generateColorsOverride(colorScheme);
+                if (!contentEquals(colors, sColorsOverride)) {
+                    sColorsOverride = colors;
+                    sColorResources = null;
+                }
+                sColorScheme = colorScheme;
+            }
+            return sColorsOverride;
+        }
+    }
+
+    private static SparseIntArray generateColorsOverride(ColorScheme colorScheme) {
         SparseIntArray colorRes = new SparseIntArray(5 * 13);
 
         addColorsToArray(colorScheme.getAccent1(), ACCENT1_RES, colorRes);
@@ -78,24 +168,16 @@ public class AccentColorExtractor extends LocalColorExtractor implements ThemePr
         return colorRes;
     }
 
-    @Override
-    public void applyColorsOverride(Context base, WallpaperColors colors) {
-        RemoteViews.ColorResources res =
-                RemoteViews.ColorResources.create(base, generateColorsOverride(colors));
-        if (res != null) {
-            res.apply(base);
+    private static boolean contentEquals(SparseIntArray a, @Nullable SparseIntArray b) {
+        if (b == null || a.size() != b.size()) {
+            return false;
         }
-    }
-
-    @Override
-    public void onColorSchemeChanged() {
-        notifyListener(mTmpRect, null);
-    }
-
-    protected void notifyListener(RectF area, WallpaperColors colors) {
-        if (mListener != null) {
-            mListener.onColorsChanged(area, generateColorsOverride(mThemeProvider.getColorScheme()));
+        for (int i = a.size() - 1; i >= 0; i--) {
+            if (a.keyAt(i) != b.keyAt(i) || a.valueAt(i) != b.valueAt(i)) {
+                return false;
+            }
         }
+        return true;
     }
 
     // Shade number -> color resource ID maps
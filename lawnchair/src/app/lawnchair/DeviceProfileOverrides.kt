@@ -3,10 +3,8 @@ package app.lawnchair
 import android.content.Context
 import app.lawnchair.preferences.PreferenceManager
 import app.lawnchair.preferences2.PreferenceManager2
-import app.lawnchair.preferences2.firstBlocking
 import com.android.launcher3.InvariantDeviceProfile
 import com.android.launcher3.util.MainThreadInitializedObject
-import com.patrykmichalik.preferencemanager.firstBlocking
 
 class DeviceProfileOverrides(context: Context) {
     private val prefs = PreferenceManager.getInstance(context)
@@ -46,17 +44,17 @@ class DeviceProfileOverrides(context: Context) {
             numHotseatColumns = prefs.hotseatColumns.get(defaultGrid),
             numRows = prefs.workspaceRows.get(defaultGrid),
             numColumns = prefs.workspaceColumns.get(defaultGrid),
-            numAllAppsColumns = preferenceManager2.drawerColumns.firstBlocking(gridOption = defaultGrid),
+            numAllAppsColumns = preferenceManager2.snapshot.get(preferenceManager2.drawerColumns, defaultGrid),
             numFolderRows = prefs.folderRows.get(defaultGrid),
-            numFolderColumns = preferenceManager2.folderColumns.firstBlocking(gridOption = defaultGrid),
+            numFolderColumns = preferenceManager2.snapshot.get(preferenceManager2.folderColumns, defaultGrid),
 
-            iconSizeFactor = preferenceManager2.homeIconSizeFactor.firstBlocking(),
-            enableIconText = preferenceManager2.showIconLabelsOnHomeScreen.firstBlocking(),
-            iconTextSizeFactor = preferenceManager2.homeIconLabelSizeFactor.firstBlocking(),
+            iconSizeFactor = preferenceManager2.snapshot.get(preferenceManager2.homeIconSizeFactor),
+            enableIconText = preferenceManager2.snapshot.get(preferenceManager2.showIconLabelsOnHomeScreen),
+            iconTextSizeFactor = preferenceManager2.snapshot.get(preferenceManager2.homeIconLabelSizeFactor),
 
-            allAppsIconSizeFactor = preferenceManager2.drawerIconSizeFactor.firstBlocking(),
-            enableAllAppsIconText = preferenceManager2.showIconLabelsInDrawer.firstBlocking(),
-            allAppsIconTextSizeFactor = preferenceManager2.drawerIconLabelSizeFactor.firstBlocking(),
+            allAppsIconSizeFactor = preferenceManager2.snapshot.get(preferenceManager2.drawerIconSizeFactor),
+            enableAllAppsIconText = preferenceManager2.snapshot.get(preferenceManager2.showIconLabelsInDrawer),
+            allAppsIconTextSizeFactor = preferenceManager2.snapshot.get(preferenceManager2.drawerIconLabelSizeFactor),
         )
 
         fun apply(idp: InvariantDeviceProfile) {
@@ -26,8 +26,10 @@ import android.os.Bundle
 import android.provider.Settings
 import android.util.Log
 import app.lawnchair.preferences.PreferenceManager
+import app.lawnchair.preferences2.PreferenceManager2
 import app.lawnchair.util.restartLauncher
 import com.android.launcher3.InvariantDeviceProfile
+import com.android.launcher3.util.StartupTracer
 import com.android.quickstep.RecentsActivity
 import com.android.systemui.shared.system.QuickStepContract
 import java.io.File
@@ -39,9 +41,13 @@ class LawnchairApp : Application() {
     internal var accessibilityService: LawnchairAccessibilityService? = null
 
     override fun onCreate() {
+        val traceToken = StartupTracer.INSTANCE.beginPhase()
         super.onCreate()
         instance = this
+        // Starts reading the preferences in the background while the launcher initializes
+        PreferenceManager2.getInstance(this)
         QuickStepContract.sRecentsDisabled = !recentsEnabled
+        StartupTracer.INSTANCE.endPhase("LawnchairApp.onCreate", traceToken)
     }
 
     fun onLauncherAppStateCreated() {
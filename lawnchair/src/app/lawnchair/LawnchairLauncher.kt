@@ -65,7 +65,6 @@ import com.android.launcher3.util.Themes
 import com.android.launcher3.widget.RoundedCornerEnforcement
 import com.android.systemui.plugins.shared.LauncherOverlayManager
 import com.android.systemui.shared.system.QuickStepContract
-import com.patrykmichalik.preferencemanager.onEach
 import dev.kdrag0n.monet.theme.ColorScheme
 import kotlinx.coroutines.flow.distinctUntilChanged
 import kotlinx.coroutines.flow.launchIn
@@ -215,11 +214,11 @@ class LawnchairLauncher : QuickstepLauncher(), LifecycleOwner,
         prefs.windowCornerRadius.subscribeValues(this) {
             QuickStepContract.sCustomCornerRadius = it.toFloat()
         }
-        preferenceManager2.roundedWidgets.onEach(launchIn = lifecycleScope) {
+        preferenceManager2.snapshot.onEach(preferenceManager2.roundedWidgets, launchIn = lifecycleScope) {
             RoundedCornerEnforcement.sRoundedCornerEnabled = it
         }
         val isWorkspaceDarkText = Themes.getAttrBoolean(this, R.attr.isWorkspaceDarkText)
-        preferenceManager2.darkStatusBar.onEach(launchIn = lifecycleScope) { darkStatusBar ->
+        preferenceManager2.snapshot.onEach(preferenceManager2.darkStatusBar, launchIn = lifecycleScope) { darkStatusBar ->
             systemUiController.updateUiState(UI_STATE_BASE_WINDOW, isWorkspaceDarkText || darkStatusBar)
         }
 
@@ -13,7 +13,6 @@ import com.android.launcher3.anim.PendingAnimation
 import com.android.launcher3.statemanager.StateManager
 import com.android.launcher3.states.StateAnimationConfig
 import com.android.quickstep.AnimatedFloat
-import com.patrykmichalik.preferencemanager.onEach
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 
@@ -25,7 +24,7 @@ class SearchBarStateHandler(private val launcher: LawnchairLauncher) :
     private var autoShowKeyboard = false
 
     init {
-        preferenceManager2.autoShowKeyboardInDrawer.onEach(launchIn = coroutineScope) {
+        preferenceManager2.snapshot.onEach(preferenceManager2.autoShowKeyboardInDrawer, launchIn = coroutineScope) {
             autoShowKeyboard = it
         }
     }
@@ -31,7 +31,6 @@ import com.android.launcher3.allapps.*
 import com.android.launcher3.allapps.search.AllAppsSearchBarController
 import com.android.launcher3.search.SearchCallback
 import com.android.launcher3.util.Themes
-import com.patrykmichalik.preferencemanager.onEach
 import java.util.*
 import kotlin.math.max
 
@@ -98,7 +97,7 @@ class AllAppsSearchInput(context: Context, attrs: AttributeSet?) : LinearLayout(
         )
 
         val preferenceManager2 = PreferenceManager2.getInstance(context)
-        preferenceManager2.hideAppDrawerSearchBar.onEach(launchIn = viewAttachedScope) { hideAppDrawerSearchBar ->
+        preferenceManager2.snapshot.onEach(preferenceManager2.hideAppDrawerSearchBar, launchIn = viewAttachedScope) { hideAppDrawerSearchBar ->
             isVisible = !hideAppDrawerSearchBar
         }
     }
@@ -9,7 +9,6 @@ import com.android.launcher3.allapps.AlphabeticalAppsList
 import com.android.launcher3.allapps.WorkAdapterProvider
 import com.android.launcher3.model.data.AppInfo
 import com.android.launcher3.util.ItemInfoMatcher
-import com.patrykmichalik.preferencemanager.onEach
 
 class LawnchairAlphabeticalAppsList(
     context: Context,
@@ -21,7 +20,7 @@ class LawnchairAlphabeticalAppsList(
     private var itemFilter: ItemInfoMatcher? = null
 
     init {
-        preferenceManager2.hiddenApps.onEach(launchIn = context.launcher.lifecycleScope) {
+        preferenceManager2.snapshot.onEach(preferenceManager2.hiddenApps, launchIn = context.launcher.lifecycleScope) {
             super.updateItemFilter { info, cn ->
                 require(info is AppInfo) { "`info` must be an instance of `AppInfo`." }
                 when {
@@ -20,7 +20,6 @@ import androidx.lifecycle.lifecycleScope
 import app.lawnchair.LawnchairLauncher
 import app.lawnchair.gestures.handlers.SleepGestureHandler
 import app.lawnchair.preferences2.PreferenceManager2
-import com.patrykmichalik.preferencemanager.onEach
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.launch
@@ -32,7 +31,7 @@ class GestureController(private val launcher: LawnchairLauncher) {
     private var dt2s = false
 
     init {
-        preferenceManager.dt2s.onEach(launchIn = coroutineScope) {
+        preferenceManager.snapshot.onEach(preferenceManager.dt2s, launchIn = coroutineScope) {
             dt2s = it
         }
     }
@@ -8,6 +8,7 @@ import android.content.res.Resources
 import android.content.res.XmlResourceParser
 import android.graphics.drawable.Drawable
 import android.util.Xml
+import app.lawnchair.util.getPackageVersionCode
 import com.android.launcher3.R
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.Flow
@@ -33,11 +34,17 @@ class CustomIconPack(context: Context, packPackageName: String) :
         pm.getApplicationInfo(packPackageName, 0).loadLabel(pm).toString()
     }
 
+    // Lazily decoded icons, set when the pack was loaded from its stored index. Declared before
+    // the load is started, so that its initializer can't overwrite the loaded index.
+    @Volatile
+    private var componentIndex: IconPackIndex? = null
+
     init {
         startLoad()
     }
 
-    override fun getIcon(componentName: ComponentName) = componentMap[componentName]
+    override fun getIcon(componentName: ComponentName) =
+        componentIndex?.getIcon(componentName) ?: componentMap[componentName]
     override fun getCalendar(componentName: ComponentName) = calendarMap[componentName]
     override fun getClock(entry: IconEntry) = clockMetas[entry]
 
@@ -66,7 +73,28 @@ class CustomIconPack(context: Context, packPackageName: String) :
     }
 
     override fun loadInternal() {
-        val parseXml = getXml("appfilter") ?: return
+        val versionCode = context.packageManager.getPackageVersionCode(packPackageName)
+        val index = IconPackIndex.read(context, packPackageName, versionCode)
+        if (index != null) {
+            calendarMap.putAll(index.calendarMap)
+            clockMap.putAll(index.clockMap)
+            clockMetas.putAll(index.clockMetas)
+            componentIndex = index
+        } else if (parseAppFilter()) {
+            componentMap.forEach { (componentName, iconEntry) ->
+                if (clockMetas.containsKey(iconEntry)) {
+                    clockMap[componentName] = iconEntry
+                }
+            }
+            IconPackIndex.write(
+                context, packPackageName, versionCode,
+                componentMap, calendarMap, clockMap, clockMetas
+            )
+        }
+    }
+
+    private fun parseAppFilter(): Boolean {
+        val parseXml = getXml("appfilter") ?: return false
         val compStart = "ComponentInfo{"
         val compStartLength = compStart.length
         val compEnd = "}"
@@ -110,11 +138,7 @@ class CustomIconPack(context: Context, packPackageName: String) :
                     }
                 }
             }
-            componentMap.forEach { (componentName, iconEntry) ->
-                if (clockMetas.containsKey(iconEntry)) {
-                    clockMap[componentName] = iconEntry
-                }
-            }
+            return true
         } catch (e: PackageManager.NameNotFoundException) {
             e.printStackTrace()
         } catch (e: XmlPullParserException) {
@@ -124,6 +148,7 @@ class CustomIconPack(context: Context, packPackageName: String) :
         } catch (e: IllegalStateException) {
             e.printStackTrace()
         }
+        return false
     }
 
     @Suppress("BlockingMethodInNonBlockingContext")
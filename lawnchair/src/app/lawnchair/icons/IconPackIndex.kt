@@ -0,0 +1,264 @@
+package app.lawnchair.icons
+
+import android.content.ComponentName
+import android.content.Context
+import android.util.Log
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.BufferUnderflowException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Binary, versioned index of a parsed icon pack appfilter.
+ *
+ * The index is keyed by the pack's package name and version code and stored in the app's files
+ * directory, so that a cold start or a pack switch can memory-map it instead of re-parsing the
+ * whole appfilter.xml.
+ *
+ * Calendars and clocks are decoded when the index is read, as callers need all of them. The
+ * component table, which holds most of the entries, stays in the mapped file: it is sorted by
+ * component hash and each lookup binary searches it, decoding only the records it compares.
+ */
+class IconPackIndex private constructor(
+    private val packPackageName: String,
+    private val hashes: ByteBuffer,
+    private val records: ByteBuffer,
+    val calendarMap: Map<ComponentName, IconEntry>,
+    val clockMap: Map<ComponentName, IconEntry>,
+    val clockMetas: Map<IconEntry, ClockMetadata>,
+) {
+
+    private val count = hashes.limit() / TABLE_ENTRY_SIZE
+    private val lookups = ConcurrentHashMap<ComponentName, IconEntry>()
+
+    /**
+     * Returns the icon of [componentName], or null if the pack has none.
+     */
+    fun getIcon(componentName: ComponentName): IconEntry? {
+        lookups[componentName]?.let { return it }
+        val hash = componentName.hashCode()
+        var low = 0
+        var high = count - 1
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            val midHash = hashes.getInt(mid * TABLE_ENTRY_SIZE)
+            when {
+                midHash < hash -> low = mid + 1
+                midHash > hash -> high = mid - 1
+                else -> {
+                    // Go back to the first record with this hash, then compare them in order
+                    var i = mid
+                    while (i > 0 && hashes.getInt((i - 1) * TABLE_ENTRY_SIZE) == hash) i--
+                    while (i < count && hashes.getInt(i * TABLE_ENTRY_SIZE) == hash) {
+                        val entry = readRecord(i, componentName)
+                        if (entry != null) {
+                            lookups[componentName] = entry
+                            return entry
+                        }
+                        i++
+                    }
+                    return null
+                }
+            }
+        }
+        return null
+    }
+
+    /**
+     * Returns the icon of record [i] if it belongs to [componentName], or null otherwise.
+     */
+    private fun readRecord(i: Int, componentName: ComponentName): IconEntry? {
+        return try {
+            val record = records.duplicate()
+            record.position(hashes.getInt(i * TABLE_ENTRY_SIZE + 4))
+            if (readString(record) != componentName.packageName
+                || readString(record) != componentName.className) {
+                return null
+            }
+            IconEntry(packPackageName, readString(record), IconType.Normal)
+        } catch (e: RuntimeException) {
+            // Out of bounds offsets or lengths, the file is corrupted
+            Log.w(TAG, "Invalid record in index for $packPackageName", e)
+            null
+        }
+    }
+
+    companion object {
+        private const val TAG = "IconPackIndex"
+        private const val DIR_NAME = "icon_pack_index"
+
+        private const val MAGIC = 0x4C434950 // "LCIP"
+        private const val FORMAT_VERSION = 2
+
+        // Component hash and record offset
+        private const val TABLE_ENTRY_SIZE = 8
+
+        private fun getFile(context: Context, packPackageName: String): File {
+            val dir = File(context.filesDir, DIR_NAME).apply { mkdirs() }
+            return File(dir, "$packPackageName.idx")
+        }
+
+        /**
+         * Returns the stored index for [packPackageName] if it exists and was written for
+         * [versionCode], or null otherwise.
+         */
+        @JvmStatic
+        fun read(context: Context, packPackageName: String, versionCode: Long): IconPackIndex? {
+            val file = getFile(context, packPackageName)
+            if (!file.exists()) return null
+            return try {
+                RandomAccessFile(file, "r").use { raf ->
+                    val buffer = raf.channel.map(FileChannel.MapMode.READ_ONLY, 0, raf.length())
+                    if (buffer.int != MAGIC || buffer.int != FORMAT_VERSION || buffer.long != versionCode) {
+                        return null
+                    }
+                    val calendarMap = readComponents(buffer, packPackageName, IconType.Calendar)
+                    val clockMap = readComponents(buffer, packPackageName, IconType.Normal)
+                    val clockCount = readCount(buffer)
+                    val clockMetas = HashMap<IconEntry, ClockMetadata>(clockCount)
+                    repeat(clockCount) {
+                        val entry = IconEntry(packPackageName, readString(buffer), IconType.Normal)
+                        clockMetas[entry] = ClockMetadata(
+                            buffer.int, buffer.int, buffer.int,
+                            buffer.int, buffer.int, buffer.int
+                        )
+                    }
+                    val hashes = slice(buffer, readCount(buffer).toLong() * TABLE_ENTRY_SIZE)
+                    val records = slice(buffer, buffer.remaining().toLong())
+                    IconPackIndex(
+                        packPackageName, hashes, records, calendarMap, clockMap, clockMetas
+                    )
+                }
+            } catch (e: IOException) {
+                Log.w(TAG, "Unable to read index for $packPackageName", e)
+                file.delete()
+                null
+            } catch (e: BufferUnderflowException) {
+                Log.w(TAG, "Truncated index for $packPackageName", e)
+                file.delete()
+                null
+            }
+        }
+
+        /**
+         * Atomically replaces the stored index for [packPackageName] with the given entries.
+         */
+        @JvmStatic
+        fun write(
+            context: Context,
+            packPackageName: String,
+            versionCode: Long,
+            componentMap: Map<ComponentName, IconEntry>,
+            calendarMap: Map<ComponentName, IconEntry>,
+            clockMap: Map<ComponentName, IconEntry>,
+            clockMetas: Map<IconEntry, ClockMetadata>,
+        ) {
+            val file = getFile(context, packPackageName)
+            var tmpFile: File? = null
+            try {
+                // Unique per writer, so that concurrent loads of the same pack can't interleave
+                tmpFile = File.createTempFile("$packPackageName.", ".tmp", file.parentFile)
+                DataOutputStream(FileOutputStream(tmpFile).buffered()).use { out ->
+                    out.writeInt(MAGIC)
+                    out.writeInt(FORMAT_VERSION)
+                    out.writeLong(versionCode)
+                    writeComponents(out, calendarMap)
+                    writeComponents(out, clockMap)
+                    out.writeInt(clockMetas.size)
+                    clockMetas.forEach { (entry, meta) ->
+                        writeString(out, entry.name)
+                        out.writeInt(meta.hourLayerIndex)
+                        out.writeInt(meta.minuteLayerIndex)
+                        out.writeInt(meta.secondLayerIndex)
+                        out.writeInt(meta.defaultHour)
+                        out.writeInt(meta.defaultMinute)
+                        out.writeInt(meta.defaultSecond)
+                    }
+                    writeComponentTable(out, componentMap)
+                }
+                if (!tmpFile.renameTo(file)) {
+                    tmpFile.delete()
+                }
+            } catch (e: IOException) {
+                Log.w(TAG, "Unable to write index for $packPackageName", e)
+                tmpFile?.delete()
+            }
+        }
+
+        private fun writeComponentTable(out: DataOutputStream, map: Map<ComponentName, IconEntry>) {
+            val sorted = map.entries.sortedBy { it.key.hashCode() }
+            val records = ByteArrayOutputStream()
+            val recordsOut = DataOutputStream(records)
+            out.writeInt(sorted.size)
+            sorted.forEach { (componentName, entry) ->
+                out.writeInt(componentName.hashCode())
+                out.writeInt(recordsOut.size())
+                writeString(recordsOut, componentName.packageName)
+                writeString(recordsOut, componentName.className)
+                writeString(recordsOut, entry.name)
+            }
+            records.writeTo(out)
+        }
+
+        private fun writeComponents(out: DataOutputStream, map: Map<ComponentName, IconEntry>) {
+            out.writeInt(map.size)
+            map.forEach { (componentName, entry) ->
+                writeString(out, componentName.packageName)
+                writeString(out, componentName.className)
+                writeString(out, entry.name)
+            }
+        }
+
+        private fun readComponents(
+            buffer: ByteBuffer,
+            packPackageName: String,
+            type: IconType
+        ): Map<ComponentName, IconEntry> {
+            val count = readCount(buffer)
+            val map = HashMap<ComponentName, IconEntry>(count)
+            repeat(count) {
+                val componentName = ComponentName(readString(buffer), readString(buffer))
+                map[componentName] = IconEntry(packPackageName, readString(buffer), type)
+            }
+            return map
+        }
+
+        private fun writeString(out: DataOutputStream, value: String) {
+            val bytes = value.toByteArray(Charsets.UTF_8)
+            out.writeInt(bytes.size)
+            out.write(bytes)
+        }
+
+        private fun readString(buffer: ByteBuffer): String {
+            val bytes = ByteArray(readCount(buffer))
+            buffer.get(bytes)
+            return String(bytes, Charsets.UTF_8)
+        }
+
+        /**
+         * Reads a length or an entry count, which can't exceed the remaining bytes.
+         */
+        private fun readCount(buffer: ByteBuffer): Int {
+            val count = buffer.int
+            if (count < 0 || count > buffer.remaining()) throw BufferUnderflowException()
+            return count
+        }
+
+        /**
+         * Returns the next [size] bytes of [buffer] as an independent buffer, and skips them.
+         */
+        private fun slice(buffer: ByteBuffer, size: Long): ByteBuffer {
+            if (size > buffer.remaining()) throw BufferUnderflowException()
+            val slice = buffer.slice()
+            slice.limit(size.toInt())
+            buffer.position(buffer.position() + size.toInt())
+            return slice
+        }
+    }
+}
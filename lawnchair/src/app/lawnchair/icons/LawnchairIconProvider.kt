@@ -15,6 +15,7 @@ import android.util.Log
 import androidx.core.content.getSystemService
 import app.lawnchair.data.iconoverride.IconOverrideRepository
 import app.lawnchair.preferences.PreferenceManager
+import app.lawnchair.preferences2.PreferenceManager2
 import app.lawnchair.util.Constants.LAWNICONS_PACKAGE_NAME
 import app.lawnchair.util.MultiSafeCloseable
 import app.lawnchair.util.getPackageVersionCode
@@ -34,6 +35,7 @@ class LawnchairIconProvider @JvmOverloads constructor(
 ) : IconProvider(context, supportsIconTheme) {
 
     private val prefs = PreferenceManager.getInstance(context)
+    private val preferenceSnapshot = PreferenceManager2.getInstance(context).snapshot
     private val iconPackPref = prefs.iconPackPackage
     private val iconPackProvider = IconPackProvider.INSTANCE.get(context)
     private val overrideRepo = IconOverrideRepository.INSTANCE.get(context)
@@ -134,14 +136,18 @@ class LawnchairIconProvider @JvmOverloads constructor(
     }
 
     override fun getIcon(info: ActivityInfo?): Drawable {
+        // Wrapped icons are masked with the icon shape, which is set up with the preferences
+        preferenceSnapshot.awaitLoaded()
         return CustomAdaptiveIconDrawable.wrapNonNull(super.getIcon(info))
     }
 
     override fun getIcon(info: ActivityInfo?, iconDpi: Int): Drawable {
+        preferenceSnapshot.awaitLoaded()
         return CustomAdaptiveIconDrawable.wrapNonNull(super.getIcon(info, iconDpi))
     }
 
     override fun getIcon(info: LauncherActivityInfo?, iconDpi: Int): Drawable {
+        preferenceSnapshot.awaitLoaded()
         return CustomAdaptiveIconDrawable.wrapNonNull(super.getIcon(info, iconDpi))
     }
 
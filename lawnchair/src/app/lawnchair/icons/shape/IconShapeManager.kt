@@ -27,8 +27,6 @@ import app.lawnchair.preferences2.PreferenceManager2
 import com.android.launcher3.Utilities
 import com.android.launcher3.icons.GraphicsUtils
 import com.android.launcher3.icons.IconProvider
-import com.android.launcher3.util.MainThreadInitializedObject
-import com.patrykmichalik.preferencemanager.firstBlocking
 
 class IconShapeManager(private val context: Context) {
 
@@ -85,13 +83,20 @@ class IconShapeManager(private val context: Context) {
     }
 
     companion object {
-        @JvmField
-        val INSTANCE = MainThreadInitializedObject(::IconShapeManager)
+        @Volatile
+        private var systemIconShape: IconShape? = null
 
-        fun getSystemIconShape(context: Context) = INSTANCE.get(context).systemIconShape
+        /**
+         * Returns the shape of the system icon mask. This can be called from any thread, as the
+         * icon shape is set up in the background while the main thread may be waiting for it.
+         */
+        fun getSystemIconShape(context: Context): IconShape = systemIconShape ?: synchronized(this) {
+            systemIconShape ?: IconShapeManager(context.applicationContext).systemIconShape
+                .also { systemIconShape = it }
+        }
 
         @JvmStatic
         fun getWindowTransitionRadius(context: Context) =
-            PreferenceManager2.getInstance(context).iconShape.firstBlocking().windowTransitionRadius
+            PreferenceManager2.getInstance(context).let { it.snapshot.get(it.iconShape) }.windowTransitionRadius
     }
 }
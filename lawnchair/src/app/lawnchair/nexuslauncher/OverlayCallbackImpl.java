@@ -15,7 +15,6 @@ import com.google.android.libraries.launcherclient.ISerializableScrollCallback;
 import com.google.android.libraries.launcherclient.LauncherClient;
 import com.google.android.libraries.launcherclient.LauncherClientCallbacks;
 import com.google.android.libraries.launcherclient.StaticInteger;
-import com.patrykmichalik.preferencemanager.PreferenceExtensionsKt;
 
 import app.lawnchair.FeedBridge;
 import app.lawnchair.LawnchairLauncher;
@@ -43,7 +42,7 @@ public class OverlayCallbackImpl
 
     public OverlayCallbackImpl(LawnchairLauncher launcher) {
         PreferenceManager2 preferenceManager2 = PreferenceManager2.getInstance(launcher);
-        Boolean enableFeed = PreferenceExtensionsKt.firstBlocking(preferenceManager2.getEnableFeed());
+        Boolean enableFeed = preferenceManager2.getSnapshot().get(preferenceManager2.getEnableFeed());
 
         mLauncher = launcher;
         mClient = new LauncherClient(mLauncher, this, new StaticInteger(
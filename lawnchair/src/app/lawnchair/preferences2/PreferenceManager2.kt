@@ -40,7 +40,6 @@ import com.android.launcher3.Utilities
 import com.android.launcher3.util.DynamicResource
 import com.android.launcher3.util.MainThreadInitializedObject
 import com.patrykmichalik.preferencemanager.PreferenceManager
-import com.patrykmichalik.preferencemanager.firstBlocking
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.onEach
@@ -63,6 +62,7 @@ class PreferenceManager2(private val context: Context) : PreferenceManager {
     )
 
     override val preferencesDataStore = context.preferencesDataStore
+    val snapshot = PreferenceSnapshot(preferencesDataStore)
     private val reloadHelper = ReloadHelper(context)
 
     val darkStatusBar = preference(
@@ -256,7 +256,8 @@ class PreferenceManager2(private val context: Context) : PreferenceManager {
     )
 
     init {
-        initializeIconShape(iconShape.firstBlocking())
+        // The system shape fallback is computed off the main thread, which may be waiting for it
+        snapshot.load { preferences -> initializeIconShape(snapshot.read(preferences, iconShape)) }
         iconShape.get()
             .onEach { shape ->
                 val idp = InvariantDeviceProfile.INSTANCE.get(context)
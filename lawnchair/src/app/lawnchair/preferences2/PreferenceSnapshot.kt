@@ -0,0 +1,170 @@
+/*
+ * Copyright 2022, Lawnchair
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.lawnchair.preferences2
+
+import android.util.Log
+import androidx.datastore.core.DataStore
+import androidx.datastore.preferences.core.Preferences
+import androidx.datastore.preferences.core.emptyPreferences
+import com.android.launcher3.InvariantDeviceProfile
+import com.patrykmichalik.preferencemanager.Preference
+import java.io.IOException
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicBoolean
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.flow.collect
+import kotlinx.coroutines.launch
+
+/**
+ * In-memory copy of the preferences data store, read once in the background at startup.
+ *
+ * Synchronous callers read typed values with [get] instead of blocking on the data store, and
+ * [onEach] observers are all served by a single data store collector.
+ */
+class PreferenceSnapshot(private val dataStore: DataStore<Preferences>) {
+
+    private val coroutineScope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val started = AtomicBoolean()
+    private val loaded = CountDownLatch(1)
+    private val observers = CopyOnWriteArrayList<Observer>()
+
+    @Volatile
+    private var preferences: Preferences? = null
+
+    /**
+     * Starts reading the data store. [onLoaded] runs on the loading thread with the first
+     * snapshot, before any caller waiting in [get] is released.
+     */
+    fun load(onLoaded: (Preferences) -> Unit = {}) {
+        if (!started.compareAndSet(false, true)) return
+        coroutineScope.launch {
+            try {
+                dataStore.data.collect { newPreferences -> onPreferences(newPreferences, onLoaded) }
+            } catch (e: IOException) {
+                Log.e(TAG, "Unable to read preferences", e)
+                if (preferences == null) onPreferences(emptyPreferences(), onLoaded)
+            }
+        }
+    }
+
+    private fun onPreferences(newPreferences: Preferences, onLoaded: (Preferences) -> Unit) {
+        val isFirst = preferences == null
+        preferences = newPreferences
+        if (isFirst) {
+            try {
+                onLoaded(newPreferences)
+            } finally {
+                loaded.countDown()
+            }
+        }
+        observers.forEach(Observer::dispatch)
+    }
+
+    /**
+     * Returns the current value of [preference]. This only waits if the first read of the data
+     * store hasn't completed yet.
+     */
+    fun <C, S> get(preference: Preference<C, S>): C = read(awaitPreferences(), preference)
+
+    /**
+     * Returns the current value of [preference] for [gridOption], see [get].
+     */
+    fun get(preference: IdpPreference, gridOption: InvariantDeviceProfile.GridOption): Int =
+        awaitPreferences()[preference.key] ?: preference.defaultSelector(gridOption)
+
+    /**
+     * Calls [block] in [launchIn] with the value of [preference] once loaded, and again whenever
+     * its stored value changes, until [launchIn] is cancelled. Calls never overlap, and changes
+     * made while [block] runs are conflated into a single call with the latest value.
+     */
+    fun <C, S> onEach(
+        preference: Preference<C, S>,
+        launchIn: CoroutineScope,
+        block: suspend (C) -> Unit,
+    ) {
+        val observer = Observer(preference.key, launchIn) { block(read(it, preference)) }
+        observers.add(observer)
+        launchIn.coroutineContext[Job]?.invokeOnCompletion {
+            observers.remove(observer)
+            observer.close()
+        }
+        observer.dispatch()
+    }
+
+    /**
+     * Waits for the first read of the data store, after which the icon shape is set up. Callers
+     * which depend on it without reading a preference through [get] should call this first.
+     */
+    fun awaitLoaded() {
+        awaitPreferences()
+    }
+
+    private fun awaitPreferences(): Preferences {
+        preferences?.let { return it }
+        load()
+        loaded.await()
+        return preferences!!
+    }
+
+    /**
+     * Returns the value of [preference] in [preferences], e.g. in the callback of [load].
+     */
+    fun <C, S> read(preferences: Preferences, preference: Preference<C, S>): C =
+        preferences[preference.key]?.let(preference.parse) ?: preference.defaultValue
+
+    private inner class Observer(
+        private val key: Preferences.Key<*>,
+        private val scope: CoroutineScope,
+        private val onChange: suspend (Preferences) -> Unit,
+    ) {
+        // Stored value last delivered, compared before parsing so that unrelated edits are skipped
+        private var lastValue: Any? = UNSET
+        // Only keeps the latest change, delivered by a single coroutine so that calls stay in
+        // order even when the scope runs on multiple threads
+        private val changes = Channel<Preferences>(Channel.CONFLATED)
+
+        init {
+            scope.launch {
+                for (preferences in changes) onChange(preferences)
+            }
+        }
+
+        @Synchronized
+        fun dispatch() {
+            // Always read the latest snapshot, so that a late dispatch can't deliver a stale value
+            val preferences = preferences ?: return
+            val value = preferences[key]
+            if (lastValue != UNSET && lastValue == value) return
+            lastValue = value
+            changes.trySend(preferences)
+        }
+
+        fun close() {
+            changes.close()
+        }
+    }
+
+    companion object {
+        private const val TAG = "PreferenceSnapshot"
+        private val UNSET = Any()
+    }
+}
@@ -27,8 +27,6 @@ import com.android.launcher3.R
 import com.android.launcher3.anim.AnimatorListeners.forSuccessCallback
 import com.android.launcher3.util.Themes
 import com.android.launcher3.views.ActivityContext
-import com.patrykmichalik.preferencemanager.firstBlocking
-import com.patrykmichalik.preferencemanager.onEach
 
 class QsbLayout(context: Context, attrs: AttributeSet?) : FrameLayout(context, attrs) {
 
@@ -59,7 +57,7 @@ class QsbLayout(context: Context, attrs: AttributeSet?) : FrameLayout(context, a
 
         val supportsLens = searchProvider == Google
 
-        preferenceManager2.themedHotseatQsb.onEach(launchIn = viewAttachedScope) { themed ->
+        preferenceManager2.snapshot.onEach(preferenceManager2.themedHotseatQsb, launchIn = viewAttachedScope) { themed ->
             setUpBackground(themed)
 
             val iconRes = if (themed) searchProvider.themedIcon else searchProvider.icon
@@ -79,7 +77,7 @@ class QsbLayout(context: Context, attrs: AttributeSet?) : FrameLayout(context, a
 
         if (supportsLens) setUpLensIcon()
 
-        preferenceManager2.hotseatQsbForceWebsite.onEach(launchIn = viewAttachedScope) { force ->
+        preferenceManager2.snapshot.onEach(preferenceManager2.hotseatQsbForceWebsite, launchIn = viewAttachedScope) { force ->
             setUpMainSearch(
                 searchProvider = searchProvider,
                 forceWebsite = force,
@@ -178,7 +176,7 @@ class QsbLayout(context: Context, attrs: AttributeSet?) : FrameLayout(context, a
             context: Context,
             preferenceManager: PreferenceManager2
         ): QsbSearchProvider {
-            val provider = preferenceManager.hotseatQsbProvider.firstBlocking()
+            val provider = preferenceManager.snapshot.get(preferenceManager.hotseatQsbProvider)
 
             return if (provider == AppSearch ||
                 resolveIntent(context, provider.createSearchIntent()) ||
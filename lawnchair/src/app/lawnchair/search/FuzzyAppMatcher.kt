@@ -0,0 +1,344 @@
+package app.lawnchair.search
+
+import android.os.CancellationSignal
+import com.android.launcher3.model.data.AppInfo
+import java.util.IdentityHashMap
+import java.util.Locale
+import kotlin.math.ceil
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.math.roundToInt
+
+/**
+ * Fuzzy matcher for app titles which scores candidates like fuzzywuzzy's `WeightedRatio`, but
+ * only keeps the best results in a bounded heap, skips candidates whose best possible score
+ * can't make it into the results and reuses its scratch buffers between candidates.
+ *
+ * Normalized titles are cached per [AppInfo] and only recomputed when the title changes. This
+ * class is not thread safe and should always be used from the same thread.
+ *
+ * Scores can differ from fuzzywuzzy's in two ways:
+ * - The partial ratio compares the shorter text with every substring of the same length of the
+ *   longer one, while fuzzywuzzy only compares it with the substrings starting at the matching
+ *   blocks of the two texts. The score can therefore be higher when one text is at least 1.5 times
+ *   longer than the other, as the best substring is never missed.
+ * - Runs of characters which aren't letters or digits are collapsed into a single space, while
+ *   fuzzywuzzy replaces each of them with a space. This only changes the plain and partial ratios
+ *   of texts with such runs.
+ * Other scores, such as those of texts of similar lengths, are the same.
+ */
+class FuzzyAppMatcher(private val cutoff: Int = DEFAULT_CUTOFF) {
+
+    private val titles = IdentityHashMap<AppInfo, NormalizedText>()
+
+    private var lcsRow = IntArray(INITIAL_BUFFER_SIZE)
+    private val sectBuilder = StringBuilder()
+    private val combined1Builder = StringBuilder()
+    private val combined2Builder = StringBuilder()
+
+    // Min heap of the best results so far, the worst result being at the root
+    private var heapScores = IntArray(0)
+    private var heapIndices = IntArray(0)
+    private var heapSize = 0
+
+    /**
+     * Returns up to [maxResults] apps matching [query], best match first. Apps with the same
+     * score keep their order in [apps]. Returns an empty list if cancelled through [signal].
+     */
+    fun search(
+        apps: List<AppInfo>,
+        query: String,
+        maxResults: Int,
+        signal: CancellationSignal? = null
+    ): List<AppInfo> {
+        val normalizedQuery = NormalizedText(query)
+        if (normalizedQuery.value.isEmpty() || maxResults <= 0) return emptyList()
+        resetHeap(maxResults)
+
+        val seen = IdentityHashMap<AppInfo, NormalizedText>(apps.size)
+        apps.forEachIndexed { index, app ->
+            if (signal?.isCanceled == true) return emptyList()
+            val title = getNormalizedTitle(app)
+            seen[app] = title
+            val minScore = if (heapSize < maxResults) cutoff else max(cutoff, heapScores[0] + 1)
+            if (upperBound(normalizedQuery, title) < minScore) return@forEachIndexed
+            val score = score(normalizedQuery, title)
+            if (score >= minScore) {
+                offer(score, index, maxResults)
+            }
+        }
+        // Drop the entries of removed apps
+        titles.clear()
+        titles.putAll(seen)
+
+        return drainHeap().map { apps[it] }
+    }
+
+    /**
+     * Returns the `WeightedRatio` like score of [title] for [query], between 0 and 100.
+     */
+    fun score(query: String, title: String) = score(NormalizedText(query), NormalizedText(title))
+
+    private fun getNormalizedTitle(app: AppInfo): NormalizedText {
+        val title = app.title?.toString() ?: ""
+        val cached = titles[app]
+        return if (cached != null && cached.source == title) cached else NormalizedText(title)
+    }
+
+    private fun score(query: NormalizedText, title: NormalizedText): Int {
+        val len1 = query.value.length
+        val len2 = title.value.length
+        if (len1 == 0 || len2 == 0) return 0
+
+        val base = ratio(query.value, title.value).toDouble()
+        val lenRatio = max(len1, len2).toDouble() / min(len1, len2)
+        val partialScale = if (lenRatio > 8) LONG_PARTIAL_SCALE else PARTIAL_SCALE
+
+        return if (lenRatio >= 1.5) {
+            val partial = partialRatio(query.value, title.value) * partialScale
+            val partialSort = partialRatio(query.sortedTokens, title.sortedTokens) *
+                    UNBASE_SCALE * partialScale
+            val partialSet = tokenSetRatio(query, title, true) * UNBASE_SCALE * partialScale
+            maxOf(base, partial, partialSort, partialSet).roundToInt()
+        } else {
+            val tokenSort = ratio(query.sortedTokens, title.sortedTokens) * UNBASE_SCALE
+            val tokenSet = tokenSetRatio(query, title, false) * UNBASE_SCALE
+            maxOf(base, tokenSort, tokenSet).roundToInt()
+        }
+    }
+
+    /**
+     * Returns an upper bound of [score] which only looks at the characters the two texts have
+     * in common. Since every ratio is bounded by the longest common subsequence, which in turn
+     * is bounded by the common characters, this never underestimates the real score.
+     */
+    private fun upperBound(query: NormalizedText, title: NormalizedText): Int {
+        val len1 = query.value.length
+        val len2 = title.value.length
+        if (len1 == 0 || len2 == 0) return 0
+        // A shared token can make the token set ratio reach 100, regardless of the rest. The
+        // token set ratio also drops duplicate tokens, which isn't accounted for below.
+        if (query.hasDuplicateTokens || title.hasDuplicateTokens ||
+            query.tokenSet.any { title.tokenSet.binarySearch(it) >= 0 }) return 100
+
+        val common = commonCharCount(query.sortedChars, title.sortedChars)
+        val ratioBound = 200.0 * common / (len1 + len2)
+        val lenRatio = max(len1, len2).toDouble() / min(len1, len2)
+        val bound = if (lenRatio >= 1.5) {
+            val partialScale = if (lenRatio > 8) LONG_PARTIAL_SCALE else PARTIAL_SCALE
+            max(ratioBound, 100.0 * common / min(len1, len2) * partialScale)
+        } else {
+            ratioBound
+        }
+        return ceil(bound).toInt() + 1
+    }
+
+    private fun tokenSetRatio(query: NormalizedText, title: NormalizedText, partial: Boolean): Int {
+        val sect = sectBuilder.apply { setLength(0) }
+        val combined1 = combined1Builder.apply { setLength(0) }
+        val combined2 = combined2Builder.apply { setLength(0) }
+        query.tokenSet.forEach {
+            if (title.tokenSet.binarySearch(it) >= 0) sect.appendToken(it)
+        }
+        combined1.append(sect)
+        combined2.append(sect)
+        query.tokenSet.forEach {
+            if (title.tokenSet.binarySearch(it) < 0) combined1.appendToken(it)
+        }
+        title.tokenSet.forEach {
+            if (query.tokenSet.binarySearch(it) < 0) combined2.appendToken(it)
+        }
+
+        return if (partial) {
+            maxOf(
+                partialRatio(sect, combined1),
+                partialRatio(sect, combined2),
+                partialRatio(combined1, combined2)
+            )
+        } else {
+            maxOf(ratio(sect, combined1), ratio(sect, combined2), ratio(combined1, combined2))
+        }
+    }
+
+    private fun ratio(s1: CharSequence, s2: CharSequence): Int {
+        val lenSum = s1.length + s2.length
+        if (s1.isEmpty() || s2.isEmpty()) return 0
+        val lcs = lcs(s1, 0, s1.length, s2, 0, s2.length)
+        return (200.0 * lcs / lenSum).roundToInt()
+    }
+
+    /**
+     * Returns the best [ratio] of the shorter text against every substring of the same length
+     * of the longer text.
+     */
+    private fun partialRatio(s1: CharSequence, s2: CharSequence): Int {
+        if (s1.isEmpty() || s2.isEmpty()) return 0
+        val shorter = if (s1.length <= s2.length) s1 else s2
+        val longer = if (s1.length <= s2.length) s2 else s1
+        val length = shorter.length
+        var best = 0
+        for (start in 0..longer.length - length) {
+            val lcs = lcs(shorter, 0, length, longer, start, length)
+            if (lcs == length) return 100
+            best = max(best, lcs)
+        }
+        return (100.0 * best / length).roundToInt()
+    }
+
+    private fun lcs(
+        a: CharSequence, aStart: Int, aLength: Int,
+        b: CharSequence, bStart: Int, bLength: Int
+    ): Int {
+        if (lcsRow.size <= bLength) {
+            lcsRow = IntArray(bLength * 2)
+        }
+        val row = lcsRow
+        row.fill(0, 0, bLength + 1)
+        for (i in 0 until aLength) {
+            val c = a[aStart + i]
+            var diagonal = 0
+            for (j in 1..bLength) {
+                val above = row[j]
+                row[j] = if (c == b[bStart + j - 1]) diagonal + 1 else max(above, row[j - 1])
+                diagonal = above
+            }
+        }
+        return row[bLength]
+    }
+
+    private fun resetHeap(capacity: Int) {
+        if (heapScores.size < capacity) {
+            heapScores = IntArray(capacity)
+            heapIndices = IntArray(capacity)
+        }
+        heapSize = 0
+    }
+
+    /**
+     * Returns true if the entry at heap position [a] ranks below the one at [b]
+     */
+    private fun isWorse(a: Int, b: Int) = heapScores[a] < heapScores[b] ||
+            (heapScores[a] == heapScores[b] && heapIndices[a] > heapIndices[b])
+
+    private fun offer(score: Int, index: Int, capacity: Int) {
+        if (heapSize < capacity) {
+            var child = heapSize++
+            heapScores[child] = score
+            heapIndices[child] = index
+            while (child > 0) {
+                val parent = (child - 1) / 2
+                if (!isWorse(child, parent)) break
+                swap(child, parent)
+                child = parent
+            }
+        } else {
+            // Candidates are visited in order, so a higher score is required to replace the root
+            heapScores[0] = score
+            heapIndices[0] = index
+            siftDown(0)
+        }
+    }
+
+    private fun siftDown(start: Int) {
+        var parent = start
+        while (true) {
+            val left = parent * 2 + 1
+            val right = left + 1
+            var worst = parent
+            if (left < heapSize && isWorse(left, worst)) worst = left
+            if (right < heapSize && isWorse(right, worst)) worst = right
+            if (worst == parent) return
+            swap(parent, worst)
+            parent = worst
+        }
+    }
+
+    private fun swap(a: Int, b: Int) {
+        val score = heapScores[a]
+        heapScores[a] = heapScores[b]
+        heapScores[b] = score
+        val index = heapIndices[a]
+        heapIndices[a] = heapIndices[b]
+        heapIndices[b] = index
+    }
+
+    /**
+     * Empties the heap and returns the indices it contained, best result first
+     */
+    private fun drainHeap(): List<Int> {
+        val result = IntArray(heapSize)
+        for (i in heapSize - 1 downTo 0) {
+            result[i] = heapIndices[0]
+            heapSize--
+            if (heapSize > 0) {
+                swap(0, heapSize)
+                siftDown(0)
+            }
+        }
+        return result.asList()
+    }
+
+    /**
+     * A text lower cased with every run of non letter or digit characters replaced by a single
+     * space, along with the derived values used for scoring.
+     */
+    private class NormalizedText(val source: String) {
+        val value: String
+        val sortedTokens: String
+        val tokenSet: List<String>
+        val hasDuplicateTokens: Boolean
+        val sortedChars: CharArray
+
+        init {
+            val builder = StringBuilder(source.length)
+            var pendingSpace = false
+            for (c in source.lowercase(Locale.getDefault())) {
+                if (Character.isLetterOrDigit(c)) {
+                    if (pendingSpace && builder.isNotEmpty()) builder.append(' ')
+                    builder.append(c)
+                    pendingSpace = false
+                } else {
+                    pendingSpace = true
+                }
+            }
+            value = builder.toString()
+            val tokens = if (value.isEmpty()) emptyList() else value.split(' ').sorted()
+            sortedTokens = tokens.joinToString(" ")
+            tokenSet = tokens.distinct()
+            hasDuplicateTokens = tokenSet.size != tokens.size
+            sortedChars = value.toCharArray().apply { sort() }
+        }
+    }
+
+    companion object {
+        const val DEFAULT_CUTOFF = 65
+
+        private const val UNBASE_SCALE = .95
+        private const val PARTIAL_SCALE = .90
+        private const val LONG_PARTIAL_SCALE = .6
+        private const val INITIAL_BUFFER_SIZE = 64
+
+        private fun StringBuilder.appendToken(token: String) {
+            if (isNotEmpty()) append(' ')
+            append(token)
+        }
+
+        private fun commonCharCount(a: CharArray, b: CharArray): Int {
+            var i = 0
+            var j = 0
+            var count = 0
+            while (i < a.size && j < b.size) {
+                when {
+                    a[i] == b[j] -> {
+                        count++
+                        i++
+                        j++
+                    }
+                    a[i] < b[j] -> i++
+                    else -> j++
+                }
+            }
+            return count
+        }
+    }
+}
@@ -4,74 +4,84 @@ import android.content.Context
 import android.content.pm.ShortcutInfo
 import android.graphics.drawable.Icon
 import android.os.Bundle
-import android.os.Handler
+import android.os.CancellationSignal
 import android.os.Process
 import app.lawnchair.allapps.SearchResultView
 import app.lawnchair.launcher
 import app.lawnchair.preferences2.PreferenceManager2
-import com.android.launcher3.LauncherAppState
 import com.android.launcher3.R
 import com.android.launcher3.allapps.AllAppsGridAdapter
-import com.android.launcher3.model.AllAppsList
-import com.android.launcher3.model.BaseModelUpdateTask
-import com.android.launcher3.model.BgDataModel
+import com.android.launcher3.allapps.AppInfoComparator
 import com.android.launcher3.model.data.AppInfo
 import com.android.launcher3.popup.PopupPopulator
+import com.android.launcher3.search.AppTitleSearchIndex
 import com.android.launcher3.search.SearchCallback
-import com.android.launcher3.search.StringMatcherUtility
+import com.android.launcher3.search.SearchScheduler
 import com.android.launcher3.shortcuts.ShortcutRequest
 import com.android.launcher3.util.ComponentKey
-import com.android.launcher3.util.Executors
 import com.android.launcher3.util.PackageManagerHelper
-import com.patrykmichalik.preferencemanager.onEach
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
-import me.xdrop.fuzzywuzzy.FuzzySearch
-import me.xdrop.fuzzywuzzy.algorithms.WeightedRatio
 import java.util.*
 
 class LawnchairAppSearchAlgorithm(context: Context) : LawnchairSearchAlgorithm(context) {
 
-    private val appState = LauncherAppState.getInstance(context)
-    private val resultHandler = Handler(Executors.MAIN_EXECUTOR.looper)
+    private val scheduler = SearchScheduler()
+    private val appNameComparator = AppInfoComparator(context)
+    // Apps from the store, sorted once per update on the search thread
+    private var apps: Array<AppInfo>? = null
+    private var sortedApps: List<AppInfo> = emptyList()
     private var enableFuzzySearch = false
     private val marketSearchComponent = resolveMarketSearchActivity()
     private val coroutineScope = CoroutineScope(context = Dispatchers.IO)
+    private val searchIndex = AppTitleSearchIndex()
+    private val fuzzyMatcher = FuzzyAppMatcher()
 
     init {
-        PreferenceManager2.getInstance(context).enableFuzzySearch.onEach(launchIn = coroutineScope) {
+        val preferenceManager2 = PreferenceManager2.getInstance(context)
+        preferenceManager2.snapshot.onEach(preferenceManager2.enableFuzzySearch, launchIn = coroutineScope) {
             enableFuzzySearch = it
         }
     }
 
     override fun doSearch(query: String, callback: SearchCallback<AllAppsGridAdapter.AdapterItem>) {
-        appState.model.enqueueModelUpdateTask(object : BaseModelUpdateTask() {
-            override fun execute(
-                app: LauncherAppState?,
-                dataModel: BgDataModel?,
-                apps: AllAppsList?
-            ) {
-                val result = getResult(apps!!.data, query)
-                resultHandler.post { callback.onSearchResult(query, result) }
-            }
-        })
+        val storeApps = context.launcher.appsView.appsStore.apps
+        scheduler.schedule(
+            { signal -> getResult(getSortedApps(storeApps), query, signal) },
+            { result -> callback.onSearchResult(query, result) }
+        )
+    }
+
+    /**
+     * Returns the apps in the order of the apps list, so that the first matches are the first ones
+     * shown there. The same list is returned until the apps change, so that the index can reuse
+     * previous results.
+     */
+    private fun getSortedApps(storeApps: Array<AppInfo>): List<AppInfo> {
+        if (storeApps !== apps) {
+            apps = storeApps
+            sortedApps = storeApps.sortedWith(appNameComparator)
+        }
+        return sortedApps
     }
 
     override fun cancel(interruptActiveRequests: Boolean) {
         if (interruptActiveRequests) {
-            resultHandler.removeCallbacksAndMessages(null)
+            scheduler.cancel()
         }
     }
 
     private fun getResult(
-        apps: MutableList<AppInfo>,
-        query: String
-    ): ArrayList<AllAppsGridAdapter.AdapterItem> {
+        apps: List<AppInfo>,
+        query: String,
+        signal: CancellationSignal
+    ): ArrayList<AllAppsGridAdapter.AdapterItem>? {
         val appResults = if (enableFuzzySearch) {
-            fuzzySearch(apps, query)
+            fuzzySearch(apps, query, signal)
         } else {
-            normalSearch(apps, query)
+            normalSearch(apps, query, signal)
         }
+        if (signal.isCanceled) return null
         val results = mutableListOf<SearchTargetCompat>()
         if (appResults.size == 1) {
             val app = appResults.first()
@@ -96,26 +106,15 @@ class LawnchairAppSearchAlgorithm(context: Context) : LawnchairSearchAlgorithm(c
         return PopupPopulator.sortAndFilterShortcuts(shortcuts, null)
     }
 
-    private fun normalSearch(apps: List<AppInfo>, query: String): List<AppInfo> {
+    private fun normalSearch(apps: List<AppInfo>, query: String, signal: CancellationSignal): List<AppInfo> {
         // Do an intersection of the words in the query and each title, and filter out all the
         // apps that don't match all of the words in the query.
         val queryTextLower = query.lowercase(Locale.getDefault())
-        val matcher = StringMatcherUtility.StringMatcher.getInstance()
-
-        return apps.asSequence()
-            .filter { StringMatcherUtility.matches(queryTextLower, it.title.toString(), matcher) }
-            .take(maxResultsCount)
-            .toList()
+        return searchIndex.search(apps, queryTextLower, maxResultsCount, signal)
     }
 
-    private fun fuzzySearch(apps: List<AppInfo>, query: String): List<AppInfo> {
-        val matches = FuzzySearch.extractSorted(
-            query.lowercase(Locale.getDefault()), apps,
-            { it.title.toString() }, WeightedRatio(), 65
-        )
-
-        return matches.take(maxResultsCount)
-            .map { it.referent }
+    private fun fuzzySearch(apps: List<AppInfo>, query: String, signal: CancellationSignal): List<AppInfo> {
+        return fuzzyMatcher.search(apps, query, maxResultsCount, signal)
     }
 
     private fun resolveMarketSearchActivity(): ComponentKey? {
@@ -0,0 +1,210 @@
+package app.lawnchair.theme
+
+import android.content.Context
+import android.os.Looper
+import android.util.Log
+import androidx.annotation.WorkerThread
+import com.android.launcher3.util.Executors.UI_HELPER_EXECUTOR
+import dev.kdrag0n.colorkt.rgb.Srgb
+import dev.kdrag0n.monet.theme.ColorScheme
+import dev.kdrag0n.monet.theme.ColorSwatch
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+
+/**
+ * Persistent cache of generated color schemes.
+ *
+ * Schemes are stored as plain sRGB swatches, keyed by everything their generation depends on, so
+ * that they can be restored after a restart without any colorspace conversions.
+ *
+ * The file is read by [preload] or the first lookup from a background thread, or by [getOrLoad]
+ * when there's nothing else to show, and written on [UI_HELPER_EXECUTOR] after each change.
+ */
+class ColorSchemeCache(context: Context) {
+
+    private val file = File(context.cacheDir, FILE_NAME)
+
+    // Most recently used last, guarded by this
+    private val schemes = LinkedHashMap<String, ColorScheme>(MAX_ENTRIES, 0.75f, true)
+    private val loadLock = Any()
+    @Volatile private var loaded = false
+    // Incremented for each change, only the latest snapshot of the schemes is written
+    @Volatile private var generation = 0
+
+    /**
+     * Returns the stored scheme for [key]. On the main thread, this returns null until the cache
+     * file is loaded, otherwise the file is read on first use.
+     */
+    fun get(key: String): ColorScheme? {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            if (!loaded) return null
+        } else {
+            ensureLoaded()
+        }
+        return synchronized(this) { schemes[key] }
+    }
+
+    /**
+     * Returns the stored scheme for [key], waiting for the cache file to be loaded on any thread.
+     * Reading the small file is still much cheaper than generating a scheme, so the main thread
+     * should use this when it has no scheme to show at all.
+     */
+    fun getOrLoad(key: String): ColorScheme? {
+        ensureLoaded()
+        return synchronized(this) { schemes[key] }
+    }
+
+    /**
+     * Stores [scheme] under [key], evicting the least recently used schemes.
+     */
+    @WorkerThread
+    fun put(key: String, scheme: ColorScheme) {
+        ensureLoaded()
+        val snapshot: List<Pair<String, ColorScheme>>
+        val snapshotGeneration: Int
+        synchronized(this) {
+            schemes[key] = CachedColorScheme(scheme)
+            while (schemes.size > MAX_ENTRIES) {
+                schemes.remove(schemes.keys.first())
+            }
+            snapshot = schemes.map { (key, scheme) -> key to scheme }
+            snapshotGeneration = ++generation
+        }
+        UI_HELPER_EXECUTOR.execute { write(snapshot, snapshotGeneration) }
+    }
+
+    /**
+     * Loads the cache file in advance, so that the first lookup doesn't wait for it.
+     */
+    @WorkerThread
+    fun preload() {
+        ensureLoaded()
+    }
+
+    private fun ensureLoaded() {
+        if (loaded) return
+        synchronized(loadLock) {
+            if (loaded) return
+            val stored = read()
+            synchronized(this) {
+                schemes.putAll(stored)
+                loaded = true
+            }
+        }
+    }
+
+    private fun read(): Map<String, ColorScheme> {
+        val stored = LinkedHashMap<String, ColorScheme>()
+        if (!file.exists()) return stored
+        try {
+            DataInputStream(FileInputStream(file).buffered()).use { input ->
+                if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+                    file.delete()
+                    return stored
+                }
+                repeat(input.readInt()) {
+                    val key = input.readUTF()
+                    stored[key] = CachedColorScheme(
+                        neutral1 = readSwatch(input),
+                        neutral2 = readSwatch(input),
+                        accent1 = readSwatch(input),
+                        accent2 = readSwatch(input),
+                        accent3 = readSwatch(input),
+                    )
+                }
+            }
+        } catch (e: EOFException) {
+            Log.w(TAG, "Truncated color scheme cache", e)
+            stored.clear()
+            file.delete()
+        } catch (e: IOException) {
+            Log.w(TAG, "Unable to read color scheme cache", e)
+            stored.clear()
+            file.delete()
+        }
+        return stored
+    }
+
+    private fun write(schemes: List<Pair<String, ColorScheme>>, snapshotGeneration: Int) {
+        // A newer snapshot is queued after this one
+        if (snapshotGeneration != generation) return
+        val tmpFile = File(file.parentFile, "${file.name}.tmp")
+        try {
+            DataOutputStream(FileOutputStream(tmpFile).buffered()).use { out ->
+                out.writeInt(MAGIC)
+                out.writeInt(FORMAT_VERSION)
+                out.writeInt(schemes.size)
+                schemes.forEach { (key, scheme) ->
+                    out.writeUTF(key)
+                    writeSwatch(out, scheme.neutral1)
+                    writeSwatch(out, scheme.neutral2)
+                    writeSwatch(out, scheme.accent1)
+                    writeSwatch(out, scheme.accent2)
+                    writeSwatch(out, scheme.accent3)
+                }
+            }
+            if (!tmpFile.renameTo(file)) {
+                tmpFile.delete()
+            }
+        } catch (e: IOException) {
+            Log.w(TAG, "Unable to write color scheme cache", e)
+            tmpFile.delete()
+        }
+    }
+
+    /**
+     * A scheme made of precomputed sRGB swatches.
+     */
+    private class CachedColorScheme(
+        override val neutral1: ColorSwatch,
+        override val neutral2: ColorSwatch,
+        override val accent1: ColorSwatch,
+        override val accent2: ColorSwatch,
+        override val accent3: ColorSwatch,
+    ) : ColorScheme() {
+
+        constructor(scheme: ColorScheme) : this(
+            toSrgb(scheme.neutral1),
+            toSrgb(scheme.neutral2),
+            toSrgb(scheme.accent1),
+            toSrgb(scheme.accent2),
+            toSrgb(scheme.accent3),
+        )
+    }
+
+    companion object {
+        private const val TAG = "ColorSchemeCache"
+        private const val FILE_NAME = "color_schemes"
+
+        private const val MAGIC = 0x4C43534B // "LCSK"
+        // Bump when the generated swatches change for the same key, e.g. when the targets change
+        const val FORMAT_VERSION = 1
+
+        private const val MAX_ENTRIES = 8
+
+        private fun toSrgb(swatch: ColorSwatch): ColorSwatch =
+            swatch.mapValues { (_, color) -> Srgb(color.toAndroidColor()) }
+
+        private fun writeSwatch(out: DataOutputStream, swatch: ColorSwatch) {
+            out.writeInt(swatch.size)
+            swatch.forEach { (shade, color) ->
+                out.writeInt(shade)
+                out.writeInt(color.toAndroidColor())
+            }
+        }
+
+        private fun readSwatch(input: DataInputStream): ColorSwatch {
+            val size = input.readInt()
+            val swatch = LinkedHashMap<Int, Srgb>(size)
+            repeat(size) {
+                swatch[input.readInt()] = Srgb(input.readInt())
+            }
+            return swatch
+        }
+    }
+}
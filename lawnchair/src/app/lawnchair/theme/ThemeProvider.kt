@@ -7,7 +7,6 @@ import android.content.IntentFilter
 import android.os.Handler
 import android.os.Looper
 import android.os.PatternMatcher
-import android.util.SparseArray
 import androidx.core.graphics.ColorUtils
 import app.lawnchair.preferences2.PreferenceManager2
 import app.lawnchair.theme.color.AndroidColor
@@ -16,9 +15,8 @@ import app.lawnchair.theme.color.SystemColorScheme
 import app.lawnchair.ui.theme.getSystemAccent
 import app.lawnchair.wallpaper.WallpaperManagerCompat
 import com.android.launcher3.Utilities
+import com.android.launcher3.util.Executors.MAIN_EXECUTOR
 import com.android.launcher3.util.MainThreadInitializedObject
-import com.patrykmichalik.preferencemanager.firstBlocking
-import com.patrykmichalik.preferencemanager.onEach
 import dev.kdrag0n.colorkt.Color
 import dev.kdrag0n.colorkt.cam.Zcam
 import dev.kdrag0n.colorkt.conversion.ConversionGraph.convert
@@ -32,32 +30,38 @@ import dev.kdrag0n.monet.theme.DynamicColorScheme
 import dev.kdrag0n.monet.theme.MaterialYouTargets
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
+import java.util.concurrent.ConcurrentHashMap
 
 class ThemeProvider(private val context: Context) {
     private val preferenceManager2 = PreferenceManager2.getInstance(context)
     private val wallpaperManager = WallpaperManagerCompat.INSTANCE.get(context)
     private val coroutineScope = CoroutineScope(Dispatchers.Default)
-    private var accentColor: ColorOption = preferenceManager2.accentColor.firstBlocking()
+    private var accentColor: ColorOption = preferenceManager2.snapshot.get(preferenceManager2.accentColor)
 
-    private val targets = MaterialYouTargets(1.0, false, viewingCondition)
-    private val colorSchemeMap = SparseArray<ColorScheme>()
+    private val targets = MaterialYouTargets(CHROMA_FACTOR, false, viewingCondition)
+    private val colorSchemeMap = ConcurrentHashMap<Int, ColorScheme>()
+    private val schemeCache = ColorSchemeCache(context)
+    private val pendingSeeds = ConcurrentHashMap.newKeySet<Int>()
+    @Volatile private var lastColorScheme: ColorScheme? = null
     private val listeners = mutableListOf<ColorSchemeChangeListener>()
 
     init {
         if (Utilities.ATLEAST_S) {
-            colorSchemeMap.append(0, SystemColorScheme(context))
+            colorSchemeMap[0] = SystemColorScheme(context)
             registerOverlayChangedListener()
         }
+        coroutineScope.launch { schemeCache.preload() }
         wallpaperManager.addOnChangeListener(object : WallpaperManagerCompat.OnColorsChangedListener {
             override fun onColorsChanged() {
                 if (accentColor is ColorOption.WallpaperPrimary) {
-                    notifyColorSchemeChanged()
+                    onColorSchemeSourceChanged()
                 }
             }
         })
-        preferenceManager2.accentColor.onEach(launchIn = coroutineScope) {
+        preferenceManager2.snapshot.onEach(preferenceManager2.accentColor, launchIn = coroutineScope) {
             accentColor = it
-            notifyColorSchemeChanged()
+            onColorSchemeSourceChanged()
         }
     }
 
@@ -68,7 +72,7 @@ class ThemeProvider(private val context: Context) {
         context.registerReceiver(
             object : BroadcastReceiver() {
                 override fun onReceive(context: Context, intent: Intent) {
-                    colorSchemeMap.append(0, SystemColorScheme(context))
+                    colorSchemeMap[0] = SystemColorScheme(context)
                     if (accentColor is ColorOption.SystemAccent) {
                         notifyColorSchemeChanged()
                     }
@@ -80,30 +84,69 @@ class ThemeProvider(private val context: Context) {
         )
     }
 
-    val colorScheme get() = when (val accentColor = this.accentColor) {
-        is ColorOption.SystemAccent -> systemColorScheme
+    /**
+     * The scheme of the current accent color. While a new scheme is generated in the background,
+     * this returns the previous scheme, and listeners are notified once the new one is ready.
+     */
+    val colorScheme get() = getColorScheme(seedColor)
+
+    private val seedColor get() = when (val accentColor = this.accentColor) {
+        is ColorOption.SystemAccent -> when {
+            Utilities.ATLEAST_S -> 0
+            else -> context.getSystemAccent(darkTheme = false)
+        }
         is ColorOption.WallpaperPrimary -> {
-            val wallpaperPrimary = wallpaperManager.wallpaperColors?.primaryColor
-            getColorScheme(wallpaperPrimary ?: ColorOption.LawnchairBlue.color)
+            wallpaperManager.wallpaperColors?.primaryColor ?: ColorOption.LawnchairBlue.color
         }
-        is ColorOption.CustomColor -> getColorScheme(accentColor.color)
-    }
-
-    private val systemColorScheme get() = when {
-        Utilities.ATLEAST_S -> getColorScheme(0)
-        else -> getColorScheme(context.getSystemAccent(darkTheme = false))
+        is ColorOption.CustomColor -> accentColor.color
     }
 
     private fun getColorScheme(colorInt: Int): ColorScheme {
-        var colorScheme = colorSchemeMap[colorInt]
-        if (colorScheme == null) {
-            val color = Srgb(colorInt)
-            colorScheme = DynamicColorScheme(targets, color, 1.0, viewingCondition, true)
-            colorSchemeMap.append(colorInt, colorScheme)
+        val colorScheme = colorSchemeMap[colorInt]
+            ?: schemeCache.get(getCacheKey(colorInt))?.let { colorSchemeMap.putIfAbsent(colorInt, it) ?: it }
+            ?: lastColorScheme?.also { generateColorScheme(colorInt) }
+            // Nothing to show yet on a cold start, wait for the stored schemes before generating
+            ?: schemeCache.getOrLoad(getCacheKey(colorInt))?.let { colorSchemeMap.putIfAbsent(colorInt, it) ?: it }
+            // Nothing stored on the very first start, generate the scheme right away and store it
+            ?: createColorScheme(colorInt).let { scheme ->
+                coroutineScope.launch { schemeCache.put(getCacheKey(colorInt), scheme) }
+                colorSchemeMap.putIfAbsent(colorInt, scheme) ?: scheme
+            }
+        if (colorSchemeMap[colorInt] === colorScheme) {
+            lastColorScheme = colorScheme
         }
         return colorScheme
     }
 
+    /**
+     * Notifies the listeners once the scheme of the current accent color is available.
+     */
+    private fun onColorSchemeSourceChanged() {
+        val colorInt = seedColor
+        if (colorSchemeMap.containsKey(colorInt) || schemeCache.get(getCacheKey(colorInt)) != null) {
+            MAIN_EXECUTOR.execute(::notifyColorSchemeChanged)
+        } else {
+            generateColorScheme(colorInt)
+        }
+    }
+
+    private fun generateColorScheme(colorInt: Int) {
+        if (!pendingSeeds.add(colorInt)) return
+        coroutineScope.launch {
+            val colorScheme = createColorScheme(colorInt)
+            schemeCache.put(getCacheKey(colorInt), colorScheme)
+            colorSchemeMap.putIfAbsent(colorInt, colorScheme)
+            pendingSeeds.remove(colorInt)
+            MAIN_EXECUTOR.execute(::notifyColorSchemeChanged)
+        }
+    }
+
+    private fun createColorScheme(colorInt: Int): ColorScheme =
+        DynamicColorScheme(targets, Srgb(colorInt), CHROMA_FACTOR, viewingCondition, ACCURATE_SHADES)
+
+    private fun getCacheKey(colorInt: Int) =
+        "$colorInt|$CHROMA_FACTOR|$ACCURATE_SHADES|$viewingConditionKey"
+
     fun addListener(listener: ColorSchemeChangeListener) {
         listeners.add(listener)
     }
@@ -121,12 +164,20 @@ class ThemeProvider(private val context: Context) {
         @JvmField
         val INSTANCE = MainThreadInitializedObject(::ThemeProvider)
 
+        private const val CHROMA_FACTOR = 1.0
+        private const val ACCURATE_SHADES = true
+
         val viewingCondition = Zcam.ViewingConditions(
             Zcam.ViewingConditions.SURROUND_AVERAGE,
             0.4f * CieXyzAbs.DEFAULT_SDR_WHITE_LUMINANCE,
             CieLab(50.0, 0.0, 0.0, Illuminants.D65).toXyz().y * CieXyzAbs.DEFAULT_SDR_WHITE_LUMINANCE,
             Illuminants.D65.toAbs(CieXyzAbs.DEFAULT_SDR_WHITE_LUMINANCE)
         )
+
+        private val viewingConditionKey = with(viewingCondition) {
+            "$surroundFactor|$adaptingLuminance|$backgroundLuminance|" +
+                "${referenceWhite.x}|${referenceWhite.y}|${referenceWhite.z}"
+        }
     }
 
     interface ColorSchemeChangeListener {
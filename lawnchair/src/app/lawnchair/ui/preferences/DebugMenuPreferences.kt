@@ -4,7 +4,10 @@ import android.content.Intent
 import androidx.compose.animation.ExperimentalAnimationApi
 import androidx.compose.material.ExperimentalMaterialApi
 import androidx.compose.runtime.Composable
+import androidx.compose.runtime.getValue
+import androidx.compose.runtime.mutableStateOf
 import androidx.compose.runtime.remember
+import androidx.compose.runtime.setValue
 import androidx.compose.ui.platform.LocalContext
 import androidx.navigation.NavGraphBuilder
 import app.lawnchair.preferences.PreferenceManager
@@ -18,6 +21,7 @@ import app.lawnchair.ui.preferences.components.PreferenceLayout
 import app.lawnchair.ui.preferences.components.SwitchPreference
 import com.android.launcher3.settings.DeveloperOptionsFragment
 import com.android.launcher3.settings.SettingsActivity
+import com.android.launcher3.util.FrameMetricsTracker
 import com.patrykmichalik.preferencemanager.Preference
 
 @ExperimentalMaterialApi
@@ -37,6 +41,7 @@ fun DebugMenuPreferences() {
     val prefs2 = preferenceManager2()
     val flags = remember { prefs.getDebugFlags() }
     val context = LocalContext.current
+    var frameStats by remember { mutableStateOf(FrameMetricsTracker.INSTANCE.stats) }
     PreferenceLayout(label = "Debug Menu") {
         PreferenceGroup {
             ClickablePreference(
@@ -52,6 +57,22 @@ fun DebugMenuPreferences() {
                 onClick = { throw RuntimeException("User triggered crash") },
             )
         }
+        PreferenceGroup(heading = "Frame Metrics") {
+            frameStats.forEach {
+                ClickablePreference(
+                    label = it.tag,
+                    subtitle = it.toString(),
+                    onClick = { frameStats = FrameMetricsTracker.INSTANCE.stats },
+                )
+            }
+            ClickablePreference(
+                label = "Reset Frame Metrics",
+                onClick = {
+                    FrameMetricsTracker.INSTANCE.reset()
+                    frameStats = FrameMetricsTracker.INSTANCE.stats
+                },
+            )
+        }
         PreferenceGroup(heading = "Debug Flags") {
             prefs2.debugFlags.forEach {
                 SwitchPreference(
@@ -57,7 +57,9 @@ class DynamicColorScheme(
             val newLch = transformColor(target, seed, reference)
             val newSrgb = newLch.convert<Srgb>()
 
-            Log.d(TAG, "Transform: [$shade] $target => $newLch => ${newSrgb.toHex()}")
+            if (DEBUG) {
+                Log.d(TAG, "Transform: [$shade] $target => $newLch => ${newSrgb.toHex()}")
+            }
             shade to newSrgb
         }.toMap()
     }
@@ -103,6 +105,7 @@ class DynamicColorScheme(
 
     companion object {
         private const val TAG = "DynamicColorScheme"
+        private const val DEBUG = false
 
         // Hue shift for the tertiary accent color (accent3), in degrees.
         // 60 degrees = shifting by a secondary color
@@ -87,6 +87,7 @@ import com.android.launcher3.icons.FastBitmapDrawable;
 import com.android.launcher3.shortcuts.DeepShortcutView;
 import com.android.launcher3.statehandlers.DepthController;
 import com.android.launcher3.util.ActivityOptionsWrapper;
+import com.android.launcher3.util.FrameMetricsTracker;
 import com.android.launcher3.util.MultiValueAlpha.AlphaProperty;
 import com.android.launcher3.util.RunnableList;
 import com.android.launcher3.views.FloatingIconView;
@@ -1226,8 +1227,11 @@ public class QuickstepTransitionManager implements OnDeviceProfileChangeListener
 
     private void addCujInstrumentation(Animator anim, int cuj) {
         anim.addListener(new AnimationSuccessListener() {
+            private FrameMetricsTracker.Interaction mInteraction;
+
             @Override
             public void onAnimationStart(Animator animation) {
+                mInteraction = FrameMetricsTracker.INSTANCE.begin(getCujName(cuj));
                 mDragLayer.getViewTreeObserver().addOnDrawListener(
                         new ViewTreeObserver.OnDrawListener() {
                             boolean mHandled = false;
@@ -1255,6 +1259,14 @@ public class QuickstepTransitionManager implements OnDeviceProfileChangeListener
                 InteractionJankMonitorWrapper.cancel(cuj);
             }
 
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                super.onAnimationEnd(animation);
+                if (mInteraction != null) {
+                    mInteraction.end();
+                }
+            }
+
             @Override
             public void onAnimationSuccess(Animator animator) {
                 InteractionJankMonitorWrapper.end(cuj);
@@ -1262,6 +1274,21 @@ public class QuickstepTransitionManager implements OnDeviceProfileChangeListener
         });
     }
 
+    private static String getCujName(int cuj) {
+        switch (cuj) {
+            case InteractionJankMonitorWrapper.CUJ_APP_LAUNCH_FROM_ICON:
+                return "App launch from icon";
+            case InteractionJankMonitorWrapper.CUJ_APP_LAUNCH_FROM_WIDGET:
+                return "App launch from widget";
+            case InteractionJankMonitorWrapper.CUJ_APP_LAUNCH_FROM_RECENTS:
+                return "App launch from recents";
+            case InteractionJankMonitorWrapper.CUJ_APP_CLOSE_TO_HOME:
+                return "App close to home";
+            default:
+                return "Transition " + cuj;
+        }
+    }
+
     /**
      * Remote animation runner for animation from the app to Launcher, including recents.
      */
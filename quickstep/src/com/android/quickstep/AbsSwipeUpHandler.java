@@ -798,6 +798,9 @@ public abstract class AbsSwipeUpHandler<T extends StatefulActivity<S>,
                 }
             });
         }
+        // Warm up the thumbnails and icons of the tasks the gesture is about to reveal
+        RecentsModel.INSTANCE.get(mContext)
+                .prefetchTasksForGesture(mGestureState.getRunningTaskId());
         notifyGestureStartedAsync();
         setIsLikelyToStartNewTask(isLikelyToStartNewTask, false /* animate */);
         mStateCallback.setStateOnUiThread(STATE_GESTURE_STARTED);
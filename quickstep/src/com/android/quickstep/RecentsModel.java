@@ -63,12 +63,16 @@ public class RecentsModel extends TaskStackChangeListener implements IconChangeL
     private static final Executor RECENTS_MODEL_EXECUTOR = Executors.newSingleThreadExecutor(
             new SimpleThreadFactory("TaskThumbnailIconCache-", THREAD_PRIORITY_BACKGROUND));
 
+    // Number of tasks prefetched when a swipe gesture starts
+    private static final int GESTURE_PREFETCH_TASK_COUNT = 3;
+
     private final List<TaskVisualsChangeListener> mThumbnailChangeListeners = new ArrayList<>();
     private final Context mContext;
 
     private final RecentTasksList mTaskList;
     private final TaskIconCache mIconCache;
     private final TaskThumbnailCache mThumbnailCache;
+    private final boolean mIsLowRamDevice;
 
     private RecentsModel(Context context) {
         mContext = context;
@@ -78,6 +82,7 @@ public class RecentsModel extends TaskStackChangeListener implements IconChangeL
         IconProvider iconProvider = new LawnchairIconProvider(context);
         mIconCache = new TaskIconCache(context, RECENTS_MODEL_EXECUTOR, iconProvider);
         mThumbnailCache = new TaskThumbnailCache(context, RECENTS_MODEL_EXECUTOR);
+        mIsLowRamDevice = context.getSystemService(ActivityManager.class).isLowRamDevice();
 
         if (LawnchairApp.isRecentsEnabled()) {
             TaskStackChangeListeners.getInstance().registerTaskStackListener(this);
@@ -136,6 +141,30 @@ public class RecentsModel extends TaskStackChangeListener implements IconChangeL
         });
     }
 
+    /**
+     * Starts loading the thumbnails and icons of the tasks most likely to be shown by a swipe
+     * gesture, so that they are already cached by the time their task views bind. The previous
+     * task, which quick switch brings into view, is loaded in high resolution, unless the device
+     * is low on RAM.
+     *
+     * @param runningTaskId The task running when the gesture started, which is skipped
+     */
+    public void prefetchTasksForGesture(int runningTaskId) {
+        mTaskList.getTasks(false /* loadKeysOnly */, tasks -> {
+            int count = 0;
+            // Tasks are ordered from the least to the most recent
+            for (int i = tasks.size() - 1; i >= 0 && count < GESTURE_PREFETCH_TASK_COUNT; i--) {
+                Task task = tasks.get(i);
+                if (task.key.id == runningTaskId) {
+                    continue;
+                }
+                mThumbnailCache.prefetch(task, count == 0 && !mIsLowRamDevice /* highResolution */);
+                mIconCache.updateIconInBackground(task, t -> { });
+                count++;
+            }
+        });
+    }
+
     @Override
     public void onTaskStackChangedBackground() {
         if (!mThumbnailCache.isPreloadingEnabled()) {
@@ -188,6 +217,8 @@ public class RecentsModel extends TaskStackChangeListener implements IconChangeL
         if (level == ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
             mThumbnailCache.getHighResLoadingState().setVisible(false);
         }
+        // Shrink the thumbnails proportionally to the memory pressure
+        mThumbnailCache.onTrimMemory(level);
         if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
             // Clear everything once we reach a low-mem situation
             mThumbnailCache.clear();
@@ -15,31 +15,58 @@
  */
 package com.android.quickstep;
 
+import static android.os.Process.THREAD_PRIORITY_BACKGROUND;
+
+import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
+
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.res.Resources;
+import android.util.DisplayMetrics;
 
 import com.android.launcher3.R;
+import com.android.launcher3.config.FeatureFlags;
+import com.android.launcher3.util.Executors.SimpleThreadFactory;
 import com.android.launcher3.util.Preconditions;
 import com.android.quickstep.util.CancellableTask;
-import com.android.quickstep.util.TaskKeyLruCache;
+import com.android.quickstep.util.TaskKeyByteLruCache;
+import com.android.quickstep.util.TaskThumbnailDiskCache;
 import com.android.systemui.shared.recents.model.Task;
 import com.android.systemui.shared.recents.model.Task.TaskKey;
 import com.android.systemui.shared.recents.model.ThumbnailData;
 import com.android.systemui.shared.system.ActivityManagerWrapper;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 
 public class TaskThumbnailCache {
 
     private final Executor mBgExecutor;
 
+    // Low-res pool size, relative to the high-res pool
+    private static final float LOW_RES_POOL_RATIO = 0.5f;
+
     private final int mCacheSize;
-    private final TaskKeyLruCache<ThumbnailData> mCache;
+    // Thumbnails are weighted by their size in bytes and kept in separate pools, so that a few
+    // high-res thumbnails don't evict all the low-res ones.
+    private final TaskKeyByteLruCache<ThumbnailData> mHighResCache;
+    private final TaskKeyByteLruCache<ThumbnailData> mLowResCache;
     private final HighResLoadingState mHighResLoadingState;
     private final boolean mEnableTaskSnapshotPreloading;
 
+    // Optional disk tier, only accessed on its own executor so that disk reads don't wait for
+    // snapshots being fetched from the system, and the other way around
+    private final TaskThumbnailDiskCache mDiskCache;
+    private final Executor mDiskExecutor;
+    // Thumbnails read from the disk tier, which are shown until the real snapshot is loaded
+    private final Set<ThumbnailData> mRestoredThumbnails =
+            Collections.newSetFromMap(new WeakHashMap<>());
+
     public static class HighResLoadingState {
         private boolean mForceHighResThumbnails;
         private boolean mVisible;
@@ -97,7 +124,21 @@ public class TaskThumbnailCache {
         Resources res = context.getResources();
         mCacheSize = res.getInteger(R.integer.recentsThumbnailCacheSize);
         mEnableTaskSnapshotPreloading = res.getBoolean(R.bool.config_enableTaskSnapshotPreloading);
-        mCache = new TaskKeyLruCache<>(mCacheSize);
+        // Budget the high-res pool for the configured number of full screen thumbnails
+        DisplayMetrics dm = res.getDisplayMetrics();
+        long highResPoolSize = (long) mCacheSize * dm.widthPixels * dm.heightPixels * 4;
+        mHighResCache = new TaskKeyByteLruCache<>(highResPoolSize, TaskThumbnailCache::getWeight);
+        mLowResCache = new TaskKeyByteLruCache<>(
+                (long) (highResPoolSize * LOW_RES_POOL_RATIO), TaskThumbnailCache::getWeight);
+        if (FeatureFlags.ENABLE_PERSISTENT_TASK_THUMBNAILS.get()) {
+            mDiskCache = new TaskThumbnailDiskCache(context,
+                    res.getInteger(R.integer.recentsThumbnailDiskCacheSizeKb) * 1024L);
+            mDiskExecutor = Executors.newSingleThreadExecutor(new SimpleThreadFactory(
+                    "TaskThumbnailDiskCache-", THREAD_PRIORITY_BACKGROUND));
+        } else {
+            mDiskCache = null;
+            mDiskExecutor = null;
+        }
     }
 
     /**
@@ -112,12 +153,26 @@ public class TaskThumbnailCache {
         }
     }
 
+    /**
+     * Asynchronously loads the thumbnail of the given {@param task} into the cache, unless a
+     * thumbnail of the requested resolution is already there.
+     */
+    public void prefetch(Task task, boolean highResolution) {
+        Preconditions.assertUIThread();
+        updateThumbnailInBackground(task.key, !highResolution, t -> { });
+    }
+
     /**
      * Synchronously updates the thumbnail in the cache if it is already there.
      */
     public void updateTaskSnapShot(int taskId, ThumbnailData thumbnail) {
         Preconditions.assertUIThread();
-        mCache.updateIfAlreadyInCache(taskId, thumbnail);
+        TaskKey highResKey = mHighResCache.remove(taskId);
+        TaskKey lowResKey = mLowResCache.remove(taskId);
+        TaskKey key = highResKey != null ? highResKey : lowResKey;
+        if (key != null) {
+            putInCache(key, thumbnail);
+        }
     }
 
     /**
@@ -131,7 +186,8 @@ public class TaskThumbnailCache {
         Preconditions.assertUIThread();
 
         boolean lowResolution = !mHighResLoadingState.isEnabled();
-        if (task.thumbnail != null && (!task.thumbnail.reducedResolution || lowResolution)) {
+        if (task.thumbnail != null && !mRestoredThumbnails.contains(task.thumbnail)
+                && (!task.thumbnail.reducedResolution || lowResolution)) {
             // Nothing to load, the thumbnail is already high-resolution or matches what the
             // request, so just callback
             callback.accept(task.thumbnail);
@@ -148,12 +204,19 @@ public class TaskThumbnailCache {
             Consumer<ThumbnailData> callback) {
         Preconditions.assertUIThread();
 
-        ThumbnailData cachedThumbnail = mCache.getAndInvalidateIfModified(key);
-        if (cachedThumbnail != null && (!cachedThumbnail.reducedResolution || lowResolution)) {
+        ThumbnailData cachedThumbnail = getFromCache(key);
+        boolean isRestored = cachedThumbnail != null
+                && mRestoredThumbnails.contains(cachedThumbnail);
+        if (cachedThumbnail != null && !isRestored
+                && (!cachedThumbnail.reducedResolution || lowResolution)) {
             // Already cached, lets use that thumbnail
             callback.accept(cachedThumbnail);
             return null;
         }
+        if (isRestored) {
+            // Show the restored thumbnail until the real one is loaded
+            callback.accept(cachedThumbnail);
+        }
 
         CancellableTask<ThumbnailData> request = new CancellableTask<ThumbnailData>() {
             @Override
@@ -164,26 +227,112 @@ public class TaskThumbnailCache {
 
             @Override
             public void handleResult(ThumbnailData result) {
-                mCache.put(key, result);
+                putInCache(key, result);
                 callback.accept(result);
+                if (mDiskCache != null && result.thumbnail != null) {
+                    mDiskExecutor.execute(() -> mDiskCache.write(key, result));
+                }
             }
         };
+        if (mDiskCache != null && cachedThumbnail == null) {
+            // Read the disk copy while the snapshot is fetched, it is dropped if the snapshot
+            // arrives first
+            mDiskExecutor.execute(() -> {
+                if (request.isCancelled()) {
+                    return;
+                }
+                ThumbnailData restored = mDiskCache.read(key);
+                if (restored != null) {
+                    MAIN_EXECUTOR.execute(() -> {
+                        if (!request.isCancelled()) {
+                            onThumbnailRestored(key, restored, callback);
+                        }
+                    });
+                }
+            });
+        }
         mBgExecutor.execute(request);
         return request;
     }
 
+    private void onThumbnailRestored(TaskKey key, ThumbnailData thumbnail,
+            Consumer<ThumbnailData> callback) {
+        if (getFromCache(key) != null) {
+            // The real thumbnail was already loaded by another request
+            return;
+        }
+        mRestoredThumbnails.add(thumbnail);
+        putInCache(key, thumbnail);
+        callback.accept(thumbnail);
+    }
+
+    private ThumbnailData getFromCache(TaskKey key) {
+        ThumbnailData thumbnail = mHighResCache.getAndInvalidateIfModified(key);
+        return thumbnail != null ? thumbnail : mLowResCache.getAndInvalidateIfModified(key);
+    }
+
+    private void putInCache(TaskKey key, ThumbnailData thumbnail) {
+        if (thumbnail.reducedResolution) {
+            mLowResCache.put(key, thumbnail);
+        } else {
+            mHighResCache.put(key, thumbnail);
+            // The high-res thumbnail supersedes any low-res one
+            mLowResCache.remove(key);
+        }
+    }
+
+    private static int getWeight(ThumbnailData thumbnail) {
+        return thumbnail.thumbnail == null ? 0 : thumbnail.thumbnail.getAllocationByteCount();
+    }
+
     /**
      * Clears the cache.
      */
     public void clear() {
-        mCache.evictAll();
+        mHighResCache.evictAll();
+        mLowResCache.evictAll();
+    }
+
+    /**
+     * Shrinks the cache according to the memory pressure {@param level}, or restores its full
+     * size once the UI is hidden without any pressure. At
+     * {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_CRITICAL} the cache is also cleared, and the
+     * reduced size only limits how much it grows back.
+     */
+    public void onTrimMemory(int level) {
+        float fraction;
+        switch (level) {
+            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE:
+                fraction = 0.75f;
+                break;
+            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW:
+            case ComponentCallbacks2.TRIM_MEMORY_BACKGROUND:
+                fraction = 0.5f;
+                break;
+            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL:
+            case ComponentCallbacks2.TRIM_MEMORY_MODERATE:
+                fraction = 0.25f;
+                break;
+            case ComponentCallbacks2.TRIM_MEMORY_COMPLETE:
+                fraction = 0f;
+                break;
+            default:
+                fraction = 1f;
+                break;
+        }
+        mHighResCache.setBudgetFraction(fraction);
+        mLowResCache.setBudgetFraction(fraction);
     }
 
     /**
      * Removes the cached thumbnail for the given task.
      */
     public void remove(Task.TaskKey key) {
-        mCache.remove(key);
+        mHighResCache.remove(key);
+        mLowResCache.remove(key);
+        if (mDiskCache != null) {
+            mDiskExecutor.execute(() -> mDiskCache.remove(key.id));
+        }
     }
 
     /**
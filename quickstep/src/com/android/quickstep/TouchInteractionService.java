@@ -597,9 +597,8 @@ public class TouchInteractionService extends Service implements PluginListener<O
             switch (event.getActionMasked()) {
                 case ACTION_DOWN:
                 case ACTION_UP:
-                    ActiveGestureLog.INSTANCE.addLog("onMotionEvent("
-                            + (int) event.getRawX() + ", " + (int) event.getRawY() + ")",
-                            event.getActionMasked());
+                    ActiveGestureLog.INSTANCE.addLog("onMotionEvent", event.getActionMasked(),
+                            (int) event.getRawX(), (int) event.getRawY());
                     break;
                 default:
                     ActiveGestureLog.INSTANCE.addLog("onMotionEvent", event.getActionMasked());
@@ -955,6 +954,7 @@ public class TouchInteractionService extends Service implements PluginListener<O
     private void printAvailableCommands(PrintWriter pw) {
         pw.println("Available commands:");
         pw.println("  clear-touch-log: Clears the touch interaction log");
+        pw.println("  export-touch-log: Prints the touch interaction log as CSV");
     }
 
     private void onCommand(PrintWriter pw, LinkedList<String> args) {
@@ -962,6 +962,9 @@ public class TouchInteractionService extends Service implements PluginListener<O
             case "clear-touch-log":
                 ActiveGestureLog.INSTANCE.clear();
                 break;
+            case "export-touch-log":
+                ActiveGestureLog.INSTANCE.exportCsv(pw);
+                break;
         }
     }
 
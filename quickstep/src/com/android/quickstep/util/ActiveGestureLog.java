@@ -15,10 +15,8 @@
  */
 package com.android.quickstep.util;
 
-import android.content.Context;
-
+import com.android.launcher3.Utilities;
 import com.android.launcher3.logging.EventLogArray;
-import com.android.launcher3.util.MainThreadInitializedObject;
 
 /**
  * A log to keep track of the active gesture.
@@ -33,7 +31,21 @@ public class ActiveGestureLog extends EventLogArray {
      */
     public static final String INTENT_EXTRA_LOG_TRACE_ID = "INTENT_EXTRA_LOG_TRACE_ID";
 
+    // Number of events kept, can be increased when investigating a gesture issue with:
+    // $ adb shell setprop debug.launcher.gesture_log_size 400
+    private static final String SIZE_PROPERTY = "debug.launcher.gesture_log_size";
+    private static final int DEFAULT_SIZE = 40;
+
     private ActiveGestureLog() {
-        super("touch_interaction_log", 40);
+        super("touch_interaction_log", getSize());
+    }
+
+    private static int getSize() {
+        try {
+            return Integer.parseInt(Utilities.getSystemProperty(
+                    SIZE_PROPERTY, String.valueOf(DEFAULT_SIZE)));
+        } catch (NumberFormatException e) {
+            return DEFAULT_SIZE;
+        }
     }
 }
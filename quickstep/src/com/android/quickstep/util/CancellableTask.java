@@ -65,4 +65,11 @@ public abstract class CancellableTask<T> implements Runnable {
     public void cancel() {
         mCancelled = true;
     }
+
+    /**
+     * Returns true if the request was cancelled
+     */
+    public boolean isCancelled() {
+        return mCancelled;
+    }
 }
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep.util;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.android.systemui.shared.recents.model.Task.TaskKey;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * A variant of {@link TaskKeyLruCache} which evicts the least recently used entries once the
+ * total weight of its values, usually their size in bytes, exceeds a budget.
+ *
+ * Reads are lock free and only record the access time of the entry, so that they never contend
+ * with background loaders. Writes and evictions are serialized on a single lock.
+ *
+ * @param <V> The type of the value
+ */
+public class TaskKeyByteLruCache<V> {
+
+    private final ConcurrentHashMap<Integer, Entry<V>> mMap = new ConcurrentHashMap<>();
+    private final AtomicLong mAccessClock = new AtomicLong();
+    private final ToIntFunction<V> mWeigher;
+    private final long mMaxSize;
+
+    private final Object mWriteLock = new Object();
+    // Guarded by mWriteLock
+    private long mBudget;
+    private long mSize;
+
+    public TaskKeyByteLruCache(long maxSize, ToIntFunction<V> weigher) {
+        mMaxSize = maxSize;
+        mBudget = maxSize;
+        mWeigher = weigher;
+    }
+
+    /**
+     * Gets the entry if it is still valid
+     */
+    @Nullable
+    public V getAndInvalidateIfModified(TaskKey key) {
+        Entry<V> entry = mMap.get(key.id);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.mKey.windowingMode == key.windowingMode
+                && entry.mKey.lastActiveTime == key.lastActiveTime) {
+            entry.mLastAccess = mAccessClock.incrementAndGet();
+            return entry.mValue;
+        }
+        synchronized (mWriteLock) {
+            removeLocked(key.id, entry);
+        }
+        return null;
+    }
+
+    /**
+     * Adds an entry to the cache, evicting the least recently used entries if needed
+     */
+    public void put(TaskKey key, V value) {
+        if (key == null || value == null) {
+            Log.e("TaskKeyCache", "Unexpected null key or value: " + key + ", " + value);
+            return;
+        }
+        Entry<V> entry = new Entry<>(key, value, mWeigher.applyAsInt(value),
+                mAccessClock.incrementAndGet());
+        synchronized (mWriteLock) {
+            Entry<V> previous = mMap.put(key.id, entry);
+            if (previous != null) {
+                mSize -= previous.mWeight;
+            }
+            mSize += entry.mWeight;
+            trimToBudgetLocked();
+        }
+    }
+
+    /**
+     * Updates the cache entry if it is already present in the cache
+     */
+    public void updateIfAlreadyInCache(int taskId, V data) {
+        synchronized (mWriteLock) {
+            Entry<V> entry = mMap.get(taskId);
+            if (entry != null) {
+                put(entry.mKey, data);
+            }
+        }
+    }
+
+    /**
+     * Removes a particular entry from the cache
+     */
+    public void remove(TaskKey key) {
+        remove(key.id);
+    }
+
+    /**
+     * Removes the entry of the given task from the cache, returning its key if it was present
+     */
+    @Nullable
+    public TaskKey remove(int taskId) {
+        synchronized (mWriteLock) {
+            Entry<V> entry = mMap.get(taskId);
+            if (entry == null) {
+                return null;
+            }
+            removeLocked(taskId, entry);
+            return entry.mKey;
+        }
+    }
+
+    /**
+     * Removes all entries matching keyCheck
+     */
+    public void removeAll(Predicate<TaskKey> keyCheck) {
+        synchronized (mWriteLock) {
+            for (Entry<V> entry : mMap.values()) {
+                if (keyCheck.test(entry.mKey)) {
+                    removeLocked(entry.mKey.id, entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all entries from the cache
+     */
+    public void evictAll() {
+        synchronized (mWriteLock) {
+            mMap.clear();
+            mSize = 0;
+        }
+    }
+
+    /**
+     * Limits the cache to {@param fraction} of its maximum size, evicting entries if needed. A
+     * fraction of 0 empties the cache, otherwise the most recently used entry is always kept.
+     */
+    public void setBudgetFraction(float fraction) {
+        synchronized (mWriteLock) {
+            mBudget = (long) (mMaxSize * Math.max(0f, Math.min(fraction, 1f)));
+            if (mBudget == 0) {
+                evictAll();
+            } else {
+                trimToBudgetLocked();
+            }
+        }
+    }
+
+    private void trimToBudgetLocked() {
+        while (mSize > mBudget && mMap.size() > 1) {
+            Entry<V> eldest = null;
+            for (Entry<V> entry : mMap.values()) {
+                if (eldest == null || entry.mLastAccess < eldest.mLastAccess) {
+                    eldest = entry;
+                }
+            }
+            removeLocked(eldest.mKey.id, eldest);
+        }
+    }
+
+    private void removeLocked(int taskId, Entry<V> entry) {
+        if (mMap.remove(taskId, entry)) {
+            mSize -= entry.mWeight;
+        }
+    }
+
+    private static class Entry<V> {
+
+        final TaskKey mKey;
+        final V mValue;
+        final int mWeight;
+        volatile long mLastAccess;
+
+        Entry(TaskKey key, V value, int weight, long lastAccess) {
+            mKey = key;
+            mValue = value;
+            mWeight = weight;
+            mLastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep.util;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Picture;
+import android.graphics.Rect;
+import android.os.UserHandle;
+import android.provider.Settings;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.android.launcher3.util.BitmapPool;
+import com.android.systemui.shared.recents.model.Task.TaskKey;
+import com.android.systemui.shared.recents.model.ThumbnailData;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Disk tier of the task thumbnail cache, which keeps a scaled down copy of the latest thumbnail
+ * of each task so that Overview can show it right away after the launcher process restarts.
+ *
+ * Every thumbnail is stored in its own file, keyed by the task id and its last active time, as
+ * a fixed size header followed by the raw ARGB_8888 pixels, and is memory mapped when read. The
+ * least recently used files are deleted once the total size exceeds the limit. This class is not
+ * thread safe and should only be used from the same background thread.
+ *
+ * As thumbnails can show private content, they are all deleted after a reboot, and only the tasks
+ * of the launcher user are stored, as other profiles can be locked separately.
+ */
+public class TaskThumbnailDiskCache {
+
+    private static final String TAG = "TaskThumbnailDiskCache";
+
+    private static final String DIR_NAME = "task_thumbnails";
+    // Stores the boot count when the thumbnails were written
+    private static final String BOOT_COUNT_FILE_NAME = "boot_count";
+    private static final int MAGIC = 0x54544843;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+
+    // Thumbnails are scaled down so that their largest side fits this size
+    private static final int MAX_THUMBNAIL_SIZE = 256;
+
+    private static final Paint SCALE_PAINT = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private final Context mContext;
+    private final File mDir;
+    private final long mMaxSizeBytes;
+    private final BitmapPool mBitmapPool;
+    private final int mUserId = UserHandle.myUserId();
+
+    private boolean mBootChecked;
+
+    public TaskThumbnailDiskCache(Context context, long maxSizeBytes) {
+        mContext = context;
+        mDir = new File(context.getCacheDir(), DIR_NAME);
+        mMaxSizeBytes = maxSizeBytes;
+        mBitmapPool = BitmapPool.INSTANCE.get(context);
+    }
+
+    /**
+     * Returns the stored thumbnail of the given task, if its last active time didn't change
+     * since it was stored.
+     */
+    @WorkerThread
+    @Nullable
+    public ThumbnailData read(TaskKey key) {
+        if (key.userId != mUserId) {
+            return null;
+        }
+        checkBootCount();
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                file.delete();
+                return null;
+            }
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            int orientation = buffer.getInt();
+            int rotation = buffer.getInt();
+            Rect insets = new Rect(
+                    buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+            float scale = buffer.getFloat();
+            int windowingMode = buffer.getInt();
+            int appearance = buffer.getInt();
+            boolean isTranslucent = buffer.get() != 0;
+
+            buffer.position(HEADER_SIZE);
+            if (buffer.remaining() < width * height * 4) {
+                file.delete();
+                return null;
+            }
+            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            bitmap.copyPixelsFromBuffer(buffer);
+
+            ThumbnailData data = new ThumbnailData(bitmap);
+            data.orientation = orientation;
+            data.rotation = rotation;
+            data.insets = insets;
+            data.scale = scale;
+            data.windowingMode = windowingMode;
+            data.appearance = appearance;
+            data.isTranslucent = isTranslucent;
+            data.reducedResolution = true;
+            file.setLastModified(System.currentTimeMillis());
+            return data;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to read thumbnail of task " + key.id, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores a scaled down copy of the given thumbnail, replacing any previous thumbnail of the
+     * same task.
+     */
+    @WorkerThread
+    public void write(TaskKey key, ThumbnailData data) {
+        if (data.thumbnail == null || key.userId != mUserId) {
+            return;
+        }
+        checkBootCount();
+        File file = getFile(key);
+        if (file.exists()) {
+            return;
+        }
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            return;
+        }
+        remove(key.id);
+
+        Bitmap bitmap = scaleDown(data.thumbnail);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(bitmap.getWidth())
+                .putInt(bitmap.getHeight())
+                .putInt(data.orientation)
+                .putInt(data.rotation)
+                .putInt(data.insets.left)
+                .putInt(data.insets.top)
+                .putInt(data.insets.right)
+                .putInt(data.insets.bottom)
+                .putFloat(data.scale * bitmap.getWidth() / data.thumbnail.getWidth())
+                .putInt(data.windowingMode)
+                .putInt(data.appearance)
+                .put((byte) (data.isTranslucent ? 1 : 0));
+        header.position(HEADER_SIZE);
+        header.flip();
+        ByteBuffer pixels = ByteBuffer.allocate(bitmap.getByteCount());
+        bitmap.copyPixelsToBuffer(pixels);
+        pixels.flip();
+        if (bitmap != data.thumbnail) {
+            mBitmapPool.release(bitmap);
+        }
+
+        File tmpFile = new File(mDir, file.getName() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw");
+             FileChannel channel = raf.getChannel()) {
+            raf.setLength(0);
+            channel.write(new ByteBuffer[] {header, pixels});
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write thumbnail of task " + key.id, e);
+            tmpFile.delete();
+            return;
+        }
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            return;
+        }
+        trimToSize();
+    }
+
+    /**
+     * Removes the stored thumbnail of the given task
+     */
+    @WorkerThread
+    public void remove(int taskId) {
+        String prefix = taskId + "_";
+        File[] files = mDir.listFiles((dir, name) -> name.startsWith(prefix));
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Deletes all the thumbnails if they were written before the last reboot.
+     */
+    private void checkBootCount() {
+        if (mBootChecked) {
+            return;
+        }
+        mBootChecked = true;
+        int bootCount = Settings.Global.getInt(
+                mContext.getContentResolver(), Settings.Global.BOOT_COUNT, -1);
+        File bootCountFile = new File(mDir, BOOT_COUNT_FILE_NAME);
+        try (DataInputStream in = new DataInputStream(new FileInputStream(bootCountFile))) {
+            if (bootCount != -1 && in.readInt() == bootCount) {
+                return;
+            }
+        } catch (IOException e) {
+            // Not written yet, or written by a previous boot
+        }
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        if (bootCount == -1 || (!mDir.exists() && !mDir.mkdirs())) {
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(bootCountFile))) {
+            out.writeInt(bootCount);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write boot count", e);
+            bootCountFile.delete();
+        }
+    }
+
+    private void trimToSize() {
+        File[] files = mDir.listFiles((dir, name) -> !name.equals(BOOT_COUNT_FILE_NAME));
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= mMaxSizeBytes) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < files.length && size > mMaxSizeBytes; i++) {
+            size -= files[i].length();
+            files[i].delete();
+        }
+    }
+
+    private File getFile(TaskKey key) {
+        return new File(mDir, key.id + "_" + key.lastActiveTime);
+    }
+
+    /**
+     * Returns an ARGB_8888 copy of the thumbnail scaled down to fit {@link #MAX_THUMBNAIL_SIZE},
+     * or the thumbnail itself if it already fits. Copies which aren't the thumbnail should be
+     * returned to the pool once written.
+     */
+    private Bitmap scaleDown(Bitmap thumbnail) {
+        int width = thumbnail.getWidth();
+        int height = thumbnail.getHeight();
+        float scale = Math.min(1f, (float) MAX_THUMBNAIL_SIZE / Math.max(width, height));
+        int scaledWidth = Math.max(1, Math.round(width * scale));
+        int scaledHeight = Math.max(1, Math.round(height * scale));
+        Rect bounds = new Rect(0, 0, scaledWidth, scaledHeight);
+
+        if (thumbnail.getConfig() == Bitmap.Config.HARDWARE) {
+            // Scale down on the GPU, so that only the small copy is read back from it
+            Picture picture = new Picture();
+            picture.beginRecording(scaledWidth, scaledHeight)
+                    .drawBitmap(thumbnail, null, bounds, SCALE_PAINT);
+            picture.endRecording();
+            return Bitmap.createBitmap(picture)
+                    .copy(Bitmap.Config.ARGB_8888, false /* isMutable */);
+        }
+        if (scale == 1f && thumbnail.getConfig() == Bitmap.Config.ARGB_8888) {
+            return thumbnail;
+        }
+        Bitmap scaled = mBitmapPool.borrow(scaledWidth, scaledHeight, Bitmap.Config.ARGB_8888);
+        new Canvas(scaled).drawBitmap(thumbnail, null, bounds, SCALE_PAINT);
+        return scaled;
+    }
+}
@@ -126,6 +126,7 @@ import com.android.launcher3.statemanager.StatefulActivity;
 import com.android.launcher3.touch.OverScroll;
 import com.android.launcher3.touch.PagedOrientationHandler;
 import com.android.launcher3.util.DynamicResource;
+import com.android.launcher3.util.FrameMetricsTracker;
 import com.android.launcher3.util.IntSet;
 import com.android.launcher3.util.MultiValueAlpha;
 import com.android.launcher3.util.ResourceBasedOverride.Overrides;
@@ -510,6 +511,9 @@ public abstract class RecentsView<ACTIVITY_TYPE extends StatefulActivity<STATE_T
     private int mDownX;
     private int mDownY;
 
+    // Frame times of the running page scroll, see FrameMetricsTracker
+    private FrameMetricsTracker.Interaction mScrollInteraction;
+
     private PendingAnimation mPendingAnimation;
     private LayoutTransition mLayoutTransition;
 
@@ -990,12 +994,20 @@ public abstract class RecentsView<ACTIVITY_TYPE extends StatefulActivity<STATE_T
     @Override
     protected void onPageBeginTransition() {
         super.onPageBeginTransition();
+        if (mScrollInteraction != null) {
+            mScrollInteraction.end();
+        }
+        mScrollInteraction = FrameMetricsTracker.INSTANCE.begin("RecentsView scroll");
         mActionsView.updateDisabledFlags(OverviewActionsView.DISABLED_SCROLLING, true);
     }
 
     @Override
     protected void onPageEndTransition() {
         super.onPageEndTransition();
+        if (mScrollInteraction != null) {
+            mScrollInteraction.end();
+            mScrollInteraction = null;
+        }
         if (isClearAllHidden()) {
             mActionsView.updateDisabledFlags(OverviewActionsView.DISABLED_SCROLLING, false);
         }
@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+
+import com.android.launcher3.testing.TestActivity;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.annotation.LooperMode.Mode;
+
+import java.util.ArrayList;
+
+/**
+ * Tests for the reorder search of {@link CellLayout}.
+ *
+ * The expected positions were recorded with the reorder search as it was before it reused its
+ * state across searches. All the layouts have the same solution regardless of the hash codes of
+ * the views, which the search depends on to order the items it moves one by one.
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(Mode.PAUSED)
+public class CellLayoutReorderTest {
+
+    private static final int GRID_SIZE = 5;
+    private static final int CELL_SIZE = 100;
+
+    private static final int[] RIGHT = {1, 0};
+    private static final int[] LEFT = {-1, 0};
+    private static final int[] DOWN = {0, 1};
+    private static final int[] UP = {0, -1};
+    private static final int[] DOWN_RIGHT = {1, 1};
+
+    private CellLayout mLayout;
+    private final ArrayList<View> mItems = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.application;
+        TestActivity activity = Robolectric.buildActivity(TestActivity.class).setup().get();
+        activity.setDeviceProfile(
+                InvariantDeviceProfile.INSTANCE.get(context).getDeviceProfile(context));
+        mLayout = new CellLayout(new ContextThemeWrapper(activity, R.style.AppTheme));
+        mLayout.setGridSize(GRID_SIZE, GRID_SIZE);
+        mLayout.setCellDimensions(CELL_SIZE, CELL_SIZE);
+    }
+
+    @Test
+    public void dropOnRow_pushesRowRight() {
+        View dragged = addItems(
+                0, 0, 1, 1,
+                1, 0, 1, 1,
+                2, 0, 1, 1,
+                3, 0, 1, 1,
+                0, 4, 1, 1).get(4);
+        assertSolution(dragged, 1, 0, 1, 1, RIGHT,
+                0, 0,
+                2, 0,
+                3, 0,
+                4, 0);
+    }
+
+    @Test
+    public void dropOnRow_pushesRowLeft() {
+        View dragged = addItems(
+                1, 1, 1, 1,
+                2, 1, 1, 1,
+                3, 1, 1, 1,
+                0, 4, 1, 1).get(3);
+        assertSolution(dragged, 2, 1, 1, 1, LEFT,
+                0, 1,
+                1, 1,
+                3, 1);
+    }
+
+    @Test
+    public void dropOnColumn_pushesColumnDown() {
+        View dragged = addItems(
+                2, 0, 1, 1,
+                2, 1, 1, 1,
+                2, 2, 1, 1,
+                4, 4, 1, 1).get(3);
+        assertSolution(dragged, 2, 0, 1, 1, DOWN,
+                2, 1,
+                2, 2,
+                2, 3);
+    }
+
+    @Test
+    public void dropOnWidget_pushesWidgetUpOrAside() {
+        View dragged = addItems(
+                1, 2, 2, 2,
+                1, 0, 2, 2,
+                4, 4, 1, 1).get(2);
+        // The widget above blocks the push up, and the bottom edge the push down
+        assertSolution(dragged, 1, 3, 2, 2, UP,
+                3, 2,
+                1, 0);
+    }
+
+    @Test
+    public void resizeWidget_pushesIconsRight() {
+        View widget = addItems(
+                0, 0, 2, 2,
+                2, 0, 1, 1,
+                2, 1, 1, 1,
+                3, 1, 1, 1,
+                0, 3, 1, 1).get(0);
+        assertSolution(widget, 0, 0, 3, 2, RIGHT,
+                3, 0,
+                3, 1,
+                4, 1,
+                0, 3);
+    }
+
+    @Test
+    public void diagonalDrop_onFullRow_pushesDown() {
+        View dragged = addItems(
+                0, 2, 1, 1,
+                1, 2, 1, 1,
+                2, 2, 1, 1,
+                3, 2, 1, 1,
+                4, 2, 1, 1,
+                0, 0, 1, 1).get(5);
+        assertSolution(dragged, 2, 2, 1, 1, DOWN_RIGHT,
+                0, 2,
+                1, 2,
+                2, 3,
+                3, 2,
+                4, 2);
+    }
+
+    @Test
+    public void dropOnEnclosedIcons_movesThemAsBlock() {
+        addItems(
+                1, 1, 1, 1,
+                2, 1, 1, 1,
+                1, 2, 1, 1,
+                2, 2, 1, 1,
+                0, 1, 1, 1,
+                3, 1, 1, 1,
+                4, 1, 1, 1,
+                0, 2, 1, 1,
+                3, 2, 1, 1,
+                4, 2, 1, 1,
+                1, 0, 1, 1,
+                2, 0, 1, 1,
+                1, 3, 1, 1,
+                2, 3, 1, 1,
+                1, 4, 1, 1,
+                2, 4, 1, 1);
+        assertSolution(null, 1, 1, 2, 2, RIGHT,
+                3, 3,
+                4, 3,
+                3, 4,
+                4, 4,
+                0, 1,
+                3, 1,
+                4, 1,
+                0, 2,
+                3, 2,
+                4, 2,
+                1, 0,
+                2, 0,
+                1, 3,
+                2, 3,
+                1, 4,
+                2, 4);
+    }
+
+    @Test
+    public void wideDrop_pushesIconsDown() {
+        addItems(
+                0, 1, 1, 1,
+                2, 1, 1, 1,
+                4, 1, 1, 1,
+                1, 2, 1, 1,
+                3, 2, 1, 1,
+                0, 3, 1, 1,
+                2, 3, 1, 1);
+        assertSolution(null, 0, 2, 4, 1, DOWN,
+                0, 1,
+                2, 1,
+                4, 1,
+                1, 3,
+                3, 3,
+                0, 3,
+                2, 3);
+    }
+
+    @Test
+    public void dropOnItemWhichCantReorder_hasNoSolution() {
+        ArrayList<View> items = addItems(
+                1, 0, 1, 1,
+                2, 0, 1, 1,
+                0, 4, 1, 1);
+        ((CellLayout.LayoutParams) items.get(0).getLayoutParams()).canReorder = false;
+        assertNoSolution(items.get(2), 1, 0, 1, 1, RIGHT);
+    }
+
+    @Test
+    public void dropOnFullGrid_hasNoSolution() {
+        int[] cells = new int[GRID_SIZE * GRID_SIZE * 4];
+        for (int i = 0; i < GRID_SIZE * GRID_SIZE; i++) {
+            cells[i * 4] = i % GRID_SIZE;
+            cells[i * 4 + 1] = i / GRID_SIZE;
+            cells[i * 4 + 2] = cells[i * 4 + 3] = 1;
+        }
+        addItems(cells);
+        assertNoSolution(null, 2, 2, 1, 1, RIGHT);
+    }
+
+    @Test
+    public void repeatedSearch_hasSameSolution() {
+        View dragged = addItems(
+                0, 0, 1, 1,
+                1, 0, 1, 1,
+                2, 0, 1, 1,
+                3, 0, 1, 1,
+                0, 4, 1, 1).get(4);
+        // The second search of each target is a cached one
+        for (int i = 0; i < 2; i++) {
+            assertSolution(dragged, 1, 0, 1, 1, RIGHT,
+                    0, 0,
+                    2, 0,
+                    3, 0,
+                    4, 0);
+            mLayout.revertTempState();
+            assertSolution(dragged, 2, 0, 1, 1, RIGHT,
+                    0, 0,
+                    1, 0,
+                    3, 0,
+                    4, 0);
+            mLayout.revertTempState();
+        }
+    }
+
+    @Test
+    public void hasReorderSolution_keepsDragSolution() {
+        View dragged = addItems(
+                0, 0, 1, 1,
+                1, 0, 1, 1,
+                2, 0, 1, 1,
+                3, 0, 1, 1,
+                0, 4, 1, 1).get(4);
+        assertSolution(dragged, 1, 0, 1, 1, RIGHT,
+                0, 0,
+                2, 0,
+                3, 0,
+                4, 0);
+
+        ItemInfo info = new ItemInfo();
+        info.spanX = info.spanY = info.minSpanX = info.minSpanY = 2;
+        assertTrue(mLayout.hasReorderSolution(info));
+
+        // Searching for a solution in between doesn't change the solution of the drag
+        assertSolution(dragged, 1, 0, 1, 1, RIGHT,
+                0, 0,
+                2, 0,
+                3, 0,
+                4, 0);
+    }
+
+    /**
+     * Adds items at the given (cellX, cellY, spanX, spanY), and returns their views.
+     */
+    private ArrayList<View> addItems(int... cells) {
+        for (int i = 0; i < cells.length; i += 4) {
+            View view = new View(mLayout.getContext());
+            CellLayout.LayoutParams lp = new CellLayout.LayoutParams(
+                    cells[i], cells[i + 1], cells[i + 2], cells[i + 3]);
+            mLayout.addViewToCellLayout(view, -1, mItems.size() + 1, lp, true);
+            mItems.add(view);
+        }
+        return mItems;
+    }
+
+    /**
+     * Makes space for {@param dragged} at the given cells, and checks the temporary positions of
+     * the other items, in the order they were added.
+     */
+    private void assertSolution(View dragged, int cellX, int cellY, int spanX, int spanY,
+            int[] direction, int... expected) {
+        if (dragged != null) {
+            mLayout.markCellsAsUnoccupiedForView(dragged);
+        }
+        assertTrue(mLayout.createAreaForResize(cellX, cellY, spanX, spanY, dragged,
+                direction.clone(), false /* commit */));
+
+        int[] actual = new int[expected.length];
+        int index = 0;
+        for (View item : mItems) {
+            if (item == dragged) {
+                continue;
+            }
+            CellLayout.LayoutParams lp = (CellLayout.LayoutParams) item.getLayoutParams();
+            actual[index++] = lp.tmpCellX;
+            actual[index++] = lp.tmpCellY;
+        }
+        assertEquals(expected.length, index);
+        assertArrayEquals(expected, actual);
+        if (dragged != null) {
+            mLayout.markCellsAsOccupiedForView(dragged);
+        }
+    }
+
+    private void assertNoSolution(View dragged, int cellX, int cellY, int spanX, int spanY,
+            int[] direction) {
+        if (dragged != null) {
+            mLayout.markCellsAsUnoccupiedForView(dragged);
+        }
+        assertFalse(mLayout.createAreaForResize(cellX, cellY, spanX, spanY, dragged,
+                direction.clone(), false /* commit */));
+    }
+}
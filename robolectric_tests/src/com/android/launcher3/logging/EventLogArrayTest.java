@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.logging;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.launcher3.logging.EventLogArray.EventEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Robolectric unit tests for {@link EventLogArray}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class EventLogArrayTest {
+
+    @Test
+    public void addLog_duplicates_areMerged() {
+        EventLogArray log = new EventLogArray("test", 10);
+        for (int i = 0; i < 5; i++) {
+            log.addLog("move", i);
+        }
+
+        EventEntry[] entries = log.getEntries();
+        assertThat(entries).hasLength(2);
+        assertThat(entries[0].duplicateCount).isEqualTo(3);
+        assertThat(entries[1].extras).isEqualTo(4);
+    }
+
+    @Test
+    public void addLog_whenFull_keepsNewestEvents() {
+        EventLogArray log = new EventLogArray("test", 4);
+        for (int i = 0; i < 6; i++) {
+            log.addLog(i % 2 == 0 ? "down" : "up");
+        }
+
+        EventEntry[] entries = log.getEntries();
+        assertThat(entries).hasLength(4);
+        assertThat(entries[0].event).isEqualTo("down");
+        assertThat(entries[3].event).isEqualTo("up");
+    }
+
+    @Test
+    public void addLog_withPosition_keepsCoordinates() {
+        EventLogArray log = new EventLogArray("test", 4);
+        log.addLog("touch", 1, -20, 300);
+
+        EventEntry entry = log.getEntries()[0];
+        assertThat(entry.extras).isEqualTo(1);
+        assertThat(entry.getX()).isEqualTo(-20);
+        assertThat(entry.getY()).isEqualTo(300);
+
+        StringWriter writer = new StringWriter();
+        log.dump("", new PrintWriter(writer));
+        assertThat(writer.toString()).contains("touch(-20, 300): 1");
+    }
+
+    @Test
+    public void clear_removesEvents() {
+        EventLogArray log = new EventLogArray("test", 4);
+        log.addLog("event");
+        log.clear();
+
+        assertThat(log.getEntries()).isEmpty();
+        log.addLog("other");
+        assertThat(log.getEntries()).hasLength(1);
+    }
+}
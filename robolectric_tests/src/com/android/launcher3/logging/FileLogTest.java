@@ -1,5 +1,8 @@
 package com.android.launcher3.logging;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -12,10 +15,17 @@ import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.LooperMode;
 import org.robolectric.annotation.LooperMode.Mode;
 
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Tests for {@link FileLog}
@@ -39,7 +49,7 @@ public class FileLogTest {
     @After
     public void tearDown() {
         // Clear existing logs
-        for (int i = 0; i < FileLog.LOG_DAYS; i++) {
+        for (int i = 0; i < FileLog.LOG_FILE_COUNT; i++) {
             new File(mTempDir, "log-" + i).delete();
         }
         mTempDir.delete();
@@ -78,7 +88,7 @@ public class FileLogTest {
 
         Calendar threeDaysAgo = Calendar.getInstance();
         threeDaysAgo.add(Calendar.HOUR, -72);
-        for (int i = 0; i < FileLog.LOG_DAYS; i++) {
+        for (int i = 0; i < FileLog.LOG_FILE_COUNT; i++) {
             new File(mTempDir, "log-" + i).setLastModified(threeDaysAgo.getTimeInMillis());
         }
 
@@ -92,4 +102,151 @@ public class FileLogTest {
         // Old logs have been truncated
         assertFalse(writer.toString().contains("hoolalala"));
     }
+
+    @Test
+    public void testBinaryFormat() throws Exception {
+        if (!FileLog.ENABLED) {
+            return;
+        }
+        FileLog.print("Testing", "hoolalala");
+        FileLog.print("Testing", "abracadabra", new Exception("cat! cat!"));
+        assertTrue(FileLog.flushAll(null));
+
+        try (DataInputStream in = new DataInputStream(
+                new FileInputStream(new File(mTempDir, "log-0")))) {
+            assertEquals(FileLog.MAGIC, in.readInt());
+            assertEquals(FileLog.FORMAT_VERSION, in.readInt());
+
+            // The tag is only written once
+            assertEquals(FileLog.RECORD_TAG, in.readByte());
+            int tagId = in.readInt();
+            assertEquals("Testing", readString(in));
+
+            assertEquals(FileLog.RECORD_ENTRY, in.readByte());
+            long time = in.readLong();
+            assertEquals(tagId, in.readInt());
+            assertEquals("hoolalala", readString(in));
+            assertFalse(in.readBoolean());
+
+            assertEquals(FileLog.RECORD_ENTRY, in.readByte());
+            assertTrue(in.readLong() >= time);
+            assertEquals(tagId, in.readInt());
+            assertEquals("abracadabra", readString(in));
+            assertTrue(in.readBoolean());
+            assertTrue(readString(in).contains("cat! cat!"));
+
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void testErrorWrittenBeforeQueuedWork() throws Exception {
+        if (!FileLog.ENABLED) {
+            return;
+        }
+        File logFile = new File(mTempDir, "log-0");
+        AtomicReference<String> contentAfterError = new AtomicReference<>();
+        CountDownLatch blocked = blockWriter();
+        try {
+            // Queued on the logger thread before the error is logged
+            FileLog.getHandler().post(() -> contentAfterError.set(readContent(logFile)));
+            FileLog.print("Testing", "hoolalala");
+            FileLog.e("Testing", "abracadabra");
+
+            // The caller doesn't wait for the blocked writer
+            assertFalse(logFile.exists());
+        } finally {
+            blocked.countDown();
+        }
+        assertTrue(FileLog.flushAll(null));
+
+        // Both the error and the entry before it were written before the queued work
+        String content = contentAfterError.get();
+        assertTrue(content.contains("hoolalala"));
+        assertTrue(content.contains("abracadabra"));
+    }
+
+    @Test
+    public void testFilesRotatedBySize() throws Exception {
+        if (!FileLog.ENABLED) {
+            return;
+        }
+        char[] chars = new char[64 * 1024];
+        Arrays.fill(chars, 'a');
+        String longMessage = new String(chars);
+        for (long size = 0; size <= FileLog.MAX_FILE_SIZE; size += longMessage.length()) {
+            FileLog.print("Testing", longMessage);
+        }
+        FileLog.print("Testing", "hoolalala");
+        assertTrue(FileLog.flushAll(null));
+
+        // The full file was shifted, and a new one started after it
+        File previous = new File(mTempDir, "log-1");
+        assertTrue(previous.exists());
+        assertTrue(previous.length() >= FileLog.MAX_FILE_SIZE);
+        assertFalse(new File(mTempDir, "log-0").exists());
+
+        FileLog.print("Testing", "abracadabra");
+        StringWriter writer = new StringWriter();
+        assertTrue(FileLog.flushAll(new PrintWriter(writer)));
+        assertTrue(new File(mTempDir, "log-0").length() < FileLog.MAX_FILE_SIZE);
+        // Oldest file first
+        String dump = writer.toString();
+        assertTrue(dump.indexOf("hoolalala") < dump.indexOf("abracadabra"));
+    }
+
+    @Test
+    public void testOverflowDropsOldestEntries() throws Exception {
+        if (!FileLog.ENABLED) {
+            return;
+        }
+        CountDownLatch blocked = blockWriter();
+        try {
+            for (int i = 0; i < FileLog.RING_SIZE + 10; i++) {
+                FileLog.print("Testing", "entry-" + i + ";");
+            }
+        } finally {
+            blocked.countDown();
+        }
+        StringWriter writer = new StringWriter();
+        assertTrue(FileLog.flushAll(new PrintWriter(writer)));
+
+        String dump = writer.toString();
+        assertTrue(dump.contains("10 log entries dropped"));
+        assertFalse(dump.contains("entry-9;"));
+        assertTrue(dump.contains("entry-10;"));
+        assertTrue(dump.contains("entry-" + (FileLog.RING_SIZE + 9) + ";"));
+    }
+
+    /**
+     * Holds the logger thread, so that the entries are kept in memory until released.
+     */
+    private static CountDownLatch blockWriter() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(1);
+        FileLog.getHandler().post(() -> {
+            started.countDown();
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        started.await();
+        return latch;
+    }
+
+    private static String readContent(File file) {
+        try {
+            return new String(Files.readAllBytes(file.toPath()), UTF_8);
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private static String readString(DataInputStream in) throws Exception {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
 }
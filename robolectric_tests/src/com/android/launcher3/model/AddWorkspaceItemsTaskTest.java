@@ -170,7 +170,7 @@ public class AddWorkspaceItemsTaskTest {
 
         for (int x = 0; x < mIdp.numColumns; x++) {
             for (int y = 0; y < mIdp.numRows; y++) {
-                if (!occupancy.cells[x][y]) {
+                if (!occupancy.isOccupied(x, y)) {
                     continue;
                 }
 
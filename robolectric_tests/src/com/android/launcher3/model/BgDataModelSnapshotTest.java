@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import static com.android.launcher3.LauncherSettings.Favorites.CONTAINER_DESKTOP;
+import static com.android.launcher3.LauncherSettings.Favorites.CONTAINER_HOTSEAT;
+import static com.android.launcher3.LauncherSettings.Favorites.CONTAINER_HOTSEAT_PREDICTION;
+import static com.android.launcher3.Workspace.FIRST_SCREEN_ID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.android.launcher3.model.BgDataModel.FixedContainerItems;
+import com.android.launcher3.model.BgDataModel.Snapshot;
+import com.android.launcher3.model.data.ItemInfo;
+import com.android.launcher3.model.data.WorkspaceItemInfo;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Tests for {@link BgDataModel.Snapshot}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BgDataModelSnapshotTest {
+
+    private final BgDataModel mModel = new BgDataModel();
+
+    @Test
+    public void publish_withoutChanges_keepsSnapshot() {
+        Snapshot snapshot = mModel.getSnapshot();
+        assertSame(snapshot, mModel.publishSnapshot());
+
+        mModel.workspaceItems.add(newItem(1));
+        Snapshot changed = mModel.publishSnapshot();
+        assertEquals(snapshot.version + 1, changed.version);
+        assertSame(changed, mModel.publishSnapshot());
+        assertSame(changed, mModel.getSnapshot());
+    }
+
+    @Test
+    public void publish_sharesUnchangedCollections() {
+        mModel.workspaceItems.add(newItem(1));
+        Snapshot first = mModel.publishSnapshot();
+
+        mModel.extraItems.put(CONTAINER_HOTSEAT_PREDICTION,
+                new FixedContainerItems(CONTAINER_HOTSEAT_PREDICTION));
+        mModel.extraItems.get(CONTAINER_HOTSEAT_PREDICTION).items.add(newItem(2));
+        Snapshot second = mModel.publishSnapshot();
+
+        assertSame(first.workspaceItems, second.workspaceItems);
+        assertSame(first.appWidgets, second.appWidgets);
+        assertNull(first.getExtraItems(CONTAINER_HOTSEAT_PREDICTION));
+        assertEquals(1, second.getExtraItems(CONTAINER_HOTSEAT_PREDICTION).items.size());
+    }
+
+    @Test
+    public void snapshot_isNotAffectedByLaterChanges() {
+        ItemInfo item = newItem(1);
+        mModel.workspaceItems.add(item);
+        Snapshot snapshot = mModel.publishSnapshot();
+
+        mModel.workspaceItems.remove(item);
+        mModel.workspaceItems.add(newItem(2));
+        mModel.publishSnapshot();
+
+        assertEquals(1, snapshot.workspaceItems.size());
+        assertSame(item, snapshot.workspaceItems.get(0));
+        assertTrue(snapshot.getAllWorkspaceItems().contains(item));
+        try {
+            snapshot.workspaceItems.clear();
+            fail("Snapshot lists can't be modified");
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void clear_publishesEmptySnapshot() {
+        addItem(newItem(1, 3));
+        mModel.publishSnapshot();
+
+        mModel.clear();
+        Snapshot snapshot = mModel.getSnapshot();
+        assertTrue(snapshot.workspaceItems.isEmpty());
+        assertFalse(snapshot.getWorkspaceScreens().contains(3));
+        assertTrue(snapshot.getWorkspaceScreens().contains(FIRST_SCREEN_ID));
+    }
+
+    @Test
+    public void publish_afterMovingItemToAnotherScreen_updatesScreens() {
+        ItemInfo item = newItem(1, 1);
+        addItem(item);
+        addItem(newItem(2, 1));
+        Snapshot bound = mModel.publishSnapshot();
+        assertTrue(bound.getWorkspaceScreens().contains(1));
+        assertFalse(bound.getWorkspaceScreens().contains(2));
+
+        // Same as ModelWriter#moveItemInDatabase, which updates the item in place
+        item.screenId = 2;
+        Snapshot rebound = mModel.publishSnapshot();
+
+        assertEquals(bound.version + 1, rebound.version);
+        assertSame(bound.workspaceItems, rebound.workspaceItems);
+        assertEquals(mModel.collectWorkspaceScreens(), rebound.getWorkspaceScreens());
+        assertTrue(rebound.getWorkspaceScreens().contains(2));
+        assertFalse(bound.getWorkspaceScreens().contains(2));
+    }
+
+    @Test
+    public void publish_afterMovingItemOutOfWorkspace_updatesScreens() {
+        ItemInfo item = newItem(1, 4);
+        addItem(item);
+        addItem(newItem(2, 1));
+        assertTrue(mModel.publishSnapshot().getWorkspaceScreens().contains(4));
+
+        item.container = CONTAINER_HOTSEAT;
+        assertFalse(mModel.publishSnapshot().getWorkspaceScreens().contains(4));
+    }
+
+    private void addItem(ItemInfo item) {
+        mModel.workspaceItems.add(item);
+        mModel.itemsIdMap.put(item.id, item);
+    }
+
+    private static ItemInfo newItem(int id) {
+        return newItem(id, FIRST_SCREEN_ID);
+    }
+
+    private static ItemInfo newItem(int id, int screenId) {
+        WorkspaceItemInfo item = new WorkspaceItemInfo();
+        item.id = id;
+        item.container = CONTAINER_DESKTOP;
+        item.screenId = screenId;
+        return item;
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import static com.android.launcher3.LauncherSettings.Favorites.CONTAINER_DESKTOP;
+import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.android.launcher3.LauncherSettings.Favorites;
+import com.android.launcher3.model.data.FolderInfo;
+import com.android.launcher3.model.data.WorkspaceItemInfo;
+import com.android.launcher3.util.ContentWriter;
+import com.android.launcher3.util.LauncherModelHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.annotation.LooperMode.Mode;
+import org.robolectric.shadows.ShadowLog;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests for the update journal of {@link ModelWriter}
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(Mode.PAUSED)
+public class ModelWriterTest {
+
+    private Context mContext;
+    private LauncherModelHelper mModelHelper;
+    private ModelWriter mWriter;
+
+    private CountDownLatch mModelBlocked;
+
+    @Before
+    public void setup() {
+        mContext = RuntimeEnvironment.application;
+        mModelHelper = new LauncherModelHelper();
+        mWriter = mModelHelper.getModel().getWriter(false /* hasVerticalHotseat */,
+                false /* verifyChanges */);
+        ShadowLog.clear();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        unblockModel();
+    }
+
+    @Test
+    public void updatesOfAnItem_areMergedInOrder() throws Exception {
+        WorkspaceItemInfo item = addItem(1, CONTAINER_DESKTOP, 0, 0);
+
+        blockModel();
+        mWriter.modifyItemInDatabase(item, CONTAINER_DESKTOP, 0, 1, 1, 2, 2);
+        mWriter.moveItemInDatabase(item, CONTAINER_DESKTOP, 0, 3, 2);
+        unblockModel();
+
+        try (Cursor c = queryItem(item.id)) {
+            assertTrue(c.moveToNext());
+            // The later move replaces the cell of the resize, but keeps its span
+            assertEquals(3, c.getInt(c.getColumnIndex(Favorites.CELLX)));
+            assertEquals(2, c.getInt(c.getColumnIndex(Favorites.CELLY)));
+            assertEquals(2, c.getInt(c.getColumnIndex(Favorites.SPANX)));
+            assertEquals(2, c.getInt(c.getColumnIndex(Favorites.SPANY)));
+        }
+    }
+
+    @Test
+    public void updatesOfManyItems_areAllWritten() throws Exception {
+        WorkspaceItemInfo item1 = addItem(1, CONTAINER_DESKTOP, 0, 0);
+        WorkspaceItemInfo item2 = addItem(2, CONTAINER_DESKTOP, 1, 0);
+
+        blockModel();
+        mWriter.moveItemInDatabase(item1, CONTAINER_DESKTOP, 1, 2, 2);
+        mWriter.moveItemInDatabase(item2, CONTAINER_DESKTOP, 1, 3, 3);
+        unblockModel();
+
+        assertCell(item1.id, 2, 2);
+        assertCell(item2.id, 3, 3);
+    }
+
+    @Test
+    public void updateAfterAdd_isWrittenAfterAdd() throws Exception {
+        WorkspaceItemInfo item = addItem(1, CONTAINER_DESKTOP, 0, 0);
+
+        blockModel();
+        // Opens a batch, flushed before the add
+        mWriter.moveItemInDatabase(item, CONTAINER_DESKTOP, 0, 1, 0);
+        FolderInfo folder = new FolderInfo();
+        mWriter.addItemToDatabase(folder, CONTAINER_DESKTOP, 0, 2, 2);
+        mWriter.moveItemInDatabase(item, folder.id, 0, 0, 0);
+        unblockModel();
+
+        assertTrue(mModelHelper.getBgDataModel().folders.containsKey(folder.id));
+        assertFalse(mModelHelper.getBgDataModel().workspaceItems.contains(item));
+        // The folder already existed when the item was moved into it
+        for (ShadowLog.LogItem log : ShadowLog.getLogsForTag("ModelWriter")) {
+            assertFalse(log.msg, log.type == Log.ERROR);
+        }
+    }
+
+    @Test
+    public void updateAfterDelete_isWrittenAfterDelete() throws Exception {
+        FolderInfo folder = new FolderInfo();
+        folder.id = 1;
+        folder.container = CONTAINER_DESKTOP;
+        insertItem(folder.id, Favorites.ITEM_TYPE_FOLDER, CONTAINER_DESKTOP, 0, 0);
+        mModelHelper.executeSimpleTask(model -> {
+            model.addItem(mContext, folder, false);
+            return null;
+        });
+        WorkspaceItemInfo item = addItem(2, CONTAINER_DESKTOP, 1, 0);
+
+        blockModel();
+        mWriter.moveItemInDatabase(item, folder.id, 0, 0, 0);
+        // Deletes all the items in the folder, including the moved item
+        mWriter.deleteFolderAndContentsFromDatabase(folder);
+        // Updates a row which doesn't exist anymore
+        mWriter.moveItemInDatabase(item, CONTAINER_DESKTOP, 0, 1, 1);
+        unblockModel();
+
+        try (Cursor c = queryItem(item.id)) {
+            assertFalse(c.moveToNext());
+        }
+    }
+
+    private WorkspaceItemInfo addItem(int id, int container, int cellX, int cellY)
+            throws Exception {
+        WorkspaceItemInfo item = new WorkspaceItemInfo();
+        item.intent = new Intent().setComponent(new ComponentName("a", "b" + id));
+        item.id = id;
+        item.container = container;
+        item.cellX = cellX;
+        item.cellY = cellY;
+        insertItem(id, Favorites.ITEM_TYPE_APPLICATION, container, cellX, cellY);
+        mModelHelper.executeSimpleTask(model -> {
+            model.addItem(mContext, item, false);
+            return null;
+        });
+        return item;
+    }
+
+    private void insertItem(int id, int type, int container, int cellX, int cellY) {
+        ContentWriter writer = new ContentWriter(mContext)
+                .put(Favorites._ID, id)
+                .put(Favorites.ITEM_TYPE, type)
+                .put(Favorites.CONTAINER, container)
+                .put(Favorites.SCREEN, 0)
+                .put(Favorites.CELLX, cellX)
+                .put(Favorites.CELLY, cellY)
+                .put(Favorites.SPANX, 1)
+                .put(Favorites.SPANY, 1);
+        mContext.getContentResolver().insert(Favorites.CONTENT_URI, writer.getValues(mContext));
+    }
+
+    private Cursor queryItem(int id) {
+        return mContext.getContentResolver().query(Favorites.getContentUri(id), null, null,
+                null, null);
+    }
+
+    private void assertCell(int id, int cellX, int cellY) {
+        try (Cursor c = queryItem(id)) {
+            assertTrue(c.moveToNext());
+            assertEquals(cellX, c.getInt(c.getColumnIndex(Favorites.CELLX)));
+            assertEquals(cellY, c.getInt(c.getColumnIndex(Favorites.CELLY)));
+        }
+    }
+
+    /**
+     * Holds the model thread, so that the following writes are all queued before it runs them.
+     */
+    private void blockModel() {
+        CountDownLatch latch = new CountDownLatch(1);
+        mModelBlocked = latch;
+        MODEL_EXECUTOR.execute(() -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    /**
+     * Releases the model thread and waits for all the queued writes.
+     */
+    private void unblockModel() throws Exception {
+        if (mModelBlocked != null) {
+            mModelBlocked.countDown();
+            mModelBlocked = null;
+        }
+        MODEL_EXECUTOR.submit(() -> null).get();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Robolectric unit tests for {@link BitmapPool}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BitmapPoolTest {
+
+    private static final int SIZE = 64;
+    private static final long BITMAP_BYTES = SIZE * SIZE * 4;
+
+    @Test
+    public void borrow_afterRelease_reusesBitmap() {
+        BitmapPool pool = new BitmapPool(BITMAP_BYTES);
+        Bitmap bitmap = pool.borrow(SIZE, SIZE, Config.ARGB_8888);
+        pool.release(bitmap);
+
+        assertThat(pool.getSize()).isEqualTo(BITMAP_BYTES);
+        assertThat(pool.borrow(SIZE, SIZE, Config.ARGB_8888)).isSameInstanceAs(bitmap);
+        assertThat(pool.getSize()).isEqualTo(0);
+    }
+
+    @Test
+    public void poll_largerThanPooled_returnsNull() {
+        BitmapPool pool = new BitmapPool(BITMAP_BYTES);
+        pool.release(Bitmap.createBitmap(SIZE, SIZE, Config.ARGB_8888));
+
+        assertThat(pool.poll(SIZE * 2, SIZE * 2, Config.ARGB_8888)).isNull();
+    }
+
+    @Test
+    public void release_overBudget_isNotPooled() {
+        BitmapPool pool = new BitmapPool(BITMAP_BYTES);
+        pool.release(Bitmap.createBitmap(SIZE, SIZE, Config.ARGB_8888));
+        pool.release(Bitmap.createBitmap(SIZE, SIZE, Config.ARGB_8888));
+
+        assertThat(pool.getSize()).isEqualTo(BITMAP_BYTES);
+    }
+
+    @Test
+    public void release_immutableBitmap_isNotPooled() {
+        BitmapPool pool = new BitmapPool(BITMAP_BYTES);
+        Bitmap bitmap = Bitmap.createBitmap(SIZE, SIZE, Config.ARGB_8888);
+        pool.release(bitmap.copy(Config.ARGB_8888, false /* isMutable */));
+
+        assertThat(pool.getSize()).isEqualTo(0);
+    }
+
+    @Test
+    public void onTrimMemory_uiHidden_emptiesPool() {
+        BitmapPool pool = new BitmapPool(BITMAP_BYTES * 2);
+        pool.release(Bitmap.createBitmap(SIZE, SIZE, Config.ARGB_8888));
+        pool.release(Bitmap.createBitmap(SIZE, SIZE, Config.ARGB_8888));
+
+        pool.onTrimMemory(TRIM_MEMORY_UI_HIDDEN);
+
+        assertThat(pool.getSize()).isEqualTo(0);
+        assertThat(pool.poll(SIZE, SIZE, Config.ARGB_8888)).isNull();
+    }
+}
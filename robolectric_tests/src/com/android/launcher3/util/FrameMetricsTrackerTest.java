@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Robolectric unit tests for {@link FrameMetricsTracker}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FrameMetricsTrackerTest {
+
+    private static final long FRAME_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+
+    @Test
+    public void stats_reportsPercentilesAndJank() {
+        FrameMetricsTracker.Stats stats = new FrameMetricsTracker.Stats("test");
+        for (int i = 0; i < 90; i++) {
+            stats.record(TimeUnit.MICROSECONDS.toNanos(8500), FRAME_INTERVAL_NANOS);
+        }
+        for (int i = 0; i < 10; i++) {
+            stats.record(TimeUnit.MILLISECONDS.toNanos(40), FRAME_INTERVAL_NANOS);
+        }
+
+        assertThat(stats.getFrameCount()).isEqualTo(100);
+        assertThat(stats.getJankCount()).isEqualTo(10);
+        assertThat(stats.getPercentileMillis(50)).isEqualTo(9);
+        assertThat(stats.getPercentileMillis(90)).isEqualTo(9);
+        assertThat(stats.getPercentileMillis(99)).isEqualTo(41);
+        assertThat(stats.getMaxMillis()).isEqualTo(40f);
+    }
+
+    @Test
+    public void stats_withoutFrames_reportsZero() {
+        FrameMetricsTracker.Stats stats = new FrameMetricsTracker.Stats("test");
+        assertThat(stats.getPercentileMillis(99)).isEqualTo(0);
+    }
+
+    @Test
+    public void onFrame_attributesFramesToRunningInteractions() {
+        FrameMetricsTracker tracker = new FrameMetricsTracker();
+        long beforeBegin = System.nanoTime() - 1;
+        tracker.begin("first");
+        tracker.begin("second");
+
+        tracker.onFrame(beforeBegin, FRAME_INTERVAL_NANOS);
+        tracker.onFrame(System.nanoTime(), FRAME_INTERVAL_NANOS);
+
+        ArrayList<FrameMetricsTracker.Stats> stats = tracker.getStats();
+        assertThat(stats).hasSize(2);
+        assertThat(stats.get(0).getFrameCount()).isEqualTo(1);
+        assertThat(stats.get(1).getFrameCount()).isEqualTo(1);
+
+        tracker.reset();
+        assertThat(tracker.getStats()).isEmpty();
+    }
+}
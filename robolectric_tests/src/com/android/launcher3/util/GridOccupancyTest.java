@@ -8,6 +8,8 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 
+import java.util.Random;
+
 /**
  * Unit tests for {@link GridOccupancy}
  */
@@ -52,13 +54,171 @@ public class GridOccupancyTest {
         assertFalse(grid.isRegionVacant(0, 0, 2, 1));
     }
 
+    @Test
+    public void testGetVacantRegionStarts() {
+        GridOccupancy grid = initGrid(3,
+                0, 0, 1, 0, 0, 0,
+                0, 0, 0, 0, 0, 1,
+                1, 0, 0, 0, 0, 0
+        );
+
+        assertEquals(0b111011, grid.getVacantRegionStarts(0, 1, 1));
+        assertEquals(0b001001, grid.getVacantRegionStarts(0, 2, 2));
+        assertEquals(0b000110, grid.getVacantRegionStarts(1, 3, 2));
+        assertEquals(0, grid.getVacantRegionStarts(1, 3, 3));
+        assertEquals(0, grid.getVacantRegionStarts(2, 1, 2));
+    }
+
+    @Test
+    public void testOverlaps() {
+        GridOccupancy grid = initGrid(3,
+                0, 0, 1, 0,
+                0, 0, 0, 0,
+                1, 0, 0, 0
+        );
+        GridOccupancy block = initGrid(2,
+                1, 0,
+                1, 1
+        );
+
+        assertTrue(grid.overlaps(block, 0, 1));
+        assertTrue(grid.overlaps(block, 2, 0));
+        assertFalse(grid.overlaps(block, 1, 0));
+        assertFalse(grid.overlaps(block, 1, 1));
+
+        // Only the top left corner of a block as large as the grid is used
+        GridOccupancy largeBlock = new GridOccupancy(4, 3);
+        largeBlock.markCells(0, 0, 1, 1, true);
+        assertTrue(grid.overlaps(largeBlock, 0, 2));
+        assertFalse(grid.overlaps(largeBlock, 1, 2));
+    }
+
+    @Test
+    public void testEquals() {
+        GridOccupancy grid = initGrid(2,
+                1, 0, 0,
+                0, 0, 1
+        );
+        GridOccupancy other = new GridOccupancy(3, 2);
+        assertFalse(grid.equals(other));
+
+        grid.copyTo(other);
+        assertTrue(grid.equals(other));
+        assertEquals(grid.hashCode(), other.hashCode());
+        assertFalse(grid.equals(new GridOccupancy(4, 2)));
+    }
+
+    @Test
+    public void testMarkCellsAndCopy() {
+        GridOccupancy grid = new GridOccupancy(GridOccupancy.MAX_COUNT_X, 2);
+        grid.markCells(60, 0, 10, 2, true);
+        assertTrue(grid.isOccupied(63, 1));
+        assertFalse(grid.isOccupied(59, 0));
+        assertTrue(grid.isRegionVacant(0, 0, 60, 2));
+        assertFalse(grid.isRegionVacant(0, 0, 61, 1));
+
+        GridOccupancy copy = new GridOccupancy(GridOccupancy.MAX_COUNT_X, 2);
+        grid.copyTo(copy);
+        int[] vacant = new int[2];
+        assertTrue(copy.findVacantCell(vacant, 60, 2));
+        assertEquals(0, vacant[0]);
+        assertFalse(copy.findVacantCell(vacant, 61, 1));
+
+        copy.clear();
+        assertTrue(copy.isRegionVacant(0, 0, GridOccupancy.MAX_COUNT_X, 2));
+    }
+
+    @Test
+    public void testMatchesPerCellGrid() {
+        int[][] sizes = {{5, 5}, {16, 16}, {32, 24}, {GridOccupancy.MAX_COUNT_X, 3}};
+        for (int[] size : sizes) {
+            int countX = size[0];
+            int countY = size[1];
+            Random random = new Random(countX * 31 + countY);
+            GridOccupancy grid = new GridOccupancy(countX, countY);
+            boolean[][] cells = new boolean[countX][countY];
+            int[] vacant = new int[2];
+            for (int i = 0; i < 500; i++) {
+                int spanX = 1 + random.nextInt(Math.min(countX, 4));
+                int spanY = 1 + random.nextInt(Math.min(countY, 3));
+                int x = random.nextInt(countX - spanX + 1);
+                int y = random.nextInt(countY - spanY + 1);
+                String message = countX + "x" + countY + ", step " + i;
+
+                assertEquals(message, isRegionVacant(cells, x, y, spanX, spanY),
+                        grid.isRegionVacant(x, y, spanX, spanY));
+                assertEquals(message, getVacantRegionStarts(cells, y, spanX, spanY),
+                        grid.getVacantRegionStarts(y, spanX, spanY));
+                int[] expected = findVacantCell(cells, spanX, spanY);
+                assertEquals(message, expected != null, grid.findVacantCell(vacant, spanX, spanY));
+                if (expected != null) {
+                    assertEquals(message, expected[0], vacant[0]);
+                    assertEquals(message, expected[1], vacant[1]);
+                }
+
+                // Fill the grid more often than it is cleared, so that it is rarely empty
+                boolean value = random.nextInt(3) != 0;
+                grid.markCells(x, y, spanX, spanY, value);
+                for (int cx = x; cx < x + spanX; cx++) {
+                    for (int cy = y; cy < y + spanY; cy++) {
+                        cells[cx][cy] = value;
+                    }
+                }
+                if (random.nextInt(50) == 0) {
+                    grid.clear();
+                    cells = new boolean[countX][countY];
+                }
+                GridOccupancy copy = new GridOccupancy(countX, countY);
+                grid.copyTo(copy);
+                for (int cx = 0; cx < countX; cx++) {
+                    for (int cy = 0; cy < countY; cy++) {
+                        assertEquals(message, cells[cx][cy], copy.isOccupied(cx, cy));
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean isRegionVacant(boolean[][] cells, int x, int y, int spanX,
+            int spanY) {
+        for (int cx = x; cx < x + spanX; cx++) {
+            for (int cy = y; cy < y + spanY; cy++) {
+                if (cells[cx][cy]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static long getVacantRegionStarts(boolean[][] cells, int y, int spanX, int spanY) {
+        long starts = 0;
+        for (int x = 0; x + spanX <= cells.length; x++) {
+            if (isRegionVacant(cells, x, y, spanX, spanY)) {
+                starts |= 1L << x;
+            }
+        }
+        return starts;
+    }
+
+    private static int[] findVacantCell(boolean[][] cells, int spanX, int spanY) {
+        for (int y = 0; y + spanY <= cells[0].length; y++) {
+            for (int x = 0; x + spanX <= cells.length; x++) {
+                if (isRegionVacant(cells, x, y, spanX, spanY)) {
+                    return new int[] {x, y};
+                }
+            }
+        }
+        return null;
+    }
+
     private GridOccupancy initGrid(int rows, int... cells) {
         int cols = cells.length / rows;
         int i = 0;
         GridOccupancy grid = new GridOccupancy(cols, rows);
         for (int y = 0; y < rows; y++) {
             for (int x = 0; x < cols; x++) {
-                grid.cells[x][y] = cells[i] != 0;
+                grid.markCells(x, y, 1, 1, cells[i] != 0);
                 i++;
             }
         }
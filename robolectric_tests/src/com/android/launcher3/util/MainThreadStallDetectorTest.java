@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import static com.android.launcher3.util.MainThreadStallDetector.CATEGORY_BINDER;
+import static com.android.launcher3.util.MainThreadStallDetector.CATEGORY_DATASTORE;
+import static com.android.launcher3.util.MainThreadStallDetector.CATEGORY_DISK;
+import static com.android.launcher3.util.MainThreadStallDetector.CATEGORY_OTHER;
+import static com.android.launcher3.util.MainThreadStallDetector.CATEGORY_SQLITE;
+
+import static org.junit.Assert.assertEquals;
+
+import com.android.launcher3.util.MainThreadStallDetector.Site;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Tests for {@link MainThreadStallDetector}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MainThreadStallDetectorTest {
+
+    private static final StackTraceElement LAUNCHER_FRAME =
+            frame("com.android.launcher3.folder.FolderIcon", "inflateFolderAndIcon");
+
+    @Test
+    public void getCategory_findsBlockingCallAboveCallSite() {
+        assertEquals(CATEGORY_DATASTORE, MainThreadStallDetector.getCategory(stack(
+                frame("kotlinx.coroutines.BuildersKt", "runBlocking"),
+                frame("com.patrykmichalik.preferencemanager.PreferenceExtensionsKt",
+                        "firstBlocking"))));
+        assertEquals(CATEGORY_SQLITE, MainThreadStallDetector.getCategory(stack(
+                frame("android.database.sqlite.SQLiteConnection", "nativeExecute"))));
+        assertEquals(CATEGORY_BINDER, MainThreadStallDetector.getCategory(stack(
+                frame("android.os.BinderProxy", "transactNative"))));
+        assertEquals(CATEGORY_DISK, MainThreadStallDetector.getCategory(stack(
+                frame("libcore.io.Linux", "read"),
+                frame("java.io.FileInputStream", "read"))));
+        assertEquals(CATEGORY_OTHER, MainThreadStallDetector.getCategory(stack(
+                frame("android.view.View", "draw"))));
+    }
+
+    @Test
+    public void getCategory_prefersDataStoreOverItsDiskAccess() {
+        assertEquals(CATEGORY_DATASTORE, MainThreadStallDetector.getCategory(stack(
+                frame("java.io.FileInputStream", "read"),
+                frame("androidx.datastore.core.SingleProcessDataStore", "readData"))));
+    }
+
+    @Test
+    public void getCategory_ignoresFramesBelowCallSite() {
+        StackTraceElement[] stack = {
+                frame("android.view.View", "draw"),
+                LAUNCHER_FRAME,
+                frame("android.os.BinderProxy", "transactNative")};
+        assertEquals(CATEGORY_OTHER, MainThreadStallDetector.getCategory(stack));
+    }
+
+    @Test
+    public void getCallSite_returnsInnermostLauncherFrame() {
+        StackTraceElement[] stack = stack(
+                frame("android.database.sqlite.SQLiteDatabase", "query"),
+                frame("app.lawnchair.LawnchairLauncher", "onCreate"));
+        assertEquals(stack[1].toString(), MainThreadStallDetector.getCallSite(stack));
+    }
+
+    @Test
+    public void getCallSite_withoutLauncherFrame_returnsTopFrame() {
+        StackTraceElement[] stack = {frame("android.os.MessageQueue", "nativePollOnce")};
+        assertEquals(stack[0].toString(), MainThreadStallDetector.getCallSite(stack));
+        assertEquals("unknown", MainThreadStallDetector.getCallSite(new StackTraceElement[0]));
+    }
+
+    @Test
+    public void site_recordsHistogram() {
+        Site site = new Site(CATEGORY_SQLITE + " site");
+        site.record(10);
+        site.record(20);
+        site.record(150);
+        site.record(10000);
+
+        assertEquals(4, site.getCount());
+        assertEquals(2, site.getBucketCount(0));
+        assertEquals(1, site.getBucketCount(3));
+        assertEquals(1, site.getBucketCount(7));
+    }
+
+    /**
+     * Returns a main thread stack with {@param frames} on top of a launcher frame.
+     */
+    private static StackTraceElement[] stack(StackTraceElement... frames) {
+        StackTraceElement[] stack = new StackTraceElement[frames.length + 2];
+        System.arraycopy(frames, 0, stack, 0, frames.length);
+        stack[frames.length] = LAUNCHER_FRAME;
+        stack[frames.length + 1] = frame("android.os.Looper", "loop");
+        return stack;
+    }
+
+    private static StackTraceElement frame(String className, String methodName) {
+        return new StackTraceElement(className, methodName, null, -1);
+    }
+}
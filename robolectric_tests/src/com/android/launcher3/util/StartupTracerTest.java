@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+
+/**
+ * Robolectric unit tests for {@link StartupTracer}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class StartupTracerTest {
+
+    @Test
+    public void getEntries_returnsRecordedPhases() {
+        StartupTracer tracer = new StartupTracer(4);
+        tracer.endPhase("phase", tracer.beginPhase());
+        tracer.mark("mark");
+
+        ArrayList<StartupTracer.Entry> entries = tracer.getEntries();
+        assertThat(entries).hasSize(2);
+        assertThat(entries.get(0).name).isEqualTo("phase");
+        assertThat(entries.get(0).isInstant()).isFalse();
+        assertThat(entries.get(1).name).isEqualTo("mark");
+        assertThat(entries.get(1).isInstant()).isTrue();
+    }
+
+    @Test
+    public void getEntries_whenFull_keepsNewestEntries() {
+        StartupTracer tracer = new StartupTracer(4);
+        for (int i = 0; i < 6; i++) {
+            tracer.mark("mark" + i);
+        }
+
+        ArrayList<StartupTracer.Entry> entries = tracer.getEntries();
+        assertThat(entries).hasSize(4);
+        assertThat(entries.get(0).name).isEqualTo("mark2");
+        assertThat(entries.get(3).name).isEqualTo("mark5");
+    }
+
+    @Test
+    public void toChromeTrace_containsThreadNameAndEvents() throws Exception {
+        StartupTracer tracer = new StartupTracer(4);
+        tracer.endPhase("phase", tracer.beginPhase());
+        tracer.mark("mark");
+
+        JSONArray events = tracer.toChromeTrace().getJSONArray("traceEvents");
+        assertThat(events.length()).isEqualTo(3);
+        assertThat(events.getJSONObject(0).getString("ph")).isEqualTo("M");
+        JSONObject phase = events.getJSONObject(1);
+        assertThat(phase.getString("name")).isEqualTo("phase");
+        assertThat(phase.getString("ph")).isEqualTo("X");
+        assertThat(events.getJSONObject(2).getString("ph")).isEqualTo("i");
+    }
+}
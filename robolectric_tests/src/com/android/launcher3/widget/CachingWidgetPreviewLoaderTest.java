@@ -18,6 +18,7 @@ package com.android.launcher3.widget;
 import static com.google.common.truth.Truth.assertThat;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.verify;
@@ -86,7 +87,8 @@ public class CachingWidgetPreviewLoaderTest {
         mTestActivity = Robolectric.buildActivity(TestActivity.class).setup().get();
         mTestActivity.setDeviceProfile(mDeviceProfile);
 
-        when(mDelegate.loadPreview(any(), any(), any(), any())).thenReturn(mCancellationSignal);
+        when(mDelegate.loadPreview(any(), any(), any(), any(), anyInt()))
+                .thenReturn(mCancellationSignal);
 
         mProviderInfo.provider = TEST_PROVIDER;
         when(mProviderInfo.getProfile()).thenReturn(new UserHandle(0));
@@ -148,14 +150,24 @@ public class CachingWidgetPreviewLoaderTest {
     public void loadPreview_notInCache_shouldStartLoading() {
         mLoader.loadPreview(mTestActivity, mWidgetItem, SIZE_10_10, mPreviewLoadedCallback);
 
-        verify(mDelegate).loadPreview(eq(mTestActivity), eq(mWidgetItem), eq(SIZE_10_10), any());
+        verify(mDelegate).loadPreview(eq(mTestActivity), eq(mWidgetItem), eq(SIZE_10_10), any(),
+                anyInt());
         verifyZeroInteractions(mPreviewLoadedCallback);
     }
 
+    @Test
+    public void loadPreview_withPriority_shouldPassPriorityToDelegate() {
+        mLoader.loadPreview(mTestActivity, mWidgetItem, SIZE_10_10, mPreviewLoadedCallback,
+                WidgetPreviewLoader.PRIORITY_PREFETCH);
+
+        verify(mDelegate).loadPreview(any(), any(), any(), any(),
+                eq(WidgetPreviewLoader.PRIORITY_PREFETCH));
+    }
+
     @Test
     public void loadPreview_thenLoaded_shouldCallBack() {
         mLoader.loadPreview(mTestActivity, mWidgetItem, SIZE_10_10, mPreviewLoadedCallback);
-        verify(mDelegate).loadPreview(any(), any(), any(), mCallbackCaptor.capture());
+        verify(mDelegate).loadPreview(any(), any(), any(), mCallbackCaptor.capture(), anyInt());
         WidgetPreviewLoadedCallback loaderCallback = mCallbackCaptor.getValue();
 
         loaderCallback.onPreviewLoaded(BITMAP);
@@ -191,7 +203,7 @@ public class CachingWidgetPreviewLoaderTest {
         CancellationSignal cancellationSignal1 =
                 mLoader.loadPreview(mTestActivity, mWidgetItem, SIZE_10_10, mPreviewLoadedCallback);
         mLoader.loadPreview(mTestActivity, mWidgetItem, SIZE_10_10, mPreviewLoadedCallback2);
-        verify(mDelegate).loadPreview(any(), any(), any(), mCallbackCaptor.capture());
+        verify(mDelegate).loadPreview(any(), any(), any(), mCallbackCaptor.capture(), anyInt());
         WidgetPreviewLoadedCallback loaderCallback = mCallbackCaptor.getValue();
 
         cancellationSignal1.cancel();
@@ -224,7 +236,7 @@ public class CachingWidgetPreviewLoaderTest {
         mLoader.loadPreview(mTestActivity, mWidgetItem, SIZE_10_10, mPreviewLoadedCallback);
         mLoader.loadPreview(mTestActivity, mWidgetItem, SIZE_10_10, mPreviewLoadedCallback2);
 
-        verify(mDelegate).loadPreview(any(), any(), any(), any());
+        verify(mDelegate).loadPreview(any(), any(), any(), any(), anyInt());
     }
 
     @Test
@@ -232,7 +244,7 @@ public class CachingWidgetPreviewLoaderTest {
         mLoader.loadPreview(mTestActivity, mWidgetItem, SIZE_10_10, mPreviewLoadedCallback);
         mLoader.loadPreview(mTestActivity, mWidgetItem, SIZE_10_10, mPreviewLoadedCallback2);
 
-        verify(mDelegate).loadPreview(any(), any(), any(), mCallbackCaptor.capture());
+        verify(mDelegate).loadPreview(any(), any(), any(), mCallbackCaptor.capture(), anyInt());
         WidgetPreviewLoadedCallback loaderCallback = mCallbackCaptor.getValue();
 
         loaderCallback.onPreviewLoaded(BITMAP);
@@ -256,7 +268,7 @@ public class CachingWidgetPreviewLoaderTest {
     public void loadPreview_thenLoaded_thenCancelled_shouldNotRemovePreviewFromCache() {
         CancellationSignal cancellationSignal =
                 mLoader.loadPreview(mTestActivity, mWidgetItem, SIZE_10_10, mPreviewLoadedCallback);
-        verify(mDelegate).loadPreview(any(), any(), any(), mCallbackCaptor.capture());
+        verify(mDelegate).loadPreview(any(), any(), any(), mCallbackCaptor.capture(), anyInt());
         WidgetPreviewLoadedCallback loaderCallback = mCallbackCaptor.getValue();
         loaderCallback.onPreviewLoaded(BITMAP);
 
@@ -401,7 +413,7 @@ public class CachingWidgetPreviewLoaderTest {
     private void loadPreviewIntoCache(WidgetItem widgetItem, Size size, Bitmap bitmap) {
         reset(mDelegate);
         mLoader.loadPreview(mTestActivity, widgetItem, size, ignored -> {});
-        verify(mDelegate).loadPreview(any(), any(), any(), mCallbackCaptor.capture());
+        verify(mDelegate).loadPreview(any(), any(), any(), mCallbackCaptor.capture(), anyInt());
         WidgetPreviewLoadedCallback loaderCallback = mCallbackCaptor.getValue();
 
         loaderCallback.onPreviewLoaded(bitmap);
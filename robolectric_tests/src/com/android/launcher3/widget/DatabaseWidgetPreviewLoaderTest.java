@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.widget;
+
+import static android.os.Looper.getMainLooper;
+
+import static com.android.launcher3.widget.WidgetPreviewLoader.PRIORITY_PREFETCH;
+import static com.android.launcher3.widget.WidgetPreviewLoader.PRIORITY_VISIBLE;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.ComponentName;
+import android.graphics.Bitmap;
+import android.os.CancellationSignal;
+import android.os.UserHandle;
+import android.util.Size;
+
+import androidx.annotation.NonNull;
+
+import com.android.launcher3.DeviceProfile;
+import com.android.launcher3.InvariantDeviceProfile;
+import com.android.launcher3.icons.IconCache;
+import com.android.launcher3.model.WidgetItem;
+import com.android.launcher3.testing.TestActivity;
+import com.android.launcher3.widget.WidgetPreviewLoader.WidgetPreviewLoadedCallback;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.annotation.LooperMode.Mode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Tests for the request scheduling of {@link DatabaseWidgetPreviewLoader}. Previews are read from
+ * a fake store, which can hold the preview threads to control which requests are queued.
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(Mode.PAUSED)
+public class DatabaseWidgetPreviewLoaderTest {
+
+    private static final long TIMEOUT_MS = 5000;
+    private static final String TEST_PACKAGE = "com.example.test";
+    private static final Size SIZE_10_10 = new Size(10, 10);
+    private static final Size SIZE_20_20 = new Size(20, 20);
+
+    // Hold both preview threads, as many as the loader uses
+    private static final String HOLD_1 = "Hold1";
+    private static final String HOLD_2 = "Hold2";
+
+    @Mock private IconCache mIconCache;
+    @Mock private DeviceProfile mDeviceProfile;
+
+    private final FakePreviewStore mStore = new FakePreviewStore();
+    private InvariantDeviceProfile mTestProfile;
+    private TestActivity mTestActivity;
+    private DatabaseWidgetPreviewLoader mLoader;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mTestActivity = Robolectric.buildActivity(TestActivity.class).setup().get();
+        mTestActivity.setDeviceProfile(mDeviceProfile);
+
+        mTestProfile = new InvariantDeviceProfile();
+        mTestProfile.numRows = 5;
+        mTestProfile.numColumns = 5;
+
+        mLoader = new DatabaseWidgetPreviewLoader(
+                RuntimeEnvironment.application, mIconCache, mStore);
+    }
+
+    @After
+    public void tearDown() {
+        mStore.releaseAll();
+    }
+
+    @Test
+    public void loadPreview_sameKeyTwice_shouldLoadOnce() throws Exception {
+        RecordingCallback callback1 = new RecordingCallback();
+        RecordingCallback callback2 = new RecordingCallback();
+
+        loadPreview("A", SIZE_10_10, callback1, PRIORITY_VISIBLE);
+        loadPreview("A", SIZE_10_10, callback2, PRIORITY_PREFETCH);
+        waitFor(() -> callback1.mPreview != null && callback2.mPreview != null);
+
+        assertEquals(List.of("A"), mStore.getReads());
+        assertSame(callback1.mPreview, callback2.mPreview);
+    }
+
+    @Test
+    public void loadPreview_sameComponentOtherSize_shouldLoadBoth() throws Exception {
+        RecordingCallback callback1 = new RecordingCallback();
+        RecordingCallback callback2 = new RecordingCallback();
+
+        loadPreview("A", SIZE_10_10, callback1, PRIORITY_VISIBLE);
+        loadPreview("A", SIZE_20_20, callback2, PRIORITY_VISIBLE);
+        waitFor(() -> callback1.mPreview != null && callback2.mPreview != null);
+
+        assertEquals(List.of("A", "A"), mStore.getReads());
+        assertEquals(10, callback1.mPreview.getWidth());
+        assertEquals(20, callback2.mPreview.getWidth());
+    }
+
+    @Test
+    public void loadPreview_sameKeyTwice_cancelOne_shouldCallBackOther() throws Exception {
+        holdPreviewThreads();
+        RecordingCallback callback1 = new RecordingCallback();
+        RecordingCallback callback2 = new RecordingCallback();
+
+        CancellationSignal signal1 = loadPreview("A", SIZE_10_10, callback1, PRIORITY_VISIBLE);
+        loadPreview("A", SIZE_10_10, callback2, PRIORITY_VISIBLE);
+        signal1.cancel();
+        mStore.releaseAll();
+        waitFor(() -> callback2.mPreview != null);
+
+        assertTrue(mStore.getReads().contains("A"));
+        assertFalse(callback1.mLoaded);
+    }
+
+    @Test
+    public void loadPreview_allCancelledWhileQueued_shouldNotReadStore() throws Exception {
+        holdPreviewThreads();
+        RecordingCallback callback1 = new RecordingCallback();
+        RecordingCallback callback2 = new RecordingCallback();
+        RecordingCallback callbackB = new RecordingCallback();
+
+        CancellationSignal signal1 = loadPreview("A", SIZE_10_10, callback1, PRIORITY_VISIBLE);
+        CancellationSignal signal2 = loadPreview("A", SIZE_10_10, callback2, PRIORITY_VISIBLE);
+        signal1.cancel();
+        signal2.cancel();
+        // Has a lower priority, so it is read after the cancelled request would have been
+        loadPreview("B", SIZE_10_10, callbackB, PRIORITY_PREFETCH);
+        mStore.release(HOLD_1);
+        waitFor(() -> callbackB.mPreview != null);
+
+        assertFalse(mStore.getReads().contains("A"));
+        assertFalse(callback1.mLoaded);
+        assertFalse(callback2.mLoaded);
+    }
+
+    @Test
+    public void queuedRequests_shouldLoadByPriorityThenNewestFirst() throws Exception {
+        holdPreviewThreads();
+        RecordingCallback lastCallback = new RecordingCallback();
+
+        loadPreview("Prefetch1", SIZE_10_10, lastCallback, PRIORITY_PREFETCH);
+        loadPreview("Visible1", SIZE_10_10, new RecordingCallback(), PRIORITY_VISIBLE);
+        loadPreview("Prefetch2", SIZE_10_10, new RecordingCallback(), PRIORITY_PREFETCH);
+        loadPreview("Visible2", SIZE_10_10, new RecordingCallback(), PRIORITY_VISIBLE);
+        // A single thread drains the queue, so that the reads happen in the queue order
+        mStore.release(HOLD_1);
+        waitFor(() -> lastCallback.mPreview != null);
+
+        assertEquals(Arrays.asList("Visible2", "Visible1", "Prefetch2", "Prefetch1"),
+                getReadsAfterHold());
+    }
+
+    @Test
+    public void repeatedRequest_whileQueued_shouldMoveToFront() throws Exception {
+        holdPreviewThreads();
+        RecordingCallback callback1 = new RecordingCallback();
+        RecordingCallback callback2 = new RecordingCallback();
+        RecordingCallback lastCallback = new RecordingCallback();
+
+        loadPreview("A", SIZE_10_10, callback1, PRIORITY_PREFETCH);
+        loadPreview("B", SIZE_10_10, lastCallback, PRIORITY_PREFETCH);
+        loadPreview("C", SIZE_10_10, new RecordingCallback(), PRIORITY_PREFETCH);
+        loadPreview("A", SIZE_10_10, callback2, PRIORITY_VISIBLE);
+        mStore.release(HOLD_1);
+        waitFor(() -> lastCallback.mPreview != null);
+
+        assertEquals(Arrays.asList("A", "C", "B"), getReadsAfterHold());
+        assertSame(callback1.mPreview, callback2.mPreview);
+    }
+
+    @Test
+    public void repeatedRequest_withLowerPriority_shouldKeepPosition() throws Exception {
+        holdPreviewThreads();
+        RecordingCallback lastCallback = new RecordingCallback();
+
+        loadPreview("A", SIZE_10_10, lastCallback, PRIORITY_VISIBLE);
+        loadPreview("B", SIZE_10_10, new RecordingCallback(), PRIORITY_VISIBLE);
+        loadPreview("A", SIZE_10_10, new RecordingCallback(), PRIORITY_PREFETCH);
+        mStore.release(HOLD_1);
+        waitFor(() -> lastCallback.mPreview != null);
+
+        assertEquals(Arrays.asList("B", "A"), getReadsAfterHold());
+    }
+
+    /**
+     * Occupies both preview threads with reads which don't return until they are released.
+     */
+    private void holdPreviewThreads() throws InterruptedException {
+        mStore.hold(HOLD_1);
+        mStore.hold(HOLD_2);
+        loadPreview(HOLD_1, SIZE_10_10, new RecordingCallback(), PRIORITY_VISIBLE);
+        loadPreview(HOLD_2, SIZE_10_10, new RecordingCallback(), PRIORITY_VISIBLE);
+        assertTrue(mStore.mHeldReads.tryAcquire(2, TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    private List<String> getReadsAfterHold() {
+        List<String> reads = new ArrayList<>(mStore.getReads());
+        reads.remove(HOLD_1);
+        reads.remove(HOLD_2);
+        return reads;
+    }
+
+    private CancellationSignal loadPreview(String className, Size size,
+            WidgetPreviewLoadedCallback callback, int priority) {
+        LauncherAppWidgetProviderInfo providerInfo = mock(LauncherAppWidgetProviderInfo.class);
+        providerInfo.provider = new ComponentName(TEST_PACKAGE, className);
+        when(providerInfo.getProfile()).thenReturn(new UserHandle(0));
+        WidgetItem item = new WidgetItem(providerInfo, mTestProfile, mIconCache);
+        return mLoader.loadPreview(mTestActivity, item, size, callback, priority);
+    }
+
+    /**
+     * Runs the main looper, where previews are delivered, until {@param condition} is met.
+     */
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            shadowOf(getMainLooper()).idle();
+            if (condition.getAsBoolean()) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("Timed out waiting for previews");
+    }
+
+    private static class RecordingCallback implements WidgetPreviewLoadedCallback {
+
+        Bitmap mPreview;
+        boolean mLoaded;
+
+        @Override
+        public void onPreviewLoaded(@NonNull Bitmap preview) {
+            assertNotNull(preview);
+            mPreview = preview;
+            mLoaded = true;
+        }
+    }
+
+    /**
+     * Store which has a preview of the requested size for every component, and records the
+     * order of the reads.
+     */
+    private static class FakePreviewStore implements WidgetPreviewStore {
+
+        final Semaphore mHeldReads = new Semaphore(0);
+        private final Map<String, CountDownLatch> mHolds = new ConcurrentHashMap<>();
+        private final List<String> mReads = Collections.synchronizedList(new ArrayList<>());
+
+        void hold(String className) {
+            mHolds.put(className, new CountDownLatch(1));
+        }
+
+        void release(String className) {
+            mHolds.remove(className).countDown();
+        }
+
+        void releaseAll() {
+            for (String className : new ArrayList<>(mHolds.keySet())) {
+                release(className);
+            }
+        }
+
+        List<String> getReads() {
+            synchronized (mReads) {
+                return new ArrayList<>(mReads);
+            }
+        }
+
+        @Override
+        public Bitmap read(ComponentName component, long userSerial, String size,
+                Bitmap recycle, BooleanSupplier isCancelled) {
+            String className = component.getClassName();
+            mReads.add(className);
+            CountDownLatch hold = mHolds.get(className);
+            if (hold != null) {
+                mHeldReads.release();
+                try {
+                    hold.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            String[] dimensions = size.split("x");
+            return Bitmap.createBitmap(Integer.parseInt(dimensions[0]),
+                    Integer.parseInt(dimensions[1]), Bitmap.Config.ARGB_8888);
+        }
+
+        @Override
+        public void write(ComponentName component, long userSerial, String size, long version,
+                long lastUpdated, Bitmap preview) { }
+
+        @Override
+        public void forEachPreview(PreviewVisitor visitor) { }
+
+        @Override
+        public void removePackage(String packageName, long userSerial) { }
+
+        @Override
+        public void clear() { }
+    }
+}
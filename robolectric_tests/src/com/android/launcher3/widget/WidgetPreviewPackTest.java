@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.widget;
+
+import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ComponentName;
+import android.graphics.Bitmap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.annotation.LooperMode.Mode;
+
+import java.io.File;
+import java.util.ArrayList;
+
+/**
+ * Tests for {@link WidgetPreviewPack}
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(Mode.PAUSED)
+public class WidgetPreviewPackTest {
+
+    private static final String PACKAGE = "com.example.widgets";
+    private static final long USER_SERIAL = 0;
+    private static final String SIZE = "100x100";
+
+    private File mDir;
+    private WidgetPreviewPack mPack;
+
+    @Before
+    public void setUp() {
+        int count = 0;
+        do {
+            mDir = new File(RuntimeEnvironment.application.getCacheDir(),
+                    "widget-previews-test-" + (count++));
+        } while (mDir.exists());
+        mPack = new WidgetPreviewPack(mDir);
+    }
+
+    @After
+    public void tearDown() {
+        mPack.clear();
+        mDir.delete();
+    }
+
+    @Test
+    public void read_returnsWrittenPreview() {
+        Bitmap preview = createPreview(40, 30, 1);
+        mPack.write(getComponent(0), USER_SERIAL, SIZE, 1, 1, preview);
+
+        Bitmap read = mPack.read(getComponent(0), USER_SERIAL, SIZE, null, () -> false);
+        assertNotNull(read);
+        assertTrue(read.sameAs(preview));
+        assertNull(mPack.read(getComponent(1), USER_SERIAL, SIZE, null, () -> false));
+        assertNull(mPack.read(getComponent(0), USER_SERIAL, "50x50", null, () -> false));
+    }
+
+    @Test
+    public void read_reusesRecycledBitmap() {
+        Bitmap preview = createPreview(40, 30, 1);
+        mPack.write(getComponent(0), USER_SERIAL, SIZE, 1, 1, preview);
+
+        Bitmap recycle = Bitmap.createBitmap(60, 60, Bitmap.Config.ARGB_8888);
+        Bitmap read = mPack.read(getComponent(0), USER_SERIAL, SIZE, recycle, () -> false);
+        assertSame(recycle, read);
+        assertTrue(read.sameAs(preview));
+    }
+
+    @Test
+    public void read_cancelled_returnsNull() {
+        mPack.write(getComponent(0), USER_SERIAL, SIZE, 1, 1, createPreview(40, 30, 1));
+        assertNull(mPack.read(getComponent(0), USER_SERIAL, SIZE, null, () -> true));
+    }
+
+    @Test
+    public void write_replacesPreview() {
+        mPack.write(getComponent(0), USER_SERIAL, SIZE, 1, 1, createPreview(40, 30, 1));
+        Bitmap preview = createPreview(20, 50, 2);
+        mPack.write(getComponent(0), USER_SERIAL, SIZE, 2, 2, preview);
+
+        assertTrue(mPack.read(getComponent(0), USER_SERIAL, SIZE, null, () -> false)
+                .sameAs(preview));
+        ArrayList<Long> versions = new ArrayList<>();
+        mPack.forEachPreview((userSerial, pkg, version, lastUpdated) -> versions.add(version));
+        assertEquals(1, versions.size());
+        assertEquals(2, (long) versions.get(0));
+    }
+
+    @Test
+    public void read_afterPackGrew_returnsEarlierPreviews() {
+        // Enough previews for several segments of the pack
+        int count = 200;
+        for (int i = 0; i < count; i++) {
+            mPack.write(getComponent(i), USER_SERIAL, SIZE, 1, 1, createPreview(64, 64, i));
+            assertTrue(mPack.read(getComponent(0), USER_SERIAL, SIZE, null, () -> false)
+                    .sameAs(createPreview(64, 64, 0)));
+        }
+        for (int i = 0; i < count; i++) {
+            assertTrue(mPack.read(getComponent(i), USER_SERIAL, SIZE, null, () -> false)
+                    .sameAs(createPreview(64, 64, i)));
+        }
+    }
+
+    @Test
+    public void read_afterRestart_returnsSavedPreviews() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            mPack.write(getComponent(i), USER_SERIAL, SIZE, 1, 1, createPreview(40, 30, i));
+        }
+        waitForIndex();
+
+        WidgetPreviewPack pack = new WidgetPreviewPack(mDir);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(pack.read(getComponent(i), USER_SERIAL, SIZE, null, () -> false)
+                    .sameAs(createPreview(40, 30, i)));
+        }
+    }
+
+    @Test
+    public void removePackage_removesOnlyItsPreviews() throws Exception {
+        ComponentName other = new ComponentName("com.example.other", "com.example.Widget");
+        mPack.write(getComponent(0), USER_SERIAL, SIZE, 1, 1, createPreview(40, 30, 0));
+        mPack.write(getComponent(0), USER_SERIAL + 1, SIZE, 1, 1, createPreview(40, 30, 1));
+        mPack.write(other, USER_SERIAL, SIZE, 1, 1, createPreview(40, 30, 2));
+
+        mPack.removePackage(PACKAGE, USER_SERIAL);
+        assertNull(mPack.read(getComponent(0), USER_SERIAL, SIZE, null, () -> false));
+        assertNotNull(mPack.read(getComponent(0), USER_SERIAL + 1, SIZE, null, () -> false));
+        assertNotNull(mPack.read(other, USER_SERIAL, SIZE, null, () -> false));
+
+        // The freed slot can be reused once the index is saved
+        waitForIndex();
+        Bitmap preview = createPreview(40, 30, 3);
+        mPack.write(getComponent(1), USER_SERIAL, SIZE, 1, 1, preview);
+        assertTrue(mPack.read(getComponent(1), USER_SERIAL, SIZE, null, () -> false)
+                .sameAs(preview));
+        assertTrue(mPack.read(other, USER_SERIAL, SIZE, null, () -> false)
+                .sameAs(createPreview(40, 30, 2)));
+    }
+
+    @Test
+    public void clear_deletesPreviews() throws Exception {
+        mPack.write(getComponent(0), USER_SERIAL, SIZE, 1, 1, createPreview(40, 30, 0));
+        waitForIndex();
+        mPack.clear();
+
+        assertNull(mPack.read(getComponent(0), USER_SERIAL, SIZE, null, () -> false));
+        String[] files = mDir.list();
+        assertTrue(files == null || files.length == 0);
+        assertNull(new WidgetPreviewPack(mDir).read(
+                getComponent(0), USER_SERIAL, SIZE, null, () -> false));
+    }
+
+    private static void waitForIndex() throws Exception {
+        MODEL_EXECUTOR.submit(() -> null).get();
+    }
+
+    private static ComponentName getComponent(int index) {
+        return new ComponentName(PACKAGE, "com.example.Widget" + index);
+    }
+
+    private static Bitmap createPreview(int width, int height, int seed) {
+        Bitmap preview = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                preview.setPixel(x, y, 0xFF000000 | ((seed * 31 + x * 7 + y * 13) * 0x010203));
+            }
+        }
+        return preview;
+    }
+}
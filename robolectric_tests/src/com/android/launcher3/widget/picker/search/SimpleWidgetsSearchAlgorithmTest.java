@@ -18,6 +18,8 @@ package com.android.launcher3.widget.picker.search;
 
 import static android.os.Looper.getMainLooper;
 
+import static com.android.launcher3.util.Executors.SEARCH_EXECUTOR;
+
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
@@ -60,6 +62,7 @@ import org.robolectric.util.ReflectionHelpers;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RunWith(RobolectricTestRunner.class)
 public class SimpleWidgetsSearchAlgorithmTest {
@@ -109,10 +112,9 @@ public class SimpleWidgetsSearchAlgorithmTest {
 
     @Test
     public void filter_shouldMatchOnAppName() {
-        doReturn(List.of(mCalendarHeaderEntry, mCalendarContentEntry, mCameraHeaderEntry,
-                mCameraContentEntry, mClockHeaderEntry, mClockContentEntry))
-                .when(mDataProvider)
-                .getAllWidgets();
+        WidgetsSearchIndex index = new WidgetsSearchIndex(List.of(mCalendarHeaderEntry,
+                mCalendarContentEntry, mCameraHeaderEntry, mCameraContentEntry, mClockHeaderEntry,
+                mClockContentEntry));
 
         assertEquals(List.of(
                 new WidgetsListSearchHeaderEntry(
@@ -125,15 +127,13 @@ public class SimpleWidgetsSearchAlgorithmTest {
                         mCameraHeaderEntry.mTitleSectionName,
                         mCameraHeaderEntry.mWidgets),
                 mCameraContentEntry),
-                SimpleWidgetsSearchAlgorithm.getFilteredWidgets(mDataProvider, "Ca"));
+                index.search("Ca"));
     }
 
     @Test
     public void filter_shouldMatchOnWidgetLabel() {
-        doReturn(List.of(mCalendarHeaderEntry, mCalendarContentEntry, mCameraHeaderEntry,
-                mCameraContentEntry))
-                .when(mDataProvider)
-                .getAllWidgets();
+        WidgetsSearchIndex index = new WidgetsSearchIndex(List.of(mCalendarHeaderEntry,
+                mCalendarContentEntry, mCameraHeaderEntry, mCameraContentEntry));
 
         assertEquals(List.of(
                 new WidgetsListSearchHeaderEntry(
@@ -152,16 +152,33 @@ public class SimpleWidgetsSearchAlgorithmTest {
                         mCameraHeaderEntry.mPkgItem,
                         mCameraHeaderEntry.mTitleSectionName,
                         mCameraHeaderEntry.mWidgets.subList(1, 3))),
-                SimpleWidgetsSearchAlgorithm.getFilteredWidgets(mDataProvider, "Widget1"));
+                index.search("Widget1"));
+    }
+
+    @Test
+    public void setAllWidgets_buildsSearchIndex() throws Exception {
+        PopupDataProvider dataProvider = new PopupDataProvider(updatedDots -> { });
+        dataProvider.setAllWidgets(List.of(mCalendarHeaderEntry, mCalendarContentEntry,
+                mCameraHeaderEntry, mCameraContentEntry, mClockHeaderEntry, mClockContentEntry));
+
+        assertEquals(List.of(
+                new WidgetsListSearchHeaderEntry(
+                        mClockHeaderEntry.mPkgItem,
+                        mClockHeaderEntry.mTitleSectionName,
+                        mClockHeaderEntry.mWidgets),
+                mClockContentEntry),
+                dataProvider.getWidgetsSearchIndex().get().search("Clo"));
     }
 
     @Test
-    public void doSearch_shouldInformCallback() {
-        doReturn(List.of(mCalendarHeaderEntry, mCalendarContentEntry, mCameraHeaderEntry,
-                mCameraContentEntry, mClockHeaderEntry, mClockContentEntry))
+    public void doSearch_shouldInformCallback() throws Exception {
+        doReturn(CompletableFuture.completedFuture(new WidgetsSearchIndex(List.of(
+                mCalendarHeaderEntry, mCalendarContentEntry, mCameraHeaderEntry,
+                mCameraContentEntry, mClockHeaderEntry, mClockContentEntry))))
                 .when(mDataProvider)
-                .getAllWidgets();
+                .getWidgetsSearchIndex();
         mSimpleWidgetsSearchAlgorithm.doSearch("Ca", mSearchCallback);
+        SEARCH_EXECUTOR.submit(() -> { }).get();
         shadowOf(getMainLooper()).idle();
         verify(mSearchCallback).onSearchResult(
                 matches("Ca"), argThat(a -> a != null && !a.isEmpty()));
@@ -66,6 +66,7 @@ import com.android.launcher3.folder.PreviewBackground;
 import com.android.launcher3.model.data.ItemInfo;
 import com.android.launcher3.util.CellAndSpan;
 import com.android.launcher3.util.GridOccupancy;
+import com.android.launcher3.util.IntArray;
 import com.android.launcher3.util.ParcelableSparseArray;
 import com.android.launcher3.util.Themes;
 import com.android.launcher3.util.Thunk;
@@ -76,8 +77,6 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Stack;
 
 import app.lawnchair.theme.color.ColorTokens;
@@ -190,6 +189,18 @@ public class CellLayout extends ViewGroup {
     @Thunk final float mReorderPreviewAnimationMagnitude;
 
     private final ArrayList<View> mIntersectingViews = new ArrayList<>();
+    private final IntArray mIntersectingItems = new IntArray();
+    // Reused by the reorder search
+    private final ViewCluster mViewCluster = new ViewCluster();
+    private GridOccupancy mTmpBlockOccupied;
+    private final Rect mTmpBoundingRect = new Rect();
+    private final Rect mTmpRect0 = new Rect();
+    private final Rect mTmpRect1 = new Rect();
+    private final int[] mTmpReorderCell = new int[2];
+    private final int[] mTmpReorderSpan = new int[2];
+    private final ItemConfiguration mSwapSolution = new ItemConfiguration();
+    private final ItemConfiguration mNoShuffleSolution = new ItemConfiguration();
+    private final ReorderCache mReorderCache = new ReorderCache();
     private final Rect mOccupiedRect = new Rect();
     private final int[] mDirectionVector = new int[2];
 
@@ -251,6 +262,7 @@ public class CellLayout extends ViewGroup {
         mCountY = deviceProfile.inv.numRows;
         mOccupied =  new GridOccupancy(mCountX, mCountY);
         mTmpOccupied = new GridOccupancy(mCountX, mCountY);
+        mTmpBlockOccupied = new GridOccupancy(mCountX, mCountY);
 
         mPreviousReorderDirection[0] = INVALID_DIRECTION;
         mPreviousReorderDirection[1] = INVALID_DIRECTION;
@@ -380,7 +392,9 @@ public class CellLayout extends ViewGroup {
         mCountY = y;
         mOccupied = new GridOccupancy(mCountX, mCountY);
         mTmpOccupied = new GridOccupancy(mCountX, mCountY);
+        mTmpBlockOccupied = new GridOccupancy(mCountX, mCountY);
         mTempRectStack.clear();
+        mReorderCache.clear();
         mShortcutsAndWidgets.setCellDimensions(mCellWidth, mCellHeight, mCountX, mCountY,
                 mBorderSpacing);
         requestLayout();
@@ -451,7 +465,7 @@ public class CellLayout extends ViewGroup {
             cd.setBounds(0, 0,  mCellWidth, mCellHeight);
             for (int i = 0; i < mCountX; i++) {
                 for (int j = 0; j < mCountY; j++) {
-                    if (mOccupied.cells[i][j]) {
+                    if (mOccupied.isOccupied(i, j)) {
                         cellToPoint(i, j, pt);
                         canvas.save();
                         canvas.translate(pt[0], pt[1]);
@@ -1189,12 +1203,8 @@ public class CellLayout extends ViewGroup {
                 int xSize = -1;
                 if (ignoreOccupied) {
                     // First, let's see if this thing fits anywhere
-                    for (int i = 0; i < minSpanX; i++) {
-                        for (int j = 0; j < minSpanY; j++) {
-                            if (mOccupied.cells[x + i][y + j]) {
-                                continue inner;
-                            }
-                        }
+                    if (!mOccupied.isRegionVacant(x, y, minSpanX, minSpanY)) {
+                        continue inner;
                     }
                     xSize = minSpanX;
                     ySize = minSpanY;
@@ -1207,21 +1217,17 @@ public class CellLayout extends ViewGroup {
                     boolean hitMaxY = ySize >= spanY;
                     while (!(hitMaxX && hitMaxY)) {
                         if (incX && !hitMaxX) {
-                            for (int j = 0; j < ySize; j++) {
-                                if (x + xSize > countX -1 || mOccupied.cells[x + xSize][y + j]) {
-                                    // We can't move out horizontally
-                                    hitMaxX = true;
-                                }
+                            if (!mOccupied.isRegionVacant(x + xSize, y, 1, ySize)) {
+                                // We can't move out horizontally
+                                hitMaxX = true;
                             }
                             if (!hitMaxX) {
                                 xSize++;
                             }
                         } else if (!hitMaxY) {
-                            for (int i = 0; i < xSize; i++) {
-                                if (y + ySize > countY - 1 || mOccupied.cells[x + i][y + ySize]) {
-                                    // We can't move out vertically
-                                    hitMaxY = true;
-                                }
+                            if (!mOccupied.isRegionVacant(x, y + ySize, xSize, 1)) {
+                                // We can't move out vertically
+                                hitMaxY = true;
                             }
                             if (!hitMaxY) {
                                 ySize++;
@@ -1296,25 +1302,24 @@ public class CellLayout extends ViewGroup {
      *         nearest the requested location.
      */
     private int[] findNearestArea(int cellX, int cellY, int spanX, int spanY, int[] direction,
-            boolean[][] occupied, boolean blockOccupied[][], int[] result) {
+            GridOccupancy occupied, GridOccupancy blockOccupied, int[] result) {
         // Keep track of best-scoring drop area
         final int[] bestXY = result != null ? result : new int[2];
         float bestDistance = Float.MAX_VALUE;
         int bestDirectionScore = Integer.MIN_VALUE;
 
-        final int countX = mCountX;
         final int countY = mCountY;
 
         for (int y = 0; y < countY - (spanY - 1); y++) {
-            inner:
-            for (int x = 0; x < countX - (spanX - 1); x++) {
-                // First, let's see if this thing fits anywhere
-                for (int i = 0; i < spanX; i++) {
-                    for (int j = 0; j < spanY; j++) {
-                        if (occupied[x + i][y + j] && (blockOccupied == null || blockOccupied[i][j])) {
-                            continue inner;
-                        }
-                    }
+            // First, let's see where this thing fits in the row. Without a block shape, occupied
+            // runs of cells are skipped all at once.
+            long candidates = blockOccupied == null
+                    ? occupied.getVacantRegionStarts(y, spanX, spanY)
+                    : occupied.getRegionStarts(spanX);
+            for (; candidates != 0; candidates &= candidates - 1) {
+                int x = Long.numberOfTrailingZeros(candidates);
+                if (blockOccupied != null && occupied.overlaps(blockOccupied, x, y)) {
+                    continue;
                 }
 
                 float distance = (float) Math.hypot(x - cellX, y - cellY);
@@ -1343,22 +1348,22 @@ public class CellLayout extends ViewGroup {
         return bestXY;
     }
 
-    private boolean addViewToTempLocation(View v, Rect rectOccupiedByPotentialDrop,
+    private boolean addViewToTempLocation(int item, Rect rectOccupiedByPotentialDrop,
             int[] direction, ItemConfiguration currentState) {
-        CellAndSpan c = currentState.map.get(v);
         boolean success = false;
-        mTmpOccupied.markCells(c, false);
+        currentState.markCells(mTmpOccupied, item, false);
         mTmpOccupied.markCells(rectOccupiedByPotentialDrop, true);
 
-        findNearestArea(c.cellX, c.cellY, c.spanX, c.spanY, direction,
-                mTmpOccupied.cells, null, mTempLocation);
+        findNearestArea(currentState.cellXs[item], currentState.cellYs[item],
+                currentState.spanXs[item], currentState.spanYs[item], direction,
+                mTmpOccupied, null, mTempLocation);
 
         if (mTempLocation[0] >= 0 && mTempLocation[1] >= 0) {
-            c.cellX = mTempLocation[0];
-            c.cellY = mTempLocation[1];
+            currentState.cellXs[item] = mTempLocation[0];
+            currentState.cellYs[item] = mTempLocation[1];
             success = true;
         }
-        mTmpOccupied.markCells(c, true);
+        currentState.markCells(mTmpOccupied, item, true);
         return success;
     }
 
@@ -1367,6 +1372,9 @@ public class CellLayout extends ViewGroup {
      * of the cluster and determining how those edges interact with other views. The edges
      * essentially define a fine-grained boundary around the cluster of views -- like a more
      * precise version of a bounding box.
+     *
+     * Views are referred to by their index in the {@link ItemConfiguration}, and a single cluster
+     * is reused for all the pushes.
      */
     private class ViewCluster {
         final static int LEFT = 1 << 0;
@@ -1374,24 +1382,46 @@ public class CellLayout extends ViewGroup {
         final static int RIGHT = 1 << 2;
         final static int BOTTOM = 1 << 3;
 
-        final ArrayList<View> views;
-        final ItemConfiguration config;
+        final IntArray items = new IntArray();
+        ItemConfiguration config;
         final Rect boundingRect = new Rect();
+        private boolean[] mInCluster = new boolean[0];
 
-        final int[] leftEdge = new int[mCountY];
-        final int[] rightEdge = new int[mCountY];
-        final int[] topEdge = new int[mCountX];
-        final int[] bottomEdge = new int[mCountX];
+        int[] leftEdge = new int[0];
+        int[] rightEdge = new int[0];
+        int[] topEdge = new int[0];
+        int[] bottomEdge = new int[0];
         int dirtyEdges;
         boolean boundingRectDirty;
 
-        @SuppressWarnings("unchecked")
-        public ViewCluster(ArrayList<View> views, ItemConfiguration config) {
-            this.views = (ArrayList<View>) views.clone();
+        void init(IntArray items, ItemConfiguration config) {
             this.config = config;
+            if (mInCluster.length < config.count) {
+                mInCluster = new boolean[config.count];
+            } else {
+                Arrays.fill(mInCluster, false);
+            }
+            this.items.clear();
+            for (int i = 0; i < items.size(); i++) {
+                this.items.add(items.get(i));
+                mInCluster[items.get(i)] = true;
+            }
+            if (leftEdge.length != mCountY) {
+                leftEdge = new int[mCountY];
+                rightEdge = new int[mCountY];
+            }
+            if (topEdge.length != mCountX) {
+                topEdge = new int[mCountX];
+                bottomEdge = new int[mCountX];
+            }
+            boundingRect.setEmpty();
             resetEdges();
         }
 
+        boolean contains(int item) {
+            return mInCluster[item];
+        }
+
         void resetEdges() {
             for (int i = 0; i < mCountX; i++) {
                 topEdge[i] = -1;
@@ -1406,37 +1436,41 @@ public class CellLayout extends ViewGroup {
         }
 
         void computeEdge(int which) {
-            int count = views.size();
+            int count = items.size();
             for (int i = 0; i < count; i++) {
-                CellAndSpan cs = config.map.get(views.get(i));
+                int item = items.get(i);
+                int cellX = config.cellXs[item];
+                int cellY = config.cellYs[item];
+                int spanX = config.spanXs[item];
+                int spanY = config.spanYs[item];
                 switch (which) {
                     case LEFT:
-                        int left = cs.cellX;
-                        for (int j = cs.cellY; j < cs.cellY + cs.spanY; j++) {
+                        int left = cellX;
+                        for (int j = cellY; j < cellY + spanY; j++) {
                             if (left < leftEdge[j] || leftEdge[j] < 0) {
                                 leftEdge[j] = left;
                             }
                         }
                         break;
                     case RIGHT:
-                        int right = cs.cellX + cs.spanX;
-                        for (int j = cs.cellY; j < cs.cellY + cs.spanY; j++) {
+                        int right = cellX + spanX;
+                        for (int j = cellY; j < cellY + spanY; j++) {
                             if (right > rightEdge[j]) {
                                 rightEdge[j] = right;
                             }
                         }
                         break;
                     case TOP:
-                        int top = cs.cellY;
-                        for (int j = cs.cellX; j < cs.cellX + cs.spanX; j++) {
+                        int top = cellY;
+                        for (int j = cellX; j < cellX + spanX; j++) {
                             if (top < topEdge[j] || topEdge[j] < 0) {
                                 topEdge[j] = top;
                             }
                         }
                         break;
                     case BOTTOM:
-                        int bottom = cs.cellY + cs.spanY;
-                        for (int j = cs.cellX; j < cs.cellX + cs.spanX; j++) {
+                        int bottom = cellY + spanY;
+                        for (int j = cellX; j < cellX + spanX; j++) {
                             if (bottom > bottomEdge[j]) {
                                 bottomEdge[j] = bottom;
                             }
@@ -1446,8 +1480,11 @@ public class CellLayout extends ViewGroup {
             }
         }
 
-        boolean isViewTouchingEdge(View v, int whichEdge) {
-            CellAndSpan cs = config.map.get(v);
+        boolean isViewTouchingEdge(int item, int whichEdge) {
+            int cellX = config.cellXs[item];
+            int cellY = config.cellYs[item];
+            int spanX = config.spanXs[item];
+            int spanY = config.spanYs[item];
 
             if ((dirtyEdges & whichEdge) == whichEdge) {
                 computeEdge(whichEdge);
@@ -1456,29 +1493,29 @@ public class CellLayout extends ViewGroup {
 
             switch (whichEdge) {
                 case LEFT:
-                    for (int i = cs.cellY; i < cs.cellY + cs.spanY; i++) {
-                        if (leftEdge[i] == cs.cellX + cs.spanX) {
+                    for (int i = cellY; i < cellY + spanY; i++) {
+                        if (leftEdge[i] == cellX + spanX) {
                             return true;
                         }
                     }
                     break;
                 case RIGHT:
-                    for (int i = cs.cellY; i < cs.cellY + cs.spanY; i++) {
-                        if (rightEdge[i] == cs.cellX) {
+                    for (int i = cellY; i < cellY + spanY; i++) {
+                        if (rightEdge[i] == cellX) {
                             return true;
                         }
                     }
                     break;
                 case TOP:
-                    for (int i = cs.cellX; i < cs.cellX + cs.spanX; i++) {
-                        if (topEdge[i] == cs.cellY + cs.spanY) {
+                    for (int i = cellX; i < cellX + spanX; i++) {
+                        if (topEdge[i] == cellY + spanY) {
                             return true;
                         }
                     }
                     break;
                 case BOTTOM:
-                    for (int i = cs.cellX; i < cs.cellX + cs.spanX; i++) {
-                        if (bottomEdge[i] == cs.cellY) {
+                    for (int i = cellX; i < cellX + spanX; i++) {
+                        if (bottomEdge[i] == cellY) {
                             return true;
                         }
                     }
@@ -1488,69 +1525,77 @@ public class CellLayout extends ViewGroup {
         }
 
         void shift(int whichEdge, int delta) {
-            for (View v: views) {
-                CellAndSpan c = config.map.get(v);
+            for (int i = 0; i < items.size(); i++) {
+                int item = items.get(i);
                 switch (whichEdge) {
                     case LEFT:
-                        c.cellX -= delta;
+                        config.cellXs[item] -= delta;
                         break;
                     case RIGHT:
-                        c.cellX += delta;
+                        config.cellXs[item] += delta;
                         break;
                     case TOP:
-                        c.cellY -= delta;
+                        config.cellYs[item] -= delta;
                         break;
                     case BOTTOM:
                     default:
-                        c.cellY += delta;
+                        config.cellYs[item] += delta;
                         break;
                 }
             }
             resetEdges();
         }
 
-        public void addView(View v) {
-            views.add(v);
+        public void addView(int item) {
+            items.add(item);
+            mInCluster[item] = true;
             resetEdges();
         }
 
         public Rect getBoundingRect() {
             if (boundingRectDirty) {
-                config.getBoundingRectForViews(views, boundingRect);
+                config.getBoundingRectForViews(items, boundingRect);
             }
             return boundingRect;
         }
 
-        final PositionComparator comparator = new PositionComparator();
-        class PositionComparator implements Comparator<View> {
-            int whichEdge = 0;
-            public int compare(View left, View right) {
-                CellAndSpan l = config.map.get(left);
-                CellAndSpan r = config.map.get(right);
-                switch (whichEdge) {
-                    case LEFT:
-                        return (r.cellX + r.spanX) - (l.cellX + l.spanX);
-                    case RIGHT:
-                        return l.cellX - r.cellX;
-                    case TOP:
-                        return (r.cellY + r.spanY) - (l.cellY + l.spanY);
-                    case BOTTOM:
-                    default:
-                        return l.cellY - r.cellY;
-                }
+        private int compare(int whichEdge, int left, int right) {
+            switch (whichEdge) {
+                case LEFT:
+                    return (config.cellXs[right] + config.spanXs[right])
+                            - (config.cellXs[left] + config.spanXs[left]);
+                case RIGHT:
+                    return config.cellXs[left] - config.cellXs[right];
+                case TOP:
+                    return (config.cellYs[right] + config.spanYs[right])
+                            - (config.cellYs[left] + config.spanYs[left]);
+                case BOTTOM:
+                default:
+                    return config.cellYs[left] - config.cellYs[right];
             }
         }
 
         public void sortConfigurationForEdgePush(int edge) {
-            comparator.whichEdge = edge;
-            Collections.sort(config.sortedViews, comparator);
+            // Stable insertion sort, which gives the same order as sorting the views with a
+            // comparator, without allocating
+            IntArray sorted = config.sortedItems;
+            for (int i = 1; i < sorted.size(); i++) {
+                int item = sorted.get(i);
+                int j = i - 1;
+                while (j >= 0 && compare(edge, sorted.get(j), item) > 0) {
+                    sorted.set(j + 1, sorted.get(j));
+                    j--;
+                }
+                sorted.set(j + 1, item);
+            }
         }
     }
 
-    private boolean pushViewsToTempLocation(ArrayList<View> views, Rect rectOccupiedByPotentialDrop,
+    private boolean pushViewsToTempLocation(IntArray items, Rect rectOccupiedByPotentialDrop,
             int[] direction, View dragView, ItemConfiguration currentState) {
 
-        ViewCluster cluster = new ViewCluster(views, currentState);
+        ViewCluster cluster = mViewCluster;
+        cluster.init(items, currentState);
         Rect clusterRect = cluster.getBoundingRect();
         int whichEdge;
         int pushDistance;
@@ -1578,9 +1623,8 @@ public class CellLayout extends ViewGroup {
         }
 
         // Mark the occupied state as false for the group of views we want to move.
-        for (View v: views) {
-            CellAndSpan c = currentState.map.get(v);
-            mTmpOccupied.markCells(c, false);
+        for (int i = 0; i < items.size(); i++) {
+            currentState.markCells(mTmpOccupied, items.get(i), false);
         }
 
         // We save the current configuration -- if we fail to find a solution we will revert
@@ -1593,24 +1637,24 @@ public class CellLayout extends ViewGroup {
         // left edge, we consider sort the views by their right edge, from right to left.
         cluster.sortConfigurationForEdgePush(whichEdge);
 
+        IntArray sortedItems = currentState.sortedItems;
         while (pushDistance > 0 && !fail) {
-            for (View v: currentState.sortedViews) {
+            for (int i = 0; i < sortedItems.size(); i++) {
+                int item = sortedItems.get(i);
                 // For each view that isn't in the cluster, we see if the leading edge of the
                 // cluster is contacting the edge of that view. If so, we add that view to the
                 // cluster.
-                if (!cluster.views.contains(v) && v != dragView) {
-                    if (cluster.isViewTouchingEdge(v, whichEdge)) {
-                        LayoutParams lp = (LayoutParams) v.getLayoutParams();
-                        if (!lp.canReorder) {
+                if (!cluster.contains(item) && currentState.views[item] != dragView) {
+                    if (cluster.isViewTouchingEdge(item, whichEdge)) {
+                        if (!currentState.canReorder[item]) {
                             // The push solution includes the all apps button, this is not viable.
                             fail = true;
                             break;
                         }
-                        cluster.addView(v);
-                        CellAndSpan c = currentState.map.get(v);
+                        cluster.addView(item);
 
                         // Adding view to cluster, mark it as not occupied.
-                        mTmpOccupied.markCells(c, false);
+                        currentState.markCells(mTmpOccupied, item, false);
                     }
                 }
             }
@@ -1634,61 +1678,63 @@ public class CellLayout extends ViewGroup {
         }
 
         // In either case, we set the occupied array as marked for the location of the views
-        for (View v: cluster.views) {
-            CellAndSpan c = currentState.map.get(v);
-            mTmpOccupied.markCells(c, true);
+        for (int i = 0; i < cluster.items.size(); i++) {
+            currentState.markCells(mTmpOccupied, cluster.items.get(i), true);
         }
 
         return foundSolution;
     }
 
-    private boolean addViewsToTempLocation(ArrayList<View> views, Rect rectOccupiedByPotentialDrop,
+    private boolean addViewsToTempLocation(IntArray items, Rect rectOccupiedByPotentialDrop,
             int[] direction, View dragView, ItemConfiguration currentState) {
-        if (views.size() == 0) return true;
+        if (items.size() == 0) return true;
 
         boolean success = false;
-        Rect boundingRect = new Rect();
+        Rect boundingRect = mTmpBoundingRect;
+        boundingRect.setEmpty();
         // We construct a rect which represents the entire group of views passed in
-        currentState.getBoundingRectForViews(views, boundingRect);
+        currentState.getBoundingRectForViews(items, boundingRect);
 
         // Mark the occupied state as false for the group of views we want to move.
-        for (View v: views) {
-            CellAndSpan c = currentState.map.get(v);
-            mTmpOccupied.markCells(c, false);
+        for (int i = 0; i < items.size(); i++) {
+            currentState.markCells(mTmpOccupied, items.get(i), false);
         }
 
-        GridOccupancy blockOccupied = new GridOccupancy(boundingRect.width(), boundingRect.height());
+        // The block is as large as the layout, only its top left corner is used
+        GridOccupancy blockOccupied = mTmpBlockOccupied;
+        blockOccupied.clear();
         int top = boundingRect.top;
         int left = boundingRect.left;
         // We mark more precisely which parts of the bounding rect are truly occupied, allowing
         // for interlocking.
-        for (View v: views) {
-            CellAndSpan c = currentState.map.get(v);
-            blockOccupied.markCells(c.cellX - left, c.cellY - top, c.spanX, c.spanY, true);
+        for (int i = 0; i < items.size(); i++) {
+            int item = items.get(i);
+            blockOccupied.markCells(currentState.cellXs[item] - left,
+                    currentState.cellYs[item] - top, currentState.spanXs[item],
+                    currentState.spanYs[item], true);
         }
 
         mTmpOccupied.markCells(rectOccupiedByPotentialDrop, true);
 
         findNearestArea(boundingRect.left, boundingRect.top, boundingRect.width(),
                 boundingRect.height(), direction,
-                mTmpOccupied.cells, blockOccupied.cells, mTempLocation);
+                mTmpOccupied, blockOccupied, mTempLocation);
 
         // If we successfuly found a location by pushing the block of views, we commit it
         if (mTempLocation[0] >= 0 && mTempLocation[1] >= 0) {
             int deltaX = mTempLocation[0] - boundingRect.left;
             int deltaY = mTempLocation[1] - boundingRect.top;
-            for (View v: views) {
-                CellAndSpan c = currentState.map.get(v);
-                c.cellX += deltaX;
-                c.cellY += deltaY;
+            for (int i = 0; i < items.size(); i++) {
+                int item = items.get(i);
+                currentState.cellXs[item] += deltaX;
+                currentState.cellYs[item] += deltaY;
             }
             success = true;
         }
 
         // In either case, we set the occupied array as marked for the location of the views
-        for (View v: views) {
-            CellAndSpan c = currentState.map.get(v);
-            mTmpOccupied.markCells(c, true);
+        for (int i = 0; i < items.size(); i++) {
+            currentState.markCells(mTmpOccupied, items.get(i), true);
         }
         return success;
     }
@@ -1696,7 +1742,7 @@ public class CellLayout extends ViewGroup {
     // This method tries to find a reordering solution which satisfies the push mechanic by trying
     // to push items in each of the cardinal directions, in an order based on the direction vector
     // passed.
-    private boolean attemptPushInDirection(ArrayList<View> intersectingViews, Rect occupied,
+    private boolean attemptPushInDirection(IntArray intersectingViews, Rect occupied,
             int[] direction, View ignoreView, ItemConfiguration solution) {
         if ((Math.abs(direction[0]) + Math.abs(direction[1])) > 1) {
             // If the direction vector has two non-zero components, we try pushing
@@ -1795,51 +1841,55 @@ public class CellLayout extends ViewGroup {
         // Return early if get invalid cell positions
         if (cellX < 0 || cellY < 0) return false;
 
-        mIntersectingViews.clear();
+        IntArray intersectingItems = mIntersectingItems;
+        intersectingItems.clear();
         mOccupiedRect.set(cellX, cellY, cellX + spanX, cellY + spanY);
 
         // Mark the desired location of the view currently being dragged.
         if (ignoreView != null) {
-            CellAndSpan c = solution.map.get(ignoreView);
-            if (c != null) {
-                c.cellX = cellX;
-                c.cellY = cellY;
+            int item = solution.indexOf(ignoreView);
+            if (item >= 0) {
+                solution.cellXs[item] = cellX;
+                solution.cellYs[item] = cellY;
             }
         }
-        Rect r0 = new Rect(cellX, cellY, cellX + spanX, cellY + spanY);
-        Rect r1 = new Rect();
-        for (View child: solution.map.keySet()) {
-            if (child == ignoreView) continue;
-            CellAndSpan c = solution.map.get(child);
-            LayoutParams lp = (LayoutParams) child.getLayoutParams();
-            r1.set(c.cellX, c.cellY, c.cellX + c.spanX, c.cellY + c.spanY);
+        Rect r0 = mTmpRect0;
+        Rect r1 = mTmpRect1;
+        r0.set(cellX, cellY, cellX + spanX, cellY + spanY);
+        for (int i = 0; i < solution.count; i++) {
+            int item = solution.hashOrder[i];
+            if (solution.views[item] == ignoreView) continue;
+            r1.set(solution.cellXs[item], solution.cellYs[item],
+                    solution.cellXs[item] + solution.spanXs[item],
+                    solution.cellYs[item] + solution.spanYs[item]);
             if (Rect.intersects(r0, r1)) {
-                if (!lp.canReorder) {
+                if (!solution.canReorder[item]) {
                     return false;
                 }
-                mIntersectingViews.add(child);
+                intersectingItems.add(item);
             }
         }
 
-        solution.intersectingViews = new ArrayList<>(mIntersectingViews);
+        solution.setIntersectingItems(intersectingItems);
 
         // First we try to find a solution which respects the push mechanic. That is,
         // we try to find a solution such that no displaced item travels through another item
         // without also displacing that item.
-        if (attemptPushInDirection(mIntersectingViews, mOccupiedRect, direction, ignoreView,
+        if (attemptPushInDirection(intersectingItems, mOccupiedRect, direction, ignoreView,
                 solution)) {
             return true;
         }
 
         // Next we try moving the views as a block, but without requiring the push mechanic.
-        if (addViewsToTempLocation(mIntersectingViews, mOccupiedRect, direction, ignoreView,
+        if (addViewsToTempLocation(intersectingItems, mOccupiedRect, direction, ignoreView,
                 solution)) {
             return true;
         }
 
         // Ok, they couldn't move as a block, let's move them individually
-        for (View v : mIntersectingViews) {
-            if (!addViewToTempLocation(v, mOccupiedRect, direction, solution)) {
+        for (int i = 0; i < intersectingItems.size(); i++) {
+            if (!addViewToTempLocation(intersectingItems.get(i), mOccupiedRect, direction,
+                    solution)) {
                 return false;
             }
         }
@@ -1874,8 +1924,10 @@ public class CellLayout extends ViewGroup {
 
         // We find the nearest cell into which we would place the dragged item, assuming there's
         // nothing in its way.
-        int result[] = new int[2];
+        int[] result = mTmpReorderCell;
+        result[0] = result[1] = 0;
         result = findNearestArea(pixelX, pixelY, spanX, spanY, result);
+        mReorderCache.onTryCell(spanX, spanY, result);
 
         boolean success;
         // First we try the exact nearest position of the item being dragged,
@@ -1906,17 +1958,19 @@ public class CellLayout extends ViewGroup {
 
     private void copyCurrentStateToSolution(ItemConfiguration solution, boolean temp) {
         int childCount = mShortcutsAndWidgets.getChildCount();
+        solution.beginLoad(childCount);
         for (int i = 0; i < childCount; i++) {
             View child = mShortcutsAndWidgets.getChildAt(i);
             LayoutParams lp = (LayoutParams) child.getLayoutParams();
-            CellAndSpan c;
             if (temp) {
-                c = new CellAndSpan(lp.tmpCellX, lp.tmpCellY, lp.cellHSpan, lp.cellVSpan);
+                solution.load(i, child, lp.tmpCellX, lp.tmpCellY, lp.cellHSpan, lp.cellVSpan,
+                        lp.canReorder);
             } else {
-                c = new CellAndSpan(lp.cellX, lp.cellY, lp.cellHSpan, lp.cellVSpan);
+                solution.load(i, child, lp.cellX, lp.cellY, lp.cellHSpan, lp.cellVSpan,
+                        lp.canReorder);
             }
-            solution.add(child, c);
         }
+        solution.endLoad();
     }
 
     private void copySolutionToTempState(ItemConfiguration solution, View dragView) {
@@ -1927,13 +1981,13 @@ public class CellLayout extends ViewGroup {
             View child = mShortcutsAndWidgets.getChildAt(i);
             if (child == dragView) continue;
             LayoutParams lp = (LayoutParams) child.getLayoutParams();
-            CellAndSpan c = solution.map.get(child);
-            if (c != null) {
-                lp.tmpCellX = c.cellX;
-                lp.tmpCellY = c.cellY;
-                lp.cellHSpan = c.spanX;
-                lp.cellVSpan = c.spanY;
-                mTmpOccupied.markCells(c, true);
+            int item = solution.indexOf(child, i);
+            if (item >= 0) {
+                lp.tmpCellX = solution.cellXs[item];
+                lp.tmpCellY = solution.cellYs[item];
+                lp.cellHSpan = solution.spanXs[item];
+                lp.cellVSpan = solution.spanYs[item];
+                solution.markCells(mTmpOccupied, item, true);
             }
         }
         mTmpOccupied.markCells(solution, true);
@@ -1949,11 +2003,11 @@ public class CellLayout extends ViewGroup {
         for (int i = 0; i < childCount; i++) {
             View child = mShortcutsAndWidgets.getChildAt(i);
             if (child == dragView) continue;
-            CellAndSpan c = solution.map.get(child);
-            if (c != null) {
-                animateChildToPosition(child, c.cellX, c.cellY, REORDER_ANIMATION_DURATION, 0,
-                        DESTRUCTIVE_REORDER, false);
-                occupied.markCells(c, true);
+            int item = solution.indexOf(child, i);
+            if (item >= 0) {
+                animateChildToPosition(child, solution.cellXs[item], solution.cellYs[item],
+                        REORDER_ANIMATION_DURATION, 0, DESTRUCTIVE_REORDER, false);
+                solution.markCells(occupied, item, true);
             }
         }
         if (commitDragView) {
@@ -1969,15 +2023,16 @@ public class CellLayout extends ViewGroup {
         for (int i = 0; i < childCount; i++) {
             View child = mShortcutsAndWidgets.getChildAt(i);
             if (child == dragView) continue;
-            CellAndSpan c = solution.map.get(child);
-            boolean skip = mode == ReorderPreviewAnimation.MODE_HINT && solution.intersectingViews
-                    != null && !solution.intersectingViews.contains(child);
+            int item = solution.indexOf(child, i);
+            boolean skip = mode == ReorderPreviewAnimation.MODE_HINT
+                    && solution.hasIntersectingItems && !solution.isIntersecting(item);
 
 
             LayoutParams lp = (LayoutParams) child.getLayoutParams();
-            if (c != null && !skip && (child instanceof Reorderable)) {
+            if (item >= 0 && !skip && (child instanceof Reorderable)) {
                 ReorderPreviewAnimation rha = new ReorderPreviewAnimation((Reorderable) child,
-                        mode, lp.cellX, lp.cellY, c.cellX, c.cellY, c.spanX, c.spanY);
+                        mode, lp.cellX, lp.cellY, solution.cellXs[item], solution.cellYs[item],
+                        solution.spanXs[item], solution.spanYs[item]);
                 rha.animate();
             }
         }
@@ -2197,8 +2252,10 @@ public class CellLayout extends ViewGroup {
 
     private ItemConfiguration findConfigurationNoShuffle(int pixelX, int pixelY, int minSpanX, int minSpanY,
             int spanX, int spanY, View dragView, ItemConfiguration solution) {
-        int[] result = new int[2];
-        int[] resultSpan = new int[2];
+        solution.reset();
+        int[] result = mTmpReorderCell;
+        int[] resultSpan = mTmpReorderSpan;
+        result[0] = result[1] = resultSpan[0] = resultSpan[1] = 0;
         findNearestVacantArea(pixelX, pixelY, minSpanX, minSpanY, spanX, spanY, result,
                 resultSpan);
         if (result[0] >= 0 && result[1] >= 0) {
@@ -2226,14 +2283,12 @@ public class CellLayout extends ViewGroup {
             int spanY, View dragView, int[] resultDirection) {
 
         //TODO(adamcohen) b/151776141 use the items visual center for the direction vector
-        int[] targetDestination = new int[2];
+        int[] targetDestination = mTmpReorderCell;
+        targetDestination[0] = targetDestination[1] = 0;
 
         findNearestArea(dragViewCenterX, dragViewCenterY, spanX, spanY, targetDestination);
-        Rect dragRect = new Rect();
-        cellToRect(targetDestination[0], targetDestination[1], spanX, spanY, dragRect);
-        dragRect.offset(dragViewCenterX - dragRect.centerX(), dragViewCenterY - dragRect.centerY());
 
-        Rect dropRegionRect = new Rect();
+        Rect dropRegionRect = mTmpBoundingRect;
         getViewsIntersectingRegion(targetDestination[0], targetDestination[1], spanX, spanY,
                 dragView, dropRegionRect, mIntersectingViews);
 
@@ -2269,8 +2324,9 @@ public class CellLayout extends ViewGroup {
             boundingRect.set(cellX, cellY, cellX + spanX, cellY + spanY);
         }
         intersectingViews.clear();
-        Rect r0 = new Rect(cellX, cellY, cellX + spanX, cellY + spanY);
-        Rect r1 = new Rect();
+        Rect r0 = mTmpRect0;
+        r0.set(cellX, cellY, cellX + spanX, cellY + spanY);
+        Rect r1 = mTmpRect1;
         final int count = mShortcutsAndWidgets.getChildCount();
         for (int i = 0; i < count; i++) {
             View child = mShortcutsAndWidgets.getChildAt(i);
@@ -2318,8 +2374,8 @@ public class CellLayout extends ViewGroup {
         regionToCenterPoint(cellX, cellY, spanX, spanY, pixelXY);
 
         // First we determine if things have moved enough to cause a different layout
-        ItemConfiguration swapSolution = findReorderSolution(pixelXY[0], pixelXY[1], spanX, spanY,
-                 spanX,  spanY, direction, dragView,  true,  new ItemConfiguration());
+        ItemConfiguration swapSolution = solveReorder(pixelXY[0], pixelXY[1], spanX, spanY,
+                 spanX,  spanY, direction, dragView,  true,  mSwapSolution);
 
         setUseTempCoords(true);
         if (swapSolution != null && swapSolution.isSolution) {
@@ -2371,12 +2427,12 @@ public class CellLayout extends ViewGroup {
         }
 
         // Find a solution involving pushing / displacing any items in the way
-        ItemConfiguration swapSolution = findReorderSolution(pixelX, pixelY, minSpanX, minSpanY,
-                 spanX,  spanY, mDirectionVector, dragView,  true,  new ItemConfiguration());
+        ItemConfiguration swapSolution = solveReorder(pixelX, pixelY, minSpanX, minSpanY,
+                 spanX,  spanY, mDirectionVector, dragView,  true,  mSwapSolution);
 
         // We attempt the approach which doesn't shuffle views at all
         ItemConfiguration noShuffleSolution = findConfigurationNoShuffle(pixelX, pixelY, minSpanX,
-                minSpanY, spanX, spanY, dragView, new ItemConfiguration());
+                minSpanY, spanX, spanY, dragView, mNoShuffleSolution);
 
         ItemConfiguration finalSolution = null;
 
@@ -2453,49 +2509,361 @@ public class CellLayout extends ViewGroup {
         return mItemPlacementDirty;
     }
 
+    /**
+     * Positions of the children of the layout in a reorder solution. Children are referred to by
+     * their index in the layout, and their positions are kept in primitive arrays so that the
+     * configuration can be reused across searches without allocating.
+     */
     private static class ItemConfiguration extends CellAndSpan {
-        final ArrayMap<View, CellAndSpan> map = new ArrayMap<>();
-        private final ArrayMap<View, CellAndSpan> savedMap = new ArrayMap<>();
-        final ArrayList<View> sortedViews = new ArrayList<>();
-        ArrayList<View> intersectingViews;
+        View[] views = new View[0];
+        int count;
+        int[] cellXs = new int[0];
+        int[] cellYs = new int[0];
+        int[] spanXs = new int[0];
+        int[] spanYs = new int[0];
+        boolean[] canReorder = new boolean[0];
+        private int[] mSavedCellXs = new int[0];
+        private int[] mSavedCellYs = new int[0];
+
+        // Items in the order they are pushed. Items are appended every time the configuration is
+        // loaded, including when the search loads it again for a smaller span.
+        final IntArray sortedItems = new IntArray();
+        // Items ordered by the hash code of their view, then by index, which is the order in
+        // which intersecting views are collected.
+        int[] hashOrder = new int[0];
+        private boolean[] mIntersecting = new boolean[0];
+        boolean hasIntersectingItems;
         boolean isSolution = false;
 
-        void save() {
-            // Copy current state into savedMap
-            for (View v: map.keySet()) {
-                savedMap.get(v).copyFrom(map.get(v));
+        private boolean mLoaded;
+
+        void reset() {
+            Arrays.fill(views, 0, count, null);
+            count = 0;
+            sortedItems.clear();
+            hasIntersectingItems = false;
+            isSolution = false;
+            mLoaded = false;
+            cellX = cellY = spanX = spanY = 0;
+        }
+
+        /**
+         * Starts loading the positions of {@param childCount} items. Loading the configuration
+         * again, without a reset, must be done with the same items.
+         */
+        void beginLoad(int childCount) {
+            if (views.length < childCount) {
+                views = Arrays.copyOf(views, childCount);
+                cellXs = new int[childCount];
+                cellYs = new int[childCount];
+                spanXs = new int[childCount];
+                spanYs = new int[childCount];
+                canReorder = new boolean[childCount];
+                mSavedCellXs = new int[childCount];
+                mSavedCellYs = new int[childCount];
+                hashOrder = new int[childCount];
+                mIntersecting = Arrays.copyOf(mIntersecting, childCount);
+            }
+            count = childCount;
+        }
+
+        void load(int item, View v, int x, int y, int hSpan, int vSpan, boolean reorder) {
+            views[item] = v;
+            cellXs[item] = x;
+            cellYs[item] = y;
+            spanXs[item] = hSpan;
+            spanYs[item] = vSpan;
+            canReorder[item] = reorder;
+            sortedItems.add(item);
+        }
+
+        void endLoad() {
+            if (mLoaded) {
+                return;
+            }
+            mLoaded = true;
+            // Stable insertion sort, by signed hash code
+            for (int i = 0; i < count; i++) {
+                int hash = views[i].hashCode();
+                int j = i;
+                for (; j > 0 && views[hashOrder[j - 1]].hashCode() > hash; j--) {
+                    hashOrder[j] = hashOrder[j - 1];
+                }
+                hashOrder[j] = i;
             }
         }
 
+        void save() {
+            System.arraycopy(cellXs, 0, mSavedCellXs, 0, count);
+            System.arraycopy(cellYs, 0, mSavedCellYs, 0, count);
+        }
+
         void restore() {
-            // Restore current state from savedMap
-            for (View v: savedMap.keySet()) {
-                map.get(v).copyFrom(savedMap.get(v));
+            System.arraycopy(mSavedCellXs, 0, cellXs, 0, count);
+            System.arraycopy(mSavedCellYs, 0, cellYs, 0, count);
+        }
+
+        /**
+         * Returns the index of {@param v}, or -1 if it isn't part of the configuration.
+         */
+        int indexOf(View v) {
+            return indexOf(v, -1);
+        }
+
+        /**
+         * Same as {@link #indexOf(View)}, checking the likely index {@param hint} first.
+         */
+        int indexOf(View v, int hint) {
+            if (v == null) {
+                return -1;
+            }
+            if (hint >= 0 && hint < count && views[hint] == v) {
+                return hint;
+            }
+            for (int i = 0; i < count; i++) {
+                if (views[i] == v) {
+                    return i;
+                }
             }
+            return -1;
         }
 
-        void add(View v, CellAndSpan cs) {
-            map.put(v, cs);
-            savedMap.put(v, new CellAndSpan());
-            sortedViews.add(v);
+        void markCells(GridOccupancy occupancy, int item, boolean value) {
+            occupancy.markCells(cellXs[item], cellYs[item], spanXs[item], spanYs[item], value);
+        }
+
+        void setIntersectingItems(IntArray items) {
+            Arrays.fill(mIntersecting, 0, count, false);
+            for (int i = 0; i < items.size(); i++) {
+                mIntersecting[items.get(i)] = true;
+            }
+            hasIntersectingItems = true;
+        }
+
+        boolean isIntersecting(int item) {
+            return item >= 0 && mIntersecting[item];
         }
 
         int area() {
             return spanX * spanY;
         }
 
-        void getBoundingRectForViews(ArrayList<View> views, Rect outRect) {
-            boolean first = true;
-            for (View v: views) {
-                CellAndSpan c = map.get(v);
-                if (first) {
-                    outRect.set(c.cellX, c.cellY, c.cellX + c.spanX, c.cellY + c.spanY);
-                    first = false;
+        void getBoundingRectForViews(IntArray items, Rect outRect) {
+            for (int i = 0; i < items.size(); i++) {
+                int item = items.get(i);
+                int right = cellXs[item] + spanXs[item];
+                int bottom = cellYs[item] + spanYs[item];
+                if (i == 0) {
+                    outRect.set(cellXs[item], cellYs[item], right, bottom);
                 } else {
-                    outRect.union(c.cellX, c.cellY, c.cellX + c.spanX, c.cellY + c.spanY);
+                    outRect.union(cellXs[item], cellYs[item], right, bottom);
                 }
             }
         }
+
+        /**
+         * Copies the items and the result of {@param other}.
+         */
+        void copyFrom(ItemConfiguration other) {
+            reset();
+            beginLoad(other.count);
+            System.arraycopy(other.views, 0, views, 0, count);
+            System.arraycopy(other.cellXs, 0, cellXs, 0, count);
+            System.arraycopy(other.cellYs, 0, cellYs, 0, count);
+            System.arraycopy(other.spanXs, 0, spanXs, 0, count);
+            System.arraycopy(other.spanYs, 0, spanYs, 0, count);
+            System.arraycopy(other.canReorder, 0, canReorder, 0, count);
+            System.arraycopy(other.hashOrder, 0, hashOrder, 0, count);
+            System.arraycopy(other.mIntersecting, 0, mIntersecting, 0, count);
+            sortedItems.copyFrom(other.sortedItems);
+            hasIntersectingItems = other.hasIntersectingItems;
+            isSolution = other.isSolution;
+            mLoaded = other.mLoaded;
+            super.copyFrom(other);
+        }
+    }
+
+    /**
+     * Remembers the last reorder searches, so that a drag which moves back and forth over the same
+     * cells reuses their solutions instead of searching again.
+     *
+     * A search only depends on the children of the layout, the occupied cells, its spans and
+     * direction, and the cells tried for each span while shrinking the dragged item, which are
+     * all compared to the current state before reusing a solution.
+     */
+    private class ReorderCache {
+
+        private static final int SIZE = 4;
+
+        // Most recently used first
+        private final Entry[] mEntries = new Entry[SIZE];
+        private final int[] mTmpCell = new int[2];
+        private Entry mRecording;
+
+        ReorderCache() {
+            for (int i = 0; i < SIZE; i++) {
+                mEntries[i] = new Entry();
+            }
+        }
+
+        /**
+         * Copies the result of a previous search matching the given query to {@param solution},
+         * {@param direction} and {@link #mTmpOccupied}, and returns true if there was one.
+         */
+        boolean restore(int pixelX, int pixelY, int minSpanX, int minSpanY, int spanX,
+                int spanY, int[] direction, View dragView, boolean decX,
+                ItemConfiguration solution) {
+            for (int i = 0; i < SIZE; i++) {
+                Entry entry = mEntries[i];
+                if (entry.matches(pixelX, pixelY, minSpanX, minSpanY, spanX, spanY, direction,
+                        dragView, decX)) {
+                    moveToFront(i);
+                    solution.copyFrom(entry.solution);
+                    direction[0] = entry.directionOut[0];
+                    direction[1] = entry.directionOut[1];
+                    entry.tmpOccupied.copyTo(mTmpOccupied);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void beginRecording(int minSpanX, int minSpanY, int spanX, int spanY, int[] direction,
+                View dragView, boolean decX) {
+            moveToFront(SIZE - 1);
+            Entry entry = mEntries[0];
+            entry.valid = false;
+            entry.minSpanX = minSpanX;
+            entry.minSpanY = minSpanY;
+            entry.spanX = spanX;
+            entry.spanY = spanY;
+            entry.directionIn[0] = direction[0];
+            entry.directionIn[1] = direction[1];
+            entry.dragView = dragView;
+            entry.decX = decX;
+            entry.children.reset();
+            copyCurrentStateToSolution(entry.children, false);
+            entry.occupied = copyOccupancy(mOccupied, entry.occupied);
+            entry.tries.clear();
+            mRecording = entry;
+        }
+
+        /**
+         * Called with the cell nearest to the drop found for each span tried by the search.
+         */
+        void onTryCell(int spanX, int spanY, int[] cell) {
+            if (mRecording != null) {
+                mRecording.tries.add(spanX);
+                mRecording.tries.add(spanY);
+                mRecording.tries.add(cell[0]);
+                mRecording.tries.add(cell[1]);
+            }
+        }
+
+        void endRecording(ItemConfiguration solution, int[] direction) {
+            Entry entry = mRecording;
+            mRecording = null;
+            entry.solution.copyFrom(solution);
+            entry.directionOut[0] = direction[0];
+            entry.directionOut[1] = direction[1];
+            entry.tmpOccupied = copyOccupancy(mTmpOccupied, entry.tmpOccupied);
+            entry.valid = true;
+        }
+
+        void clear() {
+            for (Entry entry : mEntries) {
+                entry.valid = false;
+                entry.dragView = null;
+                entry.children.reset();
+                entry.solution.reset();
+            }
+        }
+
+        private void moveToFront(int index) {
+            Entry entry = mEntries[index];
+            System.arraycopy(mEntries, 0, mEntries, 1, index);
+            mEntries[0] = entry;
+        }
+
+        private GridOccupancy copyOccupancy(GridOccupancy src, GridOccupancy dest) {
+            if (dest == null || dest.getCountX() != mCountX || dest.getCountY() != mCountY) {
+                dest = new GridOccupancy(mCountX, mCountY);
+            }
+            src.copyTo(dest);
+            return dest;
+        }
+
+        private class Entry {
+            boolean valid;
+            int minSpanX, minSpanY, spanX, spanY;
+            final int[] directionIn = new int[2];
+            View dragView;
+            boolean decX;
+            final ItemConfiguration children = new ItemConfiguration();
+            GridOccupancy occupied;
+            // (spanX, spanY, cellX, cellY) of the cell tried for each span
+            final IntArray tries = new IntArray();
+
+            final ItemConfiguration solution = new ItemConfiguration();
+            final int[] directionOut = new int[2];
+            GridOccupancy tmpOccupied;
+
+            boolean matches(int pixelX, int pixelY, int minSpanX, int minSpanY, int spanX,
+                    int spanY, int[] direction, View dragView, boolean decX) {
+                if (!valid || this.minSpanX != minSpanX || this.minSpanY != minSpanY
+                        || this.spanX != spanX || this.spanY != spanY
+                        || directionIn[0] != direction[0] || directionIn[1] != direction[1]
+                        || this.dragView != dragView || this.decX != decX
+                        || !occupied.equals(mOccupied)) {
+                    return false;
+                }
+                int childCount = mShortcutsAndWidgets.getChildCount();
+                if (children.count != childCount) {
+                    return false;
+                }
+                for (int i = 0; i < childCount; i++) {
+                    View child = mShortcutsAndWidgets.getChildAt(i);
+                    LayoutParams lp = (LayoutParams) child.getLayoutParams();
+                    if (children.views[i] != child || children.cellXs[i] != lp.cellX
+                            || children.cellYs[i] != lp.cellY
+                            || children.spanXs[i] != lp.cellHSpan
+                            || children.spanYs[i] != lp.cellVSpan
+                            || children.canReorder[i] != lp.canReorder) {
+                        return false;
+                    }
+                }
+                // The drop must resolve to the same cells as the recorded search
+                for (int i = 0; i < tries.size(); i += 4) {
+                    int[] cell = mTmpCell;
+                    cell[0] = cell[1] = 0;
+                    findNearestArea(pixelX, pixelY, tries.get(i), tries.get(i + 1), cell);
+                    if (cell[0] != tries.get(i + 2) || cell[1] != tries.get(i + 3)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #findReorderSolution}, reusing the solution of a recent identical search when
+     * possible.
+     */
+    private ItemConfiguration solveReorder(int pixelX, int pixelY, int minSpanX, int minSpanY,
+            int spanX, int spanY, int[] direction, View dragView, boolean decX,
+            ItemConfiguration solution) {
+        solution.reset();
+        if (mReorderCache.restore(pixelX, pixelY, minSpanX, minSpanY, spanX, spanY, direction,
+                dragView, decX, solution)) {
+            return solution;
+        }
+        mReorderCache.beginRecording(minSpanX, minSpanY, spanX, spanY, direction, dragView,
+                decX);
+        findReorderSolution(pixelX, pixelY, minSpanX, minSpanY, spanX, spanY, direction,
+                dragView, decX, solution);
+        mReorderCache.endRecording(solution, direction);
+        return solution;
     }
 
     /**
@@ -2634,7 +3002,7 @@ public class CellLayout extends ViewGroup {
 
     public boolean isOccupied(int x, int y) {
         if (x < mCountX && y < mCountY) {
-            return mOccupied.cells[x][y];
+            return mOccupied.isOccupied(x, y);
         } else {
             throw new RuntimeException("Position exceeds the bound of this CellLayout");
         }
@@ -2855,13 +3223,16 @@ public class CellLayout extends ViewGroup {
      */
     public boolean hasReorderSolution(ItemInfo itemInfo) {
         int[] cellPoint = new int[2];
+        // Not mSwapSolution, which may hold the solution previewed by an ongoing drag
+        ItemConfiguration solution = new ItemConfiguration();
         // Check for a solution starting at every cell.
         for (int cellX = 0; cellX < getCountX(); cellX++) {
             for (int cellY = 0; cellY < getCountY(); cellY++) {
                 cellToPoint(cellX, cellY, cellPoint);
+                solution.reset();
                 if (findReorderSolution(cellPoint[0], cellPoint[1], itemInfo.minSpanX,
                         itemInfo.minSpanY, itemInfo.spanX, itemInfo.spanY, mDirectionVector, null,
-                        true, new ItemConfiguration()).isSolution) {
+                        true, solution).isSolution) {
                     return true;
                 }
             }
@@ -166,9 +166,12 @@ import com.android.launcher3.touch.ItemClickHandler;
 import com.android.launcher3.uioverrides.plugins.PluginManagerWrapper;
 import com.android.launcher3.util.ActivityResultInfo;
 import com.android.launcher3.util.ActivityTracker;
+import com.android.launcher3.util.BitmapPool;
 import com.android.launcher3.util.ComponentKey;
+import com.android.launcher3.util.FrameMetricsTracker;
 import com.android.launcher3.util.IntArray;
 import com.android.launcher3.util.ItemInfoMatcher;
+import com.android.launcher3.util.MainThreadStallDetector;
 import com.android.launcher3.util.MultiValueAlpha;
 import com.android.launcher3.util.MultiValueAlpha.AlphaProperty;
 import com.android.launcher3.util.OnboardingPrefs;
@@ -176,6 +179,7 @@ import com.android.launcher3.util.PackageManagerHelper;
 import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.util.PendingRequestArgs;
 import com.android.launcher3.util.SafeCloseable;
+import com.android.launcher3.util.StartupTracer;
 import com.android.launcher3.util.SystemUiController;
 import com.android.launcher3.util.Themes;
 import com.android.launcher3.util.Thunk;
@@ -368,6 +372,9 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
     protected void onCreate(Bundle savedInstanceState) {
         Object traceToken = TraceHelper.INSTANCE.beginSection(ON_CREATE_EVT,
                 TraceHelper.FLAG_UI_EVENT);
+        long startupTraceToken = StartupTracer.INSTANCE.beginPhase();
+        // Started early to also catch the blocking calls made while creating the launcher
+        MainThreadStallDetector.INSTANCE.start();
         if (DEBUG_STRICT_MODE) {
             StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
                     .detectDiskReads()
@@ -439,6 +446,7 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
         mDragController = new LauncherDragController(this);
         mAllAppsController = new AllAppsTransitionController(this);
         mStateManager = new StateManager<>(this, NORMAL);
+        mStateManager.addStateListener(FrameMetricsTracker.INSTANCE.newStateListener());
 
         mOnboardingPrefs = createOnboardingPrefs(mSharedPrefs);
 
@@ -498,6 +506,8 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
                 OverlayPlugin.class, false /* allowedMultiple */);
 
         mRotationHelper.initialize();
+        FrameMetricsTracker.INSTANCE.attach(getWindow());
+        StartupTracer.INSTANCE.endPhase("Launcher.onCreate", startupTraceToken);
         TraceHelper.INSTANCE.endSection(traceToken);
 
         mUserChangedCallbackCloseable = UserCache.INSTANCE.get(this).addUserChangeListener(
@@ -926,6 +936,7 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
         logStopAndResume(false /* isResume */);
         mAppWidgetHost.setActivityStarted(false);
         NotificationListener.removeNotificationsChangedListener();
+        MainThreadStallDetector.INSTANCE.stop();
     }
 
     @Override
@@ -933,6 +944,7 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
         Object traceToken = TraceHelper.INSTANCE.beginSection(ON_START_EVT,
                 TraceHelper.FLAG_UI_EVENT);
         super.onStart();
+        MainThreadStallDetector.INSTANCE.start();
         if (!mDeferOverlayCallbacks) {
             mOverlayManager.onActivityStarted(this);
         }
@@ -1644,6 +1656,7 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
 
         mModel.removeCallbacks(this);
         mRotationHelper.destroy();
+        FrameMetricsTracker.INSTANCE.detach(getWindow());
 
         try {
             mAppWidgetHost.stopListening();
@@ -2051,6 +2064,7 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
     @Override
     public void onTrimMemory(int level) {
         super.onTrimMemory(level);
+        BitmapPool.INSTANCE.get(this).onTrimMemory(level);
         if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
             // The widget preview db can result in holding onto over
             // 3MB of memory for caching which isn't necessary.
@@ -2719,10 +2733,25 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
     }
 
     /**
-     * $ adb shell dumpsys activity com.android.launcher3.Launcher [--all]
+     * $ adb shell dumpsys activity com.android.launcher3.Launcher
+     *         [--all | --startup-trace | --reset-frame-metrics | --reset-stalls]
      */
     @Override
     public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (args.length > 0 && TextUtils.equals(args[0], "--startup-trace")) {
+            StartupTracer.INSTANCE.writeChromeTrace(writer);
+            return;
+        }
+        if (args.length > 0 && TextUtils.equals(args[0], "--reset-frame-metrics")) {
+            FrameMetricsTracker.INSTANCE.reset();
+            writer.println(prefix + "Frame metrics reset");
+            return;
+        }
+        if (args.length > 0 && TextUtils.equals(args[0], "--reset-stalls")) {
+            MainThreadStallDetector.INSTANCE.reset();
+            writer.println(prefix + "Main thread stalls reset");
+            return;
+        }
         super.dump(prefix, fd, writer, args);
 
         if (args.length > 0 && TextUtils.equals(args[0], "--all")) {
@@ -2762,6 +2791,9 @@ public class Launcher extends StatefulActivity<LauncherState> implements Launche
         mStateManager.dump(prefix, writer);
         mPopupDataProvider.dump(prefix, writer);
         mDeviceProfile.dump(prefix, writer);
+        StartupTracer.INSTANCE.dump(prefix, writer);
+        FrameMetricsTracker.INSTANCE.dump(prefix, writer);
+        MainThreadStallDetector.INSTANCE.dump(prefix, writer);
 
         try {
             FileLog.flushAll(writer);
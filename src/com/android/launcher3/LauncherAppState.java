@@ -49,6 +49,7 @@ import com.android.launcher3.util.RunnableList;
 import com.android.launcher3.util.SafeCloseable;
 import com.android.launcher3.util.SettingsCache;
 import com.android.launcher3.util.SimpleBroadcastReceiver;
+import com.android.launcher3.util.StartupTracer;
 import com.android.launcher3.util.Themes;
 import com.android.launcher3.widget.DatabaseWidgetPreviewLoader;
 import com.android.launcher3.widget.custom.CustomWidgetManager;
@@ -63,7 +64,7 @@ public class LauncherAppState {
 
     // We do not need any synchronization for this variable as its only written on UI thread.
     public static final MainThreadInitializedObject<LauncherAppState> INSTANCE =
-            new MainThreadInitializedObject<LauncherAppState>(LauncherAppState::new) {
+            new MainThreadInitializedObject<LauncherAppState>(LauncherAppState::createInstance) {
                 @Override
                 protected void onPostInit(Context context) {
                     super.onPostInit(context);
@@ -92,6 +93,13 @@ public class LauncherAppState {
         return mContext;
     }
 
+    private static LauncherAppState createInstance(Context context) {
+        long traceToken = StartupTracer.INSTANCE.beginPhase();
+        LauncherAppState app = new LauncherAppState(context);
+        StartupTracer.INSTANCE.endPhase("LauncherAppState.init", traceToken);
+        return app;
+    }
+
     public LauncherAppState(Context context) {
         this(context, LauncherFiles.APP_ICONS_DB);
         Log.v(Launcher.TAG, "LauncherAppState initiated");
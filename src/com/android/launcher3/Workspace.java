@@ -493,6 +493,9 @@ public class Workspace extends PagedView<WorkspacePageIndicator>
         });
 
         mDragInfo = null;
+        if (mOutlineProvider != null) {
+            mOutlineProvider.releaseDragOutline();
+        }
         mOutlineProvider = null;
         mDragSourceInternal = null;
     }
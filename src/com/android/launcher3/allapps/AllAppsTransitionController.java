@@ -26,6 +26,7 @@ import static com.android.launcher3.util.SystemUiController.UI_STATE_ALLAPPS;
 
 import android.animation.Animator;
 import android.animation.Animator.AnimatorListener;
+import android.animation.AnimatorListenerAdapter;
 import android.animation.ObjectAnimator;
 import android.util.FloatProperty;
 import android.view.View;
@@ -43,6 +44,7 @@ import com.android.launcher3.anim.PropertySetter;
 import com.android.launcher3.config.FeatureFlags;
 import com.android.launcher3.statemanager.StateManager.StateHandler;
 import com.android.launcher3.states.StateAnimationConfig;
+import com.android.launcher3.util.FrameMetricsTracker;
 import com.android.launcher3.views.ScrimView;
 
 /**
@@ -165,6 +167,9 @@ public class AllAppsTransitionController
         Animator anim = createSpringAnimation(mProgress, targetProgress);
         anim.setInterpolator(config.getInterpolator(ANIM_VERTICAL_PROGRESS, interpolator));
         anim.addListener(getProgressAnimatorListener());
+        if (config.userControlled) {
+            anim.addListener(newSwipeMetricsListener());
+        }
         builder.add(anim);
 
         setAlphas(toState, config, builder);
@@ -194,6 +199,25 @@ public class AllAppsTransitionController
         return AnimatorListeners.forSuccessCallback(this::onProgressAnimationEnd);
     }
 
+    private AnimatorListener newSwipeMetricsListener() {
+        return new AnimatorListenerAdapter() {
+            private FrameMetricsTracker.Interaction mInteraction;
+
+            @Override
+            public void onAnimationStart(Animator animation) {
+                mInteraction = FrameMetricsTracker.INSTANCE.begin("AllApps swipe");
+            }
+
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                if (mInteraction != null) {
+                    mInteraction.end();
+                    mInteraction = null;
+                }
+            }
+        };
+    }
+
     /**
      * see Launcher#setupViews
      */
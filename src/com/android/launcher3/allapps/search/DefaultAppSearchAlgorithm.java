@@ -15,24 +15,23 @@
  */
 package com.android.launcher3.allapps.search;
 
-import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
-
 import android.content.Context;
-import android.os.Handler;
+import android.os.CancellationSignal;
 
-import androidx.annotation.AnyThread;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 
-import com.android.launcher3.LauncherAppState;
 import com.android.launcher3.allapps.AllAppsGridAdapter.AdapterItem;
-import com.android.launcher3.model.AllAppsList;
-import com.android.launcher3.model.BaseModelUpdateTask;
-import com.android.launcher3.model.BgDataModel;
+import com.android.launcher3.allapps.AllAppsStore;
+import com.android.launcher3.allapps.AppInfoComparator;
 import com.android.launcher3.model.data.AppInfo;
+import com.android.launcher3.search.AppTitleSearchIndex;
 import com.android.launcher3.search.SearchAlgorithm;
 import com.android.launcher3.search.SearchCallback;
-import com.android.launcher3.search.StringMatcherUtility;
+import com.android.launcher3.search.SearchScheduler;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -42,57 +41,82 @@ public class DefaultAppSearchAlgorithm implements SearchAlgorithm<AdapterItem> {
 
     protected static final int MAX_RESULTS_COUNT = 5;
 
-    private final LauncherAppState mAppState;
-    private final Handler mResultHandler;
+    private final AllAppsStore mAppsStore;
+    private final SearchScheduler mScheduler = new SearchScheduler();
+    private final AppTitleSearchIndex mSearchIndex = new AppTitleSearchIndex();
+    private final AppInfoComparator mAppNameComparator;
+
+    // Apps from the store, sorted once per update on the search thread
+    private AppInfo[] mApps;
+    private List<AppInfo> mSortedApps;
 
-    public DefaultAppSearchAlgorithm(Context context) {
-        mAppState = LauncherAppState.getInstance(context);
-        mResultHandler = new Handler(MAIN_EXECUTOR.getLooper());
+    public DefaultAppSearchAlgorithm(Context context, AllAppsStore appsStore) {
+        mAppsStore = appsStore;
+        mAppNameComparator = new AppInfoComparator(context);
     }
 
     @Override
     public void cancel(boolean interruptActiveRequests) {
         if (interruptActiveRequests) {
-            mResultHandler.removeCallbacksAndMessages(null);
+            mScheduler.cancel();
         }
     }
 
     @Override
     public void doSearch(String query, SearchCallback<AdapterItem> callback) {
-        mAppState.getModel().enqueueModelUpdateTask(new BaseModelUpdateTask() {
-            @Override
-            public void execute(LauncherAppState app, BgDataModel dataModel, AllAppsList apps) {
-                ArrayList<AdapterItem> result = getResult(apps.data, query);
-                mResultHandler.post(() -> callback.onSearchResult(query, result));
-            }
-        });
+        AppInfo[] apps = mAppsStore.getApps();
+        mScheduler.schedule(signal -> getResult(getSortedApps(apps), query, signal),
+                result -> callback.onSearchResult(query, result));
+    }
+
+    /**
+     * Returns {@param apps} in the order of the apps list, so that the first matches are the
+     * first ones shown there. The same list is returned until the apps change, so that the index
+     * can reuse previous results.
+     */
+    @WorkerThread
+    private List<AppInfo> getSortedApps(AppInfo[] apps) {
+        if (apps != mApps) {
+            ArrayList<AppInfo> sortedApps = new ArrayList<>(Arrays.asList(apps));
+            sortedApps.sort(mAppNameComparator);
+            mApps = apps;
+            mSortedApps = sortedApps;
+        }
+        return mSortedApps;
     }
 
     public ArrayList<AdapterItem> getResult(List<AppInfo> apps, String query) {
-        return getTitleMatchResult(apps, query);
+        return getTitleMatchResult(apps, query, null);
+    }
+
+    /**
+     * Same as {@link #getResult(List, String)}, but returns null if cancelled by {@param signal}
+     */
+    @Nullable
+    public ArrayList<AdapterItem> getResult(List<AppInfo> apps, String query,
+            @Nullable CancellationSignal signal) {
+        return getTitleMatchResult(apps, query, signal);
     }
 
     /**
      * Filters {@link AppInfo}s matching specified query
      */
-    @AnyThread
-    private static ArrayList<AdapterItem> getTitleMatchResult(List<AppInfo> apps, String query) {
+    @WorkerThread
+    @Nullable
+    private ArrayList<AdapterItem> getTitleMatchResult(List<AppInfo> apps, String query,
+            @Nullable CancellationSignal signal) {
         // Do an intersection of the words in the query and each title, and filter out all the
         // apps that don't match all of the words in the query.
         final String queryTextLower = query.toLowerCase();
         final ArrayList<AdapterItem> result = new ArrayList<>();
-        StringMatcherUtility.StringMatcher matcher =
-                StringMatcherUtility.StringMatcher.getInstance();
-
-        int resultCount = 0;
-        int total = apps.size();
-        for (int i = 0; i < total && resultCount < MAX_RESULTS_COUNT; i++) {
-            AppInfo info = apps.get(i);
-            if (StringMatcherUtility.matches(queryTextLower, info.title.toString(), matcher)) {
-                AdapterItem appItem = AdapterItem.asApp(resultCount, "", info, resultCount);
-                result.add(appItem);
-                resultCount++;
-            }
+
+        List<AppInfo> matches =
+                mSearchIndex.search(apps, queryTextLower, MAX_RESULTS_COUNT, signal);
+        if (signal != null && signal.isCanceled()) {
+            return null;
+        }
+        for (int resultCount = 0; resultCount < matches.size(); resultCount++) {
+            result.add(AdapterItem.asApp(resultCount, "", matches.get(resultCount), resultCount));
         }
         return result;
     }
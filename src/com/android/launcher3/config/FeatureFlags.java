@@ -261,6 +261,15 @@ public final class FeatureFlags {
             "ENABLE_WALLPAPER_SCRIM", false,
             "Enables scrim over wallpaper for text protection.");
 
+    public static final BooleanFlag ENABLE_PERSISTENT_TASK_THUMBNAILS = getDebugFlag(
+            "ENABLE_PERSISTENT_TASK_THUMBNAILS", false,
+            "Keeps low-res task thumbnails on disk to show them in Overview after a restart.");
+
+    public static final BooleanFlag ENABLE_WIDGET_PREVIEW_PACK = getDebugFlag(
+            "ENABLE_WIDGET_PREVIEW_PACK", true,
+            "Stores generated widget previews as raw pixels in memory mapped files instead of "
+                    + "PNGs in a database.");
+
     public static void initialize(Context context) {
         synchronized (sDebugFlags) {
             for (DebugFlag flag : sDebugFlags) {
@@ -38,6 +38,7 @@ import com.android.launcher3.config.FeatureFlags;
 import com.android.launcher3.dragndrop.DraggableView;
 import com.android.launcher3.icons.BitmapRenderer;
 import com.android.launcher3.icons.FastBitmapDrawable;
+import com.android.launcher3.util.BitmapPool;
 import com.android.launcher3.util.SafeCloseable;
 import com.android.launcher3.widget.LauncherAppWidgetHostView;
 
@@ -51,6 +52,7 @@ public class DragPreviewProvider {
     private final Rect mTempRect = new Rect();
 
     protected final View mView;
+    protected final BitmapPool mBitmapPool;
 
     // The padding added to the drag view during the preview generation.
     public final int previewPadding;
@@ -66,6 +68,7 @@ public class DragPreviewProvider {
 
     public DragPreviewProvider(View view, Context context) {
         mView = view;
+        mBitmapPool = BitmapPool.INSTANCE.get(context);
         blurSizeOutline =
                 context.getResources().getDimensionPixelSize(R.dimen.blur_size_medium_outline);
         previewPadding = blurSizeOutline;
@@ -138,6 +141,17 @@ public class DragPreviewProvider {
         UI_HELPER_EXECUTOR.post(mOutlineGeneratorCallback);
     }
 
+    /**
+     * Returns the drag outline to the bitmap pool once the drag has ended. If the outline is
+     * still being generated, it is returned once done.
+     */
+    public void releaseDragOutline() {
+        UI_HELPER_EXECUTOR.post(() -> {
+            mBitmapPool.release(generatedDragOutline);
+            generatedDragOutline = null;
+        });
+    }
+
     protected static Rect getDrawableBounds(Drawable d) {
         Rect bounds = new Rect();
         d.copyBounds(bounds);
@@ -182,7 +196,14 @@ public class DragPreviewProvider {
     }
 
     protected Bitmap convertPreviewToAlphaBitmap(Bitmap preview) {
-        return preview.copy(Bitmap.Config.ALPHA_8, true);
+        if (preview.getConfig() == Bitmap.Config.HARDWARE) {
+            // Hardware bitmaps can't be drawn on a software canvas
+            return preview.copy(Bitmap.Config.ALPHA_8, true);
+        }
+        Bitmap alpha = mBitmapPool.borrow(
+                preview.getWidth(), preview.getHeight(), Bitmap.Config.ALPHA_8);
+        new Canvas(alpha).drawBitmap(preview, 0, 0, null);
+        return alpha;
     }
 
     private class OutlineGeneratorCallback implements Runnable {
@@ -202,7 +223,10 @@ public class DragPreviewProvider {
             Bitmap preview = convertPreviewToAlphaBitmap(mPreviewSnapshot);
             if (mIsIcon) {
                 int size = Launcher.getLauncher(mContext).getDeviceProfile().iconSizePx;
-                preview = Bitmap.createScaledBitmap(preview, size, size, false);
+                Bitmap scaled = mBitmapPool.borrow(size, size, Bitmap.Config.ALPHA_8);
+                new Canvas(scaled).drawBitmap(preview, null, new Rect(0, 0, size, size), null);
+                mBitmapPool.release(preview);
+                preview = scaled;
             }
             //else case covers AppWidgetHost (doesn't drag/drop across different device profiles)
 
@@ -84,6 +84,7 @@ import com.android.launcher3.pm.InstallSessionHelper;
 import com.android.launcher3.pm.UserCache;
 import com.android.launcher3.uioverrides.PredictedAppIconInflater;
 import com.android.launcher3.uioverrides.plugins.PluginManagerWrapper;
+import com.android.launcher3.util.BitmapPool;
 import com.android.launcher3.util.ComponentKey;
 import com.android.launcher3.util.IntArray;
 import com.android.launcher3.util.MainThreadInitializedObject;
@@ -146,6 +147,7 @@ public class LauncherPreviewRenderer extends ContextWrapper
             putBaseInstance(FontCache.INSTANCE);
             putBaseInstance(FontManager.INSTANCE);
             putBaseInstance(IconPackProvider.INSTANCE);
+            putBaseInstance(BitmapPool.INSTANCE);
             mObjectMap.put(InvariantDeviceProfile.INSTANCE, idp);
             mObjectMap.put(LauncherAppState.INSTANCE,
                     new LauncherAppState(this, null /* iconCacheFileName */));
@@ -427,16 +429,18 @@ public class LauncherPreviewRenderer extends ContextWrapper
 
     private void populate(BgDataModel dataModel,
             Map<ComponentKey, AppWidgetProviderInfo> widgetProviderInfoMap) {
+        // Read the model from its snapshot, as the model can be updated while rendering
+        BgDataModel.Snapshot snapshot = dataModel.getSnapshot();
         // Separate the items that are on the current screen, and the other remaining items.
         ArrayList<ItemInfo> currentWorkspaceItems = new ArrayList<>();
         ArrayList<ItemInfo> otherWorkspaceItems = new ArrayList<>();
         ArrayList<LauncherAppWidgetInfo> currentAppWidgets = new ArrayList<>();
         ArrayList<LauncherAppWidgetInfo> otherAppWidgets = new ArrayList<>();
         filterCurrentWorkspaceItems(0 /* currentScreenId */,
-                dataModel.workspaceItems, currentWorkspaceItems,
+                new ArrayList<>(snapshot.workspaceItems), currentWorkspaceItems,
                 otherWorkspaceItems);
-        filterCurrentWorkspaceItems(0 /* currentScreenId */, dataModel.appWidgets,
-                currentAppWidgets, otherAppWidgets);
+        filterCurrentWorkspaceItems(0 /* currentScreenId */,
+                new ArrayList<>(snapshot.appWidgets), currentAppWidgets, otherAppWidgets);
         sortWorkspaceItemsSpatially(mIdp, currentWorkspaceItems);
         for (ItemInfo itemInfo : currentWorkspaceItems) {
             switch (itemInfo.itemType) {
@@ -471,7 +475,7 @@ public class LauncherPreviewRenderer extends ContextWrapper
         IntArray ranks = getMissingHotseatRanks(currentWorkspaceItems,
                 mDp.numShownHotseatIcons);
         FixedContainerItems hotseatpredictions =
-                dataModel.extraItems.get(CONTAINER_HOTSEAT_PREDICTION);
+                snapshot.getExtraItems(CONTAINER_HOTSEAT_PREDICTION);
         List<ItemInfo> predictions = hotseatpredictions == null
                 ? Collections.emptyList() : hotseatpredictions.items;
         int count = Math.min(ranks.size(), predictions.size());
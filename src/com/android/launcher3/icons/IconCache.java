@@ -31,6 +31,7 @@ import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.pm.ShortcutInfo;
 import android.graphics.drawable.Drawable;
+import android.os.Message;
 import android.os.Process;
 import android.os.UserHandle;
 import android.util.Log;
@@ -68,6 +69,10 @@ public class IconCache extends BaseIconCache {
 
     private static final String TAG = "Launcher.IconCache";
 
+    // What of the messages waiting for the icon updates, which must differ from posted runnables
+    private static final int MSG_AFTER_ICON_UPDATES = 1;
+    private static final long ICON_UPDATES_CHECK_INTERVAL = 100;
+
     private final Predicate<ItemInfoWithIcon> mIsUsingFallbackOrNonDefaultIconCheck = w ->
             w.bitmap != null && (w.bitmap.isNullOrLowRes() || !isDefaultIcon(w.bitmap, w.user));
 
@@ -99,6 +104,13 @@ public class IconCache extends BaseIconCache {
         mIconProvider = iconProvider;
     }
 
+    /**
+     * Returns the current system icon state, which invalidates all cached icons when changed.
+     */
+    public String getSystemIconState() {
+        return mIconProvider.getSystemIconState() + "," + mIconPixelSize;
+    }
+
     @Override
     protected long getSerialNumberForUser(UserHandle user) {
         return mUserManager.getSerialNumberForUser(user);
@@ -132,6 +144,14 @@ public class IconCache extends BaseIconCache {
         }
     }
 
+    /**
+     * Runs {@param callback} on the worker thread once all the icon updates queued by the
+     * handlers of {@link #getUpdateHandler()} are done.
+     */
+    public void executeAfterIconUpdates(Runnable callback) {
+        new AfterIconUpdatesTask(callback).schedule(0);
+    }
+
     /**
      * Closes the cache DB. This will clear any in-memory cache.
      */
@@ -348,4 +368,33 @@ public class IconCache extends BaseIconCache {
 
         void reapplyItemInfo(ItemInfoWithIcon info);
     }
+
+    /**
+     * Waits for the icon update tasks, which handle one icon at a time and then post themselves
+     * again, so that they are only done once none of them is queued on the worker.
+     */
+    private class AfterIconUpdatesTask implements Runnable {
+
+        private final Runnable mCallback;
+
+        AfterIconUpdatesTask(Runnable callback) {
+            mCallback = callback;
+        }
+
+        void schedule(long delay) {
+            Message msg = Message.obtain(mWorkerHandler, this);
+            msg.what = MSG_AFTER_ICON_UPDATES;
+            mWorkerHandler.sendMessageDelayed(msg, delay);
+        }
+
+        @Override
+        public void run() {
+            // Runnables posted on the worker, including the icon update tasks, have a what of 0
+            if (mWorkerHandler.hasMessages(0)) {
+                schedule(ICON_UPDATES_CHECK_INTERVAL);
+            } else {
+                mCallback.run();
+            }
+        }
+    }
 }
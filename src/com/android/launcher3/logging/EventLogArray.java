@@ -15,18 +15,25 @@
  */
 package com.android.launcher3.logging;
 
-
-import android.util.Log;
 import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.Locale;
-import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * A utility class to record and log events. Events are stored in a fixed size array and old logs
  * are purged as new events come.
+ *
+ * Recording is thread safe, lock free and doesn't allocate: event names are interned into ids
+ * shared by all the logs, and extras are stored in primitive slots. Formatting only happens when
+ * the log is dumped or exported.
  */
 public class EventLogArray {
 
@@ -35,116 +42,278 @@ public class EventLogArray {
     private static final int TYPE_INTEGER = 2;
     private static final int TYPE_BOOL_TRUE = 3;
     private static final int TYPE_BOOL_FALSE = 4;
+    private static final int TYPE_INTEGER_AT_POSITION = 5;
+
+    // Maximum number of distinct event names, further names are recorded as OVERFLOW_EVENT
+    private static final int MAX_EVENT_IDS = 1024;
+    private static final int OVERFLOW_EVENT_ID = 0;
+
+    private static final ConcurrentHashMap<String, Integer> sEventIds = new ConcurrentHashMap<>();
+    private static final AtomicReferenceArray<String> sEventNames =
+            new AtomicReferenceArray<>(MAX_EVENT_IDS);
+    private static final AtomicInteger sEventIdCount = new AtomicInteger();
+
+    private static final SimpleDateFormat DATE_FORMAT =
+            new SimpleDateFormat("  HH:mm:ss.SSSZ  ", Locale.US);
+
+    static {
+        sEventNames.set(OVERFLOW_EVENT_ID, "(too many event names)");
+        sEventIdCount.set(OVERFLOW_EVENT_ID + 1);
+    }
 
     private final String name;
-    private final EventEntry[] logs;
-    private int nextIndex;
-    private int mLogId;
+    private final int size;
+
+    // Sequence of the next entry, entries before mClearedSequence are ignored
+    private final AtomicLong mNextSequence = new AtomicLong();
+    private volatile long mClearedSequence;
+    // Sequence number of the entry in each slot, -1 while the slot is being written
+    private final AtomicLongArray mSequences;
+    private final int[] mEventIds;
+    private final int[] mTypes;
+    private final int[] mExtras;
+    private final long[] mPositions;
+    private final long[] mTimes;
+    private final int[] mTraceIds;
+    private final AtomicIntegerArray mDuplicateCounts;
+
+    private volatile int mLogId;
 
     public EventLogArray(String name, int size) {
         this.name = name;
-        logs = new EventEntry[size];
-        nextIndex = 0;
+        // Merging duplicates needs the last two entries and a free slot
+        this.size = Math.max(size, 3);
+        mSequences = new AtomicLongArray(this.size);
+        for (int i = 0; i < this.size; i++) {
+            mSequences.set(i, -1);
+        }
+        mEventIds = new int[this.size];
+        mTypes = new int[this.size];
+        mExtras = new int[this.size];
+        mPositions = new long[this.size];
+        mTimes = new long[this.size];
+        mTraceIds = new int[this.size];
+        mDuplicateCounts = new AtomicIntegerArray(this.size);
+    }
+
+    /**
+     * Returns the id of the event name. Callers logging from hot paths can keep the id and use the
+     * id based variants of {@link #addLog}.
+     */
+    public static int getEventId(String event) {
+        Integer id = sEventIds.get(event);
+        if (id != null) {
+            return id;
+        }
+        if (sEventIdCount.get() >= MAX_EVENT_IDS) {
+            return OVERFLOW_EVENT_ID;
+        }
+        return sEventIds.computeIfAbsent(event, EventLogArray::newEventId);
+    }
+
+    private static Integer newEventId(String event) {
+        int id = sEventIdCount.getAndIncrement();
+        if (id >= MAX_EVENT_IDS) {
+            return OVERFLOW_EVENT_ID;
+        }
+        sEventNames.set(id, event);
+        return id;
     }
 
     public void addLog(String event) {
-        addLog(TYPE_ONE_OFF, event, 0);
+        addLog(getEventId(event));
     }
 
     public void addLog(String event, int extras) {
-        addLog(TYPE_INTEGER, event, extras);
+        addLog(getEventId(event), extras);
     }
 
     public void addLog(String event, boolean extras) {
-        addLog(extras ? TYPE_BOOL_TRUE : TYPE_BOOL_FALSE, event, 0);
+        addLog(getEventId(event), extras);
     }
 
-    private void addLog(int type, String event, float extras) {
+    /**
+     * Logs an event with extras which happened at the given position, e.g. a touch event.
+     */
+    public void addLog(String event, int extras, int x, int y) {
+        addLog(TYPE_INTEGER_AT_POSITION, getEventId(event), extras,
+                ((long) x << 32) | (y & 0xFFFFFFFFL));
+    }
+
+    public void addLog(int eventId) {
+        addLog(TYPE_ONE_OFF, eventId, 0, 0);
+    }
+
+    public void addLog(int eventId, int extras) {
+        addLog(TYPE_INTEGER, eventId, extras, 0);
+    }
+
+    public void addLog(int eventId, boolean extras) {
+        addLog(extras ? TYPE_BOOL_TRUE : TYPE_BOOL_FALSE, eventId, 0, 0);
+    }
+
+    private void addLog(int type, int eventId, int extras, long position) {
         // Merge the logs if its a duplicate
-        int last = (nextIndex + logs.length - 1) % logs.length;
-        int secondLast = (nextIndex + logs.length - 2) % logs.length;
-        if (isEntrySame(logs[last], type, event) && isEntrySame(logs[secondLast], type, event)) {
-            logs[last].update(type, event, extras, mLogId);
-            logs[secondLast].duplicateCount++;
-            return;
+        long next = mNextSequence.get();
+        if (next - 2 >= mClearedSequence
+                && isEntrySame(next - 1, type, eventId) && isEntrySame(next - 2, type, eventId)) {
+            int last = (int) ((next - 1) % size);
+            // Claim the last entry, unless another event is being added concurrently
+            if (mSequences.compareAndSet(last, next - 1, -1)) {
+                if (mNextSequence.get() == next) {
+                    updateEntry(last, type, eventId, extras, position);
+                    mDuplicateCounts.set(last, 0);
+                    mDuplicateCounts.incrementAndGet((int) ((next - 2) % size));
+                    mSequences.set(last, next - 1);
+                    return;
+                }
+                mSequences.set(last, next - 1);
+            }
         }
 
-        if (logs[nextIndex] == null) {
-            logs[nextIndex] = new EventEntry();
-        }
-        logs[nextIndex].update(type, event, extras, mLogId);
-        nextIndex = (nextIndex + 1) % logs.length;
+        long sequence = mNextSequence.getAndIncrement();
+        int index = (int) (sequence % size);
+        mSequences.set(index, -1);
+        updateEntry(index, type, eventId, extras, position);
+        mDuplicateCounts.set(index, 0);
+        // Publishes the entry to readers
+        mSequences.set(index, sequence);
+    }
+
+    private void updateEntry(int index, int type, int eventId, int extras, long position) {
+        mTypes[index] = type;
+        mEventIds[index] = eventId;
+        mExtras[index] = extras;
+        mPositions[index] = position;
+        mTraceIds[index] = mLogId;
+        mTimes[index] = System.currentTimeMillis();
     }
 
     public void clear() {
-        Arrays.setAll(logs, (i) -> null);
+        mClearedSequence = mNextSequence.get();
     }
 
     public void dump(String prefix, PrintWriter writer) {
         writer.println(prefix + "EventLog (" + name + ") history:");
-        SimpleDateFormat sdf = new SimpleDateFormat("  HH:mm:ss.SSSZ  ", Locale.US);
+        EventEntry[] entries = getEntries();
         Date date = new Date();
 
-        for (int i = 0; i < logs.length; i++) {
-            EventEntry log = logs[(nextIndex + logs.length - i - 1) % logs.length];
-            if (log == null) {
-                continue;
+        synchronized (DATE_FORMAT) {
+            for (int i = entries.length - 1; i >= 0; i--) {
+                EventEntry log = entries[i];
+                date.setTime(log.time);
+
+                StringBuilder msg = new StringBuilder(prefix).append(DATE_FORMAT.format(date))
+                        .append(log.event);
+                switch (log.type) {
+                    case TYPE_BOOL_FALSE:
+                        msg.append(": false");
+                        break;
+                    case TYPE_BOOL_TRUE:
+                        msg.append(": true");
+                        break;
+                    case TYPE_FLOAT:
+                        msg.append(": ").append(Float.intBitsToFloat(log.extras));
+                        break;
+                    case TYPE_INTEGER:
+                        msg.append(": ").append(log.extras);
+                        break;
+                    case TYPE_INTEGER_AT_POSITION:
+                        msg.append("(").append(log.getX()).append(", ").append(log.getY())
+                                .append("): ").append(log.extras);
+                        break;
+                    default: // fall out
+                }
+                if (log.duplicateCount > 0) {
+                    msg.append(" & ").append(log.duplicateCount).append(" similar events");
+                }
+                msg.append(" traceId: ").append(log.traceId);
+                writer.println(msg);
             }
-            date.setTime(log.time);
-
-            StringBuilder msg = new StringBuilder(prefix).append(sdf.format(date))
-                    .append(log.event);
-            switch (log.type) {
-                case TYPE_BOOL_FALSE:
-                    msg.append(": false");
-                    break;
-                case TYPE_BOOL_TRUE:
-                    msg.append(": true");
-                    break;
-                case TYPE_FLOAT:
-                    msg.append(": ").append(log.extras);
-                    break;
-                case TYPE_INTEGER:
-                    msg.append(": ").append((int) log.extras);
-                    break;
-                default: // fall out
+        }
+    }
+
+    /**
+     * Writes the log as CSV, oldest event first, for analysis outside of the device.
+     */
+    public void exportCsv(PrintWriter writer) {
+        writer.println("log,time,trace_id,event,type,extras,x,y,duplicates");
+        for (EventEntry log : getEntries()) {
+            writer.println(name + "," + log.time + "," + log.traceId + ","
+                    + log.event.replace(',', ';') + "," + log.type + "," + log.extras + ","
+                    + log.getX() + "," + log.getY() + "," + log.duplicateCount);
+        }
+    }
+
+    /**
+     * Returns a copy of the recorded events, oldest first. Events which are overwritten while
+     * being copied are skipped.
+     */
+    public EventEntry[] getEntries() {
+        long end = mNextSequence.get();
+        long start = Math.max(mClearedSequence, end - size);
+        EventEntry[] entries = new EventEntry[(int) Math.max(end - start, 0)];
+        int count = 0;
+        for (long sequence = start; sequence < end; sequence++) {
+            int index = (int) (sequence % size);
+            if (mSequences.get(index) != sequence) {
+                continue;
             }
-            if (log.duplicateCount > 0) {
-                msg.append(" & ").append(log.duplicateCount).append(" similar events");
+            EventEntry entry = new EventEntry(mTypes[index], sEventNames.get(mEventIds[index]),
+                    mExtras[index], mPositions[index], mTimes[index],
+                    mDuplicateCounts.get(index), mTraceIds[index]);
+            if (mSequences.get(index) == sequence) {
+                entries[count++] = entry;
             }
-            msg.append(" traceId: ").append(log.traceId);
-            writer.println(msg);
         }
+        if (count == entries.length) {
+            return entries;
+        }
+        EventEntry[] result = new EventEntry[count];
+        System.arraycopy(entries, 0, result, 0, count);
+        return result;
     }
 
     /** Returns a 3 digit random number between 100-999 */
     public int generateAndSetLogId() {
-        Random r = new Random();
-        mLogId = r.nextInt(900) + 100;
+        mLogId = ThreadLocalRandom.current().nextInt(100, 1000);
         return mLogId;
     }
 
-    private boolean isEntrySame(EventEntry entry, int type, String event) {
-        return entry != null && entry.type == type && entry.event.equals(event);
+    private boolean isEntrySame(long sequence, int type, int eventId) {
+        int index = (int) (sequence % size);
+        return mSequences.get(index) == sequence
+                && mTypes[index] == type && mEventIds[index] == eventId;
     }
 
     /** A single event entry. */
-    private static class EventEntry {
+    public static class EventEntry {
 
-        private int type;
-        private String event;
-        private float extras;
-        private long time;
-        private int duplicateCount;
-        private int traceId;
+        public final int type;
+        public final String event;
+        public final int extras;
+        public final long position;
+        public final long time;
+        public final int duplicateCount;
+        public final int traceId;
 
-        public void update(int type, String event, float extras, int traceId) {
+        EventEntry(int type, String event, int extras, long position, long time,
+                int duplicateCount, int traceId) {
             this.type = type;
             this.event = event;
             this.extras = extras;
+            this.position = position;
+            this.time = time;
+            this.duplicateCount = duplicateCount;
             this.traceId = traceId;
-            time = System.currentTimeMillis();
-            duplicateCount = 0;
+        }
+
+        public int getX() {
+            return (int) (position >> 32);
+        }
+
+        public int getY() {
+            return (int) position;
         }
     }
 }
@@ -2,6 +2,8 @@ package com.android.launcher3.logging;
 
 import static com.android.launcher3.util.Executors.createAndStartNewLooper;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Message;
@@ -12,14 +14,19 @@ import androidx.annotation.VisibleForTesting;
 
 import com.android.launcher3.util.IOUtils;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.text.DateFormat;
-import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -27,6 +34,12 @@ import java.util.concurrent.TimeUnit;
  * Wrapper around {@link Log} to allow writing to a file.
  * This class can safely be called from main thread.
  *
+ * Logged entries are only stored in a preallocated in-memory ring by the caller. They are written
+ * in batches by a background thread in a compact binary format, and only formatted as text when
+ * the logs are dumped with {@link #flushAll}. Errors are written by that thread before any other
+ * queued work, along with the entries pending before them, and the pending entries are written
+ * when the process crashes, so that the entries leading to a failure are not lost.
+ *
  * Note: This should only be used for logging errors which have a persistent effect on user's data,
  * but whose effect may not be visible immediately.
  */
@@ -37,12 +50,39 @@ public final class FileLog {
     private static final DateFormat DATE_FORMAT =
             DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
 
-    private static final long MAX_LOG_FILE_SIZE = 8 << 20;  // 4 mb
+    private static final long MAX_LOG_FILE_SIZE = 8 << 20;  // 8 mb across all the files
+    private static final long MAX_LOG_AGE = TimeUnit.HOURS.toMillis(36);
+
+    // Number of entries kept in memory until they are written
+    @VisibleForTesting
+    static final int RING_SIZE = 256;
+    // Entries are written after this delay, or as soon as the ring is mostly full
+    private static final long WRITE_DELAY = 1000;
+    private static final int WRITE_THRESHOLD = RING_SIZE * 3 / 4;
+
+    @VisibleForTesting
+    static final int MAGIC = 0x4C464C47; // "LFLG"
+    @VisibleForTesting
+    static final int FORMAT_VERSION = 1;
+    @VisibleForTesting
+    static final byte RECORD_TAG = 1;
+    @VisibleForTesting
+    static final byte RECORD_ENTRY = 2;
+
+    private static final LogRing sRing = new LogRing();
+    private static final LogWriterCallback sWriter = new LogWriterCallback();
 
     private static Handler sHandler = null;
     private static File sLogsDirectory = null;
+    private static boolean sCrashHandlerInstalled = false;
 
-    public static final int LOG_DAYS = 4;
+    /**
+     * Number of log files. Files are rotated by size rather than by day, log-0 being the most
+     * recent one, and each of them holds up to {@link #MAX_LOG_FILE_SIZE} / LOG_FILE_COUNT.
+     */
+    public static final int LOG_FILE_COUNT = 4;
+    @VisibleForTesting
+    static final long MAX_FILE_SIZE = MAX_LOG_FILE_SIZE / LOG_FILE_COUNT;
 
     public static void setDir(File logsDir) {
         if (ENABLED) {
@@ -52,11 +92,36 @@ public final class FileLog {
                     ((HandlerThread) sHandler.getLooper().getThread()).quit();
                     sHandler = null;
                 }
+                if (!sCrashHandlerInstalled) {
+                    sCrashHandlerInstalled = true;
+                    installCrashHandler();
+                }
+            }
+            // Not under the lock above, which the writer takes to post messages
+            if (!logsDir.equals(sLogsDirectory)) {
+                sWriter.closeWriter();
             }
         }
         sLogsDirectory = logsDir;
     }
 
+    /**
+     * Writes the pending entries before the process dies of an uncaught exception.
+     */
+    private static void installCrashHandler() {
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, throwable) -> {
+            try {
+                writeNow();
+            } catch (Throwable t) {
+                // Never get in the way of the crash
+            }
+            if (previous != null) {
+                previous.uncaughtException(thread, throwable);
+            }
+        });
+    }
+
     public static void d(String tag, String msg, Exception e) {
         Log.d(tag, msg, e);
         print(tag, msg, e);
@@ -67,14 +132,20 @@ public final class FileLog {
         print(tag, msg);
     }
 
+    /**
+     * Logs an error, which is written to the file before any other work of the logger thread.
+     */
     public static void e(String tag, String msg, Exception e) {
         Log.e(tag, msg, e);
-        print(tag, msg, e);
+        printUrgent(tag, msg, e);
     }
 
+    /**
+     * Logs an error, which is written to the file before any other work of the logger thread.
+     */
     public static void e(String tag, String msg) {
         Log.e(tag, msg);
-        print(tag, msg);
+        printUrgent(tag, msg, null);
     }
 
     public static void print(String tag, String msg) {
@@ -85,19 +156,44 @@ public final class FileLog {
         if (!ENABLED) {
             return;
         }
-        String out = String.format("%s %s %s", DATE_FORMAT.format(new Date()), tag, msg);
-        if (e != null) {
-            out += "\n" + Log.getStackTraceString(e);
+        int pendingCount = sRing.add(System.currentTimeMillis(), tag, msg, e);
+        if (pendingCount == 1) {
+            getHandler().sendEmptyMessageDelayed(LogWriterCallback.MSG_WRITE, WRITE_DELAY);
+        } else if (pendingCount == WRITE_THRESHOLD) {
+            Handler handler = getHandler();
+            handler.removeMessages(LogWriterCallback.MSG_WRITE);
+            handler.sendEmptyMessage(LogWriterCallback.MSG_WRITE);
+        }
+    }
+
+    /**
+     * Logs an entry, and schedules it to be written along with all the pending entries at the
+     * front of the logger queue. The caller never waits for the disk or for the writer.
+     */
+    private static void printUrgent(String tag, String msg, Exception e) {
+        if (!ENABLED) {
+            return;
         }
-        Message.obtain(getHandler(), LogWriterCallback.MSG_WRITE, out).sendToTarget();
+        sRing.add(System.currentTimeMillis(), tag, msg, e);
+        Handler handler = getHandler();
+        handler.removeMessages(LogWriterCallback.MSG_WRITE);
+        handler.sendMessageAtFrontOfQueue(handler.obtainMessage(LogWriterCallback.MSG_WRITE));
+    }
+
+    /**
+     * Writes all the pending entries on the calling thread, only used when the process crashes.
+     */
+    private static void writeNow() {
+        // Entries added after this are written by the next scheduled write
+        getHandler().removeMessages(LogWriterCallback.MSG_WRITE);
+        sWriter.write();
     }
 
     @VisibleForTesting
     static Handler getHandler() {
         synchronized (DATE_FORMAT) {
             if (sHandler == null) {
-                sHandler = new Handler(createAndStartNewLooper("file-logger"),
-                        new LogWriterCallback());
+                sHandler = new Handler(createAndStartNewLooper("file-logger"), sWriter);
             }
         }
         return sHandler;
@@ -120,9 +216,86 @@ public final class FileLog {
     }
 
     /**
-     * Writes logs to the file.
-     * Log files are named log-0 for even days of the year and log-1 for odd days of the year.
-     * Logs older than 36 hours are purged.
+     * Fixed size ring of the entries which are not written yet. When the ring is full, the oldest
+     * entries are dropped.
+     */
+    private static class LogRing {
+
+        private final long[] mTimes = new long[RING_SIZE];
+        private final String[] mTags = new String[RING_SIZE];
+        private final String[] mMessages = new String[RING_SIZE];
+        private final Exception[] mErrors = new Exception[RING_SIZE];
+
+        private int mStart;
+        private int mCount;
+        private int mDroppedCount;
+
+        /**
+         * Adds an entry and returns the number of pending entries.
+         */
+        synchronized int add(long time, String tag, String msg, Exception e) {
+            int index = (mStart + mCount) % RING_SIZE;
+            if (mCount == RING_SIZE) {
+                mStart = (mStart + 1) % RING_SIZE;
+                mDroppedCount++;
+            } else {
+                mCount++;
+            }
+            mTimes[index] = time;
+            mTags[index] = tag;
+            mMessages[index] = msg;
+            mErrors[index] = e;
+            return mCount;
+        }
+
+        /**
+         * Moves all the pending entries to the batch, oldest first.
+         */
+        synchronized void drainTo(LogBatch batch) {
+            for (int i = 0; i < mCount; i++) {
+                int index = (mStart + i) % RING_SIZE;
+                batch.times[i] = mTimes[index];
+                batch.tags[i] = mTags[index];
+                batch.messages[i] = mMessages[index];
+                batch.errors[i] = mErrors[index];
+                mTags[index] = null;
+                mMessages[index] = null;
+                mErrors[index] = null;
+            }
+            batch.count = mCount;
+            batch.droppedCount = mDroppedCount;
+            mStart = 0;
+            mCount = 0;
+            mDroppedCount = 0;
+        }
+    }
+
+    /**
+     * Entries taken from the ring to be written, only used on the writer thread.
+     */
+    private static class LogBatch {
+        final long[] times = new long[RING_SIZE];
+        final String[] tags = new String[RING_SIZE];
+        final String[] messages = new String[RING_SIZE];
+        final Exception[] errors = new Exception[RING_SIZE];
+        int count;
+        int droppedCount;
+
+        void clear() {
+            for (int i = 0; i < count; i++) {
+                tags[i] = null;
+                messages[i] = null;
+                errors[i] = null;
+            }
+            count = 0;
+            droppedCount = 0;
+        }
+    }
+
+    /**
+     * Writes logs to the files, on the logger thread or on a crashing thread.
+     * New logs are appended to log-0, and the files are shifted once it reaches its share of
+     * {@link #MAX_LOG_FILE_SIZE}. Logs older than 36 hours are purged.
      */
     private static class LogWriterCallback implements Handler.Callback {
 
@@ -132,59 +305,32 @@ public final class FileLog {
         private static final int MSG_CLOSE = 2;
         private static final int MSG_FLUSH = 3;
 
-        private String mCurrentFileName = null;
-        private PrintWriter mCurrentWriter = null;
+        private final LogBatch mBatch = new LogBatch();
+        // Ids of the tags already written to the current file
+        private final HashMap<String, Integer> mTagIds = new HashMap<>();
 
-        private void closeWriter() {
+        private DataOutputStream mCurrentWriter = null;
+        private long mInitialFileSize;
+
+        synchronized void closeWriter() {
             IOUtils.closeSilently(mCurrentWriter);
             mCurrentWriter = null;
         }
 
+        synchronized void write() {
+            if (sLogsDirectory != null && ENABLED) {
+                writePendingEntries();
+            }
+        }
+
         @Override
-        public boolean handleMessage(Message msg) {
+        public synchronized boolean handleMessage(Message msg) {
             if (sLogsDirectory == null || !ENABLED) {
                 return true;
             }
             switch (msg.what) {
                 case MSG_WRITE: {
-                    Calendar cal = Calendar.getInstance();
-                    // suffix with 0 or 1 based on the day of the year.
-                    String fileName = FILE_NAME_PREFIX + (cal.get(Calendar.DAY_OF_YEAR) % LOG_DAYS);
-
-                    if (!fileName.equals(mCurrentFileName)) {
-                        closeWriter();
-                    }
-
-                    try {
-                        if (mCurrentWriter == null) {
-                            mCurrentFileName = fileName;
-
-                            boolean append = false;
-                            File logFile = new File(sLogsDirectory, fileName);
-                            if (logFile.exists()) {
-                                Calendar modifiedTime = Calendar.getInstance();
-                                modifiedTime.setTimeInMillis(logFile.lastModified());
-
-                                // If the file was modified more that 36 hours ago, purge the file.
-                                // We use instead of 24 to account for day-365 followed by day-1
-                                modifiedTime.add(Calendar.HOUR, 36);
-                                append = cal.before(modifiedTime)
-                                        && logFile.length() < MAX_LOG_FILE_SIZE;
-                            }
-                            mCurrentWriter = new PrintWriter(new FileWriter(logFile, append));
-                        }
-
-                        mCurrentWriter.println((String) msg.obj);
-                        mCurrentWriter.flush();
-
-                        // Auto close file stream after some time.
-                        sHandler.removeMessages(MSG_CLOSE);
-                        sHandler.sendEmptyMessageDelayed(MSG_CLOSE, CLOSE_DELAY);
-                    } catch (Exception e) {
-                        Log.e("FileLog", "Error writing logs to file", e);
-                        // Close stream, will try reopening during next log
-                        closeWriter();
-                    }
+                    writePendingEntries();
                     return true;
                 }
                 case MSG_CLOSE: {
@@ -192,12 +338,14 @@ public final class FileLog {
                     return true;
                 }
                 case MSG_FLUSH: {
+                    writePendingEntries();
                     closeWriter();
                     Pair<PrintWriter, CountDownLatch> p =
                             (Pair<PrintWriter, CountDownLatch>) msg.obj;
 
                     if (p.first != null) {
-                        for (int i = 0; i < LOG_DAYS; i++) {
+                        // Oldest file first
+                        for (int i = LOG_FILE_COUNT - 1; i >= 0; i--) {
                             dumpFile(p.first, FILE_NAME_PREFIX + i);
                         }
                     }
@@ -207,20 +355,156 @@ public final class FileLog {
             }
             return true;
         }
+
+        private void writePendingEntries() {
+            sRing.drainTo(mBatch);
+            if (mBatch.count == 0 && mBatch.droppedCount == 0) {
+                return;
+            }
+            try {
+                DataOutputStream out = getWriter();
+                if (mBatch.droppedCount > 0) {
+                    writeEntry(out, mBatch.count > 0 ? mBatch.times[0] : System.currentTimeMillis(),
+                            "FileLog", mBatch.droppedCount + " log entries dropped", null);
+                }
+                for (int i = 0; i < mBatch.count; i++) {
+                    writeEntry(out, mBatch.times[i], mBatch.tags[i], mBatch.messages[i],
+                            mBatch.errors[i]);
+                }
+                out.flush();
+
+                if (mInitialFileSize + out.size() >= MAX_FILE_SIZE) {
+                    closeWriter();
+                    rotateFiles();
+                } else {
+                    // Auto close file stream after some time.
+                    Handler handler = getHandler();
+                    handler.removeMessages(MSG_CLOSE);
+                    handler.sendEmptyMessageDelayed(MSG_CLOSE, CLOSE_DELAY);
+                }
+            } catch (Exception e) {
+                Log.e("FileLog", "Error writing logs to file", e);
+                // Close stream, will try reopening during next log
+                closeWriter();
+            } finally {
+                mBatch.clear();
+            }
+        }
+
+        private DataOutputStream getWriter() throws IOException {
+            if (mCurrentWriter != null) {
+                return mCurrentWriter;
+            }
+            long minModifiedTime = System.currentTimeMillis() - MAX_LOG_AGE;
+            for (int i = 0; i < LOG_FILE_COUNT; i++) {
+                File file = new File(sLogsDirectory, FILE_NAME_PREFIX + i);
+                if (file.exists() && file.lastModified() < minModifiedTime) {
+                    file.delete();
+                }
+            }
+
+            File logFile = new File(sLogsDirectory, FILE_NAME_PREFIX + 0);
+            boolean append = logFile.length() > 0 && hasHeader(logFile);
+            mInitialFileSize = append ? logFile.length() : 0;
+            mCurrentWriter = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(logFile, append)));
+            if (!append) {
+                mCurrentWriter.writeInt(MAGIC);
+                mCurrentWriter.writeInt(FORMAT_VERSION);
+            }
+            mTagIds.clear();
+            return mCurrentWriter;
+        }
+
+        private void writeEntry(DataOutputStream out, long time, String tag, String msg,
+                Exception e) throws IOException {
+            Integer tagId = mTagIds.get(tag);
+            if (tagId == null) {
+                tagId = mTagIds.size();
+                mTagIds.put(tag, tagId);
+                out.writeByte(RECORD_TAG);
+                out.writeInt(tagId);
+                writeString(out, tag);
+            }
+            out.writeByte(RECORD_ENTRY);
+            out.writeLong(time);
+            out.writeInt(tagId);
+            writeString(out, msg);
+            out.writeBoolean(e != null);
+            if (e != null) {
+                writeString(out, Log.getStackTraceString(e));
+            }
+        }
+
+        private static void rotateFiles() {
+            new File(sLogsDirectory, FILE_NAME_PREFIX + (LOG_FILE_COUNT - 1)).delete();
+            for (int i = LOG_FILE_COUNT - 2; i >= 0; i--) {
+                File file = new File(sLogsDirectory, FILE_NAME_PREFIX + i);
+                if (file.exists()) {
+                    file.renameTo(new File(sLogsDirectory, FILE_NAME_PREFIX + (i + 1)));
+                }
+            }
+        }
+    }
+
+    private static boolean hasHeader(File logFile) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(logFile))) {
+            return in.readInt() == MAGIC && in.readInt() == FORMAT_VERSION;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = String.valueOf(value).getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_LOG_FILE_SIZE) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
     }
 
     private static void dumpFile(PrintWriter out, String fileName) {
         File logFile = new File(sLogsDirectory, fileName);
         if (logFile.exists()) {
 
-            BufferedReader in = null;
+            DataInputStream in = null;
             try {
-                in = new BufferedReader(new FileReader(logFile));
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)));
                 out.println();
                 out.println("--- logfile: " + fileName + " ---");
-                String line;
-                while ((line = in.readLine()) != null) {
-                    out.println(line);
+                if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                    return;
+                }
+                HashMap<Integer, String> tags = new HashMap<>();
+                Date date = new Date();
+                while (true) {
+                    byte record;
+                    try {
+                        record = in.readByte();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    if (record == RECORD_TAG) {
+                        int tagId = in.readInt();
+                        tags.put(tagId, readString(in));
+                    } else if (record == RECORD_ENTRY) {
+                        date.setTime(in.readLong());
+                        String tag = tags.get(in.readInt());
+                        out.println(DATE_FORMAT.format(date) + " " + tag + " " + readString(in));
+                        if (in.readBoolean()) {
+                            out.println(readString(in));
+                        }
+                    } else {
+                        break;
+                    }
                 }
             } catch (Exception e) {
                 // ignore
@@ -237,8 +521,8 @@ public final class FileLog {
         try {
             flushAll(null);
         } catch (InterruptedException e) { }
-        File[] files = new File[LOG_DAYS];
-        for (int i = 0; i < LOG_DAYS; i++) {
+        File[] files = new File[LOG_FILE_COUNT];
+        for (int i = 0; i < LOG_FILE_COUNT; i++) {
             files[i] = new File(sLogsDirectory, FILE_NAME_PREFIX + i);
         }
         return files;
@@ -33,6 +33,7 @@ import com.android.launcher3.model.data.LauncherAppWidgetInfo;
 import com.android.launcher3.util.IntArray;
 import com.android.launcher3.util.LooperExecutor;
 import com.android.launcher3.util.LooperIdleLock;
+import com.android.launcher3.util.StartupTracer;
 import com.android.launcher3.util.ViewOnDrawExecutor;
 
 import java.util.ArrayList;
@@ -72,17 +73,16 @@ public abstract class BaseLoaderResults {
      * Binds all loaded data to actual views on the main thread.
      */
     public void bindWorkspace() {
-        // Save a copy of all the bg-thread collections
-        ArrayList<ItemInfo> workspaceItems = new ArrayList<>();
-        ArrayList<LauncherAppWidgetInfo> appWidgets = new ArrayList<>();
-        final IntArray orderedScreenIds = new IntArray();
+        // Save a copy of all the bg-thread collections, from the last published snapshot
+        BgDataModel.Snapshot snapshot = mBgDataModel.getSnapshot();
+        ArrayList<ItemInfo> workspaceItems = new ArrayList<>(snapshot.workspaceItems);
+        ArrayList<LauncherAppWidgetInfo> appWidgets = new ArrayList<>(snapshot.appWidgets);
+        final IntArray orderedScreenIds = snapshot.getWorkspaceScreens();
         ArrayList<FixedContainerItems> extraItems = new ArrayList<>();
+        // The snapshot lists can't be modified, bind copies as the model update tasks do
+        snapshot.forEachExtraItems(items -> extraItems.add(items.clone()));
 
         synchronized (mBgDataModel) {
-            workspaceItems.addAll(mBgDataModel.workspaceItems);
-            appWidgets.addAll(mBgDataModel.appWidgets);
-            orderedScreenIds.addAll(mBgDataModel.collectWorkspaceScreens());
-            mBgDataModel.extraItems.forEach(extraItems::add);
             mBgDataModel.lastBindId++;
             mMyBindingId = mBgDataModel.lastBindId;
         }
@@ -99,7 +99,11 @@ public abstract class BaseLoaderResults {
         // shallow copy
         AppInfo[] apps = mBgAllAppsList.copyData();
         int flags = mBgAllAppsList.getFlags();
-        executeCallbacksTask(c -> c.bindAllApplications(apps, flags), mUiExecutor);
+        executeCallbacksTask(c -> {
+            long traceToken = StartupTracer.INSTANCE.beginPhase();
+            c.bindAllApplications(apps, flags);
+            StartupTracer.INSTANCE.endPhase("bindAllApplications", traceToken);
+        }, mUiExecutor);
     }
 
     public abstract void bindWidgets();
@@ -191,6 +195,7 @@ public abstract class BaseLoaderResults {
 
             // Tell the workspace that we're about to start binding items
             executeCallbacksTask(c -> {
+                StartupTracer.INSTANCE.mark("startBinding");
                 c.clearPendingBinds();
                 c.startBinding();
             }, mUiExecutor);
@@ -214,13 +219,19 @@ public abstract class BaseLoaderResults {
             final Executor deferredExecutor =
                     validFirstPage ? new ViewOnDrawExecutor() : mainExecutor;
 
-            executeCallbacksTask(c -> c.finishFirstPageBind(
-                    validFirstPage ? (ViewOnDrawExecutor) deferredExecutor : null), mainExecutor);
+            executeCallbacksTask(c -> {
+                StartupTracer.INSTANCE.mark("finishFirstPageBind");
+                c.finishFirstPageBind(
+                        validFirstPage ? (ViewOnDrawExecutor) deferredExecutor : null);
+            }, mainExecutor);
 
             bindWorkspaceItems(otherWorkspaceItems, deferredExecutor);
             bindAppWidgets(otherAppWidgets, deferredExecutor);
             // Tell the workspace that we're done binding items
-            executeCallbacksTask(c -> c.finishBindingItems(currentScreen), deferredExecutor);
+            executeCallbacksTask(c -> {
+                c.finishBindingItems(currentScreen);
+                StartupTracer.INSTANCE.mark("finishBindingItems");
+            }, deferredExecutor);
 
             if (validFirstPage) {
                 executeCallbacksTask(c -> {
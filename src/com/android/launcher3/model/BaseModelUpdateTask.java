@@ -70,6 +70,7 @@ public abstract class BaseModelUpdateTask implements ModelUpdateTask {
             return;
         }
         execute(mApp, mDataModel, mAllAppsList);
+        mDataModel.publishSnapshot();
     }
 
     /**
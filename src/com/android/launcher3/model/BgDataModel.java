@@ -71,6 +71,9 @@ import app.lawnchair.LawnchairApp;
 
 /**
  * All the data stored in-memory and managed by the LauncherModel
+ *
+ * The collections are guarded by the model itself and are only modified on the model thread.
+ * Other threads should read the latest {@link Snapshot} instead, which doesn't need the lock.
  */
 public class BgDataModel {
 
@@ -118,8 +121,10 @@ public class BgDataModel {
      */
     public int lastBindId = 0;
 
+    private volatile Snapshot mSnapshot = Snapshot.EMPTY;
+
     /**
-     * Clears all the data
+     * Clears all the data, and publishes an empty snapshot
      */
     public synchronized void clear() {
         workspaceItems.clear();
@@ -128,6 +133,7 @@ public class BgDataModel {
         itemsIdMap.clear();
         deepShortcutMap.clear();
         extraItems.clear();
+        publishSnapshot();
     }
 
     /**
@@ -146,6 +152,90 @@ public class BgDataModel {
         return screenSet.getArray();
     }
 
+    /**
+     * Returns the last published snapshot of the model.
+     */
+    public Snapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * Publishes a snapshot of the current state of the model, if it changed since the last one.
+     * Collections which didn't change are shared with the last snapshot.
+     */
+    public synchronized Snapshot publishSnapshot() {
+        Snapshot last = mSnapshot;
+        List<ItemInfo> items = share(last.workspaceItems, workspaceItems, workspaceItems.size());
+        List<LauncherAppWidgetInfo> widgets = share(last.appWidgets, appWidgets, appWidgets.size());
+        List<FolderInfo> folderList = share(last.folders, folders, folders.size());
+        Map<ComponentKey, Integer> shortcutCounts = last.deepShortcutMap.equals(deepShortcutMap)
+                ? last.deepShortcutMap
+                : Collections.unmodifiableMap(new HashMap<>(deepShortcutMap));
+        IntSparseArrayMap<FixedContainerItems> extras = shareExtraItems(last.mExtraItems);
+        // Items are moved in place, so the screens can change while the lists stay the same
+        IntArray screens = collectWorkspaceScreens();
+        if (screens.equals(last.mWorkspaceScreens)) {
+            screens = last.mWorkspaceScreens;
+        }
+        if (items == last.workspaceItems && widgets == last.appWidgets
+                && folderList == last.folders && shortcutCounts == last.deepShortcutMap
+                && extras == last.mExtraItems && screens == last.mWorkspaceScreens) {
+            return last;
+        }
+        mSnapshot = new Snapshot(last.version + 1, items, widgets, folderList, shortcutCounts,
+                extras, screens);
+        return mSnapshot;
+    }
+
+    /**
+     * Returns {@param previous} if it has the same items as {@param current}, or an unmodifiable
+     * copy of {@param current} otherwise.
+     */
+    private static <T> List<T> share(List<T> previous, Iterable<? extends T> current, int size) {
+        if (previous.size() == size) {
+            int i = 0;
+            boolean same = true;
+            for (T item : current) {
+                if (previous.get(i++) != item) {
+                    same = false;
+                    break;
+                }
+            }
+            if (same) {
+                return previous;
+            }
+        }
+        ArrayList<T> copy = new ArrayList<>(size);
+        for (T item : current) {
+            copy.add(item);
+        }
+        return Collections.unmodifiableList(copy);
+    }
+
+    private IntSparseArrayMap<FixedContainerItems> shareExtraItems(
+            IntSparseArrayMap<FixedContainerItems> previous) {
+        boolean same = previous.size() == extraItems.size();
+        for (int i = 0; same && i < extraItems.size(); i++) {
+            List<ItemInfo> items = extraItems.valueAt(i).items;
+            FixedContainerItems last = previous.get(extraItems.keyAt(i));
+            same = last != null && share(last.items, items, items.size()) == last.items;
+        }
+        if (same) {
+            return previous;
+        }
+        IntSparseArrayMap<FixedContainerItems> result = new IntSparseArrayMap<>();
+        for (int i = 0; i < extraItems.size(); i++) {
+            int containerId = extraItems.keyAt(i);
+            List<ItemInfo> items = extraItems.valueAt(i).items;
+            FixedContainerItems last = previous.get(containerId);
+            List<ItemInfo> lastItems = last == null ? Collections.emptyList() : last.items;
+            List<ItemInfo> shared = share(lastItems, items, items.size());
+            result.put(containerId, last != null && shared == last.items
+                    ? last : new FixedContainerItems(containerId, shared));
+        }
+        return result;
+    }
+
     public synchronized void dump(String prefix, FileDescriptor fd, PrintWriter writer,
             String[] args) {
         writer.println(prefix + "Data Model:");
@@ -179,8 +269,16 @@ public class BgDataModel {
         removeItem(context, Arrays.asList(items));
     }
 
-    public synchronized void removeItem(Context context, Iterable<? extends ItemInfo> items) {
+    public void removeItem(Context context, Iterable<? extends ItemInfo> items) {
         ArraySet<UserHandle> updatedDeepShortcuts = new ArraySet<>();
+        synchronized (this) {
+            removeItemLocked(items, updatedDeepShortcuts);
+        }
+        updatedDeepShortcuts.forEach(user -> updateShortcutPinnedState(context, user));
+    }
+
+    private void removeItemLocked(Iterable<? extends ItemInfo> items,
+            ArraySet<UserHandle> updatedDeepShortcuts) {
         for (ItemInfo item : items) {
             switch (item.itemType) {
                 case LauncherSettings.Favorites.ITEM_TYPE_FOLDER:
@@ -213,10 +311,18 @@ public class BgDataModel {
             }
             itemsIdMap.remove(item.id);
         }
-        updatedDeepShortcuts.forEach(user -> updateShortcutPinnedState(context, user));
     }
 
-    public synchronized void addItem(Context context, ItemInfo item, boolean newItem) {
+    public void addItem(Context context, ItemInfo item, boolean newItem) {
+        synchronized (this) {
+            addItemLocked(item, newItem);
+        }
+        if (newItem && item.itemType == LauncherSettings.Favorites.ITEM_TYPE_DEEP_SHORTCUT) {
+            updateShortcutPinnedState(context, item.user);
+        }
+    }
+
+    private void addItemLocked(ItemInfo item, boolean newItem) {
         itemsIdMap.put(item.id, item);
         switch (item.itemType) {
             case LauncherSettings.Favorites.ITEM_TYPE_FOLDER:
@@ -248,9 +354,6 @@ public class BgDataModel {
                 appWidgets.add((LauncherAppWidgetInfo) item);
                 break;
         }
-        if (newItem && item.itemType == LauncherSettings.Favorites.ITEM_TYPE_DEEP_SHORTCUT) {
-            updateShortcutPinnedState(context, item.user);
-        }
     }
 
     /**
@@ -265,9 +368,10 @@ public class BgDataModel {
 
     /**
      * Updates the deep shortucts state in system to match out internal model, pinning any missing
-     * shortcuts and unpinning any extra shortcuts.
+     * shortcuts and unpinning any extra shortcuts. The model is only locked while collecting its
+     * shortcuts, not during the calls to the system.
      */
-    public synchronized void updateShortcutPinnedState(Context context, UserHandle user) {
+    public void updateShortcutPinnedState(Context context, UserHandle user) {
         if (GO_DISABLE_WIDGETS) {
             return;
         }
@@ -285,7 +389,9 @@ public class BgDataModel {
 
         // Collect all model shortcuts
         Stream.Builder<WorkspaceItemInfo> itemStream = Stream.builder();
-        forAllWorkspaceItemInfos(user, itemStream::accept);
+        synchronized (this) {
+            forAllWorkspaceItemInfos(user, itemStream::accept);
+        }
         // Map of packageName to shortcutIds that are currently in our model
         Map<String, Set<String>> modelMap = Stream.concat(
                     // Model shortcuts
@@ -438,6 +544,73 @@ public class BgDataModel {
         }
     }
 
+    /**
+     * An immutable view of the workspace model at a point in time, which can be read from any
+     * thread without locking. The items themselves are shared with the model.
+     */
+    public static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(0, Collections.emptyList(),
+                Collections.emptyList(), Collections.emptyList(), Collections.emptyMap(),
+                new IntSparseArrayMap<>(), IntArray.wrap(Workspace.FIRST_SCREEN_ID));
+
+        /**
+         * Incremented every time a changed snapshot is published
+         */
+        public final int version;
+        public final List<ItemInfo> workspaceItems;
+        public final List<LauncherAppWidgetInfo> appWidgets;
+        public final List<FolderInfo> folders;
+        public final Map<ComponentKey, Integer> deepShortcutMap;
+        private final IntSparseArrayMap<FixedContainerItems> mExtraItems;
+        private final IntArray mWorkspaceScreens;
+
+        private Snapshot(int version, List<ItemInfo> workspaceItems,
+                List<LauncherAppWidgetInfo> appWidgets, List<FolderInfo> folders,
+                Map<ComponentKey, Integer> deepShortcutMap,
+                IntSparseArrayMap<FixedContainerItems> extraItems, IntArray workspaceScreens) {
+            this.version = version;
+            this.workspaceItems = workspaceItems;
+            this.appWidgets = appWidgets;
+            this.folders = folders;
+            this.deepShortcutMap = deepShortcutMap;
+            mExtraItems = extraItems;
+            mWorkspaceScreens = workspaceScreens;
+        }
+
+        /**
+         * Returns the items of the container {@param containerId}, whose list can't be modified,
+         * or null if there are none.
+         */
+        public FixedContainerItems getExtraItems(int containerId) {
+            return mExtraItems.get(containerId);
+        }
+
+        /**
+         * Calls {@param op} with the items of every container, whose lists can't be modified.
+         */
+        public void forEachExtraItems(Consumer<FixedContainerItems> op) {
+            mExtraItems.forEach(op);
+        }
+
+        /**
+         * Returns a list containing all workspace items including widgets.
+         */
+        public ArrayList<ItemInfo> getAllWorkspaceItems() {
+            ArrayList<ItemInfo> items = new ArrayList<>(workspaceItems.size() + appWidgets.size());
+            items.addAll(workspaceItems);
+            items.addAll(appWidgets);
+            return items;
+        }
+
+        /**
+         * Returns the result of {@link BgDataModel#collectWorkspaceScreens()} when this snapshot
+         * was published.
+         */
+        public IntArray getWorkspaceScreens() {
+            return mWorkspaceScreens.clone();
+        }
+    }
 
     public interface Callbacks {
         // If the launcher has permission to access deep shortcuts.
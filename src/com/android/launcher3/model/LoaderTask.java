@@ -24,6 +24,7 @@ import static com.android.launcher3.model.ModelUtils.filterCurrentWorkspaceItems
 import static com.android.launcher3.model.data.ItemInfoWithIcon.FLAG_DISABLED_LOCKED_USER;
 import static com.android.launcher3.model.data.ItemInfoWithIcon.FLAG_DISABLED_SAFEMODE;
 import static com.android.launcher3.model.data.ItemInfoWithIcon.FLAG_DISABLED_SUSPENDED;
+import static com.android.launcher3.util.Executors.LOADER_WORKER_EXECUTOR;
 import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
 import static com.android.launcher3.util.PackageManagerHelper.hasShortcutsPermission;
 import static com.android.launcher3.util.PackageManagerHelper.isSystemApp;
@@ -52,6 +53,8 @@ import android.util.Log;
 import android.util.LongSparseArray;
 import android.util.TimingLogger;
 
+import androidx.annotation.Nullable;
+
 import com.android.launcher3.DeviceProfile;
 import com.android.launcher3.InvariantDeviceProfile;
 import com.android.launcher3.LauncherAppState;
@@ -90,6 +93,7 @@ import com.android.launcher3.util.IOUtils;
 import com.android.launcher3.util.LooperIdleLock;
 import com.android.launcher3.util.PackageManagerHelper;
 import com.android.launcher3.util.PackageUserKey;
+import com.android.launcher3.util.StartupTracer;
 import com.android.launcher3.util.TraceHelper;
 import com.android.launcher3.widget.LauncherAppWidgetProviderInfo;
 import com.android.launcher3.widget.WidgetManagerHelper;
@@ -101,7 +105,11 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
 import app.lawnchair.LawnchairAppKt;
 
@@ -138,6 +146,9 @@ public class LoaderTask implements Runnable {
     protected final Map<ComponentKey, AppWidgetProviderInfo> mWidgetProvidersMap = new ArrayMap<>();
 
     private boolean mStopped;
+    // Start of the current split in the startup trace, only used on the loader thread
+    private long mSplitTraceToken;
+    private final List<Future<?>> mPendingPhases = new ArrayList<>();
 
     private final Set<PackageUserKey> mPendingPackages = new HashSet<>();
     private boolean mItemsDeleted = false;
@@ -174,6 +185,45 @@ public class LoaderTask implements Runnable {
         }
     }
 
+    /**
+     * Starts an independent load phase on the loader worker pool. The phase is cancelled along
+     * with the loader, and its result should be collected using {@link #awaitPhase(Future)}.
+     */
+    private synchronized <T> Future<T> submitPhase(Callable<T> phase) {
+        verifyNotStopped();
+        Future<T> future = LOADER_WORKER_EXECUTOR.submit(() -> {
+            verifyNotStopped();
+            return phase.call();
+        });
+        mPendingPhases.add(future);
+        return future;
+    }
+
+    /**
+     * Waits for a phase started using {@link #submitPhase(Callable)} and returns its result.
+     */
+    private <T> T awaitPhase(Future<T> phase) throws CancellationException {
+        try {
+            return phase.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Loader interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private synchronized void cancelPendingPhases() {
+        for (Future<?> phase : mPendingPhases) {
+            phase.cancel(true);
+        }
+        mPendingPhases.clear();
+    }
+
     private void sendFirstScreenActiveInstallsBroadcast() {
         ArrayList<ItemInfo> firstScreenItems = new ArrayList<>();
         ArrayList<ItemInfo> allItems = mBgDataModel.getAllWorkspaceItems();
@@ -195,7 +245,19 @@ public class LoaderTask implements Runnable {
 
         Object traceToken = TraceHelper.INSTANCE.beginSection(TAG);
         TimingLogger logger = new TimingLogger(TAG, "run");
+        long startupTraceToken = StartupTracer.INSTANCE.beginPhase();
+        mSplitTraceToken = startupTraceToken;
         try (LauncherModel.LoaderTransaction transaction = mApp.getModel().beginLoader(this)) {
+            // Start the system queries which do not depend on the workspace, so that they overlap
+            // with loading and binding the workspace. Results are still consumed in bind order.
+            Future<Map<UserHandle, List<LauncherActivityInfo>>> activityListsPhase =
+                    submitPhase(this::queryActivityLists);
+            Future<Map<UserHandle, List<ShortcutInfo>>> deepShortcutsPhase =
+                    submitPhase(this::queryDeepShortcuts);
+            Future<PackageStateSnapshot> packageStatePhase =
+                    submitPhase(() -> PackageStateSnapshot.query(mApp.getContext(),
+                            mIconCache.getSystemIconState(), mUserCache.getUserProfiles()));
+
             List<ShortcutInfo> allShortcuts = new ArrayList<>();
             loadWorkspace(allShortcuts);
             logASplit(logger, "loadWorkspace");
@@ -207,6 +269,7 @@ public class LoaderTask implements Runnable {
             if (mApp.getInvariantDeviceProfile().dbFile.equals(mDbName)) {
                 verifyNotStopped();
                 sanitizeData();
+                mBgDataModel.publishSnapshot();
                 logASplit(logger, "sanitizeData");
             }
 
@@ -225,19 +288,42 @@ public class LoaderTask implements Runnable {
             verifyNotStopped();
 
             // second step
-            List<LauncherActivityInfo> allActivityList = loadAllApps();
+            List<LauncherActivityInfo> allActivityList =
+                    loadAllApps(awaitPhase(activityListsPhase));
             logASplit(logger, "loadAllApps");
 
+            // Widgets and folder names only depend on the apps list, load them on the worker pool
+            // while the remaining all apps and deep shortcut work happens on this thread.
+            Future<List<ComponentWithLabelAndIcon>> widgetsPhase =
+                    submitPhase(() -> mBgDataModel.widgetsModel.update(mApp, null));
+            Future<Void> folderNamesPhase = FeatureFlags.FOLDER_NAME_SUGGEST.get()
+                    ? submitPhase(() -> {
+                        loadFolderNames();
+                        return null;
+                    })
+                    : null;
+
             verifyNotStopped();
             mResults.bindAllApps();
             logASplit(logger, "bindAllApps");
 
             verifyNotStopped();
+            // Only the packages which changed since the last load need to go through the icon
+            // cache update, unless the icon state changed or packages were removed.
+            PackageStateSnapshot packageState = awaitPhase(packageStatePhase);
+            final Set<String> changedPackages = isPreviewContext()
+                    ? null : packageState.getChangedPackages(
+                            PackageStateSnapshot.read(mApp.getContext()));
             IconCacheUpdateHandler updateHandler = mIconCache.getUpdateHandler();
             setIgnorePackages(updateHandler);
-            updateHandler.updateIcons(allActivityList,
-                    LauncherActivityCachingLogic.newInstance(mApp.getContext()),
-                    mApp.getModel()::onPackageIconsUpdated);
+            List<LauncherActivityInfo> changedActivityList = filterChangedPackages(
+                    allActivityList, changedPackages,
+                    info -> info.getComponentName().getPackageName());
+            if (!changedActivityList.isEmpty()) {
+                updateHandler.updateIcons(changedActivityList,
+                        LauncherActivityCachingLogic.newInstance(mApp.getContext()),
+                        mApp.getModel()::onPackageIconsUpdated);
+            }
             logASplit(logger, "update icon cache");
 
             if (FeatureFlags.ENABLE_DEEP_SHORTCUT_ICON_CACHE.get()) {
@@ -253,7 +339,9 @@ public class LoaderTask implements Runnable {
             verifyNotStopped();
 
             // third step
-            List<ShortcutInfo> allDeepShortcuts = loadDeepShortcuts();
+            List<ShortcutInfo> allDeepShortcuts =
+                    loadDeepShortcuts(awaitPhase(deepShortcutsPhase));
+            mBgDataModel.publishSnapshot();
             logASplit(logger, "loadDeepShortcuts");
 
             verifyNotStopped();
@@ -273,8 +361,7 @@ public class LoaderTask implements Runnable {
             verifyNotStopped();
 
             // fourth step
-            List<ComponentWithLabelAndIcon> allWidgetsList =
-                    mBgDataModel.widgetsModel.update(mApp, null);
+            List<ComponentWithLabelAndIcon> allWidgetsList = awaitPhase(widgetsPhase);
             logASplit(logger, "load widgets");
 
             verifyNotStopped();
@@ -282,18 +369,28 @@ public class LoaderTask implements Runnable {
             logASplit(logger, "bindWidgets");
             verifyNotStopped();
 
-            updateHandler.updateIcons(allWidgetsList,
-                    new ComponentWithIconCachingLogic(mApp.getContext(), true),
-                    mApp.getModel()::onWidgetLabelsUpdated);
+            List<ComponentWithLabelAndIcon> changedWidgetsList = filterChangedPackages(
+                    allWidgetsList, changedPackages, info -> info.getComponent().getPackageName());
+            if (!changedWidgetsList.isEmpty()) {
+                updateHandler.updateIcons(changedWidgetsList,
+                        new ComponentWithIconCachingLogic(mApp.getContext(), true),
+                        mApp.getModel()::onWidgetLabelsUpdated);
+            }
             logASplit(logger, "save widgets in icon cache");
 
             // fifth step
-            if (FeatureFlags.FOLDER_NAME_SUGGEST.get()) {
-                loadFolderNames();
+            if (folderNamesPhase != null) {
+                awaitPhase(folderNamesPhase);
+                logASplit(logger, "loadFolderNames");
             }
 
             verifyNotStopped();
             updateHandler.finish();
+            if (!isPreviewContext()) {
+                // Only saved once the icons of the changed packages are in the cache, so that a
+                // load interrupted before that updates them again
+                mIconCache.executeAfterIconUpdates(() -> packageState.write(mApp.getContext()));
+            }
             logASplit(logger, "finish icon update");
 
             mModelDelegate.modelLoadComplete();
@@ -302,13 +399,16 @@ public class LoaderTask implements Runnable {
             // Loader stopped, ignore
             logASplit(logger, "Cancelled");
         } finally {
+            cancelPendingPhases();
             logger.dumpToLog();
+            StartupTracer.INSTANCE.endPhase(TAG + ".run", startupTraceToken);
         }
         TraceHelper.INSTANCE.endSection(traceToken);
     }
 
     public synchronized void stopLocked() {
         mStopped = true;
+        cancelPendingPhases();
         this.notify();
     }
 
@@ -853,6 +953,28 @@ public class LoaderTask implements Runnable {
 
             c.commitRestoredItems();
         }
+        mBgDataModel.publishSnapshot();
+    }
+
+    private boolean isPreviewContext() {
+        return mApp.getContext() instanceof LauncherPreviewRenderer.PreviewContext;
+    }
+
+    /**
+     * Returns the items belonging to {@param changedPackages}, or all the items if it is null.
+     */
+    private static <T> List<T> filterChangedPackages(List<T> items,
+            @Nullable Set<String> changedPackages, Function<T, String> packageNameProvider) {
+        if (changedPackages == null) {
+            return items;
+        }
+        List<T> result = new ArrayList<>();
+        for (T item : items) {
+            if (changedPackages.contains(packageNameProvider.apply(item))) {
+                result.add(item);
+            }
+        }
+        return result;
     }
 
     private void setIgnorePackages(IconCacheUpdateHandler updateHandler) {
@@ -910,14 +1032,28 @@ public class LoaderTask implements Runnable {
         }
     }
 
-    private List<LauncherActivityInfo> loadAllApps() {
+    /**
+     * Queries the launchable activities for every profile. This only talks to the system and is
+     * safe to run on the loader worker pool.
+     */
+    private Map<UserHandle, List<LauncherActivityInfo>> queryActivityLists() {
+        Map<UserHandle, List<LauncherActivityInfo>> activityLists = new ArrayMap<>();
+        for (UserHandle user : mUserCache.getUserProfiles()) {
+            activityLists.put(user, mLauncherApps.getActivityList(null, user));
+        }
+        return activityLists;
+    }
+
+    private List<LauncherActivityInfo> loadAllApps(
+            Map<UserHandle, List<LauncherActivityInfo>> activityLists) {
         final List<UserHandle> profiles = mUserCache.getUserProfiles();
         List<LauncherActivityInfo> allActivityList = new ArrayList<>();
         // Clear the list of apps
         mBgAllAppsList.clear();
         for (UserHandle user : profiles) {
-            // Query for the set of apps
-            final List<LauncherActivityInfo> apps = mLauncherApps.getActivityList(null, user);
+            // Query for the set of apps, unless it was already done ahead of time
+            final List<LauncherActivityInfo> apps = activityLists.containsKey(user)
+                    ? activityLists.get(user) : mLauncherApps.getActivityList(null, user);
             // Fail if we don't have any apps
             // TODO: Fix this. Only fail for the current user.
             if (apps == null || apps.isEmpty()) {
@@ -954,15 +1090,35 @@ public class LoaderTask implements Runnable {
         return allActivityList;
     }
 
-    private List<ShortcutInfo> loadDeepShortcuts() {
+    /**
+     * Queries all deep shortcuts for every unlocked profile. This only talks to the system and is
+     * safe to run on the loader worker pool.
+     */
+    private Map<UserHandle, List<ShortcutInfo>> queryDeepShortcuts() {
+        Map<UserHandle, List<ShortcutInfo>> shortcutsByUser = new ArrayMap<>();
+        if (hasShortcutsPermission(mApp.getContext())) {
+            for (UserHandle user : mUserCache.getUserProfiles()) {
+                if (mUserManager.isUserUnlocked(user)) {
+                    shortcutsByUser.put(user, new ShortcutRequest(mApp.getContext(), user)
+                            .query(ShortcutRequest.ALL));
+                }
+            }
+        }
+        return shortcutsByUser;
+    }
+
+    private List<ShortcutInfo> loadDeepShortcuts(
+            Map<UserHandle, List<ShortcutInfo>> shortcutsByUser) {
         List<ShortcutInfo> allShortcuts = new ArrayList<>();
         mBgDataModel.deepShortcutMap.clear();
 
         if (mBgAllAppsList.hasShortcutHostPermission()) {
             for (UserHandle user : mUserCache.getUserProfiles()) {
                 if (mUserManager.isUserUnlocked(user)) {
-                    List<ShortcutInfo> shortcuts = new ShortcutRequest(mApp.getContext(), user)
-                            .query(ShortcutRequest.ALL);
+                    List<ShortcutInfo> shortcuts = shortcutsByUser.containsKey(user)
+                            ? shortcutsByUser.get(user)
+                            : new ShortcutRequest(mApp.getContext(), user)
+                                    .query(ShortcutRequest.ALL);
                     allShortcuts.addAll(shortcuts);
                     mBgDataModel.updateDeepShortcutCounts(null, user, shortcuts);
                 }
@@ -1036,8 +1192,10 @@ public class LoaderTask implements Runnable {
         FileLog.d(TAG, widgetDimension.toString());
     }
 
-    private static void logASplit(final TimingLogger logger, final String label) {
+    private void logASplit(final TimingLogger logger, final String label) {
         logger.addSplit(label);
+        StartupTracer.INSTANCE.endPhase(label, mSplitTraceToken);
+        mSplitTraceToken = StartupTracer.INSTANCE.beginPhase();
         if (DEBUG) {
             Log.d(TAG, label);
         }
@@ -41,12 +41,14 @@ import com.android.launcher3.model.data.ItemInfo;
 import com.android.launcher3.model.data.LauncherAppWidgetInfo;
 import com.android.launcher3.model.data.WorkspaceItemInfo;
 import com.android.launcher3.util.ContentWriter;
+import com.android.launcher3.util.IntSparseArrayMap;
 import com.android.launcher3.util.ItemInfoMatcher;
 import com.android.launcher3.widget.LauncherAppWidgetHost;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.function.Supplier;
@@ -55,11 +57,21 @@ import java.util.stream.StreamSupport;
 
 /**
  * Class for handling model updates.
+ *
+ * Updates of existing items are journaled: updates made before the model thread gets to them are
+ * coalesced per item and written in a single transaction. The in-memory model is updated with
+ * the journal, so model tasks posted after an update always see it. Other writes seal the pending
+ * batch before being posted, so that updates made after them are also written after them.
  */
 public class ModelWriter {
 
     private static final String TAG = "ModelWriter";
 
+    // Stack traces of the writes are only used to report inconsistent items, which is only
+    // checked thoroughly on debug builds
+    private static final boolean CAPTURE_STACK_TRACES =
+            Utilities.IS_DEBUG_DEVICE || FeatureFlags.IS_STUDIO_BUILD;
+
     private final Context mContext;
     private final LauncherModel mModel;
     private final BgDataModel mBgDataModel;
@@ -72,6 +84,11 @@ public class ModelWriter {
     private final List<Runnable> mDeleteRunnables = new ArrayList<>();
     private boolean mPreparingToUndo;
 
+    // Batch of updates which later updates can still be merged into, its flush is already queued
+    // on the model thread. Guarded by mBatchLock.
+    private final Object mBatchLock = new Object();
+    private UpdateBatch mOpenBatch;
+
     public ModelWriter(Context context, LauncherModel model, BgDataModel dataModel,
             boolean hasVerticalHotseat, boolean verifyChanges) {
         mContext = context;
@@ -112,7 +129,8 @@ public class ModelWriter {
         }
     }
 
-    private void checkItemInfoLocked(int itemId, ItemInfo item, StackTraceElement[] stackTrace) {
+    private void checkItemInfoLocked(
+            int itemId, ItemInfo item, List<StackTraceElement[]> stackTraces) {
         ItemInfo modelItem = mBgDataModel.itemsIdMap.get(itemId);
         if (modelItem != null && item != modelItem) {
             // check all the data is consistent
@@ -142,8 +160,20 @@ public class ModelWriter {
                     ((modelItem != null) ? modelItem.toString() : "null") +
                     "Error: ItemInfo passed to checkItemInfo doesn't match original";
             RuntimeException e = new RuntimeException(msg);
-            if (stackTrace != null) {
-                e.setStackTrace(stackTrace);
+            // Updates merged in the journal are reported with the stack traces of all the writes
+            boolean first = true;
+            for (StackTraceElement[] stackTrace : stackTraces) {
+                if (stackTrace == null) {
+                    continue;
+                }
+                if (first) {
+                    e.setStackTrace(stackTrace);
+                    first = false;
+                } else {
+                    Throwable merged = new Throwable("Merged write");
+                    merged.setStackTrace(stackTrace);
+                    e.addSuppressed(merged);
+                }
             }
             throw e;
         }
@@ -155,13 +185,16 @@ public class ModelWriter {
     public void moveItemInDatabase(final ItemInfo item,
             int container, int screenId, int cellX, int cellY) {
         updateItemInfoProps(item, container, screenId, cellX, cellY);
-        enqueueDeleteRunnable(new UpdateItemRunnable(item, () ->
-                new ContentWriter(mContext)
-                        .put(Favorites.CONTAINER, item.container)
-                        .put(Favorites.CELLX, item.cellX)
-                        .put(Favorites.CELLY, item.cellY)
-                        .put(Favorites.RANK, item.rank)
-                        .put(Favorites.SCREEN, item.screenId)));
+        enqueueUpdate(item, newMoveWriter(item), true /* undoable */);
+    }
+
+    private Supplier<ContentWriter> newMoveWriter(ItemInfo item) {
+        return () -> new ContentWriter(mContext)
+                .put(Favorites.CONTAINER, item.container)
+                .put(Favorites.CELLX, item.cellX)
+                .put(Favorites.CELLY, item.cellY)
+                .put(Favorites.RANK, item.rank)
+                .put(Favorites.SCREEN, item.screenId);
     }
 
     /**
@@ -169,23 +202,12 @@ public class ModelWriter {
      * cellX, cellY have already been updated on the ItemInfos.
      */
     public void moveItemsInDatabase(final ArrayList<ItemInfo> items, int container, int screen) {
-        ArrayList<ContentValues> contentValues = new ArrayList<>();
         int count = items.size();
-
         for (int i = 0; i < count; i++) {
             ItemInfo item = items.get(i);
             updateItemInfoProps(item, container, screen, item.cellX, item.cellY);
-
-            final ContentValues values = new ContentValues();
-            values.put(Favorites.CONTAINER, item.container);
-            values.put(Favorites.CELLX, item.cellX);
-            values.put(Favorites.CELLY, item.cellY);
-            values.put(Favorites.RANK, item.rank);
-            values.put(Favorites.SCREEN, item.screenId);
-
-            contentValues.add(values);
+            enqueueUpdate(item, newMoveWriter(item), true /* undoable */);
         }
-        enqueueDeleteRunnable(new UpdateItemsRunnable(items, contentValues));
     }
 
     /**
@@ -197,26 +219,25 @@ public class ModelWriter {
         item.spanX = spanX;
         item.spanY = spanY;
 
-        ((Executor) MODEL_EXECUTOR).execute(new UpdateItemRunnable(item, () ->
-                new ContentWriter(mContext)
-                        .put(Favorites.CONTAINER, item.container)
-                        .put(Favorites.CELLX, item.cellX)
-                        .put(Favorites.CELLY, item.cellY)
-                        .put(Favorites.RANK, item.rank)
-                        .put(Favorites.SPANX, item.spanX)
-                        .put(Favorites.SPANY, item.spanY)
-                        .put(Favorites.SCREEN, item.screenId)));
+        enqueueUpdate(item, () -> new ContentWriter(mContext)
+                .put(Favorites.CONTAINER, item.container)
+                .put(Favorites.CELLX, item.cellX)
+                .put(Favorites.CELLY, item.cellY)
+                .put(Favorites.RANK, item.rank)
+                .put(Favorites.SPANX, item.spanX)
+                .put(Favorites.SPANY, item.spanY)
+                .put(Favorites.SCREEN, item.screenId), false /* undoable */);
     }
 
     /**
      * Update an item to the database in a specified container.
      */
     public void updateItemInDatabase(ItemInfo item) {
-        ((Executor) MODEL_EXECUTOR).execute(new UpdateItemRunnable(item, () -> {
+        enqueueUpdate(item, () -> {
             ContentWriter writer = new ContentWriter(mContext);
             item.onAddToDatabase(writer);
             return writer;
-        }));
+        }, false /* undoable */);
     }
 
     /**
@@ -231,8 +252,8 @@ public class ModelWriter {
         item.id = Settings.call(cr, Settings.METHOD_NEW_ITEM_ID).getInt(Settings.EXTRA_VALUE);
 
         ModelVerifier verifier = new ModelVerifier();
-        final StackTraceElement[] stackTrace = new Throwable().getStackTrace();
-        ((Executor) MODEL_EXECUTOR).execute(() -> {
+        final StackTraceElement[] stackTrace = captureStackTrace();
+        executeOnModel(() -> {
             // Write the item on background thread, as some properties might have been updated in
             // the background.
             final ContentWriter writer = new ContentWriter(mContext);
@@ -242,10 +263,11 @@ public class ModelWriter {
             cr.insert(Favorites.CONTENT_URI, writer.getValues(mContext));
 
             synchronized (mBgDataModel) {
-                checkItemInfoLocked(item.id, item, stackTrace);
+                checkItemInfoLocked(item.id, item, Collections.singletonList(stackTrace));
                 mBgDataModel.addItem(mContext, item, true);
                 verifier.verifyModel();
             }
+            mBgDataModel.publishSnapshot();
         });
     }
 
@@ -282,6 +304,7 @@ public class ModelWriter {
                 mBgDataModel.removeItem(mContext, item);
                 verifier.verifyModel();
             }
+            mBgDataModel.publishSnapshot();
         });
     }
 
@@ -301,6 +324,7 @@ public class ModelWriter {
             cr.delete(LauncherSettings.Favorites.getContentUri(info.id), null, null);
             mBgDataModel.removeItem(mContext, info);
             verifier.verifyModel();
+            mBgDataModel.publishSnapshot();
         });
     }
 
@@ -341,14 +365,96 @@ public class ModelWriter {
         if (mPreparingToUndo) {
             mDeleteRunnables.add(r);
         } else {
-            ((Executor) MODEL_EXECUTOR).execute(r);
+            executeOnModel(r);
+        }
+    }
+
+    /**
+     * Posts a write other than an update to the model thread. The open batch is sealed first, so
+     * that updates made after this write are not merged into a flush queued before it.
+     */
+    private void executeOnModel(Runnable r) {
+        synchronized (mBatchLock) {
+            mOpenBatch = null;
+        }
+        ((Executor) MODEL_EXECUTOR).execute(r);
+    }
+
+    /**
+     * Queues an update of {@param item}, written by {@param writer} with the next flush of the
+     * journal. Undoable updates are held with the delete operations while preparing to undo.
+     */
+    private void enqueueUpdate(ItemInfo item, Supplier<ContentWriter> writer, boolean undoable) {
+        PendingUpdate update = new PendingUpdate(item, writer);
+        if (undoable && mPreparingToUndo) {
+            mDeleteRunnables.add(() -> addPendingUpdate(update));
+        } else {
+            addPendingUpdate(update);
+        }
+    }
+
+    private void addPendingUpdate(PendingUpdate update) {
+        UpdateBatch batch;
+        boolean scheduleFlush = false;
+        synchronized (mBatchLock) {
+            batch = mOpenBatch;
+            if (batch == null) {
+                batch = mOpenBatch = new UpdateBatch();
+                scheduleFlush = true;
+            }
+            batch.add(update);
+        }
+        if (MODEL_EXECUTOR.getLooper() == Looper.myLooper()) {
+            // Model tasks expect their writes to be done when they return
+            flush(batch);
+        } else if (scheduleFlush) {
+            // The flush is queued before any task posted after this update, so that they read it
+            UpdateBatch toFlush = batch;
+            ((Executor) MODEL_EXECUTOR).execute(() -> flush(toFlush));
+        }
+    }
+
+    /**
+     * Writes all the updates of {@param batch} in a single transaction, and then updates the model.
+     */
+    private void flush(UpdateBatch batch) {
+        ArrayList<PendingUpdate> updates;
+        synchronized (mBatchLock) {
+            if (mOpenBatch == batch) {
+                mOpenBatch = null;
+            }
+            updates = new ArrayList<>(batch.mUpdates);
+            batch.mUpdates.clear();
+            batch.mUpdatesById.clear();
+        }
+        if (updates.isEmpty()) {
+            return;
+        }
+
+        ArrayList<ContentProviderOperation> ops = new ArrayList<>(updates.size());
+        for (PendingUpdate update : updates) {
+            ContentValues values = new ContentValues();
+            for (Supplier<ContentWriter> writer : update.mWriters) {
+                values.putAll(writer.get().getValues(mContext));
+            }
+            ops.add(ContentProviderOperation.newUpdate(Favorites.getContentUri(update.mItemId))
+                    .withValues(values).build());
+        }
+        try {
+            mContext.getContentResolver().applyBatch(LauncherProvider.AUTHORITY, ops);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to write " + ops.size() + " item updates", e);
         }
+        for (PendingUpdate update : updates) {
+            update.updateItemArrays();
+        }
+        mBgDataModel.publishSnapshot();
     }
 
     public void commitDelete() {
         mPreparingToUndo = false;
         for (Runnable runnable : mDeleteRunnables) {
-            ((Executor) MODEL_EXECUTOR).execute(runnable);
+            executeOnModel(runnable);
         }
         mDeleteRunnables.clear();
     }
@@ -364,68 +470,56 @@ public class ModelWriter {
         mModel.forceReload();
     }
 
-    private class UpdateItemRunnable extends UpdateItemBaseRunnable {
+    /**
+     * Updates written together by a single flush, in order.
+     */
+    private static class UpdateBatch {
+        private final ArrayList<PendingUpdate> mUpdates = new ArrayList<>();
+        // Last update of each item id
+        private final IntSparseArrayMap<PendingUpdate> mUpdatesById = new IntSparseArrayMap<>();
+
+        void add(PendingUpdate update) {
+            PendingUpdate pending = mUpdatesById.get(update.mItemId);
+            if (pending != null && pending.mItem == update.mItem) {
+                pending.merge(update);
+            } else {
+                mUpdates.add(update);
+                mUpdatesById.put(update.mItemId, update);
+            }
+        }
+    }
+
+    /**
+     * Update of an item waiting in the journal. Updates of the same item are merged, values of
+     * later writers replacing those of earlier ones.
+     */
+    private class PendingUpdate {
         private final ItemInfo mItem;
-        private final Supplier<ContentWriter> mWriter;
         private final int mItemId;
+        private final ArrayList<Supplier<ContentWriter>> mWriters = new ArrayList<>(1);
+        private final ArrayList<StackTraceElement[]> mStackTraces = new ArrayList<>(1);
+        private final ArrayList<ModelVerifier> mVerifiers = new ArrayList<>(1);
 
-        UpdateItemRunnable(ItemInfo item, Supplier<ContentWriter> writer) {
+        PendingUpdate(ItemInfo item, Supplier<ContentWriter> writer) {
             mItem = item;
-            mWriter = writer;
             mItemId = item.id;
+            mWriters.add(writer);
+            mStackTraces.add(captureStackTrace());
+            mVerifiers.add(new ModelVerifier());
         }
 
-        @Override
-        public void run() {
-            Uri uri = Favorites.getContentUri(mItemId);
-            mContext.getContentResolver().update(uri, mWriter.get().getValues(mContext),
-                    null, null);
-            updateItemArrays(mItem, mItemId);
-        }
-    }
-
-    private class UpdateItemsRunnable extends UpdateItemBaseRunnable {
-        private final ArrayList<ContentValues> mValues;
-        private final ArrayList<ItemInfo> mItems;
-
-        UpdateItemsRunnable(ArrayList<ItemInfo> items, ArrayList<ContentValues> values) {
-            mValues = values;
-            mItems = items;
-        }
-
-        @Override
-        public void run() {
-            ArrayList<ContentProviderOperation> ops = new ArrayList<>();
-            int count = mItems.size();
-            for (int i = 0; i < count; i++) {
-                ItemInfo item = mItems.get(i);
-                final int itemId = item.id;
-                final Uri uri = Favorites.getContentUri(itemId);
-                ContentValues values = mValues.get(i);
-
-                ops.add(ContentProviderOperation.newUpdate(uri).withValues(values).build());
-                updateItemArrays(item, itemId);
-            }
-            try {
-                mContext.getContentResolver().applyBatch(LauncherProvider.AUTHORITY, ops);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-    }
-
-    private abstract class UpdateItemBaseRunnable implements Runnable {
-        private final StackTraceElement[] mStackTrace;
-        private final ModelVerifier mVerifier = new ModelVerifier();
-
-        UpdateItemBaseRunnable() {
-            mStackTrace = new Throwable().getStackTrace();
+        void merge(PendingUpdate update) {
+            mWriters.addAll(update.mWriters);
+            mStackTraces.addAll(update.mStackTraces);
+            mVerifiers.addAll(update.mVerifiers);
         }
 
-        protected void updateItemArrays(ItemInfo item, int itemId) {
+        void updateItemArrays() {
+            ItemInfo item = mItem;
+            int itemId = mItemId;
             // Lock on mBgLock *after* the db operation
             synchronized (mBgDataModel) {
-                checkItemInfoLocked(itemId, item, mStackTrace);
+                checkItemInfoLocked(itemId, item, mStackTraces);
 
                 if (item.container != Favorites.CONTAINER_DESKTOP &&
                         item.container != Favorites.CONTAINER_HOTSEAT) {
@@ -461,11 +555,20 @@ public class ModelWriter {
                 } else {
                     mBgDataModel.workspaceItems.remove(modelItem);
                 }
-                mVerifier.verifyModel();
+                for (ModelVerifier verifier : mVerifiers) {
+                    verifier.verifyModel();
+                }
             }
         }
     }
 
+    /**
+     * Returns the stack trace of the caller on debug builds, null otherwise.
+     */
+    private static StackTraceElement[] captureStackTrace() {
+        return CAPTURE_STACK_TRACES ? new Throwable().getStackTrace() : null;
+    }
+
     /**
      * Utility class to verify model updates are propagated properly to the callback.
      */
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProviderInfo;
+import android.content.Context;
+import android.content.pm.LauncherActivityInfo;
+import android.content.pm.LauncherApps;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.UserHandle;
+import android.util.ArrayMap;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+import androidx.annotation.Nullable;
+
+import com.android.launcher3.LauncherFiles;
+import com.android.launcher3.Utilities;
+import com.android.launcher3.pm.UserCache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact snapshot of the installed packages and the system icon state, persisted between model
+ * loads so that {@link LoaderTask} only pushes packages which changed since the previous load
+ * through the icon cache update path.
+ *
+ * Packages are tracked separately for every user profile, as a package can be installed in a
+ * profile without its version changing. Only the packages with launcher activities or widgets
+ * are tracked, as they are the only ones going through the icon cache update.
+ */
+public class PackageStateSnapshot {
+
+    private static final String TAG = "PackageStateSnapshot";
+
+    private static final int VERSION = 2;
+
+    private final String mIconState;
+    // User serial to package name to {versionCode, lastUpdateTime}
+    private final LongSparseArray<Map<String, long[]>> mPackages;
+
+    private PackageStateSnapshot(String iconState, LongSparseArray<Map<String, long[]>> packages) {
+        mIconState = iconState;
+        mPackages = packages;
+    }
+
+    /**
+     * Returns the set of packages which were added or updated in any profile since
+     * {@param previous} was taken, or null if a full icon cache update is required. A full update
+     * is required when there is no previous snapshot, when the icon state or the user profiles
+     * changed, or when a package was removed so that its icons get cleaned up.
+     */
+    @Nullable
+    public Set<String> getChangedPackages(@Nullable PackageStateSnapshot previous) {
+        if (previous == null
+                || !mIconState.equals(previous.mIconState)
+                || mPackages.size() != previous.mPackages.size()) {
+            return null;
+        }
+        Set<String> changed = new HashSet<>();
+        for (int i = 0; i < mPackages.size(); i++) {
+            if (mPackages.keyAt(i) != previous.mPackages.keyAt(i)) {
+                return null;
+            }
+            Map<String, long[]> packages = mPackages.valueAt(i);
+            Map<String, long[]> oldPackages = previous.mPackages.valueAt(i);
+            if (!packages.keySet().containsAll(oldPackages.keySet())) {
+                return null;
+            }
+            for (Map.Entry<String, long[]> entry : packages.entrySet()) {
+                long[] oldState = oldPackages.get(entry.getKey());
+                if (oldState == null || !Arrays.equals(oldState, entry.getValue())) {
+                    changed.add(entry.getKey());
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Takes a snapshot of the packages currently installed in each of {@param profiles}
+     */
+    public static PackageStateSnapshot query(Context context, String iconState,
+            List<UserHandle> profiles) {
+        // Versions are shared by all the users, only the installed packages differ
+        List<PackageInfo> infos = context.getPackageManager()
+                .getInstalledPackages(PackageManager.MATCH_UNINSTALLED_PACKAGES);
+        Map<String, long[]> versions = new ArrayMap<>(infos.size());
+        for (PackageInfo info : infos) {
+            long versionCode = Utilities.ATLEAST_P ? info.getLongVersionCode() : info.versionCode;
+            versions.put(info.packageName, new long[] {versionCode, info.lastUpdateTime});
+        }
+
+        UserCache userCache = UserCache.INSTANCE.get(context);
+        LauncherApps launcherApps = context.getSystemService(LauncherApps.class);
+        AppWidgetManager widgetManager = AppWidgetManager.getInstance(context);
+        LongSparseArray<Map<String, long[]>> packages = new LongSparseArray<>(profiles.size());
+        for (UserHandle user : profiles) {
+            Map<String, long[]> userPackages = new ArrayMap<>();
+            for (LauncherActivityInfo info : launcherApps.getActivityList(null, user)) {
+                addPackage(userPackages, versions, info.getComponentName().getPackageName());
+            }
+            for (AppWidgetProviderInfo info : widgetManager.getInstalledProvidersForProfile(user)) {
+                addPackage(userPackages, versions, info.provider.getPackageName());
+            }
+            packages.put(userCache.getSerialNumberForUser(user), userPackages);
+        }
+        return new PackageStateSnapshot(iconState, packages);
+    }
+
+    private static void addPackage(Map<String, long[]> userPackages, Map<String, long[]> versions,
+            String packageName) {
+        long[] version = versions.get(packageName);
+        // Installed after the versions were queried, it will be seen as new by the next load
+        if (version != null) {
+            userPackages.put(packageName, version);
+        }
+    }
+
+    /**
+     * Reads the snapshot saved by the previous model load, or null if there is none.
+     */
+    @Nullable
+    public static PackageStateSnapshot read(Context context) {
+        File file = getFile(context);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+            String iconState = in.readUTF();
+            int userCount = in.readInt();
+            LongSparseArray<Map<String, long[]>> packages = new LongSparseArray<>(userCount);
+            for (int i = 0; i < userCount; i++) {
+                long serial = in.readLong();
+                int count = in.readInt();
+                Map<String, long[]> userPackages = new ArrayMap<>(count);
+                for (int j = 0; j < count; j++) {
+                    userPackages.put(in.readUTF(), new long[] {in.readLong(), in.readLong()});
+                }
+                packages.put(serial, userPackages);
+            }
+            return new PackageStateSnapshot(iconState, packages);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read package state", e);
+            return null;
+        }
+    }
+
+    /**
+     * Saves this snapshot to be used by the next model load
+     */
+    public void write(Context context) {
+        File file = getFile(context);
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeInt(VERSION);
+            out.writeUTF(mIconState);
+            out.writeInt(mPackages.size());
+            for (int i = 0; i < mPackages.size(); i++) {
+                out.writeLong(mPackages.keyAt(i));
+                Map<String, long[]> userPackages = mPackages.valueAt(i);
+                out.writeInt(userPackages.size());
+                for (Map.Entry<String, long[]> entry : userPackages.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue()[0]);
+                    out.writeLong(entry.getValue()[1]);
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write package state", e);
+            tmpFile.delete();
+            return;
+        }
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+        }
+    }
+
+    private static File getFile(Context context) {
+        return new File(context.getFilesDir(), LauncherFiles.LOADER_PACKAGE_STATE);
+    }
+}
@@ -16,6 +16,8 @@
 
 package com.android.launcher3.popup;
 
+import static com.android.launcher3.util.Executors.UI_HELPER_EXECUTOR;
+
 import android.content.ComponentName;
 import android.service.notification.StatusBarNotification;
 import android.util.Log;
@@ -33,6 +35,7 @@ import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.util.ShortcutUtil;
 import com.android.launcher3.widget.model.WidgetsListBaseEntry;
 import com.android.launcher3.widget.model.WidgetsListContentEntry;
+import com.android.launcher3.widget.picker.search.WidgetsSearchIndex;
 
 import java.io.PrintWriter;
 import java.util.Arrays;
@@ -41,6 +44,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -62,6 +67,9 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
 
     /** All installed widgets. */
     private List<WidgetsListBaseEntry> mAllWidgets = List.of();
+    /** Index of {@link #mAllWidgets} used by the widgets search, built in the background. */
+    private Future<WidgetsSearchIndex> mWidgetsSearchIndex =
+            CompletableFuture.completedFuture(new WidgetsSearchIndex(List.of()));
     /** Widgets that can be recommended to the users. */
     private List<ItemInfo> mRecommendedWidgets = List.of();
 
@@ -202,6 +210,7 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
 
     public void setAllWidgets(List<WidgetsListBaseEntry> allWidgets) {
         mAllWidgets = allWidgets;
+        mWidgetsSearchIndex = UI_HELPER_EXECUTOR.submit(() -> new WidgetsSearchIndex(allWidgets));
         mChangeListener.onWidgetsBound();
     }
 
@@ -213,6 +222,14 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
         return mAllWidgets;
     }
 
+    /**
+     * Returns the search index of {@link #getAllWidgets()}, which may still be building. It
+     * should only be waited for off the main thread.
+     */
+    public Future<WidgetsSearchIndex> getWidgetsSearchIndex() {
+        return mWidgetsSearchIndex;
+    }
+
     /** Returns a list of recommended widgets. */
     public List<WidgetItem> getRecommendedWidgets() {
         HashMap<ComponentKey, WidgetItem> allWidgetItems = new HashMap<>();
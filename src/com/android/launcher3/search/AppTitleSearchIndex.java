@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.search;
+
+import android.os.CancellationSignal;
+
+import androidx.annotation.Nullable;
+
+import com.android.launcher3.model.data.AppInfo;
+import com.android.launcher3.search.StringMatcherUtility.StringMatcher;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Index of app titles which matches a query exactly like
+ * {@link StringMatcherUtility#matches(String, String, StringMatcher)}, but keeps the word breaks
+ * and the collation keys of every title between searches instead of recomputing them for every
+ * app on each keystroke.
+ *
+ * The index is kept in sync with the searched list of apps, so that only added apps and apps
+ * whose title changed are re-indexed. When the same list is searched with a query extending the
+ * previous one, only the previous matches are scanned again. This class is not thread safe and
+ * should always be used from the same thread.
+ */
+public class AppTitleSearchIndex {
+
+    private final IdentityHashMap<AppInfo, IndexedTitle> mTitles = new IdentityHashMap<>();
+
+    private Locale mLocale;
+    private Collator mCollator;
+
+    // All the matches of the last search, to narrow down the next one
+    private List<AppInfo> mLastApps;
+    private Query mLastQuery;
+    private List<AppInfo> mLastMatches;
+
+    /**
+     * Returns up to {@param maxResults} apps whose title matches {@param query}, in the order of
+     * {@param apps}.
+     */
+    public List<AppInfo> search(List<AppInfo> apps, String query, int maxResults) {
+        return search(apps, query, maxResults, null);
+    }
+
+    /**
+     * Returns up to {@param maxResults} apps whose title matches {@param query}, in the order of
+     * {@param apps}, or an empty list if the search was cancelled through {@param signal}.
+     */
+    public List<AppInfo> search(List<AppInfo> apps, String query, int maxResults,
+            @Nullable CancellationSignal signal) {
+        Query indexQuery = newQuery(query);
+        if (apps != mLastApps) {
+            syncTitles(apps);
+            mLastApps = apps;
+            mLastQuery = null;
+            mLastMatches = null;
+        }
+
+        // Every title matching the new query also matches a query it extends
+        List<AppInfo> candidates = mLastQuery != null && indexQuery.extend(mLastQuery)
+                ? mLastMatches : apps;
+        List<AppInfo> matches = new ArrayList<>();
+        int total = candidates.size();
+        for (int i = 0; i < total; i++) {
+            if (signal != null && signal.isCanceled()) {
+                return Collections.emptyList();
+            }
+            AppInfo info = candidates.get(i);
+            if (getIndexedTitle(info).matches(indexQuery, mCollator)) {
+                matches.add(info);
+            }
+        }
+        mLastQuery = indexQuery;
+        mLastMatches = matches;
+        return new ArrayList<>(matches.subList(0, Math.min(maxResults, matches.size())));
+    }
+
+    /**
+     * Re-indexes the added apps and the apps whose title changed, and drops the removed apps.
+     */
+    private void syncTitles(List<AppInfo> apps) {
+        IdentityHashMap<AppInfo, IndexedTitle> titles = new IdentityHashMap<>(apps.size());
+        int total = apps.size();
+        for (int i = 0; i < total; i++) {
+            AppInfo info = apps.get(i);
+            titles.put(info, getIndexedTitle(info));
+        }
+        mTitles.clear();
+        mTitles.putAll(titles);
+    }
+
+    private IndexedTitle getIndexedTitle(AppInfo info) {
+        String title = info.title == null ? "" : info.title.toString();
+        IndexedTitle indexedTitle = mTitles.get(info);
+        if (indexedTitle == null || !indexedTitle.mTitle.equals(title)) {
+            indexedTitle = new IndexedTitle(title);
+            mTitles.put(info, indexedTitle);
+        }
+        return indexedTitle;
+    }
+
+    private Query newQuery(String query) {
+        Locale locale = Locale.getDefault();
+        if (!locale.equals(mLocale)) {
+            // Collation keys are only valid for the collator which created them
+            mLocale = locale;
+            mCollator = StringMatcher.createCollator();
+            mTitles.clear();
+            mLastApps = null;
+        }
+        return new Query(query, mCollator);
+    }
+
+    /**
+     * A query prepared for matching against {@link IndexedTitle}s
+     */
+    public static class Query {
+
+        final String mQuery;
+        final boolean mSimpleFuzzySearch;
+        final CollationKey mKey;
+        final CollationKey mMaxKey;
+
+        public Query(String query, Collator collator) {
+            mQuery = query;
+            mSimpleFuzzySearch = StringMatcherUtility.requestSimpleFuzzySearch(query);
+            mKey = collator.getCollationKey(query);
+            mMaxKey = collator.getCollationKey(query + StringMatcher.MAX_UNICODE);
+        }
+
+        /**
+         * Returns true if this query starts with {@param previous} and is matched the same way,
+         * so that its matches are a subset of the matches of {@param previous}.
+         */
+        boolean extend(Query previous) {
+            return mQuery.startsWith(previous.mQuery)
+                    && mSimpleFuzzySearch == previous.mSimpleFuzzySearch;
+        }
+    }
+
+    /**
+     * A title along with its word breaks and lazily computed collation keys. Since the keys are
+     * computed while matching, a title should only be matched from one thread at a time.
+     */
+    public static class IndexedTitle {
+
+        final String mTitle;
+        private final int[] mBreaks;
+        private String mLowerCaseTitle;
+        // Collation keys of title.substring(mBreaks[i], mBreaks[i] + length), indexed by
+        // [i][length - 1] and computed when a query of that length is first matched.
+        private final CollationKey[][] mKeys;
+
+        public IndexedTitle(String title) {
+            mTitle = title;
+            mBreaks = computeBreaks(title);
+            mKeys = new CollationKey[mBreaks.length][];
+        }
+
+        /**
+         * Returns the same result as {@link StringMatcherUtility#matches} for this title.
+         */
+        public boolean matches(Query query, Collator collator) {
+            int queryLength = query.mQuery.length();
+            int targetLength = mTitle.length();
+            if (targetLength < queryLength || queryLength <= 0) {
+                return false;
+            }
+
+            if (query.mSimpleFuzzySearch) {
+                if (mLowerCaseTitle == null) {
+                    mLowerCaseTitle = mTitle.toLowerCase();
+                }
+                return mLowerCaseTitle.contains(query.mQuery);
+            }
+
+            int end = targetLength - queryLength;
+            for (int i = 0; i < mBreaks.length && mBreaks[i] <= end; i++) {
+                CollationKey key = getKey(i, queryLength, collator);
+                int result = query.mKey.compareTo(key);
+                if (result == 0) {
+                    return true;
+                }
+                // See StringMatcher#matches: the target can contain a modifier which makes it
+                // larger than the query even though it starts with it.
+                if (result < 0 && query.mMaxKey.compareTo(key) >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private CollationKey getKey(int breakIndex, int length, Collator collator) {
+            CollationKey[] keys = mKeys[breakIndex];
+            if (keys == null) {
+                keys = new CollationKey[mTitle.length() - mBreaks[breakIndex]];
+                mKeys[breakIndex] = keys;
+            }
+            if (keys[length - 1] == null) {
+                int start = mBreaks[breakIndex];
+                keys[length - 1] = collator.getCollationKey(
+                        mTitle.substring(start, start + length));
+            }
+            return keys[length - 1];
+        }
+
+        private static int[] computeBreaks(String target) {
+            int targetLength = target.length();
+            if (targetLength == 0) {
+                return new int[0];
+            }
+            int[] breaks = new int[targetLength];
+            int count = 0;
+
+            int lastType;
+            int thisType = Character.UNASSIGNED;
+            int nextType = Character.getType(target.codePointAt(0));
+            for (int i = 0; i < targetLength; i++) {
+                lastType = thisType;
+                thisType = nextType;
+                nextType = i < (targetLength - 1)
+                        ? Character.getType(target.codePointAt(i + 1)) : Character.UNASSIGNED;
+                if (StringMatcherUtility.isBreak(thisType, lastType, nextType)) {
+                    breaks[count++] = i;
+                }
+            }
+
+            int[] result = new int[count];
+            System.arraycopy(breaks, 0, result, 0, count);
+            return result;
+        }
+    }
+}
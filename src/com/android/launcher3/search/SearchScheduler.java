@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.search;
+
+import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
+import static com.android.launcher3.util.Executors.SEARCH_EXECUTOR;
+
+import android.os.CancellationSignal;
+import android.os.Handler;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+import androidx.annotation.WorkerThread;
+
+import java.util.function.Consumer;
+
+/**
+ * Runs search requests on the dedicated search thread, where each new request supersedes the
+ * previous one: a pending request is dropped before it starts, so bursts of keystrokes coalesce
+ * into the latest query, a running request is signalled through its {@link CancellationSignal},
+ * and results of superseded requests are never delivered.
+ */
+public class SearchScheduler {
+
+    private final Handler mWorkerHandler = new Handler(SEARCH_EXECUTOR.getLooper());
+    private final Handler mResultHandler = new Handler(MAIN_EXECUTOR.getLooper());
+
+    private CancellationSignal mActiveSignal;
+
+    /**
+     * Schedules {@param task} to run on the search thread, cancelling any previous request. The
+     * result is delivered to {@param callback} on the main thread, unless the request was
+     * cancelled in the meantime.
+     */
+    @UiThread
+    public <T> void schedule(SearchTask<T> task, Consumer<T> callback) {
+        scheduleIncremental((signal, publisher) -> {
+            T result = task.search(signal);
+            if (result != null) {
+                publisher.accept(result);
+            }
+        }, callback);
+    }
+
+    /**
+     * Schedules {@param task} to run on the search thread, cancelling any previous request. Every
+     * partial result published by the task is delivered to {@param callback} on the main thread,
+     * in order, unless the request was cancelled in the meantime.
+     */
+    @UiThread
+    public <T> void scheduleIncremental(IncrementalSearchTask<T> task, Consumer<T> callback) {
+        cancel();
+        CancellationSignal signal = new CancellationSignal();
+        mActiveSignal = signal;
+        mWorkerHandler.post(() -> {
+            if (signal.isCanceled()) {
+                return;
+            }
+            task.search(signal, result -> {
+                if (signal.isCanceled()) {
+                    return;
+                }
+                mResultHandler.post(() -> {
+                    if (!signal.isCanceled()) {
+                        callback.accept(result);
+                    }
+                });
+            });
+        });
+    }
+
+    /**
+     * Cancels the active request, if any.
+     */
+    @UiThread
+    public void cancel() {
+        if (mActiveSignal != null) {
+            mActiveSignal.cancel();
+            mActiveSignal = null;
+        }
+        mWorkerHandler.removeCallbacksAndMessages(null);
+        mResultHandler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * A search which can be interrupted through a {@link CancellationSignal}.
+     *
+     * @param <T> Search result type
+     */
+    public interface SearchTask<T> {
+
+        /**
+         * Performs the search, returning null if it was interrupted by {@param signal}.
+         */
+        @WorkerThread
+        @Nullable
+        T search(CancellationSignal signal);
+    }
+
+    /**
+     * A search which publishes its results in parts as they are found, and which can be
+     * interrupted through a {@link CancellationSignal}.
+     *
+     * @param <T> Search result type
+     */
+    public interface IncrementalSearchTask<T> {
+
+        /**
+         * Performs the search, passing every partial result to {@param publisher}.
+         */
+        @WorkerThread
+        void search(CancellationSignal signal, Consumer<T> publisher);
+    }
+}
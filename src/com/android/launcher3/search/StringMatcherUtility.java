@@ -66,7 +66,7 @@ public class StringMatcherUtility {
      *      3) Any capital character after a digit or small character
      *      4) Any capital character before a small character
      */
-    private static boolean isBreak(int thisType, int prevType, int nextType) {
+    static boolean isBreak(int thisType, int prevType, int nextType) {
         switch (prevType) {
             case Character.UNASSIGNED:
             case Character.SPACE_SEPARATOR:
@@ -109,16 +109,24 @@ public class StringMatcherUtility {
      */
     public static class StringMatcher {
 
-        private static final char MAX_UNICODE = '\uFFFF';
+        static final char MAX_UNICODE = '\uFFFF';
 
         private final Collator mCollator;
 
         StringMatcher() {
+            mCollator = createCollator();
+        }
+
+        /**
+         * Returns a new {@link Collator} configured the same way as the one used for matching.
+         */
+        static Collator createCollator() {
             // On android N and above, Collator uses ICU implementation which has a much better
             // support for non-latin locales.
-            mCollator = Collator.getInstance();
-            mCollator.setStrength(Collator.PRIMARY);
-            mCollator.setDecomposition(Collator.CANONICAL_DECOMPOSITION);
+            Collator collator = Collator.getInstance();
+            collator.setStrength(Collator.PRIMARY);
+            collator.setDecomposition(Collator.CANONICAL_DECOMPOSITION);
+            return collator;
         }
 
         /**
@@ -147,7 +155,7 @@ public class StringMatcherUtility {
     /**
      * Matching optimization to search in Chinese.
      */
-    private static boolean requestSimpleFuzzySearch(String s) {
+    static boolean requestSimpleFuzzySearch(String s) {
         for (int i = 0; i < s.length(); ) {
             int codepoint = s.codePointAt(i);
             i += Character.charCount(codepoint);
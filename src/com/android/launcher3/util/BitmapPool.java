@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Color;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.launcher3.R;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of mutable software bitmaps shared by the launcher, so that short lived bitmaps (widget
+ * previews, drag outlines, thumbnails being scaled) are reused instead of allocated.
+ *
+ * Bitmaps are grouped in power of two size classes by their allocation size, and any bitmap of a
+ * class can be {@link Bitmap#reconfigure reconfigured} to a size of that class. Borrowing and
+ * returning bitmaps is lock free. The total size of the pooled bitmaps is limited to a budget,
+ * and bitmaps returned over the budget are left to the garbage collector.
+ */
+public class BitmapPool {
+
+    public static final MainThreadInitializedObject<BitmapPool> INSTANCE =
+            new MainThreadInitializedObject<>(BitmapPool::new);
+
+    // The smallest class holds bitmaps of 4KB, smaller bitmaps are not worth pooling
+    private static final int MIN_CLASS_SHIFT = 12;
+    // The largest class holds bitmaps of 16MB
+    private static final int MAX_CLASS_SHIFT = 24;
+
+    private final ConcurrentLinkedDeque<Bitmap>[] mClasses =
+            new ConcurrentLinkedDeque[MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1];
+    private final AtomicLong mSize = new AtomicLong();
+    private final long mMaxSize;
+
+    private BitmapPool(Context context) {
+        this(context.getResources().getInteger(R.integer.config_bitmapPoolSizeKb) * 1024L);
+    }
+
+    @VisibleForTesting
+    public BitmapPool(long maxSize) {
+        mMaxSize = maxSize;
+        for (int i = 0; i < mClasses.length; i++) {
+            mClasses[i] = new ConcurrentLinkedDeque<>();
+        }
+    }
+
+    /**
+     * Returns a cleared mutable bitmap of the given size and config, reusing a pooled bitmap if
+     * possible. The bitmap should be returned with {@link #release} once it is no longer used.
+     */
+    @NonNull
+    public Bitmap borrow(int width, int height, @NonNull Config config) {
+        Bitmap bitmap = poll(width, height, config);
+        return bitmap != null ? bitmap : Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Returns a cleared pooled bitmap reconfigured to the given size and config, or null if the
+     * pool has none large enough.
+     */
+    @Nullable
+    public Bitmap poll(int width, int height, @NonNull Config config) {
+        int classIndex = getBorrowClass((long) width * height * getBytesPerPixel(config));
+        // Also look in the next class, as bitmaps are not always returned in the size they were
+        // borrowed
+        for (int i = classIndex; i < mClasses.length && i <= classIndex + 1; i++) {
+            Bitmap bitmap = mClasses[i].pollFirst();
+            if (bitmap == null) {
+                continue;
+            }
+            mSize.addAndGet(-bitmap.getAllocationByteCount());
+            if (bitmap.isRecycled()) {
+                continue;
+            }
+            bitmap.reconfigure(width, height, config);
+            bitmap.eraseColor(Color.TRANSPARENT);
+            return bitmap;
+        }
+        return null;
+    }
+
+    /**
+     * Adds the bitmap to the pool for reuse. The caller must not use the bitmap afterwards.
+     */
+    public void release(@Nullable Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()
+                || bitmap.getConfig() == Config.HARDWARE) {
+            return;
+        }
+        int bytes = bitmap.getAllocationByteCount();
+        int classIndex = getReleaseClass(bytes);
+        if (classIndex < 0 || classIndex >= mClasses.length) {
+            return;
+        }
+        if (mSize.addAndGet(bytes) > mMaxSize) {
+            mSize.addAndGet(-bytes);
+            return;
+        }
+        mClasses[classIndex].offerFirst(bitmap);
+    }
+
+    /**
+     * Releases pooled bitmaps based on the given trim level, see
+     * {@link android.content.ComponentCallbacks2#onTrimMemory}.
+     */
+    public void onTrimMemory(int level) {
+        final float fraction;
+        switch (level) {
+            case TRIM_MEMORY_RUNNING_MODERATE:
+                fraction = 0.5f;
+                break;
+            case TRIM_MEMORY_RUNNING_LOW:
+                fraction = 0.25f;
+                break;
+            case TRIM_MEMORY_RUNNING_CRITICAL:
+                fraction = 0f;
+                break;
+            default:
+                fraction = level >= TRIM_MEMORY_UI_HIDDEN ? 0f : 1f;
+                break;
+        }
+        trimToSize((long) (mMaxSize * fraction));
+    }
+
+    /**
+     * Releases pooled bitmaps, largest first, until the pool is within {@param size}.
+     */
+    public void trimToSize(long size) {
+        for (int i = mClasses.length - 1; i >= 0 && mSize.get() > size; i--) {
+            Bitmap bitmap;
+            // The least recently returned bitmaps are at the end of each class
+            while (mSize.get() > size && (bitmap = mClasses[i].pollLast()) != null) {
+                mSize.addAndGet(-bitmap.getAllocationByteCount());
+            }
+        }
+    }
+
+    /** Returns the total allocation size of the pooled bitmaps. */
+    public long getSize() {
+        return mSize.get();
+    }
+
+    /**
+     * Returns the class whose bitmaps can all hold {@param bytes}.
+     */
+    private static int getBorrowClass(long bytes) {
+        int shift = bytes <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(bytes - 1);
+        return Math.max(shift, MIN_CLASS_SHIFT) - MIN_CLASS_SHIFT;
+    }
+
+    /**
+     * Returns the largest class whose size fits in {@param bytes}, or a negative value if the
+     * bitmap is too small to be pooled.
+     */
+    private static int getReleaseClass(int bytes) {
+        return 31 - Integer.numberOfLeadingZeros(bytes) - MIN_CLASS_SHIFT;
+    }
+
+    private static int getBytesPerPixel(Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            case RGBA_F16:
+                return 8;
+            default:
+                return 4;
+        }
+    }
+}
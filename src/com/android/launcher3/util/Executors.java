@@ -33,6 +33,7 @@ public class Executors {
     private static final int POOL_SIZE =
             Math.max(Runtime.getRuntime().availableProcessors(), 2);
     private static final int KEEP_ALIVE = 1;
+    private static final int LOADER_POOL_SIZE = Math.min(POOL_SIZE, 4);
 
     /**
      * An {@link ThreadPoolExecutor} to be used with async task with no limit on the queue size.
@@ -75,6 +76,29 @@ public class Executors {
     public static final LooperExecutor MODEL_EXECUTOR =
             new LooperExecutor(createAndStartNewLooper("launcher-loader"));
 
+    /**
+     * Executor used for running search queries, so that they don't wait behind model tasks
+     */
+    public static final LooperExecutor SEARCH_EXECUTOR =
+            new LooperExecutor(
+                    createAndStartNewLooper("launcher-search", Process.THREAD_PRIORITY_FOREGROUND));
+
+    /**
+     * A bounded pool used by the model loader to run independent, I/O bound system queries in
+     * parallel with the loader thread.
+     */
+    public static final ThreadPoolExecutor LOADER_WORKER_EXECUTOR = createLoaderWorkerExecutor();
+
+    private static ThreadPoolExecutor createLoaderWorkerExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                LOADER_POOL_SIZE, LOADER_POOL_SIZE, KEEP_ALIVE, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new SimpleThreadFactory("launcher-loader-worker-",
+                        Process.THREAD_PRIORITY_DEFAULT));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     /**
      * A simple ThreadFactory to set the thread name and priority when used with executors.
      */
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import static com.android.launcher3.util.Executors.UI_HELPER_EXECUTOR;
+
+import android.view.Choreographer;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import androidx.annotation.UiThread;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.launcher3.statemanager.StateManager.StateListener;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects frame times of the launcher window and attributes them to the interactions which were
+ * running when each frame was produced, e.g. a state transition, an app launch or a recents
+ * scroll. For every interaction, a histogram of the frame times is kept to report percentiles and
+ * the number of janky frames, i.e. frames which missed their vsync deadline.
+ *
+ * The stats are part of the launcher dump, and can be reset with:
+ * $ adb shell dumpsys activity com.android.launcher3.Launcher --reset-frame-metrics
+ */
+public class FrameMetricsTracker {
+
+    public static final FrameMetricsTracker INSTANCE = new FrameMetricsTracker();
+
+    // Frame times are bucketed by millisecond, longer frames go in the last bucket
+    private static final int MAX_BUCKET_MS = 200;
+    // Ended interactions waiting for their last frames, oldest are dropped beyond this
+    private static final int MAX_PENDING_INTERACTIONS = 32;
+
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+
+    // Guarded by this
+    private final ArrayList<Interaction> mInteractions = new ArrayList<>();
+    private final LinkedHashMap<String, Stats> mStats = new LinkedHashMap<>();
+    private long mFrameIntervalNanos = DEFAULT_FRAME_INTERVAL_NANOS;
+
+    private final Window.OnFrameMetricsAvailableListener mListener =
+            (window, frameMetrics, dropCount) -> onFrameMetrics(frameMetrics);
+
+    @VisibleForTesting
+    public FrameMetricsTracker() { }
+
+    /**
+     * Starts collecting the frame times of {@param window}.
+     */
+    @UiThread
+    public void attach(Window window) {
+        float refreshRate = window.getWindowManager().getDefaultDisplay().getRefreshRate();
+        synchronized (this) {
+            mFrameIntervalNanos = refreshRate > 0
+                    ? (long) (TimeUnit.SECONDS.toNanos(1) / refreshRate)
+                    : DEFAULT_FRAME_INTERVAL_NANOS;
+        }
+        window.addOnFrameMetricsAvailableListener(mListener, UI_HELPER_EXECUTOR.getHandler());
+    }
+
+    /**
+     * Stops collecting the frame times of {@param window}.
+     */
+    @UiThread
+    public void detach(Window window) {
+        try {
+            window.removeOnFrameMetricsAvailableListener(mListener);
+        } catch (IllegalArgumentException e) {
+            // Not attached
+        }
+    }
+
+    /**
+     * Starts an interaction, frames produced until {@link Interaction#end} is called are
+     * attributed to {@param tag}.
+     */
+    @UiThread
+    public Interaction begin(String tag) {
+        Interaction interaction = new Interaction(tag, System.nanoTime());
+        synchronized (this) {
+            mInteractions.add(interaction);
+        }
+        return interaction;
+    }
+
+    /**
+     * Returns a listener which tracks each state transition of a state manager as an interaction.
+     */
+    public <STATE_TYPE> StateListener<STATE_TYPE> newStateListener() {
+        return new StateListener<STATE_TYPE>() {
+
+            private Interaction mTransition;
+
+            @Override
+            public void onStateTransitionStart(STATE_TYPE toState) {
+                // A new transition cancels the running one
+                if (mTransition != null) {
+                    mTransition.end();
+                }
+                mTransition = begin("State " + toState);
+            }
+
+            @Override
+            public void onStateTransitionComplete(STATE_TYPE finalState) {
+                if (mTransition != null) {
+                    mTransition.end();
+                    mTransition = null;
+                }
+            }
+        };
+    }
+
+    private void onFrameMetrics(FrameMetrics frameMetrics) {
+        long vsyncNanos = frameMetrics.getMetric(FrameMetrics.INTENDED_VSYNC_TIMESTAMP);
+        long durationNanos = frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION);
+        onFrame(vsyncNanos, durationNanos);
+    }
+
+    @VisibleForTesting
+    synchronized void onFrame(long vsyncNanos, long durationNanos) {
+        Iterator<Interaction> it = mInteractions.iterator();
+        while (it.hasNext()) {
+            Interaction interaction = it.next();
+            if (vsyncNanos < interaction.mStartNanos) {
+                continue;
+            }
+            if (vsyncNanos > interaction.mEndNanos) {
+                // Frames are reported in order, no later frame belongs to this interaction
+                it.remove();
+                continue;
+            }
+            getStats(interaction.mTag).record(durationNanos, mFrameIntervalNanos);
+        }
+    }
+
+    private synchronized void onInteractionEnd(Interaction interaction, long endNanos) {
+        interaction.mEndNanos = endNanos;
+        int ended = 0;
+        for (int i = mInteractions.size() - 1; i >= 0; i--) {
+            if (mInteractions.get(i).mEndNanos != Long.MAX_VALUE
+                    && ++ended > MAX_PENDING_INTERACTIONS) {
+                mInteractions.remove(i);
+            }
+        }
+    }
+
+    private Stats getStats(String tag) {
+        Stats stats = mStats.get(tag);
+        if (stats == null) {
+            stats = new Stats(tag);
+            mStats.put(tag, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Returns a copy of the stats of all the interactions, in the order they first ran.
+     */
+    public synchronized ArrayList<Stats> getStats() {
+        ArrayList<Stats> stats = new ArrayList<>(mStats.size());
+        for (Stats s : mStats.values()) {
+            stats.add(s.copy());
+        }
+        return stats;
+    }
+
+    /**
+     * Clears all the collected stats.
+     */
+    public synchronized void reset() {
+        mStats.clear();
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        ArrayList<Stats> allStats = getStats();
+        writer.println(prefix + "FrameMetricsTracker:");
+        for (Stats stats : allStats) {
+            writer.println(prefix + "\t" + stats.tag + ": " + stats);
+        }
+    }
+
+    /**
+     * A running interaction, see {@link #begin}.
+     */
+    public class Interaction {
+
+        private final String mTag;
+        private final long mStartNanos;
+        private volatile long mEndNanos = Long.MAX_VALUE;
+        private boolean mEnded;
+
+        private Interaction(String tag, long startNanos) {
+            mTag = tag;
+            mStartNanos = startNanos;
+        }
+
+        /**
+         * Ends the interaction with the next frame, so that the frame showing its final state is
+         * included. This can be called multiple times.
+         */
+        @UiThread
+        public void end() {
+            if (mEnded) {
+                return;
+            }
+            mEnded = true;
+            Choreographer.getInstance().postFrameCallback(
+                    frameTimeNanos -> onInteractionEnd(this, frameTimeNanos));
+        }
+    }
+
+    /**
+     * Frame time distribution of an interaction.
+     */
+    public static class Stats {
+
+        public final String tag;
+        private final int[] mBuckets;
+        private int mFrameCount;
+        private int mJankCount;
+        private long mMaxNanos;
+
+        @VisibleForTesting
+        public Stats(String tag) {
+            this(tag, new int[MAX_BUCKET_MS + 1]);
+        }
+
+        private Stats(String tag, int[] buckets) {
+            this.tag = tag;
+            mBuckets = buckets;
+        }
+
+        @VisibleForTesting
+        public void record(long durationNanos, long frameIntervalNanos) {
+            int bucket = (int) Math.min(TimeUnit.NANOSECONDS.toMillis(durationNanos),
+                    MAX_BUCKET_MS);
+            mBuckets[bucket]++;
+            mFrameCount++;
+            if (durationNanos > frameIntervalNanos) {
+                mJankCount++;
+            }
+            mMaxNanos = Math.max(mMaxNanos, durationNanos);
+        }
+
+        public int getFrameCount() {
+            return mFrameCount;
+        }
+
+        public int getJankCount() {
+            return mJankCount;
+        }
+
+        public float getMaxMillis() {
+            return mMaxNanos / 1e6f;
+        }
+
+        /**
+         * Returns the upper bound in milliseconds of the frame time below which {@param percent}
+         * of the frames fall, or 0 if no frame was recorded.
+         */
+        public int getPercentileMillis(int percent) {
+            if (mFrameCount == 0) {
+                return 0;
+            }
+            // Rank of the frame at the percentile, rounded up
+            int rank = (int) Math.ceil(mFrameCount * percent / 100.0);
+            int count = 0;
+            for (int i = 0; i < mBuckets.length; i++) {
+                count += mBuckets[i];
+                if (count >= rank) {
+                    return i + 1;
+                }
+            }
+            return MAX_BUCKET_MS + 1;
+        }
+
+        Stats copy() {
+            Stats copy = new Stats(tag, mBuckets.clone());
+            copy.mFrameCount = mFrameCount;
+            copy.mJankCount = mJankCount;
+            copy.mMaxNanos = mMaxNanos;
+            return copy;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "frames=%d, jank=%d, p50=%dms, p90=%dms, p99=%dms, max=%.1fms",
+                    mFrameCount, mJankCount, getPercentileMillis(50), getPercentileMillis(90),
+                    getPercentileMillis(99), getMaxMillis());
+        }
+    }
+}
@@ -4,20 +4,49 @@ import android.graphics.Rect;
 
 import com.android.launcher3.model.data.ItemInfo;
 
+import java.util.Arrays;
+
 /**
  * Utility object to manage the occupancy in a grid.
+ *
+ * Each row is stored as a bitset in a single long, where bit x is set when the cell (x, y) is
+ * occupied, so that regions are checked with a mask per row instead of cell by cell.
  */
 public class GridOccupancy {
 
+    /** Maximum number of columns of a grid, as each row is stored in a long */
+    public static final int MAX_COUNT_X = Long.SIZE;
+
     private final int mCountX;
     private final int mCountY;
 
-    public final boolean[][] cells;
+    private final long[] mRows;
+    // Bits of the columns of the grid
+    private final long mRowMask;
 
     public GridOccupancy(int countX, int countY) {
+        if (countX > MAX_COUNT_X) {
+            throw new IllegalArgumentException("Grid is too wide: " + countX);
+        }
         mCountX = countX;
         mCountY = countY;
-        cells = new boolean[countX][countY];
+        mRows = new long[countY];
+        mRowMask = spanMask(0, countX);
+    }
+
+    public int getCountX() {
+        return mCountX;
+    }
+
+    public int getCountY() {
+        return mCountY;
+    }
+
+    /**
+     * Returns true if the cell (x, y), which must be in the grid, is occupied.
+     */
+    public boolean isOccupied(int x, int y) {
+        return (mRows[y] & (1L << x)) != 0;
     }
 
     /**
@@ -31,29 +60,55 @@ public class GridOccupancy {
      */
     public boolean findVacantCell(int[] vacantOut, int spanX, int spanY) {
         for (int y = 0; (y + spanY) <= mCountY; y++) {
-            for (int x = 0; (x + spanX) <= mCountX; x++) {
-                boolean available = !cells[x][y];
-                out:
-                for (int i = x; i < x + spanX; i++) {
-                    for (int j = y; j < y + spanY; j++) {
-                        available = available && !cells[i][j];
-                        if (!available) break out;
-                    }
-                }
-                if (available) {
-                    vacantOut[0] = x;
-                    vacantOut[1] = y;
-                    return true;
-                }
+            long starts = getVacantRegionStarts(y, spanX, spanY);
+            if (starts != 0) {
+                vacantOut[0] = Long.numberOfTrailingZeros(starts);
+                vacantOut[1] = y;
+                return true;
             }
         }
         return false;
     }
 
+    /**
+     * Returns the columns x, as a bitset, such that the region starting at (x, y) and spanning
+     * {@param spanX} by {@param spanY} cells is vacant and fits in the grid.
+     */
+    public long getVacantRegionStarts(int y, int spanX, int spanY) {
+        if (y < 0 || spanX <= 0 || spanY <= 0 || y + spanY > mCountY || spanX > mCountX) {
+            return 0;
+        }
+        long occupied = 0;
+        for (int j = y; j < y + spanY; j++) {
+            occupied |= mRows[j];
+        }
+        // Bit x is set when the column x is vacant in all the rows, then when all the columns from
+        // x to x + span - 1 are, doubling the span checked at each step. Bits past the last column
+        // are never vacant, so regions can't run off the grid.
+        long starts = ~occupied & mRowMask;
+        int span = 1;
+        while (span < spanX && starts != 0) {
+            int shift = Math.min(span, spanX - span);
+            starts &= starts >>> shift;
+            span += shift;
+        }
+        return starts;
+    }
+
+    /**
+     * Returns the columns x, as a bitset, such that a region spanning {@param spanX} cells from x
+     * fits in the grid, regardless of the occupancy.
+     */
+    public long getRegionStarts(int spanX) {
+        return spanX <= 0 || spanX > mCountX ? 0 : spanMask(0, mCountX - spanX + 1);
+    }
+
     public void copyTo(GridOccupancy dest) {
-        for (int i = 0; i < mCountX; i++) {
-            for (int j = 0; j < mCountY; j++) {
-                dest.cells[i][j] = cells[i][j];
+        if (dest.mCountX == mCountX) {
+            System.arraycopy(mRows, 0, dest.mRows, 0, mCountY);
+        } else {
+            for (int y = 0; y < mCountY; y++) {
+                dest.mRows[y] = (dest.mRows[y] & ~mRowMask) | mRows[y];
             }
         }
     }
@@ -64,21 +119,42 @@ public class GridOccupancy {
         if (x < 0 || y < 0 || x2 >= mCountX || y2 >= mCountY) {
             return false;
         }
-        for (int i = x; i <= x2; i++) {
-            for (int j = y; j <= y2; j++) {
-                if (cells[i][j]) {
-                    return false;
-                }
+        long mask = spanMask(x, spanX);
+        for (int j = y; j <= y2; j++) {
+            if ((mRows[j] & mask) != 0) {
+                return false;
             }
         }
         return true;
     }
 
+    /**
+     * Returns true if any occupied cell of {@param block}, placed with its top left corner at
+     * (x, y) in this grid, is also occupied in this grid. The occupied cells of the block must
+     * fit in the grid, but the block itself can be larger, e.g. a block reused for regions of
+     * different sizes.
+     */
+    public boolean overlaps(GridOccupancy block, int x, int y) {
+        int rows = Math.min(block.mCountY, mCountY - y);
+        for (int j = 0; j < rows; j++) {
+            if (((mRows[y + j] >>> x) & block.mRows[j]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public void markCells(int cellX, int cellY, int spanX, int spanY, boolean value) {
         if (cellX < 0 || cellY < 0) return;
-        for (int x = cellX; x < cellX + spanX && x < mCountX; x++) {
-            for (int y = cellY; y < cellY + spanY && y < mCountY; y++) {
-                cells[x][y] = value;
+        int width = Math.min(spanX, mCountX - cellX);
+        if (width <= 0) return;
+        long mask = spanMask(cellX, width);
+        int y2 = Math.min(cellY + spanY, mCountY);
+        for (int y = cellY; y < y2; y++) {
+            if (value) {
+                mRows[y] |= mask;
+            } else {
+                mRows[y] &= ~mask;
             }
         }
     }
@@ -98,4 +174,25 @@ public class GridOccupancy {
     public void clear() {
         markCells(0, 0, mCountX, mCountY, false);
     }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof GridOccupancy)) {
+            return false;
+        }
+        GridOccupancy other = (GridOccupancy) obj;
+        return mCountX == other.mCountX && Arrays.equals(mRows, other.mRows);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * mCountX + Arrays.hashCode(mRows);
+    }
+
+    /**
+     * Returns the bits of the columns x to x + span - 1.
+     */
+    private static long spanMask(int x, int span) {
+        return (span >= Long.SIZE ? -1L : (1L << span) - 1) << x;
+    }
 }
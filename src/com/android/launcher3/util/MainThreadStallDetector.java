@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
+import static com.android.launcher3.util.Executors.UI_HELPER_EXECUTOR;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.ArrayMap;
+
+import androidx.annotation.UiThread;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.launcher3.Utilities;
+import com.android.launcher3.config.FeatureFlags;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Detects stalls of the main thread and attributes them to the blocking calls causing them, by
+ * call site. This is safe to run in release builds: the main thread only runs a heartbeat every
+ * {@link #CHECK_INTERVAL_MS}, and its stack is only sampled while the heartbeat is late. Sampling
+ * suspends the main thread, so the samples of a stall get further apart as it lasts, except on
+ * debug builds.
+ *
+ * Each sample is attributed to the innermost launcher frame of the main thread stack, and
+ * classified as a DataStore read, a SQLite query, a binder call or disk I/O from the frames above
+ * it. The number of stalls and a histogram of the blocked time are kept for each call site.
+ *
+ * The stats are part of the launcher dump, and can be reset with:
+ * $ adb shell dumpsys activity com.android.launcher3.Launcher --reset-stalls
+ */
+public class MainThreadStallDetector {
+
+    public static final MainThreadStallDetector INSTANCE = new MainThreadStallDetector();
+
+    @VisibleForTesting
+    static final String CATEGORY_DATASTORE = "datastore";
+    @VisibleForTesting
+    static final String CATEGORY_SQLITE = "sqlite";
+    @VisibleForTesting
+    static final String CATEGORY_BINDER = "binder";
+    @VisibleForTesting
+    static final String CATEGORY_DISK = "disk";
+    @VisibleForTesting
+    static final String CATEGORY_OTHER = "other";
+
+    // Frames identifying each category, checked in this order
+    private static final String[][] CATEGORY_FRAMES = {
+            {CATEGORY_DATASTORE, "androidx.datastore.", "com.patrykmichalik.preferencemanager."},
+            {CATEGORY_SQLITE, "android.database.sqlite."},
+            {CATEGORY_BINDER, "android.os.BinderProxy"},
+            {CATEGORY_DISK, "libcore.io.", "java.io.File", "java.io.RandomAccessFile",
+                    "android.app.SharedPreferencesImpl"},
+    };
+    private static final String[] APP_PACKAGES = {
+            "com.android.launcher3.", "com.android.quickstep.", "app.lawnchair."};
+
+    // The main thread is considered stalled when a heartbeat doesn't run within this interval
+    private static final long CHECK_INTERVAL_MS = 100;
+    private static final boolean CONTINUOUS_SAMPLING =
+            Utilities.IS_DEBUG_DEVICE || FeatureFlags.IS_STUDIO_BUILD;
+    // Interval between the first samples of a stall, doubled for each sample up to the max
+    private static final long SAMPLE_INTERVAL_MS = CONTINUOUS_SAMPLING ? 10 : 50;
+    private static final long MAX_SAMPLE_INTERVAL_MS = CONTINUOUS_SAMPLING ? 10 : 800;
+    // Upper bounds of the histogram buckets of the blocked time per stall, the last bucket is
+    // for longer stalls
+    private static final int[] BUCKET_BOUNDS_MS = {20, 50, 100, 200, 500, 1000, 5000};
+    private static final int MAX_SITES = 200;
+
+    private final Handler mHandler = UI_HELPER_EXECUTOR.getHandler();
+    private final Thread mMainThread = Looper.getMainLooper().getThread();
+
+    private final Runnable mCheck = this::check;
+    private final Runnable mHeartbeat = this::onHeartbeat;
+
+    // Accessed on the helper thread
+    private boolean mStarted;
+    private boolean mStalled;
+    private long mHeartbeatPostTime;
+    private long mSampleIntervalMs;
+    // Time attributed to each sampled key during the current stall
+    private final ArrayMap<String, long[]> mStallSamples = new ArrayMap<>();
+
+    private volatile boolean mHeartbeatPending;
+    private volatile long mHeartbeatRunTime;
+
+    // Guarded by mSites
+    private final HashMap<String, Site> mSites = new HashMap<>();
+    private int mStallCount;
+    private long mStalledMs;
+
+    @VisibleForTesting
+    MainThreadStallDetector() { }
+
+    /**
+     * Starts watching the main thread, if not started yet.
+     */
+    @UiThread
+    public void start() {
+        mHandler.post(() -> {
+            if (!mStarted) {
+                mStarted = true;
+                // The loop may still be scheduled if stopped recently, there must only be one
+                mHandler.removeCallbacks(mCheck);
+                check();
+            }
+        });
+    }
+
+    /**
+     * Stops watching the main thread, stalls are still tracked until the next heartbeat.
+     */
+    @UiThread
+    public void stop() {
+        mHandler.post(() -> mStarted = false);
+    }
+
+    private void onHeartbeat() {
+        mHeartbeatRunTime = SystemClock.uptimeMillis();
+        mHeartbeatPending = false;
+    }
+
+    private void check() {
+        if (mHeartbeatPending) {
+            if (!mStalled) {
+                mStalled = true;
+                mSampleIntervalMs = SAMPLE_INTERVAL_MS;
+            } else {
+                mSampleIntervalMs = Math.min(mSampleIntervalMs * 2, MAX_SAMPLE_INTERVAL_MS);
+            }
+            // Each sample stands for the time until the next one
+            sample(mMainThread.getStackTrace(), mSampleIntervalMs);
+            mHandler.postDelayed(mCheck, mSampleIntervalMs);
+            return;
+        }
+        if (mStalled) {
+            mStalled = false;
+            onStallEnded(mHeartbeatRunTime - mHeartbeatPostTime);
+        }
+        if (!mStarted) {
+            return;
+        }
+        mHeartbeatPending = true;
+        mHeartbeatPostTime = SystemClock.uptimeMillis();
+        MAIN_EXECUTOR.getHandler().post(mHeartbeat);
+        mHandler.postDelayed(mCheck, CHECK_INTERVAL_MS);
+    }
+
+    private void sample(StackTraceElement[] stack, long durationMs) {
+        String key = getCategory(stack) + " " + getCallSite(stack);
+        long[] time = mStallSamples.get(key);
+        if (time == null) {
+            mStallSamples.put(key, new long[] {durationMs});
+        } else {
+            time[0] += durationMs;
+        }
+    }
+
+    private void onStallEnded(long durationMs) {
+        synchronized (mSites) {
+            mStallCount++;
+            mStalledMs += durationMs;
+            for (int i = 0; i < mStallSamples.size(); i++) {
+                String key = mStallSamples.keyAt(i);
+                Site site = mSites.get(key);
+                if (site == null) {
+                    if (mSites.size() >= MAX_SITES) {
+                        continue;
+                    }
+                    site = new Site(key);
+                    mSites.put(key, site);
+                }
+                site.record(mStallSamples.valueAt(i)[0]);
+            }
+        }
+        mStallSamples.clear();
+    }
+
+    /**
+     * Returns the category of the blocking call at the top of {@param stack}.
+     */
+    @VisibleForTesting
+    static String getCategory(StackTraceElement[] stack) {
+        int end = getCallSiteIndex(stack);
+        for (String[] category : CATEGORY_FRAMES) {
+            for (int i = 0; i < end; i++) {
+                String className = stack[i].getClassName();
+                for (int j = 1; j < category.length; j++) {
+                    if (className.startsWith(category[j])) {
+                        return category[0];
+                    }
+                }
+            }
+        }
+        return CATEGORY_OTHER;
+    }
+
+    /**
+     * Returns the innermost launcher frame of {@param stack}, or its top frame if there is none.
+     */
+    @VisibleForTesting
+    static String getCallSite(StackTraceElement[] stack) {
+        if (stack.length == 0) {
+            return "unknown";
+        }
+        int index = getCallSiteIndex(stack);
+        return stack[index < stack.length ? index : 0].toString();
+    }
+
+    private static int getCallSiteIndex(StackTraceElement[] stack) {
+        for (int i = 0; i < stack.length; i++) {
+            String className = stack[i].getClassName();
+            for (String appPackage : APP_PACKAGES) {
+                if (className.startsWith(appPackage)) {
+                    return i;
+                }
+            }
+        }
+        return stack.length;
+    }
+
+    /**
+     * Clears all the collected stats.
+     */
+    public void reset() {
+        synchronized (mSites) {
+            mSites.clear();
+            mStallCount = 0;
+            mStalledMs = 0;
+        }
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        ArrayList<Site> sites;
+        synchronized (mSites) {
+            writer.println(prefix + "MainThreadStallDetector: stalls=" + mStallCount
+                    + ", stalledMs=" + mStalledMs);
+            sites = new ArrayList<>(mSites.size());
+            for (Site site : mSites.values()) {
+                sites.add(site.copy());
+            }
+        }
+        sites.sort((a, b) -> Long.compare(b.mTotalMs, a.mTotalMs));
+        for (Site site : sites) {
+            writer.println(prefix + "\t" + site);
+        }
+    }
+
+    /**
+     * Blocked time of the main thread at a call site, for a category of blocking call.
+     */
+    @VisibleForTesting
+    static class Site {
+
+        final String key;
+        private final int[] mBuckets;
+        private int mCount;
+        private long mTotalMs;
+        private long mMaxMs;
+
+        Site(String key) {
+            this(key, new int[BUCKET_BOUNDS_MS.length + 1]);
+        }
+
+        private Site(String key, int[] buckets) {
+            this.key = key;
+            mBuckets = buckets;
+        }
+
+        void record(long blockedMs) {
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_MS.length && blockedMs > BUCKET_BOUNDS_MS[bucket]) {
+                bucket++;
+            }
+            mBuckets[bucket]++;
+            mCount++;
+            mTotalMs += blockedMs;
+            mMaxMs = Math.max(mMaxMs, blockedMs);
+        }
+
+        int getCount() {
+            return mCount;
+        }
+
+        int getBucketCount(int bucket) {
+            return mBuckets[bucket];
+        }
+
+        Site copy() {
+            Site copy = new Site(key, mBuckets.clone());
+            copy.mCount = mCount;
+            copy.mTotalMs = mTotalMs;
+            copy.mMaxMs = mMaxMs;
+            return copy;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder histogram = new StringBuilder();
+            for (int i = 0; i < mBuckets.length; i++) {
+                if (mBuckets[i] == 0) {
+                    continue;
+                }
+                histogram.append(histogram.length() == 0 ? "" : ", ")
+                        .append(i < BUCKET_BOUNDS_MS.length
+                                ? "<=" + BUCKET_BOUNDS_MS[i] : ">" + BUCKET_BOUNDS_MS[i - 1])
+                        .append("ms:").append(mBuckets[i]);
+            }
+            return String.format(Locale.US, "%s: count=%d, totalMs=%d, maxMs=%d, [%s]",
+                    key, mCount, mTotalMs, mMaxMs, histogram);
+        }
+    }
+}
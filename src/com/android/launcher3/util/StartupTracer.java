@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import androidx.annotation.VisibleForTesting;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records a timeline of named phases of the launcher startup, from the application creation to
+ * the deferred workspace bind, so that startup regressions can be measured across builds.
+ *
+ * Phases are recorded in a fixed size ring buffer without locks or allocations, and the oldest
+ * entries are overwritten once it is full. The timeline is part of the launcher dump, and can be
+ * exported in the Chrome trace format with:
+ * $ adb shell dumpsys activity com.android.launcher3.Launcher --startup-trace > trace.json
+ */
+public class StartupTracer {
+
+    public static final StartupTracer INSTANCE = new StartupTracer(512);
+
+    // Duration of entries which mark a point in time instead of a phase
+    private static final long INSTANT = -1;
+
+    private final int mMask;
+    private final AtomicLong mNextSequence = new AtomicLong();
+    // Sequence number of the entry in each slot, -1 while the slot is being written
+    private final AtomicLongArray mSequences;
+    private final String[] mNames;
+    private final String[] mThreadNames;
+    private final int[] mThreadIds;
+    private final long[] mStartNanos;
+    private final long[] mDurationNanos;
+
+    @VisibleForTesting
+    public StartupTracer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        mMask = size - 1;
+        mSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            mSequences.set(i, -1);
+        }
+        mNames = new String[size];
+        mThreadNames = new String[size];
+        mThreadIds = new int[size];
+        mStartNanos = new long[size];
+        mDurationNanos = new long[size];
+    }
+
+    /**
+     * @return a token to pass into {@link #endPhase}.
+     */
+    public long beginPhase() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Records a phase which started when {@link #beginPhase} returned {@param startToken}.
+     */
+    public void endPhase(String name, long startToken) {
+        record(name, startToken, SystemClock.elapsedRealtimeNanos() - startToken);
+    }
+
+    /**
+     * Records a point in time, e.g. the first draw of a view.
+     */
+    public void mark(String name) {
+        record(name, SystemClock.elapsedRealtimeNanos(), INSTANT);
+    }
+
+    private void record(String name, long startNanos, long durationNanos) {
+        long sequence = mNextSequence.getAndIncrement();
+        int slot = (int) (sequence & mMask);
+        mSequences.set(slot, -1);
+        mNames[slot] = name;
+        mThreadNames[slot] = Thread.currentThread().getName();
+        mThreadIds[slot] = Process.myTid();
+        mStartNanos[slot] = startNanos;
+        mDurationNanos[slot] = durationNanos;
+        // Publishes the entry to readers
+        mSequences.set(slot, sequence);
+    }
+
+    /**
+     * Returns a copy of the recorded entries, oldest first. Entries which are overwritten while
+     * being copied are skipped.
+     */
+    @VisibleForTesting
+    public ArrayList<Entry> getEntries() {
+        long end = mNextSequence.get();
+        long start = Math.max(0, end - mMask - 1);
+        ArrayList<Entry> entries = new ArrayList<>((int) (end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) (sequence & mMask);
+            if (mSequences.get(slot) != sequence) {
+                continue;
+            }
+            Entry entry = new Entry(mNames[slot], mThreadNames[slot], mThreadIds[slot],
+                    mStartNanos[slot], mDurationNanos[slot]);
+            if (mSequences.get(slot) == sequence) {
+                entries.add(entry);
+            }
+        }
+        entries.sort((a, b) -> Long.compare(a.startNanos, b.startNanos));
+        return entries;
+    }
+
+    /**
+     * Prints the timeline relative to the process start.
+     */
+    public void dump(String prefix, PrintWriter writer) {
+        long originNanos = getProcessStartNanos();
+        writer.println(prefix + "StartupTracer:");
+        for (Entry entry : getEntries()) {
+            StringBuilder line = new StringBuilder(prefix).append("\t+")
+                    .append(formatMillis(entry.startNanos - originNanos)).append("ms ");
+            if (!entry.isInstant()) {
+                line.append('[').append(formatMillis(entry.durationNanos)).append("ms] ");
+            }
+            line.append(entry.name).append(" (").append(entry.threadName).append(')');
+            writer.println(line);
+        }
+    }
+
+    /**
+     * Writes the timeline as a Chrome trace, which can be opened in chrome://tracing or Perfetto.
+     */
+    public void writeChromeTrace(PrintWriter writer) {
+        try {
+            writer.println(toChromeTrace().toString());
+        } catch (JSONException e) {
+            writer.println("Unable to export startup trace: " + e);
+        }
+    }
+
+    @VisibleForTesting
+    public JSONObject toChromeTrace() throws JSONException {
+        long originNanos = getProcessStartNanos();
+        int pid = Process.myPid();
+        JSONArray events = new JSONArray();
+        IntSet namedThreads = new IntSet();
+        for (Entry entry : getEntries()) {
+            if (!namedThreads.contains(entry.threadId)) {
+                namedThreads.add(entry.threadId);
+                events.put(new JSONObject()
+                        .put("name", "thread_name")
+                        .put("ph", "M")
+                        .put("pid", pid)
+                        .put("tid", entry.threadId)
+                        .put("args", new JSONObject().put("name", entry.threadName)));
+            }
+            JSONObject event = new JSONObject()
+                    .put("name", entry.name)
+                    .put("cat", "startup")
+                    .put("pid", pid)
+                    .put("tid", entry.threadId)
+                    .put("ts", TimeUnit.NANOSECONDS.toMicros(entry.startNanos - originNanos));
+            if (entry.isInstant()) {
+                event.put("ph", "i").put("s", "t");
+            } else {
+                event.put("ph", "X")
+                        .put("dur", TimeUnit.NANOSECONDS.toMicros(entry.durationNanos));
+            }
+            events.put(event);
+        }
+        return new JSONObject().put("traceEvents", events).put("displayTimeUnit", "ms");
+    }
+
+    private static long getProcessStartNanos() {
+        return TimeUnit.MILLISECONDS.toNanos(Process.getStartElapsedRealtime());
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format(Locale.US, "%.1f", nanos / 1e6);
+    }
+
+    /**
+     * A recorded phase or point in time.
+     */
+    public static class Entry {
+        public final String name;
+        public final String threadName;
+        public final int threadId;
+        public final long startNanos;
+        public final long durationNanos;
+
+        Entry(String name, String threadName, int threadId, long startNanos,
+                long durationNanos) {
+            this.name = name;
+            this.threadName = threadName;
+            this.threadId = threadId;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+        }
+
+        public boolean isInstant() {
+            return durationNanos == INSTANT;
+        }
+    }
+}
@@ -90,6 +90,9 @@ public class ViewOnDrawExecutor implements Executor, OnDrawListener, Runnable,
 
     @Override
     public void onDraw() {
+        if (!mFirstDrawCompleted) {
+            StartupTracer.INSTANCE.mark("ViewOnDrawExecutor.firstDraw");
+        }
         mFirstDrawCompleted = true;
         mAttachedView.post(this);
     }
@@ -131,9 +134,11 @@ public class ViewOnDrawExecutor implements Executor, OnDrawListener, Runnable,
      */
     @VisibleForTesting
     public void runAllTasks() {
+        long traceToken = StartupTracer.INSTANCE.beginPhase();
         for (final Runnable r : mTasks) {
             r.run();
         }
         markCompleted();
+        StartupTracer.INSTANCE.endPhase("ViewOnDrawExecutor.runAllTasks", traceToken);
     }
 }
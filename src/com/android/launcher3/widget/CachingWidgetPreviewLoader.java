@@ -121,7 +121,7 @@ public class CachingWidgetPreviewLoader implements WidgetPreviewLoader {
     @NonNull
     public CancellationSignal loadPreview(
             @NonNull BaseActivity activity, @NonNull WidgetItem item, @NonNull Size previewSize,
-            @NonNull WidgetPreviewLoadedCallback callback) {
+            @NonNull WidgetPreviewLoadedCallback callback, int priority) {
         CancellationSignal signal = new CancellationSignal();
         signal.setOnCancelListener(() -> {
             synchronized (mCache) {
@@ -185,7 +185,8 @@ public class CachingWidgetPreviewLoader implements WidgetPreviewLoader {
                                     // call back to the provided callback, there can't be others.
                                     callback.onPreviewLoaded(preview);
                                 }
-                            });
+                            },
+                            priority);
             ArraySet<WidgetPreviewLoadedCallback> callbacks = new ArraySet<>();
             callbacks.add(callback);
             putCacheResult(
@@ -38,7 +38,6 @@ import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
-import android.os.AsyncTask;
 import android.os.CancellationSignal;
 import android.os.Process;
 import android.os.UserHandle;
@@ -49,12 +48,14 @@ import android.util.Size;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import com.android.launcher3.BaseActivity;
 import com.android.launcher3.DeviceProfile;
 import com.android.launcher3.LauncherFiles;
 import com.android.launcher3.R;
 import com.android.launcher3.Utilities;
+import com.android.launcher3.config.FeatureFlags;
 import com.android.launcher3.icons.GraphicsUtils;
 import com.android.launcher3.icons.IconCache;
 import com.android.launcher3.icons.LauncherIcons;
@@ -62,21 +63,25 @@ import com.android.launcher3.icons.ShadowGenerator;
 import com.android.launcher3.model.WidgetItem;
 import com.android.launcher3.pm.ShortcutConfigActivityInfo;
 import com.android.launcher3.pm.UserCache;
+import com.android.launcher3.util.BitmapPool;
 import com.android.launcher3.util.ComponentKey;
-import com.android.launcher3.util.Executors;
+import com.android.launcher3.util.Executors.SimpleThreadFactory;
 import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.util.Preconditions;
 import com.android.launcher3.util.SQLiteCacheHelper;
 import com.android.launcher3.util.Thunk;
 import com.android.launcher3.widget.util.WidgetSizes;
 
+import java.io.File;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Set;
-import java.util.WeakHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 
 /** {@link WidgetPreviewLoader} that loads preview images from a {@link CacheDb}. */
 public class DatabaseWidgetPreviewLoader implements WidgetPreviewLoader {
@@ -84,36 +89,72 @@ public class DatabaseWidgetPreviewLoader implements WidgetPreviewLoader {
     private static final String TAG = "WidgetPreviewLoader";
     private static final boolean DEBUG = false;
 
-    private final HashMap<String, long[]> mPackageVersions = new HashMap<>();
+    private static final int PREVIEW_POOL_SIZE = 2;
+    private static final int KEEP_ALIVE_SECONDS = 1;
 
     /**
-     * Weak reference objects, do not prevent their referents from being made finalizable,
-     * finalized, and then reclaimed.
-     * Note: synchronized block used for this variable is expensive and the block should always
-     * be posted to a background thread.
+     * Orders queued requests by priority and then by most recent first, so that scrolling
+     * quickly loads the previews of the final viewport before the ones scrolled past.
      */
-    @Thunk final Set<Bitmap> mUnusedBitmaps = Collections.newSetFromMap(new WeakHashMap<>());
+    private static final Comparator<Runnable> REQUEST_ORDER = (a, b) -> {
+        PreviewLoadRequest r1 = (PreviewLoadRequest) a;
+        PreviewLoadRequest r2 = (PreviewLoadRequest) b;
+        return r1.mPriority != r2.mPriority
+                ? Integer.compare(r1.mPriority, r2.mPriority)
+                : Long.compare(r2.mSequence, r1.mSequence);
+    };
+
+    private final HashMap<String, long[]> mPackageVersions = new HashMap<>();
 
     private final Context mContext;
     private final IconCache mIconCache;
     private final UserCache mUserCache;
-    private final CacheDb mDb;
+    private final BitmapPool mBitmapPool;
+    private volatile WidgetPreviewStore mStore;
     private final float mPreviewBoxCornerRadius;
 
+    private final ThreadPoolExecutor mPreviewExecutor;
+    // Requests which didn't deliver their preview yet, by key
+    private final HashMap<WidgetCacheKey, PreviewLoadRequest> mPendingRequests = new HashMap<>();
+    // Guarded by mPendingRequests
+    private long mRequestSequence;
+
     public DatabaseWidgetPreviewLoader(Context context, IconCache iconCache) {
+        this(context, iconCache, createStore(context));
+    }
+
+    @VisibleForTesting
+    DatabaseWidgetPreviewLoader(Context context, IconCache iconCache, WidgetPreviewStore store) {
         mContext = context;
         mIconCache = iconCache;
         mUserCache = UserCache.INSTANCE.get(context);
-        mDb = new CacheDb(context);
+        mBitmapPool = BitmapPool.INSTANCE.get(context);
+        mStore = store;
         float previewCornerRadius = RoundedCornerEnforcement.computeEnforcedRadius(context);
         mPreviewBoxCornerRadius = previewCornerRadius > 0
                 ? previewCornerRadius
                 : mContext.getResources().getDimension(R.dimen.widget_preview_corner_radius);
+        mPreviewExecutor = new ThreadPoolExecutor(PREVIEW_POOL_SIZE, PREVIEW_POOL_SIZE,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(PREVIEW_POOL_SIZE, REQUEST_ORDER),
+                new SimpleThreadFactory("widget-preview-", Process.THREAD_PRIORITY_BACKGROUND));
+        mPreviewExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private static WidgetPreviewStore createStore(Context context) {
+        if (!FeatureFlags.ENABLE_WIDGET_PREVIEW_PACK.get()) {
+            return new CacheDb(context, LauncherFiles.WIDGET_PREVIEWS_DB);
+        }
+        // The previews stored in the database are never read once the packs are used
+        MODEL_EXECUTOR.execute(() -> context.deleteDatabase(LauncherFiles.WIDGET_PREVIEWS_DB));
+        return new WidgetPreviewPack(
+                new File(context.getCacheDir(), LauncherFiles.WIDGET_PREVIEWS_PACK));
     }
 
     /**
-     * Generates the widget preview on {@link AsyncTask#THREAD_POOL_EXECUTOR}. Must be
-     * called on UI thread.
+     * Generates the widget preview on the preview threads. Requests for the same component, user
+     * and size share a single load, and the most recent requests of the highest priority are
+     * loaded first. Must be called on UI thread.
      *
      * @return a request id which can be used to cancel the request.
      */
@@ -123,31 +164,67 @@ public class DatabaseWidgetPreviewLoader implements WidgetPreviewLoader {
             @NonNull BaseActivity activity,
             @NonNull WidgetItem item,
             @NonNull Size previewSize,
-            @NonNull WidgetPreviewLoadedCallback callback) {
+            @NonNull WidgetPreviewLoadedCallback callback,
+            int priority) {
         int previewWidth = previewSize.getWidth();
         int previewHeight = previewSize.getHeight();
         String size = previewWidth + "x" + previewHeight;
         WidgetCacheKey key = new WidgetCacheKey(item.componentName, item.user, size);
 
-        PreviewLoadTask task =
-                new PreviewLoadTask(activity, key, item, previewWidth, previewHeight, callback);
-        task.executeOnExecutor(Executors.THREAD_POOL_EXECUTOR);
+        PreviewLoadRequest request;
+        boolean schedule;
+        synchronized (mPendingRequests) {
+            request = mPendingRequests.get(key);
+            if (request == null) {
+                request = new PreviewLoadRequest(
+                        activity, key, item, previewWidth, previewHeight, priority);
+                mPendingRequests.put(key, request);
+                schedule = true;
+            } else {
+                // Move a request which is still queued ahead of older requests, so that the
+                // previews which were requested last, usually the ones on screen, load first.
+                schedule = priority <= request.mPriority && mPreviewExecutor.remove(request);
+                if (schedule) {
+                    request.mPriority = priority;
+                }
+            }
+            request.mCallbacks.add(callback);
+            if (schedule) {
+                request.mSequence = ++mRequestSequence;
+            }
+        }
+        if (schedule) {
+            mPreviewExecutor.execute(request);
+        }
 
         CancellationSignal signal = new CancellationSignal();
-        signal.setOnCancelListener(task);
+        final PreviewLoadRequest cancelRequest = request;
+        signal.setOnCancelListener(() -> cancelRequest.removeCallback(callback));
         return signal;
     }
 
-    /** Clears the database storing previews. */
+    /** Clears the store of previews. */
     public void refresh() {
-        mDb.clear();
+        mStore.clear();
+    }
+
+    /**
+     * Replaces the store of previews and returns the previous one, so that benchmarks can compare
+     * the stores on the real widgets picker.
+     */
+    @VisibleForTesting
+    public WidgetPreviewStore swapStore(WidgetPreviewStore store) {
+        WidgetPreviewStore previous = mStore;
+        mStore = store;
+        return previous;
     }
 
     /**
      * The DB holds the generated previews for various components. Previews can also have different
      * sizes (landscape vs portrait).
      */
-    private static class CacheDb extends SQLiteCacheHelper {
+    @VisibleForTesting
+    public static class CacheDb extends SQLiteCacheHelper implements WidgetPreviewStore {
         private static final int DB_VERSION = 9;
 
         private static final String TABLE_NAME = "shortcut_and_widget_previews";
@@ -159,8 +236,8 @@ public class DatabaseWidgetPreviewLoader implements WidgetPreviewLoader {
         private static final String COLUMN_VERSION = "version";
         private static final String COLUMN_PREVIEW_BITMAP = "preview_bitmap";
 
-        CacheDb(Context context) {
-            super(context, LauncherFiles.WIDGET_PREVIEWS_DB, DB_VERSION, TABLE_NAME);
+        public CacheDb(Context context, String name) {
+            super(context, name, DB_VERSION, TABLE_NAME);
         }
 
         @Override
@@ -192,18 +269,83 @@ public class DatabaseWidgetPreviewLoader implements WidgetPreviewLoader {
                     +
                     ");");
         }
+
+        @Override
+        public Bitmap read(ComponentName component, long userSerial, String size,
+                Bitmap recycle, BooleanSupplier isCancelled) {
+            Cursor cursor = null;
+            try {
+                cursor = query(
+                        new String[]{COLUMN_PREVIEW_BITMAP},
+                        COLUMN_COMPONENT + " = ? AND " + COLUMN_USER + " = ? AND "
+                                + COLUMN_SIZE + " = ?",
+                        new String[]{
+                                component.flattenToShortString(),
+                                Long.toString(userSerial),
+                                size
+                        });
+                // If cancelled, skip getting the blob and decoding it into a bitmap
+                if (isCancelled.getAsBoolean()) {
+                    return null;
+                }
+                if (cursor.moveToNext()) {
+                    byte[] blob = cursor.getBlob(0);
+                    BitmapFactory.Options opts = new BitmapFactory.Options();
+                    opts.inBitmap = recycle;
+                    try {
+                        if (!isCancelled.getAsBoolean()) {
+                            return BitmapFactory.decodeByteArray(blob, 0, blob.length, opts);
+                        }
+                    } catch (Exception e) {
+                        return null;
+                    }
+                }
+            } catch (SQLException e) {
+                Log.w(TAG, "Error loading preview from DB", e);
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void write(ComponentName component, long userSerial, String size, long version,
+                long lastUpdated, Bitmap preview) {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_COMPONENT, component.flattenToShortString());
+            values.put(COLUMN_USER, userSerial);
+            values.put(COLUMN_SIZE, size);
+            values.put(COLUMN_PACKAGE, component.getPackageName());
+            values.put(COLUMN_VERSION, version);
+            values.put(COLUMN_LAST_UPDATED, lastUpdated);
+            values.put(COLUMN_PREVIEW_BITMAP, GraphicsUtils.flattenBitmap(preview));
+            insertOrReplace(values);
+        }
+
+        @Override
+        public void forEachPreview(PreviewVisitor visitor) {
+            try (Cursor c = query(
+                    new String[]{COLUMN_USER, COLUMN_PACKAGE, COLUMN_LAST_UPDATED,
+                            COLUMN_VERSION},
+                    null, null)) {
+                while (c.moveToNext()) {
+                    visitor.onPreview(c.getLong(0), c.getString(1), c.getLong(3), c.getLong(2));
+                }
+            }
+        }
+
+        @Override
+        public void removePackage(String packageName, long userSerial) {
+            delete(COLUMN_PACKAGE + " = ? AND " + COLUMN_USER + " = ?",
+                    new String[]{packageName, Long.toString(userSerial)});
+        }
     }
 
     @Thunk void writeToDb(WidgetCacheKey key, long[] versions, Bitmap preview) {
-        ContentValues values = new ContentValues();
-        values.put(CacheDb.COLUMN_COMPONENT, key.componentName.flattenToShortString());
-        values.put(CacheDb.COLUMN_USER, mUserCache.getSerialNumberForUser(key.user));
-        values.put(CacheDb.COLUMN_SIZE, key.mSize);
-        values.put(CacheDb.COLUMN_PACKAGE, key.componentName.getPackageName());
-        values.put(CacheDb.COLUMN_VERSION, versions[0]);
-        values.put(CacheDb.COLUMN_LAST_UPDATED, versions[1]);
-        values.put(CacheDb.COLUMN_PREVIEW_BITMAP, GraphicsUtils.flattenBitmap(preview));
-        mDb.insertOrReplace(values);
+        mStore.write(key.componentName, mUserCache.getSerialNumberForUser(key.user), key.mSize,
+                versions[0], versions[1], preview);
     }
 
     /** Removes the package from the preview database. */
@@ -217,9 +359,7 @@ public class DatabaseWidgetPreviewLoader implements WidgetPreviewLoader {
             mPackageVersions.remove(packageName);
         }
 
-        mDb.delete(
-                CacheDb.COLUMN_PACKAGE + " = ? AND " + CacheDb.COLUMN_USER + " = ?",
-                new String[]{packageName, Long.toString(userSerial)});
+        mStore.removePackage(packageName, userSerial);
     }
 
     /**
@@ -250,22 +390,12 @@ public class DatabaseWidgetPreviewLoader implements WidgetPreviewLoader {
         LongSparseArray<HashSet<String>> packagesToDelete = new LongSparseArray<>();
         long passedUserId = packageUser == null ? 0
                 : mUserCache.getSerialNumberForUser(packageUser.mUser);
-        Cursor c = null;
         try {
-            c = mDb.query(
-                    new String[]{CacheDb.COLUMN_USER, CacheDb.COLUMN_PACKAGE,
-                            CacheDb.COLUMN_LAST_UPDATED, CacheDb.COLUMN_VERSION},
-                    null, null);
-            while (c.moveToNext()) {
-                long userId = c.getLong(0);
-                String pkg = c.getString(1);
-                long lastUpdated = c.getLong(2);
-                long version = c.getLong(3);
-
+            mStore.forEachPreview((userId, pkg, version, lastUpdated) -> {
                 if (packageUser != null && (!pkg.equals(packageUser.mPackageName)
                         || userId != passedUserId)) {
                     // This preview is associated with a different package/user, no need to remove.
-                    continue;
+                    return;
                 }
 
                 HashSet<String> packages = validPackages.get(userId);
@@ -273,7 +403,7 @@ public class DatabaseWidgetPreviewLoader implements WidgetPreviewLoader {
                     long[] versions = getPackageVersion(pkg);
                     if (versions[0] == version && versions[1] == lastUpdated) {
                         // Every thing checks out
-                        continue;
+                        return;
                     }
                 }
 
@@ -284,7 +414,7 @@ public class DatabaseWidgetPreviewLoader implements WidgetPreviewLoader {
                     packagesToDelete.put(userId, packages);
                 }
                 packages.add(pkg);
-            }
+            });
 
             for (int i = 0; i < packagesToDelete.size(); i++) {
                 long userId = packagesToDelete.keyAt(i);
@@ -295,52 +425,15 @@ public class DatabaseWidgetPreviewLoader implements WidgetPreviewLoader {
             }
         } catch (SQLException e) {
             Log.e(TAG, "Error updating widget previews", e);
-        } finally {
-            if (c != null) {
-                c.close();
-            }
         }
     }
 
     /**
-     * Reads the preview bitmap from the DB or null if the preview is not in the DB.
+     * Reads the preview bitmap from the store or null if the preview is not in the store.
      */
-    @Thunk Bitmap readFromDb(WidgetCacheKey key, Bitmap recycle, PreviewLoadTask loadTask) {
-        Cursor cursor = null;
-        try {
-            cursor = mDb.query(
-                    new String[]{CacheDb.COLUMN_PREVIEW_BITMAP},
-                    CacheDb.COLUMN_COMPONENT + " = ? AND " + CacheDb.COLUMN_USER + " = ? AND "
-                            + CacheDb.COLUMN_SIZE + " = ?",
-                    new String[]{
-                            key.componentName.flattenToShortString(),
-                            Long.toString(mUserCache.getSerialNumberForUser(key.user)),
-                            key.mSize
-                    });
-            // If cancelled, skip getting the blob and decoding it into a bitmap
-            if (loadTask.isCancelled()) {
-                return null;
-            }
-            if (cursor.moveToNext()) {
-                byte[] blob = cursor.getBlob(0);
-                BitmapFactory.Options opts = new BitmapFactory.Options();
-                opts.inBitmap = recycle;
-                try {
-                    if (!loadTask.isCancelled()) {
-                        return BitmapFactory.decodeByteArray(blob, 0, blob.length, opts);
-                    }
-                } catch (Exception e) {
-                    return null;
-                }
-            }
-        } catch (SQLException e) {
-            Log.w(TAG, "Error loading preview from DB", e);
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-        }
-        return null;
+    @Thunk Bitmap readFromDb(WidgetCacheKey key, Bitmap recycle, PreviewLoadRequest request) {
+        return mStore.read(key.componentName, mUserCache.getSerialNumberForUser(key.user),
+                key.mSize, recycle, request::isCancelled);
     }
 
     /**
@@ -608,59 +701,63 @@ public class DatabaseWidgetPreviewLoader implements WidgetPreviewLoader {
         }
     }
 
-    private class PreviewLoadTask extends AsyncTask<Void, Void, Bitmap>
-            implements CancellationSignal.OnCancelListener {
+    /**
+     * A preview load shared by all the callers requesting the same {@link WidgetCacheKey}. The
+     * request is cancelled once all its callbacks are removed.
+     */
+    private class PreviewLoadRequest implements Runnable {
         @Thunk final WidgetCacheKey mKey;
         private final WidgetItem mInfo;
         private final int mPreviewHeight;
         private final int mPreviewWidth;
-        private final WidgetPreviewLoadedCallback mCallback;
         private final BaseActivity mActivity;
+
+        // Guarded by mPendingRequests
+        final ArrayList<WidgetPreviewLoadedCallback> mCallbacks = new ArrayList<>(1);
+        // Only changed while the request is not queued, guarded by mPendingRequests
+        int mPriority;
+        long mSequence;
+
+        private volatile boolean mCancelled;
         @Thunk long[] mVersions;
         @Thunk Bitmap mBitmapToRecycle;
 
         @Nullable private Bitmap mUnusedPreviewBitmap;
         private boolean mSaveToDB = false;
 
-        PreviewLoadTask(BaseActivity activity, WidgetCacheKey key, WidgetItem info,
-                int previewWidth, int previewHeight, WidgetPreviewLoadedCallback callback) {
+        PreviewLoadRequest(BaseActivity activity, WidgetCacheKey key, WidgetItem info,
+                int previewWidth, int previewHeight, int priority) {
             mActivity = activity;
             mKey = key;
             mInfo = info;
             mPreviewHeight = previewHeight;
             mPreviewWidth = previewWidth;
-            mCallback = callback;
+            mPriority = priority;
             if (DEBUG) {
                 Log.d(TAG, String.format("%s, %s, %d, %d",
                         mKey, mInfo, mPreviewHeight, mPreviewWidth));
             }
         }
 
-        @Override
-        protected Bitmap doInBackground(Void... params) {
-            Bitmap unusedBitmap = null;
+        boolean isCancelled() {
+            return mCancelled;
+        }
 
+        @Override
+        public void run() {
             // If already cancelled before this gets to run in the background, then return early
+            // without reading the store or allocating a bitmap.
             if (isCancelled()) {
-                return null;
-            }
-            synchronized (mUnusedBitmaps) {
-                // Check if we can re-use a bitmap
-                for (Bitmap candidate : mUnusedBitmaps) {
-                    if (candidate != null && candidate.isMutable()
-                            && candidate.getWidth() == mPreviewWidth
-                            && candidate.getHeight() == mPreviewHeight) {
-                        unusedBitmap = candidate;
-                        mUnusedBitmaps.remove(unusedBitmap);
-                        break;
-                    }
-                }
+                return;
             }
+            Bitmap preview = loadInBackground();
+            MAIN_EXECUTOR.execute(() -> onLoaded(preview));
+        }
 
-            // creating a bitmap is expensive. Do not do this inside synchronized block.
-            if (unusedBitmap == null) {
-                unusedBitmap = Bitmap.createBitmap(mPreviewWidth, mPreviewHeight, Config.ARGB_8888);
-            }
+        private Bitmap loadInBackground() {
+            // Re-use a bitmap if possible, as creating one is expensive
+            Bitmap unusedBitmap =
+                    mBitmapPool.borrow(mPreviewWidth, mPreviewHeight, Config.ARGB_8888);
             // If cancelled now, don't bother reading the preview from the DB
             if (isCancelled()) {
                 return unusedBitmap;
@@ -686,39 +783,52 @@ public class DatabaseWidgetPreviewLoader implements WidgetPreviewLoader {
                 }
 
                 this.mSaveToDB = pair.second;
+            } else if (preview != unusedBitmap) {
+                // Either cancelled or the store didn't decode into the bitmap, return it to the
+                // pool so that it can be reused.
+                if (preview == null) {
+                    return unusedBitmap;
+                }
+                mBitmapPool.release(unusedBitmap);
             }
             return preview;
         }
 
-        @Override
-        protected void onPostExecute(final Bitmap preview) {
-            mCallback.onPreviewLoaded(preview);
+        private void onLoaded(final Bitmap preview) {
+            ArrayList<WidgetPreviewLoadedCallback> callbacks;
+            synchronized (mPendingRequests) {
+                // Later requests for the same key start a new load
+                mPendingRequests.remove(mKey, this);
+                callbacks = new ArrayList<>(mCallbacks);
+            }
+            if (isCancelled()) {
+                // If we've cancelled while the task is running, then can return the bitmap to the
+                // pool immediately.
+                mBitmapPool.release(preview);
+                return;
+            }
+            for (WidgetPreviewLoadedCallback callback : callbacks) {
+                callback.onPreviewLoaded(preview);
+            }
 
             // Write the generated preview to the DB in the worker thread
             if (mVersions != null) {
-                MODEL_EXECUTOR.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        if (mUnusedPreviewBitmap != null) {
-                            // If we didn't end up using the bitmap, it can be added back into the
-                            // recycled set.
-                            synchronized (mUnusedBitmaps) {
-                                mUnusedBitmaps.add(mUnusedPreviewBitmap);
-                            }
-                        }
+                MODEL_EXECUTOR.post(() -> {
+                    if (mUnusedPreviewBitmap != null) {
+                        // If we didn't end up using the bitmap, it can be added back into the
+                        // pool.
+                        mBitmapPool.release(mUnusedPreviewBitmap);
+                    }
 
-                        if (!isCancelled() && mSaveToDB) {
-                            // If we are still using this preview, then write it to the DB and then
-                            // let the normal clear mechanism recycle the bitmap
-                            writeToDb(mKey, mVersions, preview);
-                            mBitmapToRecycle = preview;
-                        } else {
-                            // If we've already cancelled, then skip writing the bitmap to the DB
-                            // and manually add the bitmap back to the recycled set
-                            synchronized (mUnusedBitmaps) {
-                                mUnusedBitmaps.add(preview);
-                            }
-                        }
+                    if (!isCancelled() && mSaveToDB) {
+                        // If we are still using this preview, then write it to the DB and then
+                        // let the normal clear mechanism recycle the bitmap
+                        writeToDb(mKey, mVersions, preview);
+                        mBitmapToRecycle = preview;
+                    } else {
+                        // If we've already cancelled, then skip writing the bitmap to the DB
+                        // and manually add the bitmap back to the pool
+                        mBitmapPool.release(preview);
                     }
                 });
             } else {
@@ -728,41 +838,31 @@ public class DatabaseWidgetPreviewLoader implements WidgetPreviewLoader {
             }
         }
 
-        @Override
-        protected void onCancelled(final Bitmap preview) {
-            // If we've cancelled while the task is running, then can return the bitmap to the
-            // recycled set immediately. Otherwise, it will be recycled after the preview is written
-            // to disk.
-            if (preview != null) {
-                MODEL_EXECUTOR.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        synchronized (mUnusedBitmaps) {
-                            mUnusedBitmaps.add(preview);
-                        }
-                    }
-                });
+        /**
+         * Removes a callback added by {@link #loadPreview}, cancelling the request if it was the
+         * last one.
+         */
+        void removeCallback(WidgetPreviewLoadedCallback callback) {
+            synchronized (mPendingRequests) {
+                mCallbacks.remove(callback);
+                if (!mCallbacks.isEmpty() || mCancelled) {
+                    return;
+                }
+                mCancelled = true;
+                mPendingRequests.remove(mKey, this);
             }
-        }
-
-        @Override
-        public void onCancel() {
-            cancel(true);
+            // Drop the request right away if it didn't start yet
+            mPreviewExecutor.remove(this);
 
-            // This only handles the case where the PreviewLoadTask is cancelled after the task has
+            // This only handles the case where the request is cancelled after it has
             // successfully completed (including having written to disk when necessary).  In the
-            // other cases where it is cancelled while the task is running, it will be cleaned up
-            // in the tasks's onCancelled() call, and if cancelled while the task is writing to
-            // disk, it will be cancelled in the task's onPostExecute() call.
+            // other cases where it is cancelled while the request is running, it will be cleaned
+            // up in onLoaded(), and if cancelled while writing to disk, it will be cleaned up by
+            // the write itself.
             if (mBitmapToRecycle != null) {
-                MODEL_EXECUTOR.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        synchronized (mUnusedBitmaps) {
-                            mUnusedBitmaps.add(mBitmapToRecycle);
-                        }
-                        mBitmapToRecycle = null;
-                    }
+                MODEL_EXECUTOR.post(() -> {
+                    mBitmapPool.release(mBitmapToRecycle);
+                    mBitmapToRecycle = null;
                 });
             }
         }
@@ -24,6 +24,7 @@ import android.graphics.Outline;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.SystemClock;
 import android.util.SparseBooleanArray;
 import android.util.SparseIntArray;
@@ -450,8 +451,13 @@ public class LauncherAppWidgetHostView extends NavigableAppWidgetHostView
             mHasDeferredColorChange = false;
         }
 
-        // setColorResources will reapply the view, which must happen in the UI thread.
-        post(() -> setColorResources(colors));
+        // setColorResources will reapply the view, which must happen in the UI thread. Apply it
+        // right away when already there, so that updates batched in a frame stay in that frame.
+        if (Looper.myLooper() == Looper.getMainLooper() && isAttachedToWindow()) {
+            setColorResources(colors);
+        } else {
+            post(() -> setColorResources(colors));
+        }
     }
 
     @Override
@@ -227,7 +227,7 @@ public class PendingItemDragHelper extends DragPreviewProvider {
 
         int w = mEstimatedCellSize[0];
         int h = mEstimatedCellSize[1];
-        final Bitmap b = Bitmap.createBitmap(w, h, Bitmap.Config.ALPHA_8);
+        final Bitmap b = mBitmapPool.borrow(w, h, Bitmap.Config.ALPHA_8);
         Rect src = new Rect(0, 0, preview.getWidth(), preview.getHeight());
 
         float scaleFactor = Math.min((w - blurSizeOutline) / (float) preview.getWidth(),
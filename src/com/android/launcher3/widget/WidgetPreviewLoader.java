@@ -27,8 +27,31 @@ import com.android.launcher3.model.WidgetItem;
 
 /** Asynchronous loader of preview bitmaps for {@link WidgetItem}s. */
 public interface WidgetPreviewLoader {
+
+    /** Priority of a preview which is needed by a view currently on screen. */
+    int PRIORITY_VISIBLE = 0;
+    /** Priority of a preview which is loaded ahead of being shown. */
+    int PRIORITY_PREFETCH = 1;
+
+    /**
+     * Loads a widget preview with {@link #PRIORITY_VISIBLE} and calls back to {@code callback}
+     * when complete.
+     *
+     * @return a {@link CancellationSignal} which can be used to cancel the request.
+     */
+    @NonNull
+    @UiThread
+    default CancellationSignal loadPreview(
+            @NonNull BaseActivity activity,
+            @NonNull WidgetItem item,
+            @NonNull Size previewSize,
+            @NonNull WidgetPreviewLoadedCallback callback) {
+        return loadPreview(activity, item, previewSize, callback, PRIORITY_VISIBLE);
+    }
+
     /**
-     * Loads a widget preview and calls back to {@code callback} when complete.
+     * Loads a widget preview and calls back to {@code callback} when complete. Requests with a
+     * lower {@code priority} value are loaded first.
      *
      * @return a {@link CancellationSignal} which can be used to cancel the request.
      */
@@ -38,7 +61,8 @@ public interface WidgetPreviewLoader {
             @NonNull BaseActivity activity,
             @NonNull WidgetItem item,
             @NonNull Size previewSize,
-            @NonNull WidgetPreviewLoadedCallback callback);
+            @NonNull WidgetPreviewLoadedCallback callback,
+            int priority);
 
     /** Callback class for requests to {@link WidgetPreviewLoader}. */
     interface WidgetPreviewLoadedCallback {
@@ -0,0 +1,530 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.widget;
+
+import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
+
+import android.content.ComponentName;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.util.Log;
+import android.util.SparseArray;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.android.launcher3.util.IntArray;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.function.BooleanSupplier;
+
+/**
+ * {@link WidgetPreviewStore} which keeps the raw ARGB_8888 pixels of every preview in file packs,
+ * so that reading a preview is a copy from a memory mapped file into a reusable bitmap instead of
+ * a PNG decode.
+ *
+ * Previews are grouped by size class: every pack holds fixed size slots large enough for the
+ * previews of its class, and slots of removed previews are reused. An index of all the previews,
+ * along with their package versions, is kept in memory and saved to disk on the model thread.
+ * Freed slots are only reused once the index no longer referencing them is saved, so that the
+ * saved index never points to a slot holding another preview.
+ *
+ * Packs grow by whole segments of slots, and every segment is mapped once, so that growing a pack
+ * never leaves stale mappings behind. Mappings are released as soon as the packs are cleared.
+ */
+public class WidgetPreviewPack implements WidgetPreviewStore {
+
+    private static final String TAG = "WidgetPreviewPack";
+
+    private static final String INDEX_FILE_NAME = "index";
+    private static final String PACK_FILE_SUFFIX = ".pack";
+    private static final int INDEX_MAGIC = 0x57505058;
+    private static final int INDEX_VERSION = 1;
+
+    // Slot sizes grow by half from this size, and are aligned to pages
+    private static final int MIN_SLOT_SIZE = 16 * 1024;
+    private static final int SLOT_ALIGNMENT = 4 * 1024;
+    // Packs grow by segments of at least this size
+    private static final int MIN_SEGMENT_SIZE = 1024 * 1024;
+
+    private final File mDir;
+    private final HashMap<PreviewKey, Preview> mPreviews = new HashMap<>();
+    private final SparseArray<Pack> mPacks = new SparseArray<>();
+
+    private boolean mLoaded;
+    private boolean mSavePending;
+
+    public WidgetPreviewPack(File dir) {
+        mDir = dir;
+    }
+
+    @Override
+    @Nullable
+    public synchronized Bitmap read(ComponentName component, long userSerial, String size,
+            @Nullable Bitmap recycle, BooleanSupplier isCancelled) {
+        ensureLoaded();
+        Preview preview = mPreviews.get(
+                new PreviewKey(component.flattenToShortString(), userSerial, size));
+        if (preview == null || isCancelled.getAsBoolean()) {
+            return null;
+        }
+        ByteBuffer pixels = mPacks.get(preview.mSlotSize).getPixels(preview);
+        if (pixels == null) {
+            return null;
+        }
+
+        Bitmap bitmap = null;
+        if (recycle != null && recycle.isMutable() && recycle.getConfig() == Config.ARGB_8888) {
+            try {
+                recycle.reconfigure(preview.mWidth, preview.mHeight, Config.ARGB_8888);
+                bitmap = recycle;
+            } catch (IllegalArgumentException e) {
+                // The bitmap is too small for this preview
+            }
+        }
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(preview.mWidth, preview.mHeight, Config.ARGB_8888);
+        }
+        bitmap.copyPixelsFromBuffer(pixels);
+        return bitmap;
+    }
+
+    @Override
+    public synchronized void write(ComponentName component, long userSerial, String size,
+            long version, long lastUpdated, Bitmap preview) {
+        ensureLoaded();
+        Bitmap source = preview.getConfig() == Config.ARGB_8888
+                ? preview : preview.copy(Config.ARGB_8888, false /* isMutable */);
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int byteCount = width * height * 4;
+        int slotSize = getSlotSize(byteCount);
+
+        PreviewKey key = new PreviewKey(component.flattenToShortString(), userSerial, size);
+        Preview previous = mPreviews.remove(key);
+        if (previous != null) {
+            mPacks.get(previous.mSlotSize).freeSlot(previous.mSlot);
+        }
+
+        Pack pack = getOrCreatePack(slotSize);
+        int slot = pack.allocateSlot();
+        ByteBuffer pixels = ByteBuffer.allocate(byteCount);
+        source.copyPixelsToBuffer(pixels);
+        pixels.flip();
+        try {
+            pack.writeSlot(slot, pixels);
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing widget preview", e);
+            pack.freeSlot(slot);
+            scheduleSaveIndex();
+            return;
+        }
+        mPreviews.put(key, new Preview(component.getPackageName(), version, lastUpdated,
+                width, height, slotSize, slot));
+        scheduleSaveIndex();
+    }
+
+    @Override
+    public void forEachPreview(PreviewVisitor visitor) {
+        ArrayList<Preview> previews;
+        ArrayList<PreviewKey> keys;
+        synchronized (this) {
+            ensureLoaded();
+            keys = new ArrayList<>(mPreviews.keySet());
+            previews = new ArrayList<>(mPreviews.values());
+        }
+        for (int i = 0; i < previews.size(); i++) {
+            Preview preview = previews.get(i);
+            visitor.onPreview(keys.get(i).mUserSerial, preview.mPackageName, preview.mVersion,
+                    preview.mLastUpdated);
+        }
+    }
+
+    @Override
+    public synchronized void removePackage(String packageName, long userSerial) {
+        ensureLoaded();
+        boolean removed = false;
+        Iterator<HashMap.Entry<PreviewKey, Preview>> it = mPreviews.entrySet().iterator();
+        while (it.hasNext()) {
+            HashMap.Entry<PreviewKey, Preview> entry = it.next();
+            Preview preview = entry.getValue();
+            if (entry.getKey().mUserSerial == userSerial
+                    && preview.mPackageName.equals(packageName)) {
+                mPacks.get(preview.mSlotSize).freeSlot(preview.mSlot);
+                it.remove();
+                removed = true;
+            }
+        }
+        if (removed) {
+            scheduleSaveIndex();
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (int i = 0; i < mPacks.size(); i++) {
+            mPacks.valueAt(i).close();
+        }
+        mPacks.clear();
+        mPreviews.clear();
+        deleteFiles();
+        mLoaded = true;
+    }
+
+    private void ensureLoaded() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        if (!mDir.exists()) {
+            return;
+        }
+        if (!readIndex()) {
+            mPreviews.clear();
+            deleteFiles();
+            return;
+        }
+
+        // Every slot not referenced by the index is free
+        SparseArray<IntArray> usedSlots = new SparseArray<>();
+        for (Preview preview : mPreviews.values()) {
+            IntArray slots = usedSlots.get(preview.mSlotSize);
+            if (slots == null) {
+                slots = new IntArray();
+                usedSlots.put(preview.mSlotSize, slots);
+            }
+            slots.add(preview.mSlot);
+        }
+        for (int i = 0; i < usedSlots.size(); i++) {
+            getOrCreatePack(usedSlots.keyAt(i)).initSlots(usedSlots.valueAt(i));
+        }
+    }
+
+    private boolean readIndex() {
+        File indexFile = new File(mDir, INDEX_FILE_NAME);
+        if (!indexFile.exists()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+                return false;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                PreviewKey key = new PreviewKey(in.readUTF(), in.readLong(), in.readUTF());
+                Preview preview = new Preview(in.readUTF(), in.readLong(), in.readLong(),
+                        in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                File packFile = getPackFile(preview.mSlotSize);
+                int segmentSlots = getSegmentSlots(preview.mSlotSize);
+                if (packFile.length() < getSegmentEnd(
+                        preview.mSlot / segmentSlots, segmentSlots, preview.mSlotSize)) {
+                    // The pack is missing data, skip this preview
+                    continue;
+                }
+                mPreviews.put(key, preview);
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading widget preview index", e);
+            return false;
+        }
+    }
+
+    private void scheduleSaveIndex() {
+        if (!mSavePending) {
+            mSavePending = true;
+            MODEL_EXECUTOR.post(this::saveIndex);
+        }
+    }
+
+    @WorkerThread
+    private synchronized void saveIndex() {
+        mSavePending = false;
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            return;
+        }
+        File indexFile = new File(mDir, INDEX_FILE_NAME);
+        File tmpFile = new File(mDir, INDEX_FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(mPreviews.size());
+            for (HashMap.Entry<PreviewKey, Preview> entry : mPreviews.entrySet()) {
+                PreviewKey key = entry.getKey();
+                Preview preview = entry.getValue();
+                out.writeUTF(key.mComponent);
+                out.writeLong(key.mUserSerial);
+                out.writeUTF(key.mSize);
+                out.writeUTF(preview.mPackageName);
+                out.writeLong(preview.mVersion);
+                out.writeLong(preview.mLastUpdated);
+                out.writeInt(preview.mWidth);
+                out.writeInt(preview.mHeight);
+                out.writeInt(preview.mSlotSize);
+                out.writeInt(preview.mSlot);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing widget preview index", e);
+            tmpFile.delete();
+            return;
+        }
+        if (!tmpFile.renameTo(indexFile)) {
+            tmpFile.delete();
+            return;
+        }
+        // The saved index no longer references the freed slots
+        for (int i = 0; i < mPacks.size(); i++) {
+            mPacks.valueAt(i).releasePendingSlots();
+        }
+    }
+
+    private Pack getOrCreatePack(int slotSize) {
+        Pack pack = mPacks.get(slotSize);
+        if (pack == null) {
+            pack = new Pack(slotSize, getPackFile(slotSize));
+            mPacks.put(slotSize, pack);
+        }
+        return pack;
+    }
+
+    private File getPackFile(int slotSize) {
+        return new File(mDir, slotSize + PACK_FILE_SUFFIX);
+    }
+
+    private void deleteFiles() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private static int getSegmentSlots(int slotSize) {
+        return Math.max(1, MIN_SEGMENT_SIZE / slotSize);
+    }
+
+    private static long getSegmentEnd(int segment, int segmentSlots, int slotSize) {
+        return (long) (segment + 1) * segmentSlots * slotSize;
+    }
+
+    private static int getSlotSize(int byteCount) {
+        int slotSize = MIN_SLOT_SIZE;
+        while (slotSize < byteCount) {
+            slotSize += slotSize / 2;
+            slotSize = (slotSize + SLOT_ALIGNMENT - 1) / SLOT_ALIGNMENT * SLOT_ALIGNMENT;
+        }
+        return slotSize;
+    }
+
+    /**
+     * Releases the mapping of {@param buffer} right away, rather than when it is garbage collected.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class.forName("java.nio.NioUtils")
+                    .getMethod("freeDirectBuffer", ByteBuffer.class)
+                    .invoke(null, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // The mapping is released once the buffer is garbage collected
+        }
+    }
+
+    /**
+     * A file of fixed size slots, mapped by segments of {@link #mSegmentSlots} slots
+     */
+    private class Pack {
+
+        final int mSlotSize;
+        final int mSegmentSlots;
+        final File mFile;
+
+        int mSlotCount;
+        final IntArray mFreeSlots = new IntArray();
+        final IntArray mPendingFreeSlots = new IntArray();
+
+        RandomAccessFile mRaf;
+        final ArrayList<MappedByteBuffer> mSegments = new ArrayList<>();
+
+        Pack(int slotSize, File file) {
+            mSlotSize = slotSize;
+            mSegmentSlots = getSegmentSlots(slotSize);
+            mFile = file;
+        }
+
+        void initSlots(IntArray usedSlots) {
+            mSlotCount = (int) (mFile.length() / mSlotSize);
+            boolean[] used = new boolean[mSlotCount];
+            for (int i = 0; i < usedSlots.size(); i++) {
+                used[usedSlots.get(i)] = true;
+            }
+            for (int i = 0; i < mSlotCount; i++) {
+                if (!used[i]) {
+                    mFreeSlots.add(i);
+                }
+            }
+        }
+
+        int allocateSlot() {
+            int size = mFreeSlots.size();
+            if (size == 0) {
+                return mSlotCount++;
+            }
+            int slot = mFreeSlots.get(size - 1);
+            mFreeSlots.removeIndex(size - 1);
+            return slot;
+        }
+
+        void freeSlot(int slot) {
+            mPendingFreeSlots.add(slot);
+        }
+
+        void releasePendingSlots() {
+            mFreeSlots.addAll(mPendingFreeSlots);
+            mPendingFreeSlots.clear();
+        }
+
+        void writeSlot(int slot, ByteBuffer pixels) throws IOException {
+            if (mRaf == null) {
+                if (!mDir.exists() && !mDir.mkdirs()) {
+                    throw new IOException("Can't create " + mDir);
+                }
+                mRaf = new RandomAccessFile(mFile, "rw");
+            }
+            long offset = (long) slot * mSlotSize;
+            FileChannel channel = mRaf.getChannel();
+            while (pixels.hasRemaining()) {
+                offset += channel.write(pixels, offset);
+            }
+            long segmentEnd = getSegmentEnd(slot / mSegmentSlots, mSegmentSlots, mSlotSize);
+            if (mRaf.length() < segmentEnd) {
+                // Keep the file a whole number of segments, so that they never need remapping
+                mRaf.setLength(segmentEnd);
+            }
+        }
+
+        @Nullable
+        ByteBuffer getPixels(Preview preview) {
+            int segment = preview.mSlot / mSegmentSlots;
+            while (mSegments.size() <= segment) {
+                mSegments.add(null);
+            }
+            MappedByteBuffer map = mSegments.get(segment);
+            if (map == null) {
+                long start = (long) segment * mSegmentSlots * mSlotSize;
+                try (RandomAccessFile raf = new RandomAccessFile(mFile, "r")) {
+                    if (raf.length() < getSegmentEnd(segment, mSegmentSlots, mSlotSize)) {
+                        // The pack is missing data
+                        return null;
+                    }
+                    map = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, start,
+                            (long) mSegmentSlots * mSlotSize);
+                } catch (IOException e) {
+                    Log.e(TAG, "Error mapping widget previews", e);
+                    return null;
+                }
+                mSegments.set(segment, map);
+            }
+            ByteBuffer pixels = map.duplicate();
+            int offset = (preview.mSlot % mSegmentSlots) * mSlotSize;
+            pixels.position(offset);
+            pixels.limit(offset + preview.mWidth * preview.mHeight * 4);
+            return pixels;
+        }
+
+        void close() {
+            for (MappedByteBuffer map : mSegments) {
+                if (map != null) {
+                    unmap(map);
+                }
+            }
+            mSegments.clear();
+            if (mRaf != null) {
+                try {
+                    mRaf.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Error closing widget previews", e);
+                }
+                mRaf = null;
+            }
+        }
+    }
+
+    private static class PreviewKey {
+
+        final String mComponent;
+        final long mUserSerial;
+        final String mSize;
+
+        PreviewKey(String component, long userSerial, String size) {
+            mComponent = component;
+            mUserSerial = userSerial;
+            mSize = size;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mComponent, mUserSerial, mSize);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PreviewKey)) return false;
+            PreviewKey other = (PreviewKey) o;
+            return mUserSerial == other.mUserSerial && mComponent.equals(other.mComponent)
+                    && mSize.equals(other.mSize);
+        }
+    }
+
+    private static class Preview {
+
+        final String mPackageName;
+        final long mVersion;
+        final long mLastUpdated;
+        final int mWidth;
+        final int mHeight;
+        final int mSlotSize;
+        final int mSlot;
+
+        Preview(String packageName, long version, long lastUpdated, int width, int height,
+                int slotSize, int slot) {
+            mPackageName = packageName;
+            mVersion = version;
+            mLastUpdated = lastUpdated;
+            mWidth = width;
+            mHeight = height;
+            mSlotSize = slotSize;
+            mSlot = slot;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.widget;
+
+import android.content.ComponentName;
+import android.graphics.Bitmap;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Persistent storage of the generated widget previews used by
+ * {@link DatabaseWidgetPreviewLoader}. Previews are keyed by component, user serial and requested
+ * size, and tagged with the version of their package so that obsolete previews can be removed.
+ */
+public interface WidgetPreviewStore {
+
+    /**
+     * Returns the stored preview, or null if there is none or {@param isCancelled} returned true
+     * before it was read.
+     *
+     * @param recycle a bitmap which the preview is read into if possible
+     */
+    @WorkerThread
+    @Nullable
+    Bitmap read(ComponentName component, long userSerial, String size, @Nullable Bitmap recycle,
+            BooleanSupplier isCancelled);
+
+    /**
+     * Stores a preview, replacing any previous preview with the same key.
+     */
+    @WorkerThread
+    void write(ComponentName component, long userSerial, String size, long version,
+            long lastUpdated, Bitmap preview);
+
+    /**
+     * Calls {@param visitor} for every stored preview.
+     */
+    @WorkerThread
+    void forEachPreview(PreviewVisitor visitor);
+
+    /**
+     * Removes all the previews of the given package and user.
+     */
+    @WorkerThread
+    void removePackage(String packageName, long userSerial);
+
+    /**
+     * Removes all the previews.
+     */
+    void clear();
+
+    /** Receives the package information of stored previews. */
+    interface PreviewVisitor {
+        void onPreview(long userSerial, String packageName, long version, long lastUpdated);
+    }
+}
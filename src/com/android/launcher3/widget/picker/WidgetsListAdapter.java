@@ -51,6 +51,7 @@ import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.widget.CachingWidgetPreviewLoader;
 import com.android.launcher3.widget.DatabaseWidgetPreviewLoader;
 import com.android.launcher3.widget.WidgetCell;
+import com.android.launcher3.widget.WidgetPreviewLoader;
 import com.android.launcher3.widget.WidgetPreviewLoader.WidgetPreviewLoadedCallback;
 import com.android.launcher3.widget.model.WidgetsListBaseEntry;
 import com.android.launcher3.widget.model.WidgetsListContentEntry;
@@ -318,7 +319,8 @@ public class WidgetsListAdapter extends Adapter<ViewHolder> implements OnHeaderC
                         activity,
                         widgetItem,
                         widgetSize,
-                        mPreviewLoadedCallback);
+                        mPreviewLoadedCallback,
+                        WidgetPreviewLoader.PRIORITY_PREFETCH);
             }
         }
         return allReady;
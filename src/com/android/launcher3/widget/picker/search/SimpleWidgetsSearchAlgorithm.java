@@ -16,79 +16,80 @@
 
 package com.android.launcher3.widget.picker.search;
 
-import static com.android.launcher3.search.StringMatcherUtility.matches;
-
-import android.os.Handler;
-
-import com.android.launcher3.model.WidgetItem;
 import com.android.launcher3.popup.PopupDataProvider;
 import com.android.launcher3.search.SearchAlgorithm;
 import com.android.launcher3.search.SearchCallback;
-import com.android.launcher3.search.StringMatcherUtility.StringMatcher;
+import com.android.launcher3.search.SearchScheduler;
 import com.android.launcher3.widget.model.WidgetsListBaseEntry;
-import com.android.launcher3.widget.model.WidgetsListContentEntry;
-import com.android.launcher3.widget.model.WidgetsListHeaderEntry;
-import com.android.launcher3.widget.model.WidgetsListSearchHeaderEntry;
 
 import java.util.ArrayList;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 /**
- * Implementation of {@link SearchAlgorithm} that posts a task to query on the main thread.
+ * Implementation of {@link SearchAlgorithm} that queries the widgets search index on the search
+ * thread. The first matches are delivered through
+ * {@link SearchCallback#onSearchResult(String, ArrayList)} as soon as they are found, and the
+ * following ones through {@link SearchCallback#onAppendSearchResult(String, ArrayList)}.
  */
 public final class SimpleWidgetsSearchAlgorithm implements SearchAlgorithm<WidgetsListBaseEntry> {
 
-    private final Handler mResultHandler;
+    // Number of matching packages delivered at once
+    private static final int BATCH_SIZE = 8;
+
+    private final SearchScheduler mScheduler = new SearchScheduler();
     private final PopupDataProvider mDataProvider;
 
     public SimpleWidgetsSearchAlgorithm(PopupDataProvider dataProvider) {
-        mResultHandler = new Handler();
         mDataProvider = dataProvider;
     }
 
     @Override
     public void doSearch(String query, SearchCallback<WidgetsListBaseEntry> callback) {
-        ArrayList<WidgetsListBaseEntry> result = getFilteredWidgets(mDataProvider, query);
-        mResultHandler.post(() -> callback.onSearchResult(query, result));
+        Future<WidgetsSearchIndex> index = mDataProvider.getWidgetsSearchIndex();
+        mScheduler.scheduleIncremental(
+                (signal, publisher) -> awaitIndex(index).search(
+                        query, signal, BATCH_SIZE, publisher),
+                new Consumer<ArrayList<WidgetsListBaseEntry>>() {
+                    private boolean mHasResults;
+
+                    @Override
+                    public void accept(ArrayList<WidgetsListBaseEntry> batch) {
+                        if (mHasResults) {
+                            callback.onAppendSearchResult(query, batch);
+                        } else {
+                            mHasResults = true;
+                            callback.onSearchResult(query, batch);
+                        }
+                    }
+                });
     }
 
     @Override
     public void cancel(boolean interruptActiveRequests) {
         if (interruptActiveRequests) {
-            mResultHandler.removeCallbacksAndMessages(/*token= */null);
+            mScheduler.cancel();
         }
     }
 
-    /**
-     * Returns entries for all matched widgets
-     */
-    public static ArrayList<WidgetsListBaseEntry> getFilteredWidgets(
-            PopupDataProvider dataProvider, String input) {
-        ArrayList<WidgetsListBaseEntry> results = new ArrayList<>();
-        dataProvider.getAllWidgets().stream()
-                .filter(entry -> entry instanceof WidgetsListHeaderEntry)
-                .forEach(headerEntry -> {
-                    List<WidgetItem> matchedWidgetItems = filterWidgetItems(
-                            input, headerEntry.mPkgItem.title.toString(), headerEntry.mWidgets);
-                    if (matchedWidgetItems.size() > 0) {
-                        results.add(new WidgetsListSearchHeaderEntry(headerEntry.mPkgItem,
-                                headerEntry.mTitleSectionName, matchedWidgetItems));
-                        results.add(new WidgetsListContentEntry(headerEntry.mPkgItem,
-                                headerEntry.mTitleSectionName, matchedWidgetItems));
-                    }
-                });
-        return results;
+    @Override
+    public void destroy() {
+        mScheduler.cancel();
     }
 
-    private static List<WidgetItem> filterWidgetItems(String query, String packageTitle,
-            List<WidgetItem> items) {
-        StringMatcher matcher = StringMatcher.getInstance();
-        if (matches(query, packageTitle, matcher)) {
-            return items;
+    /**
+     * Waits for the index to be built in the background, which only takes a while if the
+     * widgets were bound right before the search.
+     */
+    private static WidgetsSearchIndex awaitIndex(Future<WidgetsSearchIndex> index) {
+        try {
+            return index.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
         }
-        return items.stream()
-                .filter(item -> matches(query, item.label, matcher))
-                .collect(Collectors.toList());
     }
 }
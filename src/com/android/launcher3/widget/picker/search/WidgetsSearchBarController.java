@@ -48,6 +48,9 @@ public class WidgetsSearchBarController implements TextWatcher,
     protected SearchModeListener mSearchModeListener;
     protected String mQuery;
 
+    // Results of the current query, which may be delivered in several parts
+    private final ArrayList<WidgetsListBaseEntry> mSearchResults = new ArrayList<>();
+
     public WidgetsSearchBarController(
             SearchAlgorithm<WidgetsListBaseEntry> algo, ExtendedEditText editText,
             ImageButton cancelButton, SearchModeListener searchModeListener) {
@@ -91,12 +94,18 @@ public class WidgetsSearchBarController implements TextWatcher,
         if (DEBUG) {
             Log.d(TAG, "onSearchResult query: " + query + " items: " + items);
         }
-        mSearchModeListener.onSearchResults(items);
+        mSearchResults.clear();
+        mSearchResults.addAll(items);
+        mSearchModeListener.onSearchResults(new ArrayList<>(mSearchResults));
     }
 
     @Override
     public void onAppendSearchResult(String query, ArrayList<WidgetsListBaseEntry> items) {
-        // Not needed.
+        if (DEBUG) {
+            Log.d(TAG, "onAppendSearchResult query: " + query + " items: " + items);
+        }
+        mSearchResults.addAll(items);
+        mSearchModeListener.onSearchResults(new ArrayList<>(mSearchResults));
     }
 
     @Override
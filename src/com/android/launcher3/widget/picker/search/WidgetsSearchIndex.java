@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.widget.picker.search;
+
+import android.os.CancellationSignal;
+
+import androidx.annotation.Nullable;
+
+import com.android.launcher3.model.WidgetItem;
+import com.android.launcher3.search.AppTitleSearchIndex.IndexedTitle;
+import com.android.launcher3.search.AppTitleSearchIndex.Query;
+import com.android.launcher3.search.StringMatcherUtility;
+import com.android.launcher3.search.StringMatcherUtility.StringMatcher;
+import com.android.launcher3.widget.model.WidgetsListBaseEntry;
+import com.android.launcher3.widget.model.WidgetsListContentEntry;
+import com.android.launcher3.widget.model.WidgetsListHeaderEntry;
+import com.android.launcher3.widget.model.WidgetsListSearchHeaderEntry;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Index of the package titles and widget labels of the widget picker, built once when the
+ * widgets are bound. Searches match exactly like
+ * {@link StringMatcherUtility#matches(String, String, StringMatcher)}, but reuse the word breaks
+ * and collation keys of every title instead of recomputing them for each query.
+ *
+ * The index is immutable apart from its lazily computed collation keys, so all the searches
+ * should run on the same thread.
+ */
+public class WidgetsSearchIndex {
+
+    private final Collator mCollator = StringMatcher.createCollator();
+    private final List<PackageEntry> mPackages = new ArrayList<>();
+
+    public WidgetsSearchIndex(List<WidgetsListBaseEntry> allWidgets) {
+        for (WidgetsListBaseEntry entry : allWidgets) {
+            if (entry instanceof WidgetsListHeaderEntry) {
+                mPackages.add(new PackageEntry((WidgetsListHeaderEntry) entry));
+            }
+        }
+    }
+
+    /**
+     * Searches for widgets matching {@param query}, in the order of the widgets list. The search
+     * and content entries of the matching packages are passed to {@param callback} in batches of
+     * up to {@param batchSize} packages as soon as they are found. The callback is called at
+     * least once, with an empty list if nothing matches.
+     *
+     * @return false if the search was cancelled through {@param signal}
+     */
+    public boolean search(String query, @Nullable CancellationSignal signal, int batchSize,
+            Consumer<ArrayList<WidgetsListBaseEntry>> callback) {
+        Query indexQuery = new Query(query, mCollator);
+        ArrayList<WidgetsListBaseEntry> batch = new ArrayList<>();
+        boolean published = false;
+        int packageCount = 0;
+        for (PackageEntry packageEntry : mPackages) {
+            if (signal != null && signal.isCanceled()) {
+                return false;
+            }
+            List<WidgetItem> matchedWidgetItems = packageEntry.filterWidgetItems(indexQuery);
+            if (matchedWidgetItems.isEmpty()) {
+                continue;
+            }
+            WidgetsListHeaderEntry headerEntry = packageEntry.mHeaderEntry;
+            batch.add(new WidgetsListSearchHeaderEntry(headerEntry.mPkgItem,
+                    headerEntry.mTitleSectionName, matchedWidgetItems));
+            batch.add(new WidgetsListContentEntry(headerEntry.mPkgItem,
+                    headerEntry.mTitleSectionName, matchedWidgetItems));
+            if (++packageCount == batchSize) {
+                callback.accept(batch);
+                batch = new ArrayList<>();
+                packageCount = 0;
+                published = true;
+            }
+        }
+        if (!published || !batch.isEmpty()) {
+            callback.accept(batch);
+        }
+        return true;
+    }
+
+    /**
+     * Returns entries for all the widgets matching {@param query}
+     */
+    public ArrayList<WidgetsListBaseEntry> search(String query) {
+        ArrayList<WidgetsListBaseEntry> results = new ArrayList<>();
+        search(query, null, Integer.MAX_VALUE, results::addAll);
+        return results;
+    }
+
+    private class PackageEntry {
+
+        final WidgetsListHeaderEntry mHeaderEntry;
+        final IndexedTitle mTitle;
+        final IndexedTitle[] mLabels;
+
+        PackageEntry(WidgetsListHeaderEntry headerEntry) {
+            mHeaderEntry = headerEntry;
+            mTitle = new IndexedTitle(headerEntry.mPkgItem.title == null
+                    ? "" : headerEntry.mPkgItem.title.toString());
+            List<WidgetItem> items = headerEntry.mWidgets;
+            mLabels = new IndexedTitle[items.size()];
+            for (int i = 0; i < mLabels.length; i++) {
+                String label = items.get(i).label;
+                mLabels[i] = new IndexedTitle(label == null ? "" : label);
+            }
+        }
+
+        List<WidgetItem> filterWidgetItems(Query query) {
+            List<WidgetItem> items = mHeaderEntry.mWidgets;
+            if (mTitle.matches(query, mCollator)) {
+                return items;
+            }
+            List<WidgetItem> matches = new ArrayList<>();
+            for (int i = 0; i < mLabels.length; i++) {
+                if (mLabels[i].matches(query, mCollator)) {
+                    matches.add(items.get(i));
+                }
+            }
+            return matches;
+        }
+    }
+}
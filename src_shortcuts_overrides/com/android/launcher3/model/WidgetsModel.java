@@ -67,6 +67,9 @@ public class WidgetsModel {
     /* Map of widgets and shortcuts that are tracked per package. */
     private final Map<PackageItemInfo, List<WidgetItem>> mWidgetsList = new HashMap<>();
 
+    // Serializes the updates, which can run on the model thread and on the loader worker pool
+    private final Object mUpdateLock = new Object();
+
     /**
      * Returns a list of {@link WidgetsListBaseEntry}. All {@link WidgetItem} in a single row
      * are sorted (based on label and user), but the overall list of
@@ -112,8 +115,18 @@ public class WidgetsModel {
      */
     public List<ComponentWithLabelAndIcon> update(
             LauncherAppState app, @Nullable PackageUserKey packageUser) {
-        Preconditions.assertWorkerThread();
+        // The loader runs the full update on its worker pool, in parallel with other phases
+        Preconditions.assertNonUiThread();
+
+        // A cancelled loader doesn't stop its running update, so an update must not overlap the
+        // next one, and must not publish its results once cancelled
+        synchronized (mUpdateLock) {
+            return updateLocked(app, packageUser);
+        }
+    }
 
+    private List<ComponentWithLabelAndIcon> updateLocked(
+            LauncherAppState app, @Nullable PackageUserKey packageUser) {
         Context context = app.getContext();
         final ArrayList<WidgetItem> widgetsAndShortcuts = new ArrayList<>();
         List<ComponentWithLabelAndIcon> updatedItems = new ArrayList<>();
@@ -138,6 +151,10 @@ public class WidgetsModel {
                 widgetsAndShortcuts.add(new WidgetItem(info, app.getIconCache(), pm));
                 updatedItems.add(info);
             }
+            if (Thread.currentThread().isInterrupted()) {
+                // The loader was cancelled, its replacement runs a new full update
+                return updatedItems;
+            }
             setWidgetsAndShortcuts(widgetsAndShortcuts, app, packageUser);
         } catch (Exception e) {
             if (!FeatureFlags.IS_STUDIO_BUILD && Utilities.isBinderSizeError(e)) {
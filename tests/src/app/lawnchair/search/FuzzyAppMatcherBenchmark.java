@@ -0,0 +1,132 @@
+package app.lawnchair.search;
+
+import static org.junit.Assert.assertTrue;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.filters.LargeTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.launcher3.model.data.AppInfo;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import me.xdrop.fuzzywuzzy.FuzzySearch;
+import me.xdrop.fuzzywuzzy.algorithms.WeightedRatio;
+import me.xdrop.fuzzywuzzy.model.BoundExtractedResult;
+
+/**
+ * Compares {@link FuzzyAppMatcher} with fuzzywuzzy's extractSorted over a synthetic list of
+ * 1,000 apps, both for speed and for ranking quality.
+ *
+ * As many apps share the same title, the rankings are compared by the fuzzywuzzy scores of the
+ * results rather than by the results themselves: the results agree when fuzzywuzzy scores both
+ * top lists the same, rank by rank.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class FuzzyAppMatcherBenchmark {
+
+    private static final String TAG = "FuzzyAppMatcherBenchmark";
+
+    private static final int APP_COUNT = 1000;
+    private static final int MAX_RESULTS = 5;
+    private static final int CUTOFF = 65;
+
+    private static final String[] WORDS = {
+            "google", "maps", "photo", "camera", "music", "player", "calendar", "clock", "mail",
+            "chat", "messenger", "files", "notes", "weather", "news", "bank", "wallet", "fit",
+            "translate", "drive", "keep", "home", "store", "play", "video", "radio", "podcast",
+            "reader", "scanner", "gallery", "browser", "vpn", "settings", "contacts", "phone"};
+
+    private static final String[] QUERIES = {
+            "g", "go", "goo", "goog", "googl", "google", "mpas", "phot", "camra", "musc player",
+            "calender", "clok", "messnger", "wether", "transl", "podcst", "galery", "brwser"};
+
+    @Test
+    public void benchmarkAgainstFuzzyWuzzy() {
+        List<AppInfo> apps = createApps(new Random(42));
+        FuzzyAppMatcher matcher = new FuzzyAppMatcher(CUTOFF);
+
+        // Warm up both implementations, which also fills the matcher's title cache
+        for (String query : QUERIES) {
+            matcher.search(apps, query, MAX_RESULTS);
+            extractSorted(apps, query);
+        }
+
+        long matcherTime = 0;
+        long fuzzyWuzzyTime = 0;
+        List<String> disagreements = new ArrayList<>();
+        for (String query : QUERIES) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            List<AppInfo> results = matcher.search(apps, query, MAX_RESULTS);
+            matcherTime += SystemClock.elapsedRealtimeNanos() - start;
+
+            start = SystemClock.elapsedRealtimeNanos();
+            List<AppInfo> expected = extractSorted(apps, query);
+            fuzzyWuzzyTime += SystemClock.elapsedRealtimeNanos() - start;
+
+            List<Integer> scores = getScores(query, results);
+            List<Integer> expectedScores = getScores(query, expected);
+            if (!scores.equals(expectedScores)) {
+                disagreements.add(query + ": " + scores + " instead of " + expectedScores);
+            }
+        }
+
+        Log.d(TAG, String.format(Locale.US,
+                "FuzzyAppMatcher: %.2fms/query, extractSorted: %.2fms/query, "
+                        + "ranking agreement: %d/%d",
+                matcherTime / 1e6 / QUERIES.length, fuzzyWuzzyTime / 1e6 / QUERIES.length,
+                QUERIES.length - disagreements.size(), QUERIES.length));
+        assertTrue("Top results ranked differently from extractSorted " + disagreements,
+                disagreements.isEmpty());
+    }
+
+    /**
+     * Returns the fuzzywuzzy scores of {@param results} for {@param query}, in order.
+     */
+    private static List<Integer> getScores(String query, List<AppInfo> results) {
+        List<Integer> scores = new ArrayList<>(results.size());
+        for (AppInfo info : results) {
+            scores.add(FuzzySearch.weightedRatio(query, info.title.toString()));
+        }
+        return scores;
+    }
+
+    private static List<AppInfo> extractSorted(List<AppInfo> apps, String query) {
+        List<BoundExtractedResult<AppInfo>> matches = FuzzySearch.extractSorted(
+                query.toLowerCase(Locale.getDefault()), apps, info -> info.title.toString(),
+                new WeightedRatio(), CUTOFF);
+        List<AppInfo> result = new ArrayList<>();
+        for (int i = 0; i < matches.size() && i < MAX_RESULTS; i++) {
+            result.add(matches.get(i).getReferent());
+        }
+        return result;
+    }
+
+    private static List<AppInfo> createApps(Random random) {
+        List<AppInfo> apps = new ArrayList<>(APP_COUNT);
+        for (int i = 0; i < APP_COUNT; i++) {
+            StringBuilder title = new StringBuilder();
+            int wordCount = 1 + random.nextInt(3);
+            for (int j = 0; j < wordCount; j++) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                if (j > 0) {
+                    title.append(' ');
+                }
+                title.append(Character.toUpperCase(word.charAt(0))).append(word.substring(1));
+            }
+            AppInfo info = new AppInfo();
+            info.title = title.toString();
+            apps.add(info);
+        }
+        return apps;
+    }
+}
@@ -0,0 +1,151 @@
+package app.lawnchair.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.os.CancellationSignal;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.launcher3.model.data.AppInfo;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import me.xdrop.fuzzywuzzy.FuzzySearch;
+import me.xdrop.fuzzywuzzy.algorithms.WeightedRatio;
+import me.xdrop.fuzzywuzzy.model.BoundExtractedResult;
+
+/**
+ * Tests for {@link FuzzyAppMatcher}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class FuzzyAppMatcherTest {
+
+    private static final int MAX_RESULTS = 5;
+
+    private static final String[] TITLES = {
+            "Google Maps", "Maps", "Google", "Gmail", "Google Photos", "Camera", "Calendar",
+            "Clock", "Play Store", "Photo Editor"};
+
+    /**
+     * Pairs of normalized texts of similar lengths, for which the score doesn't depend on the
+     * partial ratio, the only part computed differently from fuzzywuzzy.
+     */
+    private static final String[][] PARITY_CORPUS = {
+            {"calender", "calendar"}, {"clok", "clock"}, {"gogle", "google"},
+            {"google maps", "maps google"}, {"play store", "store play"},
+            {"photo editor", "photos edit"}, {"camera", "camra"},
+            {"music player", "player musik"}, {"wallet", "walet"}, {"maps", "mail"}};
+
+    /**
+     * Titles of common apps, in the order of the apps list, and queries typed while looking for
+     * them, including prefixes and typos which the partial ratio scores.
+     */
+    private static final String[] RANKED_CORPUS = {
+            "Calculator", "Calendar", "Camera", "Chrome", "Clock", "Contacts", "Drive", "Duo",
+            "Files", "Fit", "Gallery", "Gmail", "Google", "Google Maps", "Google Pay",
+            "Google Photos", "Google Play Store", "Keep Notes", "Messages", "Meet", "Netflix",
+            "News", "Phone", "Play Games", "Podcasts", "Settings", "Spotify", "Telegram",
+            "Translate", "Weather", "WhatsApp", "YouTube", "YouTube Music"};
+    private static final String[] RANKED_QUERIES = {
+            "c", "ca", "cal", "calc", "calender", "cam", "camra", "g", "go", "goo", "goog",
+            "google", "gogle", "maps", "mpas", "photos", "phot", "play", "ply store", "store",
+            "mes", "mesages", "set", "settngs", "wh", "whats", "yt", "you", "youtub", "music",
+            "notes", "keep", "spotfy", "wether", "transl", "telegrm", "clok", "podcst"};
+
+    private final FuzzyAppMatcher mMatcher = new FuzzyAppMatcher(FuzzyAppMatcher.DEFAULT_CUTOFF);
+
+    @Test
+    public void score_matchesWeightedRatio() {
+        for (String[] pair : PARITY_CORPUS) {
+            assertEquals(pair[0] + " / " + pair[1], FuzzySearch.weightedRatio(pair[0], pair[1]),
+                    mMatcher.score(pair[0], pair[1]));
+        }
+    }
+
+    @Test
+    public void score_normalizesTitles() {
+        assertEquals(100, mMatcher.score("google maps", "Google  -  Maps!"));
+        assertEquals(0, mMatcher.score("", "Google"));
+        assertEquals(0, mMatcher.score("google", "--"));
+    }
+
+    @Test
+    public void search_returnsBestMatchesFirst() {
+        List<AppInfo> apps = createApps(TITLES);
+        assertTitles(mMatcher.search(apps, "google", MAX_RESULTS, null),
+                "Google", "Google Maps", "Google Photos");
+        assertTitles(mMatcher.search(apps, "calender", MAX_RESULTS, null), "Calendar");
+        assertTitles(mMatcher.search(apps, "xyz", MAX_RESULTS, null));
+    }
+
+    @Test
+    public void search_keepsTopResultsOfFuzzyWuzzy() {
+        List<AppInfo> apps = createApps(RANKED_CORPUS);
+        for (String query : RANKED_QUERIES) {
+            List<BoundExtractedResult<AppInfo>> matches = FuzzySearch.extractSorted(query, apps,
+                    info -> info.title.toString(), new WeightedRatio(),
+                    FuzzyAppMatcher.DEFAULT_CUTOFF);
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < matches.size() && i < MAX_RESULTS; i++) {
+                expected.add(matches.get(i).getReferent().title.toString());
+            }
+            assertEquals(query, expected,
+                    getTitles(mMatcher.search(apps, query, MAX_RESULTS, null)));
+        }
+    }
+
+    @Test
+    public void search_tiesKeepAppOrder() {
+        List<AppInfo> apps = createApps(TITLES);
+        assertTitles(mMatcher.search(apps, "photo", MAX_RESULTS, null),
+                "Google Photos", "Photo Editor");
+        assertTitles(mMatcher.search(apps, "google", 2, null), "Google", "Google Maps");
+    }
+
+    @Test
+    public void search_usesUpdatedTitles() {
+        List<AppInfo> apps = createApps(TITLES);
+        assertTitles(mMatcher.search(apps, "clock", MAX_RESULTS, null), "Clock");
+
+        apps.get(7).title = "Alarm";
+        assertTitles(mMatcher.search(apps, "clock", MAX_RESULTS, null));
+        assertTitles(mMatcher.search(apps, "alarm", MAX_RESULTS, null), "Alarm");
+    }
+
+    @Test
+    public void search_cancelled_returnsNothing() {
+        CancellationSignal signal = new CancellationSignal();
+        signal.cancel();
+        assertTrue(mMatcher.search(createApps(TITLES), "google", MAX_RESULTS, signal).isEmpty());
+    }
+
+    private static void assertTitles(List<AppInfo> results, String... titles) {
+        assertEquals(Arrays.asList(titles), getTitles(results));
+    }
+
+    private static List<String> getTitles(List<AppInfo> results) {
+        List<String> titles = new ArrayList<>();
+        for (AppInfo info : results) {
+            titles.add(info.title.toString());
+        }
+        return titles;
+    }
+
+    private static List<AppInfo> createApps(String... titles) {
+        List<AppInfo> apps = new ArrayList<>(titles.length);
+        for (String title : titles) {
+            AppInfo info = new AppInfo();
+            info.title = title;
+            apps.add(info);
+        }
+        return apps;
+    }
+}
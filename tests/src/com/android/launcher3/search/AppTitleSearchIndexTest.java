@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.search;
+
+import static org.junit.Assert.assertEquals;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.launcher3.model.data.AppInfo;
+import com.android.launcher3.search.StringMatcherUtility.StringMatcher;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for {@link AppTitleSearchIndex}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class AppTitleSearchIndexTest {
+
+    private static final String[] TITLES = {
+            "white cow", "whiteCow", "whiteCOW", "whitecowCOW", "white2cow", "whitecow",
+            "whitEcow", "whitecow cow", "whit ecowcow", "cats&dogs", "cats&Dogs", "2+43", "Q",
+            "  Q", "elephant", "Elephant", "电子邮件", "Bot", "다운로드", "드라이브",
+            "다운로드 드라이브", "운로 드라이브", "로드라이브", "abc", "Alpha", ""};
+
+    private static final String[] QUERIES = {
+            "white ", "white c", "cow", "dog", "&", "43", "3", "q", "e", "el", "电", "子",
+            "邮件", "ba", "phant", "elephants", "다", "드", "ㄷ", "ㄷㄷ", "åbç", "ål", "åç", "a"};
+
+    @Test
+    public void testMatchesSameAsStringMatcher() {
+        StringMatcher matcher = StringMatcher.getInstance();
+        List<AppInfo> apps = new ArrayList<>();
+        for (String title : TITLES) {
+            AppInfo info = new AppInfo();
+            info.title = title;
+            apps.add(info);
+        }
+
+        AppTitleSearchIndex index = new AppTitleSearchIndex();
+        for (String query : QUERIES) {
+            List<AppInfo> expected = new ArrayList<>();
+            for (AppInfo info : apps) {
+                if (StringMatcherUtility.matches(query, info.title.toString(), matcher)) {
+                    expected.add(info);
+                }
+            }
+            assertEquals(query, expected, index.search(apps, query, apps.size()));
+        }
+    }
+
+    @Test
+    public void testUpdatesChangedTitles() {
+        AppInfo info = new AppInfo();
+        info.title = "Calendar";
+        List<AppInfo> apps = Arrays.asList(info);
+
+        AppTitleSearchIndex index = new AppTitleSearchIndex();
+        assertEquals(1, index.search(apps, "cal", 5).size());
+
+        info.title = "Clock";
+        assertEquals(0, index.search(apps, "cal", 5).size());
+        assertEquals(1, index.search(apps, "clo", 5).size());
+    }
+}
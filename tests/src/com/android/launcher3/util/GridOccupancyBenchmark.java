@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.filters.LargeTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares {@link GridOccupancy} with the previous per cell implementation, by replaying the
+ * occupancy operations of the CellLayout reorder solver: for each drop, the items under the drop
+ * are pushed one by one to their nearest vacant area.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class GridOccupancyBenchmark {
+
+    private static final String TAG = "GridOccupancyBenchmark";
+
+    // From the default grids to the widest grid supported, where the per cell search is slowest
+    private static final int[][] GRID_SIZES = {
+            {5, 5}, {10, 10}, {16, 16}, {32, 24}, {48, 16},
+            {GridOccupancy.MAX_COUNT_X, 16}, {GridOccupancy.MAX_COUNT_X, 32}};
+    private static final int DROPS_PER_GRID = 2000;
+    // Fraction of the cells covered by items
+    private static final float FILL = 0.7f;
+
+    @Test
+    public void benchmarkReorder() {
+        for (int[] size : GRID_SIZES) {
+            Random random = new Random(size[0] * 31 + size[1]);
+            ArrayList<CellAndSpan> items = createItems(size[0], size[1], random);
+            ArrayList<CellAndSpan> drops = new ArrayList<>();
+            for (int i = 0; i < DROPS_PER_GRID; i++) {
+                int spanX = 1 + random.nextInt(2);
+                int spanY = 1 + random.nextInt(2);
+                drops.add(new CellAndSpan(random.nextInt(size[0] - spanX + 1),
+                        random.nextInt(size[1] - spanY + 1), spanX, spanY));
+            }
+
+            // Run both once to warm up, and to check that they find the same solutions
+            int[] expected = reorderLegacy(size[0], size[1], items, drops);
+            assertArrayEquals(expected, reorder(size[0], size[1], items, drops));
+
+            long start = SystemClock.elapsedRealtimeNanos();
+            reorderLegacy(size[0], size[1], items, drops);
+            long legacyTime = SystemClock.elapsedRealtimeNanos() - start;
+            start = SystemClock.elapsedRealtimeNanos();
+            reorder(size[0], size[1], items, drops);
+            long bitsetTime = SystemClock.elapsedRealtimeNanos() - start;
+
+            Log.d(TAG, String.format(Locale.US,
+                    "%dx%d grid, %d items, %d drops, per cell: %.2fms, bitset: %.2fms",
+                    size[0], size[1], items.size(), DROPS_PER_GRID,
+                    legacyTime / 1e6, bitsetTime / 1e6));
+        }
+    }
+
+    private static ArrayList<CellAndSpan> createItems(int countX, int countY, Random random) {
+        GridOccupancy occupancy = new GridOccupancy(countX, countY);
+        ArrayList<CellAndSpan> items = new ArrayList<>();
+        int covered = 0;
+        int[] cell = new int[2];
+        while (covered < countX * countY * FILL) {
+            int spanX = 1 + random.nextInt(2);
+            int spanY = 1 + random.nextInt(2);
+            int x = random.nextInt(countX - spanX + 1);
+            int y = random.nextInt(countY - spanY + 1);
+            if (!occupancy.isRegionVacant(x, y, spanX, spanY)) {
+                if (!occupancy.findVacantCell(cell, 1, 1)) {
+                    break;
+                }
+                x = cell[0];
+                y = cell[1];
+                spanX = spanY = 1;
+            }
+            occupancy.markCells(x, y, spanX, spanY, true);
+            items.add(new CellAndSpan(x, y, spanX, spanY));
+            covered += spanX * spanY;
+        }
+        return items;
+    }
+
+    /**
+     * Returns the new positions of the pushed items, for all the drops.
+     */
+    private static int[] reorder(int countX, int countY, ArrayList<CellAndSpan> items,
+            ArrayList<CellAndSpan> drops) {
+        GridOccupancy occupied = new GridOccupancy(countX, countY);
+        GridOccupancy tmpOccupied = new GridOccupancy(countX, countY);
+        for (CellAndSpan item : items) {
+            occupied.markCells(item, true);
+        }
+        IntArray result = new IntArray();
+        int[] location = new int[2];
+        for (CellAndSpan drop : drops) {
+            occupied.copyTo(tmpOccupied);
+            for (CellAndSpan item : items) {
+                if (!intersects(item, drop)) {
+                    continue;
+                }
+                tmpOccupied.markCells(item, false);
+                tmpOccupied.markCells(drop, true);
+                findNearestArea(tmpOccupied, item, location);
+                result.add(location[0]);
+                result.add(location[1]);
+                if (location[0] >= 0) {
+                    tmpOccupied.markCells(location[0], location[1], item.spanX, item.spanY, true);
+                }
+            }
+        }
+        return result.toArray();
+    }
+
+    private static void findNearestArea(GridOccupancy occupied, CellAndSpan item, int[] out) {
+        float bestDistance = Float.MAX_VALUE;
+        out[0] = out[1] = -1;
+        for (int y = 0; y < occupied.getCountY() - (item.spanY - 1); y++) {
+            long candidates = occupied.getVacantRegionStarts(y, item.spanX, item.spanY);
+            for (; candidates != 0; candidates &= candidates - 1) {
+                int x = Long.numberOfTrailingZeros(candidates);
+                float distance = (float) Math.hypot(x - item.cellX, y - item.cellY);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    out[0] = x;
+                    out[1] = y;
+                }
+            }
+        }
+    }
+
+    private static int[] reorderLegacy(int countX, int countY, ArrayList<CellAndSpan> items,
+            ArrayList<CellAndSpan> drops) {
+        boolean[][] occupied = new boolean[countX][countY];
+        boolean[][] tmpOccupied = new boolean[countX][countY];
+        for (CellAndSpan item : items) {
+            markCellsLegacy(occupied, item.cellX, item.cellY, item.spanX, item.spanY, true);
+        }
+        IntArray result = new IntArray();
+        int[] location = new int[2];
+        for (CellAndSpan drop : drops) {
+            for (int i = 0; i < countX; i++) {
+                for (int j = 0; j < countY; j++) {
+                    tmpOccupied[i][j] = occupied[i][j];
+                }
+            }
+            for (CellAndSpan item : items) {
+                if (!intersects(item, drop)) {
+                    continue;
+                }
+                markCellsLegacy(tmpOccupied, item.cellX, item.cellY, item.spanX, item.spanY,
+                        false);
+                markCellsLegacy(tmpOccupied, drop.cellX, drop.cellY, drop.spanX, drop.spanY,
+                        true);
+                findNearestAreaLegacy(tmpOccupied, item, location);
+                result.add(location[0]);
+                result.add(location[1]);
+                if (location[0] >= 0) {
+                    markCellsLegacy(tmpOccupied, location[0], location[1], item.spanX,
+                            item.spanY, true);
+                }
+            }
+        }
+        return result.toArray();
+    }
+
+    private static void findNearestAreaLegacy(boolean[][] occupied, CellAndSpan item,
+            int[] out) {
+        int countX = occupied.length;
+        int countY = occupied[0].length;
+        float bestDistance = Float.MAX_VALUE;
+        out[0] = out[1] = -1;
+        for (int y = 0; y < countY - (item.spanY - 1); y++) {
+            inner:
+            for (int x = 0; x < countX - (item.spanX - 1); x++) {
+                for (int i = 0; i < item.spanX; i++) {
+                    for (int j = 0; j < item.spanY; j++) {
+                        if (occupied[x + i][y + j]) {
+                            continue inner;
+                        }
+                    }
+                }
+                float distance = (float) Math.hypot(x - item.cellX, y - item.cellY);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    out[0] = x;
+                    out[1] = y;
+                }
+            }
+        }
+    }
+
+    private static void markCellsLegacy(boolean[][] cells, int cellX, int cellY, int spanX,
+            int spanY, boolean value) {
+        for (int x = cellX; x < cellX + spanX && x < cells.length; x++) {
+            for (int y = cellY; y < cellY + spanY && y < cells[0].length; y++) {
+                cells[x][y] = value;
+            }
+        }
+    }
+
+    private static boolean intersects(CellAndSpan a, CellAndSpan b) {
+        return a.cellX < b.cellX + b.spanX && b.cellX < a.cellX + a.spanX
+                && a.cellY < b.cellY + b.spanY && b.cellY < a.cellY + a.spanY;
+    }
+}
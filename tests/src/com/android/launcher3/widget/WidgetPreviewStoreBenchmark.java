@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.widget;
+
+import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentation;
+
+import static org.junit.Assert.assertTrue;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+
+import androidx.test.filters.LargeTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.launcher3.AbstractFloatingView;
+import com.android.launcher3.LauncherAppState;
+import com.android.launcher3.ui.AbstractLauncherUiTest;
+import com.android.launcher3.util.PackageUserKey;
+import com.android.launcher3.widget.picker.WidgetsFullSheet;
+import com.android.launcher3.widget.picker.WidgetsListAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the time from opening the {@link WidgetsFullSheet} to its first frame showing all the
+ * widget previews, when they are read from {@link WidgetPreviewPack} and from the SQLite
+ * {@link DatabaseWidgetPreviewLoader.CacheDb}.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class WidgetPreviewStoreBenchmark extends AbstractLauncherUiTest {
+
+    private static final String TAG = "WidgetPreviewStoreBenchmark";
+
+    private static final String DB_NAME = "widget_previews_benchmark.db";
+    private static final String PACK_DIR_NAME = "widget_previews_benchmark";
+
+    private static final int ITERATIONS = 10;
+
+    private DatabaseWidgetPreviewLoader mLoader;
+    private WidgetPreviewStore mOriginalStore;
+    private File mPackDir;
+
+    @Before
+    public void setUpLoader() {
+        mLoader = LauncherAppState.getInstance(mTargetContext).getWidgetCache();
+        mPackDir = new File(mTargetContext.getCacheDir(), PACK_DIR_NAME);
+        mDevice.pressHome();
+        waitForResumed("Launcher internal state is still Background");
+    }
+
+    @After
+    public void tearDown() {
+        if (mOriginalStore != null) {
+            mLoader.swapStore(mOriginalStore);
+        }
+        mTargetContext.deleteDatabase(DB_NAME);
+        new WidgetPreviewPack(mPackDir).clear();
+        mPackDir.delete();
+    }
+
+    @Test
+    public void benchmarkOpenToFirstFrame() throws Exception {
+        long dbTime = measureOpenToFirstFrame(
+                new DatabaseWidgetPreviewLoader.CacheDb(mTargetContext, DB_NAME));
+        long packTime = measureOpenToFirstFrame(new WidgetPreviewPack(mPackDir));
+
+        Log.d(TAG, String.format(Locale.US,
+                "Open to first frame with previews (median of %d), SQLite: %.2fms, pack: %.2fms",
+                ITERATIONS, dbTime / 1e6, packTime / 1e6));
+    }
+
+    /**
+     * Returns the median time from opening the sheet to its first frame with all previews, once
+     * the previews are in {@param store}.
+     */
+    private long measureOpenToFirstFrame(WidgetPreviewStore store) throws Exception {
+        WidgetPreviewStore previous = mLoader.swapStore(store);
+        if (mOriginalStore == null) {
+            mOriginalStore = previous;
+        }
+        store.clear();
+
+        // The first opening generates the previews and writes them to the store
+        openToFirstFrame();
+
+        long[] times = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            times[i] = openToFirstFrame();
+        }
+        Arrays.sort(times);
+        return times[ITERATIONS / 2];
+    }
+
+    /**
+     * Opens the sheet with the widgets of the test package expanded, and returns the time until
+     * its first frame showing all their previews. Each opening creates new adapters, so that the
+     * previews are read from the store again.
+     */
+    private long openToFirstFrame() throws Exception {
+        PackageUserKey testPackage = new PackageUserKey(
+                getInstrumentation().getContext().getPackageName(), Process.myUserHandle());
+        CountDownLatch drawn = new CountDownLatch(1);
+        long[] times = new long[2];
+        executeOnLauncher(launcher -> {
+            times[0] = SystemClock.elapsedRealtimeNanos();
+            WidgetsFullSheet sheet = WidgetsFullSheet.show(launcher, false /* animate */);
+            ((WidgetsListAdapter) WidgetsFullSheet.getWidgetsView(launcher).getAdapter())
+                    .onHeaderClicked(true /* showWidgets */, testPackage);
+
+            ViewTreeObserver observer = sheet.getViewTreeObserver();
+            observer.addOnDrawListener(new ViewTreeObserver.OnDrawListener() {
+                @Override
+                public void onDraw() {
+                    if (drawn.getCount() == 0 || !hasAllPreviews(sheet.getRecyclerView())) {
+                        return;
+                    }
+                    times[1] = SystemClock.elapsedRealtimeNanos();
+                    drawn.countDown();
+                    // Can't be removed while dispatching the draw
+                    sheet.post(() -> observer.removeOnDrawListener(this));
+                }
+            });
+        });
+        assertTrue("Widget previews not shown",
+                drawn.await(DEFAULT_UI_TIMEOUT, TimeUnit.MILLISECONDS));
+
+        executeOnLauncher(launcher -> AbstractFloatingView.closeAllOpenViews(launcher, false));
+        waitForLauncherCondition("Widgets sheet not closed",
+                launcher -> WidgetsFullSheet.getWidgetsView(launcher) == null);
+        return times[1] - times[0];
+    }
+
+    private static boolean hasAllPreviews(ViewGroup recyclerView) {
+        ArrayList<WidgetCell> cells = new ArrayList<>();
+        collectWidgetCells(recyclerView, cells);
+        if (cells.isEmpty()) {
+            return false;
+        }
+        for (WidgetCell cell : cells) {
+            if (cell.getAppWidgetHostViewPreview() == null
+                    && cell.getWidgetView().getDrawable() == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void collectWidgetCells(ViewGroup parent, ArrayList<WidgetCell> out) {
+        for (int i = 0; i < parent.getChildCount(); i++) {
+            View child = parent.getChildAt(i);
+            if (child instanceof WidgetCell) {
+                out.add((WidgetCell) child);
+            } else if (child instanceof ViewGroup) {
+                collectWidgetCells((ViewGroup) child, out);
+            }
+        }
+    }
+}